@@ -1,5 +1,7 @@
 package banking;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Abstract bank account class.<br>
  * <br>
@@ -8,25 +10,29 @@ package banking;
  * {@link #accountHolder}: AccountHolder<br>
  * {@link #accountNumber}: Long<br>
  * {@link #pin}: int<br>
- * {@link #balance}: double<br><br>
+ * {@link #pinHash}: PinHash, set instead of the PIN on accounts rebuilt from a ledger<br>
+ * {@link #balance}: AtomicLong (minor units of {@link #currency})<br><br>
  *
  * Scalability/Extensibility notes:
- * - Balance operations are synchronized for thread safety within a single JVM.
+ * - Balance is a long count of minor units (cents), so amounts never drift.
+ * - Credits and debits are lock-free compare-and-set loops: no monitor for
+ * transfers to contend on, and a debit can never take the balance negative.
  * - For higher throughput, consider an external ledger or transactional store.
  */
 public abstract class Account implements AccountInterface {
     private AccountHolder accountHolder;
     private Long accountNumber;
     private int pin;
-    private double balance;
+    private PinHash pinHash;
+    private final AtomicLong balance;
     private Currency currency;
 
     protected Account(AccountHolder accountHolder, Long accountNumber, int pin, double startingDeposit, Currency currency) {
         this.accountHolder = accountHolder;
         this.accountNumber = accountNumber;
         this.pin = pin;
-        this.balance = startingDeposit;
         this.currency = currency;
+        this.balance = new AtomicLong(currency.toMinorUnits(startingDeposit));
     }
 
     public AccountHolder getAccountHolder() {
@@ -34,29 +40,64 @@ public abstract class Account implements AccountInterface {
     }
 
     public boolean validatePin(int attemptedPin) {
+        if (pinHash != null) {
+            return pinHash.matches(attemptedPin);
+        }
         return this.pin == attemptedPin;
     }
 
-    public synchronized double getBalance() {
-        return balance;
+    /**
+     * Used by ledger recovery, which only ever stored a hash of the PIN.
+     */
+    void restorePinHash(PinHash pinHash) {
+        this.pinHash = pinHash;
+        this.pin = 0;
+    }
+
+    public double getBalance() {
+        return currency.fromMinorUnits(balance.get());
+    }
+
+    public long getBalanceMinorUnits() {
+        return balance.get();
     }
 
     public Long getAccountNumber() {
         return accountNumber;
     }
 
-    public synchronized void creditAccount(double amount) {
+    public void creditAccount(double amount) {
         if (amount > 0) {
-            balance += amount;
+            creditMinorUnits(currency.toMinorUnits(amount));
+        }
+    }
+
+    public boolean debitAccount(double amount) {
+        return amount > 0 && debitMinorUnits(currency.toMinorUnits(amount));
+    }
+
+    public void creditMinorUnits(long amount) {
+        if (amount <= 0) {
+            return;
         }
+        long current;
+        do {
+            current = balance.get();
+        } while (!balance.compareAndSet(current, Math.addExact(current, amount)));
     }
 
-    public synchronized boolean debitAccount(double amount) {
-        if (amount > 0 && balance >= amount) {
-            balance -= amount;
-            return true;
+    public boolean debitMinorUnits(long amount) {
+        if (amount <= 0) {
+            return false;
         }
-        return false;
+        long current;
+        do {
+            current = balance.get();
+            if (current < amount) {
+                return false; // check-and-subtract in one CAS: no overdraft race
+            }
+        } while (!balance.compareAndSet(current, current - amount));
+        return true;
     }
 
     public Currency getCurrency() {
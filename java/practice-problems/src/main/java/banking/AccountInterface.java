@@ -21,6 +21,11 @@ public interface AccountInterface {
      */
     double getBalance();
 
+    /**
+     * @return The balance in minor units of {@link #getCurrency()} (e.g. cents).
+     */
+    long getBalanceMinorUnits();
+
     /**
      * @return {@link Account#accountNumber}
      */
@@ -37,5 +42,17 @@ public interface AccountInterface {
      */
     boolean debitAccount(double amount);
 
+    /**
+     * @param amount Minor units to deposit; non-positive amounts are ignored.
+     * @throws ArithmeticException if the balance would overflow.
+     */
+    void creditMinorUnits(long amount);
+
+    /**
+     * @param amount Minor units to withdraw.
+     * @return true if the balance covered the amount and it was withdrawn.
+     */
+    boolean debitMinorUnits(long amount);
+
     Currency getCurrency();
 }
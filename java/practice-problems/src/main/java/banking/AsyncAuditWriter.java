@@ -0,0 +1,234 @@
+package banking;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Moves audit writes off the caller's thread.
+ *
+ *   credit/debit threads ──offer──► [ ring buffer ] ──drain──► writer thread
+ *                          (1 CAS)   bounded, MPSC    batches   logRequestIds(batch)
+ *                                                              logTransactions(batch)
+ *
+ * Callers pay one CAS instead of a store write (a DB round trip, for a real
+ * store). The single writer drains up to maxBatch entries at a time and
+ * hands each store one batch, so a JDBC store can turn them into one
+ * batched INSERT.
+ *
+ * Nothing is dropped: if the ring is full (the store has fallen behind),
+ * the caller writes its entry synchronously, as AuditingBank did before —
+ * backpressure instead of loss. {@link #getSynchronousWrites()} shows how
+ * often that happens; a steady rate means the store needs to be faster or
+ * the ring bigger.
+ *
+ * A batch the store rejects is retried with backoff, then written one
+ * entry at a time, so one bad entry cannot take its batch down with it:
+ *
+ *   batch ──fail──► retry (1ms, 2ms) ──fail──► entry by entry ──fail──► failedWrites
+ *
+ * Entries reach the store up to ~1 batch + 0.2ms after being logged; call
+ * {@link #flush()} where a reader must see them. Stop producing before
+ * {@link #close()}, which drains whatever is left and throws if any entry
+ * could not be written.
+ */
+public class AsyncAuditWriter implements AutoCloseable {
+
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+    public static final int DEFAULT_MAX_BATCH = 1_024;
+
+    // Idle writer re-checks this often; bounds the added latency
+    private static final long IDLE_PARK_NANOS = 200_000;
+    private static final int BATCH_ATTEMPTS = 3;
+    private static final long RETRY_BACKOFF_NANOS = 1_000_000;
+
+    private final TransactionHistoryStore historyStore;
+    private final RequestIdStore requestIdStore;
+    private final AuditRingBuffer<Object> ring;
+    private final int maxBatch;
+    private final Thread writer;
+    private final LongAdder synchronousWrites = new LongAdder();
+    private final LongAdder failedWrites = new LongAdder();
+
+    private volatile boolean running = true;
+    private volatile RuntimeException lastWriteError;
+    private volatile long written; // entries handed to the stores; writer thread only
+
+    // Writer thread only
+    private final List<String> requestIdBatch = new ArrayList<>();
+    private final List<TransactionRecord> recordBatch = new ArrayList<>();
+
+    public AsyncAuditWriter(TransactionHistoryStore historyStore, RequestIdStore requestIdStore) {
+        this(historyStore, requestIdStore, DEFAULT_CAPACITY, DEFAULT_MAX_BATCH);
+    }
+
+    /**
+     * @param capacity Ring size, a power of two.
+     * @param maxBatch Most entries handed to the stores per write.
+     */
+    public AsyncAuditWriter(TransactionHistoryStore historyStore, RequestIdStore requestIdStore, int capacity,
+            int maxBatch) {
+        if (historyStore == null || requestIdStore == null) {
+            throw new IllegalArgumentException("History and request id stores are required");
+        }
+        if (maxBatch <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.historyStore = historyStore;
+        this.requestIdStore = requestIdStore;
+        this.ring = new AuditRingBuffer<>(capacity);
+        this.maxBatch = maxBatch;
+        this.writer = Thread.ofPlatform().name("audit-writer").daemon(true).start(this::run);
+    }
+
+    public void logRequestId(String requestId) {
+        if (requestId != null) {
+            submit(requestId);
+        }
+    }
+
+    public void logTransaction(TransactionRecord record) {
+        if (record != null) {
+            submit(record);
+        }
+    }
+
+    /**
+     * Blocks until everything logged before this call is in the stores.
+     */
+    public void flush() {
+        long target = ring.claimed();
+        while (written < target && writer.isAlive()) {
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+    }
+
+    /**
+     * @return Entries written on the caller's thread because the ring was full.
+     */
+    public long getSynchronousWrites() {
+        return synchronousWrites.sum();
+    }
+
+    /**
+     * @return Entries the stores rejected even when written on their own.
+     */
+    public long getFailedWrites() {
+        return failedWrites.sum();
+    }
+
+    /**
+     * @return Why the most recent entry could not be written, or null.
+     */
+    public RuntimeException getLastWriteError() {
+        return lastWriteError;
+    }
+
+    /**
+     * Drains whatever is left. Waits for the writer even when interrupted
+     * (the interrupt is kept), so no entry is left in the ring.
+     *
+     * @throws IllegalStateException if any entry could not be written.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(writer);
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        // The writer has exited (join: happens-before), so this thread may consume
+        while (drainBatch() > 0) {
+            // keep draining
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        long failed = failedWrites.sum();
+        if (failed > 0) {
+            throw new IllegalStateException(failed + " audit entries could not be written", lastWriteError);
+        }
+    }
+
+    private void submit(Object entry) {
+        if (running && ring.offer(entry)) {
+            return;
+        }
+        // Full or closed: never drop an audit entry
+        synchronousWrites.increment();
+        if (entry instanceof String requestId) {
+            requestIdStore.logRequestId(requestId);
+        } else {
+            historyStore.logTransaction((TransactionRecord) entry);
+        }
+    }
+
+    private void run() {
+        while (running) {
+            if (drainBatch() == 0) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    private int drainBatch() {
+        int drained = ring.drain(this::collect, maxBatch);
+        if (drained == 0) {
+            return 0;
+        }
+        try {
+            // Same order as the synchronous path: request id, then the record
+            write(requestIdBatch, requestIdStore::logRequestIds, requestIdStore::logRequestId);
+            write(recordBatch, historyStore::logTransactions, historyStore::logTransaction);
+        } finally {
+            requestIdBatch.clear();
+            recordBatch.clear();
+            written += drained;
+        }
+        return drained;
+    }
+
+    private <T> void write(List<T> batch, Consumer<List<T>> batchWrite, Consumer<T> entryWrite) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long backoff = RETRY_BACKOFF_NANOS;
+        for (int attempt = 1; attempt <= BATCH_ATTEMPTS; attempt++) {
+            try {
+                batchWrite.accept(batch);
+                return;
+            } catch (RuntimeException e) {
+                lastWriteError = e;
+            }
+            if (attempt < BATCH_ATTEMPTS) {
+                LockSupport.parkNanos(backoff);
+                backoff *= 2;
+            }
+        }
+        // Still failing: find the entries the store will not take
+        // FOLLOW UP: dead-letter file for entries that fail on their own
+        for (T entry : batch) {
+            try {
+                entryWrite.accept(entry);
+            } catch (RuntimeException e) {
+                lastWriteError = e;
+                failedWrites.increment();
+            }
+        }
+    }
+
+    private void collect(Object entry) {
+        if (entry instanceof String requestId) {
+            requestIdBatch.add(requestId);
+        } else {
+            recordBatch.add((TransactionRecord) entry);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package banking;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * Bounded multi-producer, single-consumer ring buffer (Vyukov's design).
+ *
+ * Each slot carries a sequence number that says whose turn it is:
+ *
+ *   sequence == position        free, a producer may claim it
+ *   sequence == position + 1    filled, the consumer may take it
+ *   sequence <  position        still full from one lap ago: buffer full
+ *
+ * Producers claim a position with one CAS on the tail and never touch the
+ * head, so they do not contend with the consumer; the consumer uses no
+ * atomics at all beyond the slot's release store. No locks, no allocation
+ * per element.
+ */
+final class AuditRingBuffer<E> {
+
+    private final Object[] elements;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private long head; // consumer thread only
+
+    AuditRingBuffer(int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two");
+        }
+        this.elements = new Object[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        this.mask = capacity - 1;
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * @return false if the buffer is full; the element was not added.
+     */
+    boolean offer(E element) {
+        long position;
+        int index;
+        while (true) {
+            position = tail.get();
+            index = (int) position & mask;
+            long lag = sequences.getAcquire(index) - position;
+            if (lag == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (lag < 0) {
+                return false;
+            }
+            // lag > 0: another producer claimed this position first; retry
+        }
+        elements[index] = element;
+        sequences.setRelease(index, position + 1); // publishes the element
+        return true;
+    }
+
+    /**
+     * Consumer only. Hands up to {@code limit} elements to {@code sink}.
+     *
+     * @return How many were drained.
+     */
+    @SuppressWarnings("unchecked")
+    int drain(Consumer<E> sink, int limit) {
+        int drained = 0;
+        while (drained < limit) {
+            int index = (int) head & mask;
+            if (sequences.getAcquire(index) != head + 1) {
+                break; // empty, or the next producer has not finished writing
+            }
+            E element = (E) elements[index];
+            elements[index] = null;
+            sequences.setRelease(index, head + elements.length); // free for the next lap
+            head++;
+            sink.accept(element);
+            drained++;
+        }
+        return drained;
+    }
+
+    /**
+     * @return Positions claimed so far (published or about to be).
+     */
+    long claimed() {
+        return tail.get();
+    }
+
+    int capacity() {
+        return elements.length;
+    }
+}
@@ -1,17 +1,35 @@
 package banking;
 
+import java.util.List;
 import java.util.UUID;
 
 public class AuditingBank implements BankInterface {
     private final BankInterface wrapped;
     private final TransactionHistoryLogger historyLogger;
     private final RequestIdLogger requestIdLogger;
+    // When set, audit entries go through its ring buffer instead of the loggers
+    private final AsyncAuditWriter auditWriter;
 
     public AuditingBank(BankInterface wrapped, TransactionHistoryLogger historyLogger,
             RequestIdLogger requestIdLogger) {
         this.wrapped = wrapped;
         this.historyLogger = historyLogger;
         this.requestIdLogger = requestIdLogger;
+        this.auditWriter = null;
+    }
+
+    /**
+     * Audits asynchronously: callers only enqueue, a background writer
+     * batches into the stores. The caller owns (and closes) the writer.
+     */
+    public AuditingBank(BankInterface wrapped, AsyncAuditWriter auditWriter) {
+        if (auditWriter == null) {
+            throw new IllegalArgumentException("Audit writer is required");
+        }
+        this.wrapped = wrapped;
+        this.historyLogger = null;
+        this.requestIdLogger = null;
+        this.auditWriter = auditWriter;
     }
 
     // Just delegate — no logging needed
@@ -46,10 +64,12 @@ public class AuditingBank implements BankInterface {
         String reqId = UUID.randomUUID().toString();
         RequestContext.setRequestId(reqId);
         try {
-            requestIdLogger.log(reqId);
+            logRequestId(reqId);
+            long start = System.nanoTime();
             wrapped.credit(accountNumber, amount);
+            long latency = System.nanoTime() - start;
             boolean success = amount > 0 && wrapped.getAccount(accountNumber) != null;
-            historyLogger.log(new TransactionRecord(accountNumber, amount, TransactionType.CREDIT, success));
+            logRecord(new TransactionRecord(accountNumber, amount, TransactionType.CREDIT, success, latency));
         } finally {
             RequestContext.clear();
         }
@@ -60,12 +80,74 @@ public class AuditingBank implements BankInterface {
         String reqId = UUID.randomUUID().toString();
         RequestContext.setRequestId(reqId);
         try {
-            requestIdLogger.log(reqId);
+            logRequestId(reqId);
+            long start = System.nanoTime();
             boolean success = wrapped.debit(accountNumber, amount);
-            historyLogger.log(new TransactionRecord(accountNumber, amount, TransactionType.DEBIT, success));
+            logRecord(new TransactionRecord(accountNumber, amount, TransactionType.DEBIT, success,
+                    System.nanoTime() - start));
             return success;
         } finally {
             RequestContext.clear();
         }
     }
+
+    @Override
+    public boolean transfer(Long sourceAccountNumber, Long destinationAccountNumber, double amount) {
+        String reqId = UUID.randomUUID().toString();
+        RequestContext.setRequestId(reqId);
+        try {
+            logRequestId(reqId);
+            long start = System.nanoTime();
+            boolean success = false;
+            try {
+                success = wrapped.transfer(sourceAccountNumber, destinationAccountNumber, amount);
+                return success;
+            } finally {
+                // Also on a rolled-back transfer that threw: the attempt is audited
+                logRecord(new TransactionRecord(sourceAccountNumber, destinationAccountNumber, amount, success,
+                        System.nanoTime() - start));
+            }
+        } finally {
+            RequestContext.clear();
+        }
+    }
+
+    @Override
+    public List<TransferStatus> transferBatch(List<TransferRequest> transfers) {
+        // One request id for the whole batch
+        String reqId = UUID.randomUUID().toString();
+        RequestContext.setRequestId(reqId);
+        try {
+            logRequestId(reqId);
+            long start = System.nanoTime();
+            List<TransferStatus> results = wrapped.transferBatch(transfers);
+            // Transfers in a batch are not timed one by one: each gets its share
+            long latencyPerTransfer = transfers.isEmpty() ? 0 : (System.nanoTime() - start) / transfers.size();
+            for (int i = 0; i < transfers.size(); i++) {
+                TransferRequest transfer = transfers.get(i);
+                logRecord(new TransactionRecord(transfer.getSourceAccountNumber(),
+                        transfer.getDestinationAccountNumber(), transfer.getAmount(), results.get(i).isSuccess(),
+                        latencyPerTransfer));
+            }
+            return results;
+        } finally {
+            RequestContext.clear();
+        }
+    }
+
+    private void logRequestId(String reqId) {
+        if (auditWriter != null) {
+            auditWriter.logRequestId(reqId);
+        } else {
+            requestIdLogger.log(reqId);
+        }
+    }
+
+    private void logRecord(TransactionRecord record) {
+        if (auditWriter != null) {
+            auditWriter.logTransaction(record);
+        } else {
+            historyLogger.log(record);
+        }
+    }
 }
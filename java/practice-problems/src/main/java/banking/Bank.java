@@ -1,5 +1,8 @@
 package banking;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
@@ -10,8 +13,9 @@ import java.util.concurrent.atomic.AtomicLong;
  * <br>
  *
  * Scalability/Extensibility notes:
- * - In-memory storage is fast but not durable; replace with a repository if
- * persistence is required.
+ * - In-memory storage is fast but not durable. Construct with an
+ * {@link EventLedger} to make every change an appended event: accounts are
+ * then rebuilt from the ledger's snapshot + log on restart.
  * - AtomicLong is safe within a single JVM; use a distributed ID generator for
  * multi-node deployments.
  */
@@ -20,10 +24,29 @@ public class Bank implements BankInterface {
     private static final AtomicLong accountNumberGenerator = new AtomicLong(1000000L);
     // FOLLOW UP: Currency service
     private CurrencyService currencyService;
+    // Null when balances live only in memory
+    private final EventLedger ledger;
 
     public Bank(ExchangeRateService exchangeRateService) {
         this.accounts = new ConcurrentHashMap<>();
         this.currencyService = new CurrencyService(exchangeRateService);
+        this.ledger = null;
+    }
+
+    /**
+     * Durable bank: accounts are the ledger's materialised view, and every
+     * credit, debit, transfer and account opening is appended to it before
+     * the call returns. The caller owns (and closes) the ledger.
+     */
+    public Bank(ExchangeRateService exchangeRateService, EventLedger ledger) {
+        if (ledger == null) {
+            throw new IllegalArgumentException("Ledger is required");
+        }
+        this.accounts = ledger.accounts();
+        this.currencyService = new CurrencyService(exchangeRateService);
+        this.ledger = ledger;
+        // Never hand out a number the ledger already knows
+        accountNumberGenerator.accumulateAndGet(ledger.maxAccountNumber() + 1, Math::max);
     }
 
     public Account getAccount(Long accountNumber) {
@@ -33,14 +56,14 @@ public class Bank implements BankInterface {
     public Long openCommercialAccount(Company company, int pin, double startingDeposit, Currency currency) {
         Long accountNumber = accountNumberGenerator.getAndIncrement();
         Account account = new CommercialAccount(company, accountNumber, pin, startingDeposit, currency);
-        accounts.put(accountNumber, account);
+        register(account, pin);
         return accountNumber;
     }
 
     public Long openConsumerAccount(Person person, int pin, double startingDeposit, Currency currency) {
         Long accountNumber = accountNumberGenerator.getAndIncrement();
         Account account = new ConsumerAccount(person, accountNumber, pin, startingDeposit, currency);
-        accounts.put(accountNumber, account);
+        register(account, pin);
         return accountNumber;
     }
 
@@ -67,7 +90,9 @@ public class Bank implements BankInterface {
                     "Account not found while crediting. Please entre a valid account number"); // FOLLOW UP: Error
                                                                                                // handling
         }
-        account.creditAccount(amount);
+        if (amount > 0) {
+            creditMinorUnits(account, account.getCurrency().toMinorUnits(amount));
+        }
     }
 
     public boolean debit(Long accountNumber, double amount) {
@@ -77,7 +102,7 @@ public class Bank implements BankInterface {
                     "Account not found while debiting. Please entre a valid account number"); // FOLLOW UP: Error
                                                                                               // handling
         }
-        return account.debitAccount(amount);
+        return amount > 0 && debitMinorUnits(account, account.getCurrency().toMinorUnits(amount));
     }
 
     public boolean transfer(Long sourceAccountNumber, Long destinationAccountNumber, double amount) {
@@ -97,28 +122,105 @@ public class Bank implements BankInterface {
         Currency sourceCurrency = sourceAccount.getCurrency();
         Currency targetCurrency = destinationAccount.getCurrency();
 
-        double destinationAmountConvertedToCurrency = this.currencyService.convert(amount, sourceCurrency, targetCurrency);
-
-        Account firstLock = sourceAccountNumber < destinationAccountNumber ? sourceAccount : destinationAccount;
-        Account secondLock = sourceAccountNumber < destinationAccountNumber ? destinationAccount : sourceAccount;
-
-        // FOLLOW UP: lock both accounts in a fixed order to avoid deadlocks during
-        // transfer.
-        synchronized (firstLock) {
-            synchronized (secondLock) {
-                if (!sourceAccount.debitAccount(amount)) {
-                    return false;
-                }
-                try {
-                    destinationAccount.creditAccount(destinationAmountConvertedToCurrency);
-                } catch (Exception e) {
-                    // FOLLOW UP: Handle exception during credit operation and rollback.
-                    // Rollback
-                    sourceAccount.creditAccount(amount);
-                    throw new IllegalArgumentException("Transfer failed: . Rolling back" + e.getMessage());
-                }
-                return true;
-            }
+        long debitMinorUnits = sourceCurrency.toMinorUnits(amount);
+        long creditMinorUnits = targetCurrency.toMinorUnits(
+                this.currencyService.convert(amount, sourceCurrency, targetCurrency));
+        if (debitMinorUnits <= 0 || creditMinorUnits <= 0) {
+            return false; // one side rounds to nothing: debiting would lose the money
+        }
+
+        return moveMinorUnits(sourceAccount, destinationAccount, debitMinorUnits, creditMinorUnits);
+    }
+
+    public List<TransferStatus> transferBatch(List<TransferRequest> transfers) {
+        // Resolved once per batch: payroll pays thousands of people from one account
+        Map<Long, Account> resolved = new HashMap<>();
+        CurrencyService.BatchRates rates = currencyService.batchRates();
+
+        List<TransferStatus> results = new ArrayList<>(transfers.size());
+        for (TransferRequest transfer : transfers) {
+            results.add(applyTransfer(transfer, resolved, rates));
+        }
+        return results;
+    }
+
+    private TransferStatus applyTransfer(TransferRequest transfer, Map<Long, Account> resolved,
+            CurrencyService.BatchRates rates) {
+        Long sourceAccountNumber = transfer.getSourceAccountNumber();
+        Long destinationAccountNumber = transfer.getDestinationAccountNumber();
+        if (transfer.getAmount() <= 0 || sourceAccountNumber == null || destinationAccountNumber == null) {
+            return TransferStatus.INVALID_REQUEST;
+        }
+        Account sourceAccount = resolved.computeIfAbsent(sourceAccountNumber, this::getAccount);
+        Account destinationAccount = resolved.computeIfAbsent(destinationAccountNumber, this::getAccount);
+        if (sourceAccount == null || destinationAccount == null) {
+            return TransferStatus.ACCOUNT_NOT_FOUND;
+        }
+        if (sourceAccountNumber.equals(destinationAccountNumber)) {
+            return TransferStatus.COMPLETED;
+        }
+
+        Currency sourceCurrency = sourceAccount.getCurrency();
+        Currency targetCurrency = destinationAccount.getCurrency();
+        long debitMinorUnits = sourceCurrency.toMinorUnits(transfer.getAmount());
+        long creditMinorUnits = targetCurrency.toMinorUnits(
+                rates.convert(transfer.getAmount(), sourceCurrency, targetCurrency));
+        if (debitMinorUnits <= 0 || creditMinorUnits <= 0) {
+            return TransferStatus.INVALID_REQUEST; // one side rounds to nothing
+        }
+
+        // Same lock-free legs as transfer(): nothing to order or deadlock on
+        try {
+            return moveMinorUnits(sourceAccount, destinationAccount, debitMinorUnits, creditMinorUnits)
+                    ? TransferStatus.COMPLETED
+                    : TransferStatus.INSUFFICIENT_FUNDS;
+        } catch (IllegalArgumentException e) {
+            return TransferStatus.FAILED;
+        }
+    }
+
+    private void register(Account account, int pin) {
+        if (ledger != null) {
+            ledger.open(account, pin);
+        } else {
+            accounts.put(account.getAccountNumber(), account);
+        }
+    }
+
+    private void creditMinorUnits(Account account, long minorUnits) {
+        if (ledger != null) {
+            ledger.credit(account, minorUnits);
+        } else {
+            account.creditMinorUnits(minorUnits);
+        }
+    }
+
+    private boolean debitMinorUnits(Account account, long minorUnits) {
+        return ledger != null ? ledger.debit(account, minorUnits) : account.debitMinorUnits(minorUnits);
+    }
+
+    /**
+     * @return false if the source cannot cover the debit.
+     * @throws IllegalArgumentException if the credit failed (debit refunded).
+     */
+    private boolean moveMinorUnits(Account source, Account destination, long debitMinorUnits,
+            long creditMinorUnits) {
+        if (ledger != null) {
+            return ledger.transfer(source, destination, debitMinorUnits, creditMinorUnits);
+        }
+        // No account locks: each leg is a single CAS, and the debit's balance
+        // check is part of it. Between the two legs the money is in flight
+        // (in neither balance) but can never be spent twice.
+        if (!source.debitMinorUnits(debitMinorUnits)) {
+            return false;
+        }
+        try {
+            destination.creditMinorUnits(creditMinorUnits);
+        } catch (RuntimeException e) {
+            // Credit only fails on overflow; give the money back
+            source.creditMinorUnits(debitMinorUnits);
+            throw new IllegalArgumentException("Transfer failed, rolled back: " + e.getMessage(), e);
         }
+        return true;
     }
 }
@@ -1,5 +1,7 @@
 package banking;
 
+import java.util.List;
+
 /**
  * The public methods for the {@link Bank} class.
  */
@@ -58,4 +60,26 @@ public interface BankInterface {
      * @return true if amount could be withdrawn; otherwise, return false.
      */
     boolean debit(Long accountNumber, double amount);
+
+    /**
+     * Moves money between two accounts, converting to the destination's
+     * currency.
+     *
+     * @param sourceAccountNumber      The account debited.
+     * @param destinationAccountNumber The account credited.
+     * @param amount                   Amount in the source account's currency.
+     * @return true if the transfer happened; false for unknown accounts, a
+     *         non-positive amount or insufficient funds.
+     */
+    boolean transfer(Long sourceAccountNumber, Long destinationAccountNumber, double amount);
+
+    /**
+     * Applies many transfers in one call (payroll, settlement), in list order.
+     * Accounts and exchange rates are looked up once per batch, not once per
+     * transfer. A failed transfer does not stop the rest.
+     *
+     * @param transfers The transfers to apply.
+     * @return One status per transfer, in the same order.
+     */
+    List<TransferStatus> transferBatch(List<TransferRequest> transfers);
 }
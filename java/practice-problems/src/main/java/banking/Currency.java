@@ -1,8 +1,55 @@
 package banking;
 
+/**
+ * Supported currencies and their minor-unit scale (ISO 4217 exponent).
+ *
+ * Balances are held as whole minor units (cents, pence, yen) in a long, so
+ * repeated credits/debits never drift the way doubles do (0.1 + 0.2 != 0.3).
+ * Doubles are only used at the API edge and rounded half-up on the way in.
+ */
 public enum Currency {
-    USD,
-    EUR,
-    GBP,
-    JPY;
+    USD(2),
+    EUR(2),
+    GBP(2),
+    JPY(0);
+
+    private final int minorDigits;
+    private final long minorPerMajor;
+
+    Currency(int minorDigits) {
+        this.minorDigits = minorDigits;
+        long scale = 1;
+        for (int i = 0; i < minorDigits; i++) {
+            scale *= 10;
+        }
+        this.minorPerMajor = scale;
+    }
+
+    public int getMinorDigits() {
+        return minorDigits;
+    }
+
+    /**
+     * @return Minor units in one major unit (100 for USD, 1 for JPY).
+     */
+    public long getMinorPerMajor() {
+        return minorPerMajor;
+    }
+
+    /**
+     * @param amount Amount in major units (e.g. 12.34 dollars).
+     * @return The amount in minor units (1234 cents), rounded to the nearest.
+     * @throws IllegalArgumentException if the amount does not fit in a long.
+     */
+    public long toMinorUnits(double amount) {
+        double scaled = amount * minorPerMajor;
+        if (Double.isNaN(scaled) || Math.abs(scaled) >= Long.MAX_VALUE) {
+            throw new IllegalArgumentException("Amount out of range: " + amount);
+        }
+        return Math.round(scaled);
+    }
+
+    public double fromMinorUnits(long minorUnits) {
+        return (double) minorUnits / minorPerMajor;
+    }
 }
@@ -2,6 +2,8 @@ package banking;
 
 public class CurrencyService {
 
+    private static final int CURRENCIES = Currency.values().length;
+
     private ExchangeRateService exchangeRateService;
 
     CurrencyService(ExchangeRateService exchangeRateService) {
@@ -16,6 +18,163 @@ public class CurrencyService {
             return amount;
         }
 
+        // Snapshot: two array reads, no key string, no boxing
+        ExchangeRateSnapshot snapshot = this.exchangeRateService.getSnapshot();
+        if (snapshot != null) {
+            return amount * snapshot.getRate(from, to);
+        }
         return amount * this.exchangeRateService.getExchangeRate(from, to);
     }
-}
\ No newline at end of file
+
+    /**
+     * Bulk conversion into one currency: result[i] = amounts[i] in from[i],
+     * converted to {@code to}. For revaluing many balances at once, e.g.
+     * end-of-day FX revaluation into the reporting currency.
+     *
+     * Each source currency's rate is resolved once into a small primitive
+     * column (one slot per currency); the loop is then a multiply per
+     * element — no per-amount rate lookup, map access or boxing.
+     *
+     *   from[]:    USD  EUR  EUR  JPY  USD ...
+     *                │    │    │    │
+     *   toTarget[] [USD][EUR][GBP][JPY]   (resolved on first use)
+     *                │    │    │    │
+     *   result[i] = amounts[i] * toTarget[from[i].ordinal()]
+     *
+     * amounts and result may be the same array.
+     *
+     * @throws IllegalArgumentException If the arrays differ in length or a
+     *                                  pair has no rate.
+     */
+    public void convert(double[] amounts, Currency[] from, Currency to, double[] result) {
+        requireSameLength(amounts.length, from.length, result.length);
+        double[] toTarget = new double[CURRENCIES]; // 0 = not resolved yet
+        BatchRates rates = batchRates();
+        for (int i = 0; i < amounts.length; i++) {
+            int source = from[i].ordinal();
+            double rate = toTarget[source];
+            if (rate == 0) {
+                rate = rates.rate(from[i], to);
+                toTarget[source] = rate;
+            }
+            result[i] = amounts[i] * rate;
+        }
+    }
+
+    /**
+     * Bulk conversion across arbitrary pairs: result[i] = amounts[i]
+     * converted from[i] → to[i], through a rate matrix filled on first use
+     * of each pair.
+     */
+    public void convert(double[] amounts, Currency[] from, Currency[] to, double[] result) {
+        requireSameLength(amounts.length, from.length, result.length);
+        requireSameLength(amounts.length, to.length, result.length);
+        double[][] matrix = new double[CURRENCIES][CURRENCIES]; // 0 = not resolved yet
+        BatchRates rates = batchRates();
+        for (int i = 0; i < amounts.length; i++) {
+            double[] row = matrix[from[i].ordinal()];
+            int target = to[i].ordinal();
+            double rate = row[target];
+            if (rate == 0) {
+                rate = rates.rate(from[i], to[i]);
+                row[target] = rate;
+            }
+            result[i] = amounts[i] * rate;
+        }
+    }
+
+    /**
+     * Bulk conversion of one pair: the rate is looked up once and the loop
+     * is a plain array multiply, which the JIT can vectorise.
+     */
+    public void convert(double[] amounts, Currency from, Currency to, double[] result) {
+        if (amounts.length != result.length) {
+            throw new IllegalArgumentException("Amount and result arrays must be the same length");
+        }
+        double rate = batchRates().rate(from, to);
+        for (int i = 0; i < amounts.length; i++) {
+            result[i] = amounts[i] * rate;
+        }
+    }
+
+    /**
+     * {@link #convert(double[], Currency[], Currency, double[])} on balances
+     * in minor units: result[i] is in {@code to}'s minor units, rounded to the
+     * nearest. The minor-unit scale change is folded into each column entry,
+     * so it is still one multiply (plus rounding) per element.
+     *
+     * @throws IllegalArgumentException If a converted amount does not fit in a long.
+     */
+    public void convertMinorUnits(long[] amounts, Currency[] from, Currency to, long[] result) {
+        requireSameLength(amounts.length, from.length, result.length);
+        double[] toTarget = new double[CURRENCIES]; // 0 = not resolved yet
+        BatchRates rates = batchRates();
+        for (int i = 0; i < amounts.length; i++) {
+            int source = from[i].ordinal();
+            double factor = toTarget[source];
+            if (factor == 0) {
+                factor = rates.rate(from[i], to) * to.getMinorPerMajor() / from[i].getMinorPerMajor();
+                toTarget[source] = factor;
+            }
+            double scaled = amounts[i] * factor;
+            if (Math.abs(scaled) >= Long.MAX_VALUE) {
+                throw new IllegalArgumentException("Converted amount out of range: " + amounts[i] + " " + from[i]);
+            }
+            result[i] = Math.round(scaled);
+        }
+    }
+
+    private static void requireSameLength(int amounts, int currencies, int results) {
+        if (amounts != currencies || amounts != results) {
+            throw new IllegalArgumentException("Amount, currency and result arrays must be the same length");
+        }
+    }
+
+    /**
+     * @return A converter that looks each currency pair's rate up once and
+     *         reuses it; for the lifetime of one batch, so rate changes are
+     *         picked up by the next batch.
+     */
+    BatchRates batchRates() {
+        return new BatchRates(exchangeRateService.getSnapshot());
+    }
+
+    /**
+     * Per-batch rate memo. Not thread-safe: one batch, one thread.
+     *
+     * With a snapshot there is nothing to memoise: the whole batch converts
+     * at the snapshot taken when it started, even if rates refresh mid-batch.
+     */
+    final class BatchRates {
+        private final ExchangeRateSnapshot snapshot;
+        // 0 = not looked up yet (no real rate is zero)
+        private final double[][] rates;
+
+        BatchRates(ExchangeRateSnapshot snapshot) {
+            this.snapshot = snapshot;
+            this.rates = snapshot != null ? null : new double[CURRENCIES][CURRENCIES];
+        }
+
+        double convert(double amount, Currency from, Currency to) {
+            if (from == to) {
+                return amount;
+            }
+            return amount * rate(from, to);
+        }
+
+        double rate(Currency from, Currency to) {
+            if (from == to) {
+                return 1.0;
+            }
+            if (snapshot != null) {
+                return snapshot.getRate(from, to);
+            }
+            double rate = rates[from.ordinal()][to.ordinal()];
+            if (rate == 0) {
+                rate = exchangeRateService.getExchangeRate(from, to);
+                rates[from.ordinal()][to.ordinal()] = rate;
+            }
+            return rate;
+        }
+    }
+}
@@ -0,0 +1,682 @@
+package banking;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Durable, event-sourced account state for {@link Bank}.
+ *
+ * Every state change is an event appended to a binary log; account balances
+ * are a materialised view rebuilt by replaying it. Snapshots of the view
+ * bound how much log a restart has to replay.
+ *
+ *   directory/
+ *     snapshot-00000000000000120000.snap   view as of event 120000
+ *     ledger-00000000000000100001.log      segment, first event 100001
+ *     ledger-00000000000000160001.log      active segment (memory-mapped)
+ *
+ * Events (only changes that happened are logged, never refused debits):
+ *   OPEN      account number, kind, holder, PIN hash (never the PIN),
+ *             currency, starting balance
+ *   CREDIT    account, minor units
+ *   DEBIT     account, minor units
+ *   TRANSFER  source, destination, debited and credited minor units
+ *
+ * Record layout in a segment:
+ *   [int payloadLength][int crc32c][payload: type, sequence, fields...]
+ *   A zero length marks the end. The payload is written before its
+ *   header, so a crash mid-append leaves length 0 and the record is simply
+ *   absent. A damaged record in the LAST segment is a torn tail: replay
+ *   stops there and the tail is zeroed. Damage in any earlier segment
+ *   means acknowledged events are unreadable, and open() fails instead of
+ *   silently dropping them and everything after.
+ *
+ * Ordering:
+ *   Appends hold one lock, and the in-memory change is made under the same
+ *   lock, so log order IS the order changes were applied. Replay re-runs the
+ *   same balance checks and must reach the same state; if it does not, the
+ *   ledger is refusing to start rather than inventing money.
+ *   The lock is held for a memory copy into the mapped segment (no syscall),
+ *   so it is short — but it is the single serialisation point, as any
+ *   write-ahead log is. The exception is the append that fills a segment:
+ *   it rolls to the next one under the lock (msync of the full segment,
+ *   create and map the new file), once per segment of log.
+ *   // FOLLOW UP: map the next segment ahead of time, off the lock.
+ *
+ * Durability:
+ *   Mapped pages survive a process crash as soon as they are written. Surviving
+ *   a machine crash needs {@link #sync()} (msync); call it where a caller must
+ *   not be acknowledged before the event is on disk.
+ *   // FOLLOW UP: group commit — one msync for all appends in a short window.
+ *
+ * Snapshots run on a background thread every {@code snapshotEvery} events:
+ * the view is copied under the append lock, written to a temp file, fsynced
+ * and atomically renamed. Segments whose events are all covered are deleted.
+ * A failed background snapshot is counted (getFailedSnapshots,
+ * getLastSnapshotError) and retried at the next interval; the log alone is
+ * still complete. After close() no snapshot is started; events appended
+ * then are still logged and are replayed on the next open.
+ */
+public class EventLedger implements AutoCloseable {
+
+    public static final int DEFAULT_SEGMENT_BYTES = 64 * 1024 * 1024;
+    public static final long DEFAULT_SNAPSHOT_EVERY = 100_000;
+    static final int MIN_SEGMENT_BYTES = 4 * 1024;
+
+    private static final byte OPEN = 1;
+    private static final byte CREDIT = 2;
+    private static final byte DEBIT = 3;
+    private static final byte TRANSFER = 4;
+
+    private static final byte CONSUMER = 0;
+    private static final byte COMMERCIAL = 1;
+
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final int SNAPSHOT_MAGIC = 0x4C534E31; // "LSN1"
+    private static final String SEGMENT_PREFIX = "ledger-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".snap";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final long snapshotEvery;
+
+    // Materialised view; written only under appendLock
+    private final Map<Long, Account> accounts = new ConcurrentHashMap<>();
+    // Encoded OPEN body per account, re-written into every snapshot
+    private final Map<Long, byte[]> openBodies = new ConcurrentHashMap<>();
+
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final ExecutorService snapshotter = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().name("ledger-snapshot").daemon(true).factory());
+    private final AtomicBoolean snapshotQueued = new AtomicBoolean();
+    private volatile boolean closed;
+
+    // Guarded by appendLock
+    private final ByteBuffer scratch = ByteBuffer.allocate(64);
+    private final CRC32C crc = new CRC32C();
+    private MappedByteBuffer segment;
+    private volatile long lastSequence; // volatile: read unlocked by the snapshot trigger
+
+    private volatile long lastSnapshotSequence;
+    private final AtomicLong failedSnapshots = new AtomicLong();
+    private volatile IOException lastSnapshotError;
+
+    private EventLedger(Path directory, int segmentBytes, long snapshotEvery) {
+        if (directory == null) {
+            throw new IllegalArgumentException("Ledger directory is required");
+        }
+        if (segmentBytes < MIN_SEGMENT_BYTES) {
+            throw new IllegalArgumentException("Segments must be at least " + MIN_SEGMENT_BYTES + " bytes");
+        }
+        if (snapshotEvery <= 0) {
+            throw new IllegalArgumentException("Snapshot interval must be positive");
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.snapshotEvery = snapshotEvery;
+    }
+
+    /**
+     * Opens (creating if needed) the ledger in {@code directory}, loading the
+     * latest snapshot and replaying the log after it.
+     */
+    public static EventLedger open(Path directory) throws IOException {
+        return open(directory, DEFAULT_SEGMENT_BYTES, DEFAULT_SNAPSHOT_EVERY);
+    }
+
+    public static EventLedger open(Path directory, int segmentBytes, long snapshotEvery) throws IOException {
+        EventLedger ledger = new EventLedger(directory, segmentBytes, snapshotEvery);
+        ledger.recover();
+        return ledger;
+    }
+
+    /**
+     * @return The materialised view: every account, live balances.
+     */
+    Map<Long, Account> accounts() {
+        return accounts;
+    }
+
+    long maxAccountNumber() {
+        long max = 0;
+        for (Long accountNumber : accounts.keySet()) {
+            max = Math.max(max, accountNumber);
+        }
+        return max;
+    }
+
+    long lastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * @return Background snapshots that failed since open.
+     */
+    public long getFailedSnapshots() {
+        return failedSnapshots.get();
+    }
+
+    /**
+     * @return Why the latest background snapshot failed, or null if it
+     *         succeeded (or none has run).
+     */
+    public IOException getLastSnapshotError() {
+        return lastSnapshotError;
+    }
+
+    void open(Account account, int pin) {
+        byte[] body = encodeOpenBody(account, pin);
+        long startingMinorUnits = account.getBalanceMinorUnits();
+        appendLock.lock();
+        try {
+            ByteBuffer payload = ByteBuffer.allocate(1 + 8 + 8 + body.length);
+            payload.put(OPEN).putLong(lastSequence + 1).putLong(startingMinorUnits).put(body);
+            append(payload);
+            accounts.put(account.getAccountNumber(), account);
+            openBodies.put(account.getAccountNumber(), body);
+        } finally {
+            appendLock.unlock();
+        }
+        maybeSnapshot();
+    }
+
+    void credit(Account account, long minorUnits) {
+        if (minorUnits <= 0) {
+            return;
+        }
+        appendLock.lock();
+        try {
+            account.creditMinorUnits(minorUnits);
+            try {
+                append(event(CREDIT).putLong(account.getAccountNumber()).putLong(minorUnits));
+            } catch (UncheckedIOException e) {
+                account.debitMinorUnits(minorUnits);
+                throw e;
+            }
+        } finally {
+            appendLock.unlock();
+        }
+        maybeSnapshot();
+    }
+
+    boolean debit(Account account, long minorUnits) {
+        appendLock.lock();
+        try {
+            if (!account.debitMinorUnits(minorUnits)) {
+                return false;
+            }
+            try {
+                append(event(DEBIT).putLong(account.getAccountNumber()).putLong(minorUnits));
+            } catch (UncheckedIOException e) {
+                account.creditMinorUnits(minorUnits);
+                throw e;
+            }
+        } finally {
+            appendLock.unlock();
+        }
+        maybeSnapshot();
+        return true;
+    }
+
+    /**
+     * Same contract as the in-memory legs in Bank: false if either side is
+     * not a positive amount or the source cannot cover the debit,
+     * IllegalArgumentException (after refunding) if the credit fails.
+     */
+    boolean transfer(Account source, Account destination, long debitMinorUnits, long creditMinorUnits) {
+        if (debitMinorUnits <= 0 || creditMinorUnits <= 0) {
+            return false; // checked before the debit: a zero credit would drop the money
+        }
+        appendLock.lock();
+        try {
+            if (!source.debitMinorUnits(debitMinorUnits)) {
+                return false;
+            }
+            try {
+                destination.creditMinorUnits(creditMinorUnits);
+            } catch (RuntimeException e) {
+                source.creditMinorUnits(debitMinorUnits);
+                throw new IllegalArgumentException("Transfer failed, rolled back: " + e.getMessage(), e);
+            }
+            try {
+                append(event(TRANSFER).putLong(source.getAccountNumber()).putLong(destination.getAccountNumber())
+                        .putLong(debitMinorUnits).putLong(creditMinorUnits));
+            } catch (UncheckedIOException e) {
+                destination.debitMinorUnits(creditMinorUnits);
+                source.creditMinorUnits(debitMinorUnits);
+                throw e;
+            }
+        } finally {
+            appendLock.unlock();
+        }
+        maybeSnapshot();
+        return true;
+    }
+
+    /**
+     * Flushes appended events to disk (msync of the active segment).
+     */
+    public void sync() {
+        appendLock.lock();
+        try {
+            if (segment != null) {
+                segment.force();
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Writes a snapshot of the current view and deletes the segments it
+     * makes redundant. Normally triggered in the background.
+     */
+    public synchronized void snapshot() throws IOException {
+        long sequence;
+        long[] balances;
+        byte[][] bodies;
+        appendLock.lock();
+        try {
+            sequence = lastSequence;
+            if (sequence == lastSnapshotSequence) {
+                return;
+            }
+            // Copy only: the file is written after the lock is released
+            balances = new long[openBodies.size()];
+            bodies = new byte[openBodies.size()][];
+            int i = 0;
+            for (Map.Entry<Long, byte[]> entry : openBodies.entrySet()) {
+                balances[i] = accounts.get(entry.getKey()).getBalanceMinorUnits();
+                bodies[i++] = entry.getValue();
+            }
+        } finally {
+            appendLock.unlock();
+        }
+
+        Path temp = directory.resolve(snapshotName(sequence) + TEMP_SUFFIX);
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            CRC32C checksum = new CRC32C();
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel)), checksum));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(sequence);
+            out.writeInt(bodies.length);
+            for (int i = 0; i < bodies.length; i++) {
+                out.writeLong(balances[i]);
+                out.writeInt(bodies[i].length);
+                out.write(bodies[i]);
+            }
+            out.flush();
+            // Trailer is outside the checksum it records
+            DataOutputStream trailer = new DataOutputStream(Channels.newOutputStream(channel));
+            trailer.writeInt((int) checksum.getValue());
+            trailer.flush();
+            channel.force(true);
+        }
+        Files.move(temp, directory.resolve(snapshotName(sequence)), StandardCopyOption.ATOMIC_MOVE);
+        lastSnapshotSequence = sequence;
+        deleteCoveredFiles(sequence);
+    }
+
+    /**
+     * Waits for a running snapshot, then flushes the active segment.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        snapshotter.shutdown();
+        try {
+            snapshotter.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sync();
+    }
+
+    private ByteBuffer event(byte type) {
+        scratch.clear();
+        return scratch.put(type).putLong(lastSequence + 1);
+    }
+
+    /**
+     * Appends a finished payload as the next record. Caller holds appendLock.
+     */
+    private void append(ByteBuffer payload) {
+        payload.flip();
+        int length = payload.remaining();
+        crc.reset();
+        crc.update(payload.array(), 0, length);
+        int checksum = (int) crc.getValue();
+
+        try {
+            if (segment == null || segment.remaining() < RECORD_HEADER_BYTES + length) {
+                rollSegment(lastSequence + 1);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not start a ledger segment", e);
+        }
+        int position = segment.position();
+        segment.put(position + RECORD_HEADER_BYTES, payload.array(), 0, length);
+        segment.putInt(position + 4, checksum);
+        segment.putInt(position, length); // last: makes the record visible
+        segment.position(position + RECORD_HEADER_BYTES + length);
+        lastSequence++;
+    }
+
+    private void maybeSnapshot() {
+        if (closed || lastSequence - lastSnapshotSequence < snapshotEvery
+                || !snapshotQueued.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            snapshotter.execute(() -> {
+                snapshotQueued.set(false);
+                try {
+                    snapshot();
+                    lastSnapshotError = null;
+                } catch (IOException e) {
+                    // Keep appending; the log alone is still complete. Retried next interval.
+                    failedSnapshots.incrementAndGet();
+                    lastSnapshotError = e;
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Closed after the check above: the event is already applied and logged
+            snapshotQueued.set(false);
+        }
+    }
+
+    private void rollSegment(long firstSequence) throws IOException {
+        if (segment != null) {
+            segment.force();
+        }
+        Path path = directory.resolve(SEGMENT_PREFIX + String.format("%020d", firstSequence) + SEGMENT_SUFFIX);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping stays valid after the channel closes
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        }
+    }
+
+    // ---- recovery ----
+
+    private void recover() throws IOException {
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path temp : files.filter(p -> p.getFileName().toString().endsWith(TEMP_SUFFIX)).toList()) {
+                Files.delete(temp); // snapshot interrupted before its rename
+            }
+        }
+
+        List<Path> snapshots = listFiles(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        if (!snapshots.isEmpty()) {
+            loadSnapshot(snapshots.get(snapshots.size() - 1));
+        }
+
+        List<Path> segments = listFiles(SEGMENT_PREFIX, SEGMENT_SUFFIX);
+        for (int i = 0; i < segments.size(); i++) {
+            MappedByteBuffer mapped;
+            try (FileChannel channel = FileChannel.open(segments.get(i), StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            }
+            boolean clean = replay(mapped);
+            if (!clean) {
+                if (i < segments.size() - 1) {
+                    // Later segments hold acknowledged events: refuse to start without them
+                    throw new IOException("Ledger segment is damaged before the tail: " + segments.get(i)
+                            + " (stopped after event " + lastSequence + ")");
+                }
+                // Torn tail of the active segment: zeroed so new appends do not sit in front of garbage
+                for (int j = mapped.position(); j < mapped.limit(); j++) {
+                    mapped.put(j, (byte) 0);
+                }
+            }
+            segment = mapped;
+        }
+    }
+
+    /**
+     * Applies every intact record; leaves the buffer positioned at the first
+     * free byte, or at the first damaged record if it returns false.
+     */
+    private boolean replay(MappedByteBuffer mapped) throws IOException {
+        int position = 0;
+        while (mapped.limit() - position >= RECORD_HEADER_BYTES) {
+            int length = mapped.getInt(position);
+            if (length == 0) {
+                break;
+            }
+            boolean damaged = length < 0 || length > mapped.limit() - position - RECORD_HEADER_BYTES;
+            if (!damaged) {
+                crc.reset();
+                crc.update(mapped.slice(position + RECORD_HEADER_BYTES, length));
+                damaged = (int) crc.getValue() != mapped.getInt(position + 4);
+            }
+            if (damaged) {
+                mapped.position(position);
+                return false;
+            }
+            applyRecord(mapped.slice(position + RECORD_HEADER_BYTES, length));
+            position += RECORD_HEADER_BYTES + length;
+        }
+        mapped.position(position);
+        return true;
+    }
+
+    private void applyRecord(ByteBuffer payload) throws IOException {
+        byte type = payload.get();
+        long sequence = payload.getLong();
+        if (sequence <= lastSequence) {
+            return; // already in the snapshot
+        }
+        if (sequence != lastSequence + 1) {
+            throw new IOException("Ledger gap: expected event " + (lastSequence + 1) + ", found " + sequence);
+        }
+        boolean applied;
+        try {
+            switch (type) {
+                case OPEN -> {
+                    long startingMinorUnits = payload.getLong();
+                    byte[] body = new byte[payload.remaining()];
+                    payload.get(body);
+                    Account account = decodeOpenBody(body);
+                    account.creditMinorUnits(startingMinorUnits);
+                    accounts.put(account.getAccountNumber(), account);
+                    openBodies.put(account.getAccountNumber(), body);
+                    applied = true;
+                }
+                case CREDIT -> {
+                    account(payload.getLong()).creditMinorUnits(payload.getLong());
+                    applied = true;
+                }
+                case DEBIT -> applied = account(payload.getLong()).debitMinorUnits(payload.getLong());
+                case TRANSFER -> {
+                    Account source = account(payload.getLong());
+                    Account destination = account(payload.getLong());
+                    applied = source.debitMinorUnits(payload.getLong());
+                    destination.creditMinorUnits(payload.getLong());
+                }
+                default -> throw new IOException("Unknown ledger event type " + type);
+            }
+        } catch (BufferUnderflowException | ArithmeticException e) {
+            throw new IOException("Malformed ledger event " + sequence, e);
+        }
+        if (!applied) {
+            throw new IOException("Ledger replay diverged at event " + sequence + ": debit exceeds balance");
+        }
+        lastSequence = sequence;
+    }
+
+    private Account account(long accountNumber) throws IOException {
+        Account account = accounts.get(accountNumber);
+        if (account == null) {
+            throw new IOException("Ledger event for unknown account " + accountNumber);
+        }
+        return account;
+    }
+
+    private void loadSnapshot(Path path) throws IOException {
+        CRC32C checksum = new CRC32C();
+        try (InputStream raw = new BufferedInputStream(Files.newInputStream(path))) {
+            DataInputStream in = new DataInputStream(new CheckedInputStream(raw, checksum));
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Not a ledger snapshot: " + path);
+            }
+            long sequence = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                long balance = in.readLong();
+                byte[] body = new byte[in.readInt()];
+                in.readFully(body);
+                Account account = decodeOpenBody(body);
+                account.creditMinorUnits(balance);
+                accounts.put(account.getAccountNumber(), account);
+                openBodies.put(account.getAccountNumber(), body);
+            }
+            int expected = (int) checksum.getValue();
+            if (new DataInputStream(raw).readInt() != expected) {
+                // The log it replaced is gone; refuse rather than start with wrong balances
+                throw new IOException("Ledger snapshot is damaged: " + path);
+            }
+            lastSequence = sequence;
+            lastSnapshotSequence = sequence;
+        }
+    }
+
+    private void deleteCoveredFiles(long snapshotSequence) throws IOException {
+        for (Path snapshot : listFiles(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)) {
+            if (firstSequenceOf(snapshot, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX) < snapshotSequence) {
+                Files.deleteIfExists(snapshot);
+            }
+        }
+        // A segment is covered once the NEXT segment starts at or before the snapshot
+        List<Path> segments = listFiles(SEGMENT_PREFIX, SEGMENT_SUFFIX);
+        for (int i = 0; i + 1 < segments.size(); i++) {
+            if (firstSequenceOf(segments.get(i + 1), SEGMENT_PREFIX, SEGMENT_SUFFIX) <= snapshotSequence + 1) {
+                Files.deleteIfExists(segments.get(i));
+            }
+        }
+    }
+
+    private List<Path> listFiles(String prefix, String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(p -> {
+                String name = p.getFileName().toString();
+                return name.startsWith(prefix) && name.endsWith(suffix);
+            }).sorted().toList(); // zero-padded, so name order is sequence order
+        }
+    }
+
+    private static long firstSequenceOf(Path path, String prefix, String suffix) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+    }
+
+    private static String snapshotName(long sequence) {
+        return SNAPSHOT_PREFIX + String.format("%020d", sequence) + SNAPSHOT_SUFFIX;
+    }
+
+    // ---- OPEN body: everything needed to rebuild the account object ----
+
+    private static byte[] encodeOpenBody(Account account, int pin) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeLong(account.getAccountNumber());
+            out.writeByte(account.getCurrency().ordinal());
+            out.write(PinHash.of(pin).encode());
+            AccountHolder holder = account.getAccountHolder();
+            out.writeInt(holder.getIdNumber());
+            if (account instanceof CommercialAccount) {
+                out.writeByte(COMMERCIAL);
+                writeString(out, ((Company) holder).getCompanyName());
+            } else {
+                out.writeByte(CONSUMER);
+                writeString(out, ((Person) holder).getFirstName());
+                writeString(out, ((Person) holder).getLastName());
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // in-memory stream
+        }
+    }
+
+    private static Account decodeOpenBody(byte[] body) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(body);
+        try {
+            long accountNumber = in.getLong();
+            Currency currency = Currency.values()[in.get()];
+            byte[] pinHash = new byte[PinHash.ENCODED_BYTES];
+            in.get(pinHash);
+            int holderId = in.getInt();
+            byte kind = in.get();
+            Account account;
+            if (kind == COMMERCIAL) {
+                account = new CommercialAccount(new Company(readString(in), holderId), accountNumber, 0, 0.0, currency);
+            } else {
+                Person person = new Person(readString(in), readString(in), holderId);
+                account = new ConsumerAccount(person, accountNumber, 0, 0.0, currency);
+            }
+            account.restorePinHash(PinHash.decode(pinHash));
+            return account;
+        } catch (BufferUnderflowException | ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Malformed account record", e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
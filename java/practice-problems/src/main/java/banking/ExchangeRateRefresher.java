@@ -0,0 +1,109 @@
+package banking;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Periodically reloads rates and swaps them into an
+ * InMemoryExchangeRateService.
+ *
+ *   "fx-rates-refresher" thread, every period:
+ *     source.call() ──► new ExchangeRateSnapshot ──► service.replace(...)
+ *
+ * The source is pluggable (a rates file, a feed client, a test stub). All
+ * the loading and parsing happens on the refresher thread; conversions only
+ * ever see the finished snapshot. A failed load keeps the previous rates and
+ * is counted — stale rates beat no rates, and the next period retries.
+ *
+ * Built through {@link #start}, which schedules the refresher only once it
+ * is fully constructed.
+ */
+public final class ExchangeRateRefresher implements AutoCloseable {
+
+    private final InMemoryExchangeRateService target;
+    private final Callable<ExchangeRateSnapshot> source;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong failedRefreshes = new AtomicLong();
+
+    private ExchangeRateRefresher(InMemoryExchangeRateService target, Callable<ExchangeRateSnapshot> source,
+            ScheduledExecutorService scheduler) {
+        this.target = target;
+        this.source = source;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Loads once on the caller's thread (so a broken source fails fast),
+     * then every period in the background.
+     */
+    public static ExchangeRateRefresher start(InMemoryExchangeRateService target,
+            Callable<ExchangeRateSnapshot> source, Duration period) {
+        if (target == null || source == null) {
+            throw new IllegalArgumentException("Target service and rate source are required");
+        }
+        if (period == null || period.toMillis() <= 0) {
+            throw new IllegalArgumentException("Refresh period must be at least one millisecond");
+        }
+        ExchangeRateRefresher refresher = new ExchangeRateRefresher(target, source,
+                Executors.newSingleThreadScheduledExecutor(
+                        Thread.ofPlatform().name("fx-rates-refresher").daemon(true).factory()));
+        if (!refresher.refresh()) {
+            refresher.close();
+            throw new IllegalArgumentException("Initial exchange rate load failed");
+        }
+        refresher.scheduler.scheduleWithFixedDelay(refresher::refresh, period.toMillis(), period.toMillis(),
+                TimeUnit.MILLISECONDS);
+        return refresher;
+    }
+
+    /**
+     * Reloads from a local rates file in {@link ExchangeRateSnapshot#load}
+     * format.
+     */
+    public static ExchangeRateRefresher fromFile(InMemoryExchangeRateService target, Path ratesFile,
+            Duration period) {
+        return start(target, () -> ExchangeRateSnapshot.load(ratesFile), period);
+    }
+
+    /**
+     * Loads and publishes now.
+     *
+     * @return False if the source failed; the previous rates stay in place.
+     */
+    public boolean refresh() {
+        ExchangeRateSnapshot snapshot;
+        try {
+            snapshot = source.call();
+        } catch (Exception e) {
+            // FOLLOW UP: alert when rates have been stale for longer than a few periods.
+            failedRefreshes.incrementAndGet();
+            return false;
+        }
+        if (snapshot == null) {
+            failedRefreshes.incrementAndGet();
+            return false;
+        }
+        target.replace(snapshot);
+        refreshes.incrementAndGet();
+        return true;
+    }
+
+    public long getRefreshes() {
+        return refreshes.get();
+    }
+
+    public long getFailedRefreshes() {
+        return failedRefreshes.get();
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
@@ -2,4 +2,13 @@ package banking;
 
 public interface ExchangeRateService {
     public double getExchangeRate(Currency source, Currency target);
+
+    /**
+     * @return The current rates as one immutable table, or null if this
+     *         service can only answer pair by pair. CurrencyService reads
+     *         rates from the snapshot when there is one.
+     */
+    default ExchangeRateSnapshot getSnapshot() {
+        return null;
+    }
 }
@@ -0,0 +1,156 @@
+package banking;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable set of exchange rates: a Currency × Currency matrix of
+ * primitive doubles indexed by ordinal.
+ *
+ *           to:  USD    EUR    GBP    JPY
+ *   from USD   [ 1.0    0.926  0.787  NaN ]
+ *        EUR   [ 1.08   1.0    0.85   NaN ]   NaN = no rate
+ *        ...
+ *
+ * A lookup is two array reads — no "EUR_USD" string built, no hash, no
+ * boxed Double. Refreshing builds a whole new snapshot and publishes it with
+ * one volatile write (see InMemoryExchangeRateService.replace), so readers
+ * never lock and never see a half-updated table: every conversion uses
+ * either the old rates or the new ones.
+ */
+public final class ExchangeRateSnapshot {
+
+    private static final int CURRENCIES = Currency.values().length;
+
+    private final double[][] rates;
+    private final Instant loadedAt;
+
+    private ExchangeRateSnapshot(double[][] rates, Instant loadedAt) {
+        this.rates = rates;
+        this.loadedAt = loadedAt;
+    }
+
+    /**
+     * @throws IllegalArgumentException If there is no rate for the pair.
+     */
+    public double getRate(Currency from, Currency to) {
+        if (from == to) {
+            return 1.0;
+        }
+        double rate = rates[from.ordinal()][to.ordinal()];
+        if (Double.isNaN(rate)) {
+            throw new IllegalArgumentException(String.format("No rate for %s to %s", from, to));
+        }
+        return rate;
+    }
+
+    public boolean hasRate(Currency from, Currency to) {
+        return from == to || !Double.isNaN(rates[from.ordinal()][to.ordinal()]);
+    }
+
+    /**
+     * @return When this snapshot was built.
+     */
+    public Instant getLoadedAt() {
+        return loadedAt;
+    }
+
+    /**
+     * Reads a rates file: one "FROM TO RATE" per line, e.g. "EUR USD 1.08".
+     * The inverse pair is implied unless the file lists it too. Blank lines
+     * and lines starting with # are ignored.
+     *
+     * @throws IllegalArgumentException On a malformed line or unknown currency.
+     */
+    public static ExchangeRateSnapshot load(Path file) throws IOException {
+        List<String> lines = Files.readAllLines(file);
+        Builder builder = new Builder();
+        // Explicit lines win over implied inverses, whatever the line order
+        double[][] explicit = new double[CURRENCIES][CURRENCIES];
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).strip();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\\s+");
+            if (fields.length != 3) {
+                throw new IllegalArgumentException(file + ":" + (i + 1) + ": expected FROM TO RATE");
+            }
+            Currency from;
+            Currency to;
+            double rate;
+            try {
+                from = Currency.valueOf(fields[0]);
+                to = Currency.valueOf(fields[1]);
+                rate = Double.parseDouble(fields[2]);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(file + ":" + (i + 1) + ": " + e.getMessage(), e);
+            }
+            explicit[from.ordinal()][to.ordinal()] = rate;
+            builder.rate(from, to, rate);
+        }
+        for (Currency from : Currency.values()) {
+            for (Currency to : Currency.values()) {
+                if (explicit[from.ordinal()][to.ordinal()] != 0) {
+                    builder.oneWayRate(from, to, explicit[from.ordinal()][to.ordinal()]);
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    public static class Builder {
+        private final double[][] rates = new double[CURRENCIES][CURRENCIES];
+
+        public Builder() {
+            for (double[] row : rates) {
+                Arrays.fill(row, Double.NaN);
+            }
+        }
+
+        /**
+         * Starts from an existing snapshot, for changing a few rates.
+         */
+        public Builder(ExchangeRateSnapshot base) {
+            for (int i = 0; i < CURRENCIES; i++) {
+                rates[i] = base.rates[i].clone();
+            }
+        }
+
+        /**
+         * Sets from → to and its inverse.
+         */
+        public Builder rate(Currency from, Currency to, double rate) {
+            oneWayRate(from, to, rate);
+            rates[to.ordinal()][from.ordinal()] = 1.0 / rate;
+            return this;
+        }
+
+        /**
+         * Sets from → to only, for feeds that quote both directions.
+         */
+        public Builder oneWayRate(Currency from, Currency to, double rate) {
+            if (from == null || to == null || from == to) {
+                throw new IllegalArgumentException("Rates are between two different currencies");
+            }
+            if (!(rate > 0) || Double.isInfinite(rate)) {
+                throw new IllegalArgumentException("Rate must be positive and finite: " + rate);
+            }
+            rates[from.ordinal()][to.ordinal()] = rate;
+            return this;
+        }
+
+        public ExchangeRateSnapshot build() {
+            double[][] copy = new double[CURRENCIES][];
+            for (int i = 0; i < CURRENCIES; i++) {
+                copy[i] = rates[i].clone();
+                copy[i][i] = 1.0;
+            }
+            return new ExchangeRateSnapshot(copy, Instant.now());
+        }
+    }
+}
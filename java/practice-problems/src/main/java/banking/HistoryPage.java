@@ -0,0 +1,59 @@
+package banking;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * One page of an account's history, newest first, plus the cursor for the
+ * next (older) page.
+ *
+ * Keyset pagination: the cursor is the (timestamp, sequence) of the last
+ * record returned, and the next query asks for records strictly older than
+ * it. Unlike OFFSET paging, page 1,000 costs the same as page 1, and records
+ * arriving meanwhile do not shift pages.
+ */
+public class HistoryPage {
+    private final List<TransactionRecordDTO> records;
+    private final Cursor next;
+
+    public HistoryPage(List<TransactionRecordDTO> records, Cursor next) {
+        this.records = records;
+        this.next = next;
+    }
+
+    public List<TransactionRecordDTO> getRecords() {
+        return records;
+    }
+
+    /**
+     * @return Where the next page starts, or null if this was the last one.
+     */
+    public Cursor getNext() {
+        return next;
+    }
+
+    /**
+     * Position in an account's history. The sequence breaks ties between
+     * records with the same timestamp.
+     */
+    public static final class Cursor {
+        private final Instant timestamp;
+        private final long sequence;
+
+        public Cursor(Instant timestamp, long sequence) {
+            if (timestamp == null) {
+                throw new IllegalArgumentException("Cursor timestamp is required");
+            }
+            this.timestamp = timestamp;
+            this.sequence = sequence;
+        }
+
+        public Instant getTimestamp() {
+            return timestamp;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+    }
+}
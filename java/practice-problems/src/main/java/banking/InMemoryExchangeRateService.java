@@ -1,33 +1,53 @@
 package banking;
 
-import java.util.HashMap;
-import java.util.Map;
-
+/**
+ * Rates held in an {@link ExchangeRateSnapshot}. Lookups read the current
+ * snapshot without locking; writers build a new one and swap it in.
+ */
 public class InMemoryExchangeRateService implements ExchangeRateService {
-    private final Map<String, Double> rates = new HashMap<>();
-
-    public void setRate(Currency from, Currency to, double rate) {
-        rates.put(from + "_" + to, rate);
-        rates.put(to + "_" + from, 1.0 / rate);
-    }
+    private volatile ExchangeRateSnapshot snapshot;
 
     public InMemoryExchangeRateService() {
         // Seed default rates (all relative to USD)
-        setRate(Currency.EUR, Currency.USD, 1.08);
-        setRate(Currency.GBP, Currency.USD, 1.27);
-        setRate(Currency.EUR, Currency.GBP, 0.85);
+        this(new ExchangeRateSnapshot.Builder()
+                .rate(Currency.EUR, Currency.USD, 1.08)
+                .rate(Currency.GBP, Currency.USD, 1.27)
+                .rate(Currency.EUR, Currency.GBP, 0.85)
+                .build());
+    }
+
+    public InMemoryExchangeRateService(ExchangeRateSnapshot snapshot) {
+        if (snapshot == null) {
+            throw new IllegalArgumentException("Snapshot is required");
+        }
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Copy-on-write: rare, so synchronized only against other writers.
+     */
+    public synchronized void setRate(Currency from, Currency to, double rate) {
+        snapshot = new ExchangeRateSnapshot.Builder(snapshot).rate(from, to, rate).build();
+    }
+
+    /**
+     * Publishes a whole new set of rates at once.
+     */
+    public synchronized void replace(ExchangeRateSnapshot snapshot) {
+        if (snapshot == null) {
+            throw new IllegalArgumentException("Snapshot is required");
+        }
+        this.snapshot = snapshot;
     }
 
     @Override
     public double getExchangeRate(Currency source, Currency target) {
-        if (source == target)
-            return 1.0;
-        Double rate = rates.get(source + "_" + target);
-        if (rate == null) {
-            throw new IllegalArgumentException(
-                    String.format("No rate for %s to %s", source, target));
-        }
-        return rate;
+        return snapshot.getRate(source, target);
+    }
+
+    @Override
+    public ExchangeRateSnapshot getSnapshot() {
+        return snapshot;
     }
 
 }
@@ -0,0 +1,356 @@
+package banking;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import javax.sql.DataSource;
+
+/**
+ * PostgreSQL transaction history: the durable {@link TransactionRecordDao},
+ * and a {@link TransactionHistoryStore} so AsyncAuditWriter batches land
+ * here as batched inserts.
+ *
+ * Schema:
+ * ┌──────────────────────────────────────────────────────────────────┐
+ * │ transaction_records                                              │
+ * ├──────────────────────────────────────────────────────────────────┤
+ * │ id                     BIGSERIAL PRIMARY KEY  -- keyset tiebreak │
+ * │ account_number         BIGINT                 -- source / owner  │
+ * │ target_account_number  BIGINT                 -- transfers only  │
+ * │ amount                 DOUBLE PRECISION NOT NULL                 │
+ * │ type                   VARCHAR(16) NOT NULL                      │
+ * │ timestamp              TIMESTAMPTZ NOT NULL                      │
+ * │ success                BOOLEAN NOT NULL                          │
+ * │ latency_nanos          BIGINT NOT NULL DEFAULT 0                 │
+ * ├──────────────────────────────────────────────────────────────────┤
+ * │ idx_tx_account_time ON (account_number, timestamp DESC, id DESC) │
+ * │                     INCLUDE (every other column)                 │
+ * │ idx_tx_target_time  ON (target_account_number, timestamp DESC,   │
+ * │                         id DESC) INCLUDE (...)                   │
+ * └──────────────────────────────────────────────────────────────────┘
+ *
+ * An account's history is the rows it sent plus the transfers it received,
+ * so a page is two index range scans merged:
+ *
+ *   (account_number = A ... ORDER BY timestamp DESC, id DESC LIMIT n)
+ *   UNION ALL
+ *   (target_account_number = A ... ORDER BY timestamp DESC, id DESC LIMIT n)
+ *   ORDER BY timestamp DESC, id DESC LIMIT n
+ *
+ * Both indexes cover every selected column, so each branch is an
+ * index-only scan that stops after n rows.
+ *
+ * Keyset pagination: the next page asks for (timestamp, id) < the last row
+ * of this one — a B-tree seek, whatever the page number. OFFSET would read
+ * and throw away every earlier row, and shift pages as new rows arrive.
+ *
+ * Writes: saveAll sends chunks of BATCH_SIZE rows with addBatch/executeBatch
+ * inside one transaction — one commit (one WAL flush) for the whole batch
+ * instead of one per row. With the driver's reWriteBatchedInserts=true each
+ * chunk becomes a single multi-row INSERT.
+ *
+ * Reads of everything: forEachRecord turns autocommit off and sets a fetch
+ * size, so the driver streams rows through a server-side cursor
+ * SCAN_FETCH_SIZE at a time instead of buffering the whole result.
+ *
+ * Instants are bound and read as OffsetDateTime in UTC. setTimestamp /
+ * getTimestamp go through the JVM default time zone, so the stored
+ * instant would depend on where the writer ran.
+ */
+public class PostgresTransactionRecordDao implements TransactionRecordDao, TransactionHistoryStore {
+
+    static final int BATCH_SIZE = 500;
+    private static final int SCAN_FETCH_SIZE = 10_000;
+
+    private static final String COLUMNS = """
+            id, account_number, target_account_number, amount, type, timestamp, success, latency_nanos""";
+
+    private static final String INSERT_SQL = """
+            INSERT INTO transaction_records
+                (account_number, target_account_number, amount, type, timestamp, success, latency_nanos)
+            VALUES (?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    // Both branches bind (account, [cursor timestamp, cursor id,] limit); the target
+    // branch skips self-transfers already returned by the source branch
+    private static final String PAGE_SQL = """
+            (SELECT %1$s FROM transaction_records
+             WHERE account_number = ? %2$s
+             ORDER BY timestamp DESC, id DESC LIMIT ?)
+            UNION ALL
+            (SELECT %1$s FROM transaction_records
+             WHERE target_account_number = ? AND account_number IS DISTINCT FROM target_account_number %2$s
+             ORDER BY timestamp DESC, id DESC LIMIT ?)
+            ORDER BY timestamp DESC, id DESC LIMIT ?
+            """;
+
+    private static final String KEYSET = "AND (timestamp, id) < (?, ?)";
+
+    private final DataSource dataSource;
+
+    public PostgresTransactionRecordDao(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Schema creation — run once at startup or via a migration tool.
+     */
+    public void createSchema() throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+                Statement stmt = conn.createStatement()) {
+            stmt.execute("""
+                    CREATE TABLE IF NOT EXISTS transaction_records (
+                        id                     BIGSERIAL PRIMARY KEY,
+                        account_number         BIGINT,
+                        target_account_number  BIGINT,
+                        amount                 DOUBLE PRECISION NOT NULL,
+                        type                   VARCHAR(16) NOT NULL,
+                        timestamp              TIMESTAMPTZ NOT NULL,
+                        success                BOOLEAN NOT NULL,
+                        latency_nanos          BIGINT NOT NULL DEFAULT 0
+                    )
+                    """);
+            // Key order matches the page query's ORDER BY, so no sort step;
+            // INCLUDE makes the page an index-only scan
+            stmt.execute("""
+                    CREATE INDEX IF NOT EXISTS idx_tx_account_time
+                    ON transaction_records (account_number, timestamp DESC, id DESC)
+                    INCLUDE (target_account_number, amount, type, success, latency_nanos)
+                    """);
+            stmt.execute("""
+                    CREATE INDEX IF NOT EXISTS idx_tx_target_time
+                    ON transaction_records (target_account_number, timestamp DESC, id DESC)
+                    INCLUDE (account_number, amount, type, success, latency_nanos)
+                    WHERE target_account_number IS NOT NULL
+                    """);
+        }
+    }
+
+    @Override
+    public void logTransaction(TransactionRecord record) {
+        save(TransactionRecordDTO.from(record));
+    }
+
+    @Override
+    public void logTransactions(List<TransactionRecord> records) {
+        List<TransactionRecordDTO> rows = new ArrayList<>(records.size());
+        for (TransactionRecord record : records) {
+            rows.add(TransactionRecordDTO.from(record));
+        }
+        saveAll(rows);
+    }
+
+    @Override
+    public void save(TransactionRecordDTO record) {
+        try (Connection conn = dataSource.getConnection();
+                PreparedStatement ps = conn.prepareStatement(INSERT_SQL)) {
+            bindInsert(ps, record);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to save transaction record for account "
+                    + record.getAccountNumber(), e);
+        }
+    }
+
+    /**
+     * All or nothing: the batch commits once, or rolls back entirely.
+     */
+    @Override
+    public void saveAll(List<TransactionRecordDTO> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        Connection conn = null;
+        try {
+            conn = dataSource.getConnection();
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(INSERT_SQL)) {
+                int pending = 0;
+                for (TransactionRecordDTO record : records) {
+                    bindInsert(ps, record);
+                    ps.addBatch();
+                    if (++pending == BATCH_SIZE) {
+                        ps.executeBatch();
+                        pending = 0;
+                    }
+                }
+                if (pending > 0) {
+                    ps.executeBatch();
+                }
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            if (conn != null) {
+                try {
+                    conn.rollback();
+                } catch (SQLException ignored) {
+                    // ignore rollback failure
+                }
+            }
+            throw new RuntimeException("Failed to save " + records.size() + " transaction records", e);
+        } finally {
+            if (conn != null) {
+                try {
+                    conn.setAutoCommit(true);
+                    conn.close();
+                } catch (SQLException ignored) {
+                    // ignore close failure
+                }
+            }
+        }
+    }
+
+    /**
+     * Whole history of one account in a single query. Prefer the paged
+     * overload for anything user-facing.
+     */
+    @Override
+    public List<TransactionRecordDTO> findByAccount(Long accountNumber) {
+        String sql = """
+                SELECT %s FROM transaction_records
+                WHERE account_number = ?
+                   OR (target_account_number = ? AND account_number IS DISTINCT FROM target_account_number)
+                ORDER BY timestamp, id
+                """.formatted(COLUMNS);
+        try (Connection conn = dataSource.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setLong(1, accountNumber);
+            ps.setLong(2, accountNumber);
+            return readAll(ps);
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to find transactions for account " + accountNumber, e);
+        }
+    }
+
+    @Override
+    public HistoryPage findByAccount(Long accountNumber, HistoryPage.Cursor before, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        String sql = PAGE_SQL.formatted(COLUMNS, before == null ? "" : KEYSET);
+        try (Connection conn = dataSource.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql)) {
+            int index = 1;
+            for (int branch = 0; branch < 2; branch++) {
+                ps.setLong(index++, accountNumber);
+                if (before != null) {
+                    ps.setObject(index++, utc(before.getTimestamp()));
+                    ps.setLong(index++, before.getSequence());
+                }
+                ps.setInt(index++, limit);
+            }
+            ps.setInt(index, limit);
+
+            List<TransactionRecordDTO> page = new ArrayList<>(limit);
+            HistoryPage.Cursor last = null;
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    TransactionRecordDTO record = mapRow(rs);
+                    page.add(record);
+                    last = new HistoryPage.Cursor(record.getTimestamp(), rs.getLong("id"));
+                }
+            }
+            return new HistoryPage(page, page.size() == limit ? last : null);
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to page transactions for account " + accountNumber, e);
+        }
+    }
+
+    @Override
+    public List<TransactionRecordDTO> findByAccountBetween(Long accountNumber, Instant from, Instant to) {
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("Range bounds are required");
+        }
+        String sql = """
+                (SELECT %1$s FROM transaction_records
+                 WHERE account_number = ? AND timestamp >= ? AND timestamp < ?)
+                UNION ALL
+                (SELECT %1$s FROM transaction_records
+                 WHERE target_account_number = ? AND account_number IS DISTINCT FROM target_account_number
+                   AND timestamp >= ? AND timestamp < ?)
+                ORDER BY timestamp, id
+                """.formatted(COLUMNS);
+        try (Connection conn = dataSource.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (int offset = 0; offset <= 3; offset += 3) {
+                ps.setLong(offset + 1, accountNumber);
+                ps.setObject(offset + 2, utc(from));
+                ps.setObject(offset + 3, utc(to));
+            }
+            return readAll(ps);
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to find transactions for account " + accountNumber, e);
+        }
+    }
+
+    /**
+     * Streams the table in insertion (id) order through a cursor. The visitor
+     * runs while the connection is open: keep it quick and don't call back
+     * into this DAO from it.
+     */
+    @Override
+    public void forEachRecord(Consumer<? super TransactionRecordDTO> visitor) {
+        String sql = "SELECT %s FROM transaction_records ORDER BY id".formatted(COLUMNS);
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false); // the driver only uses a cursor inside a transaction
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setFetchSize(SCAN_FETCH_SIZE);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        visitor.accept(mapRow(rs));
+                    }
+                }
+            } finally {
+                conn.rollback(); // read-only; just closes the cursor's transaction
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to scan transaction records", e);
+        }
+    }
+
+    private static void bindInsert(PreparedStatement ps, TransactionRecordDTO record) throws SQLException {
+        ps.setObject(1, record.getAccountNumber(), Types.BIGINT);
+        ps.setObject(2, record.getTargetAccountNumber(), Types.BIGINT);
+        ps.setDouble(3, record.getAmount());
+        ps.setString(4, record.getType().name());
+        ps.setObject(5, utc(record.getTimestamp()));
+        ps.setBoolean(6, record.isSuccess());
+        ps.setLong(7, record.getLatencyNanos());
+    }
+
+    private static OffsetDateTime utc(Instant instant) {
+        return instant.atOffset(ZoneOffset.UTC);
+    }
+
+    private static List<TransactionRecordDTO> readAll(PreparedStatement ps) throws SQLException {
+        List<TransactionRecordDTO> records = new ArrayList<>();
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                records.add(mapRow(rs));
+            }
+        }
+        return records;
+    }
+
+    private static TransactionRecordDTO mapRow(ResultSet rs) throws SQLException {
+        return new TransactionRecordDTO(
+                rs.getObject("account_number", Long.class),
+                rs.getObject("target_account_number", Long.class),
+                rs.getDouble("amount"),
+                TransactionType.valueOf(rs.getString("type")),
+                rs.getObject("timestamp", OffsetDateTime.class).toInstant(),
+                rs.getBoolean("success"),
+                rs.getLong("latency_nanos"));
+    }
+}
@@ -4,12 +4,26 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class RequestIdInMemoryStore implements RequestIdStore {
+    // Guarded by this
     private final List<String> requestIds = new ArrayList<>();
 
     @Override
-    public void logRequestId(String requestId) {
+    public synchronized void logRequestId(String requestId) {
         if (requestId != null) {
             requestIds.add(requestId);
         }
     }
+
+    @Override
+    public synchronized void logRequestIds(List<String> batch) {
+        for (String requestId : batch) {
+            if (requestId != null) {
+                requestIds.add(requestId);
+            }
+        }
+    }
+
+    public synchronized List<String> getRequestIds() {
+        return new ArrayList<>(requestIds);
+    }
 }
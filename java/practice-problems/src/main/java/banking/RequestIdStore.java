@@ -1,5 +1,17 @@
 package banking;
 
+import java.util.List;
+
 public interface RequestIdStore {
     void logRequestId(String requestId);
+
+    /**
+     * Stores a batch in one go. The list is reused by the caller: copy,
+     * don't keep it.
+     */
+    default void logRequestIds(List<String> requestIds) {
+        for (String requestId : requestIds) {
+            logRequestId(requestId);
+        }
+    }
 }
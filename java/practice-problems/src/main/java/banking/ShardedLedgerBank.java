@@ -0,0 +1,497 @@
+package banking;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Ledger engine that gives every account exactly one writer thread.
+ *
+ * Accounts are partitioned across N shards by account number. Each shard is
+ * a single thread draining its own mailbox (a single-thread executor), and
+ * it is the only thread that ever mutates the balances it owns — so no
+ * account is ever locked, and a hot merchant account only queues on its own
+ * shard instead of blocking every transfer that touches it.
+ *
+ *   caller ──credit(acct 7)──► mailbox[7 % N] ──► shard thread ──► balance
+ *
+ * Transfers:
+ *   Same shard   one task: debit, credit, done.
+ *   Cross shard  two-phase reserve/commit, every step a message:
+ *
+ *     source shard          destination shard       source shard
+ *     ────────────          ─────────────────       ────────────
+ *     reserve: debit   ──►  credit            ──►   commit: drop hold
+ *     + record hold         (fails: overflow) ──►   abort: refund hold
+ *
+ *   The reserved amount leaves the source balance at once, so it cannot be
+ *   spent twice while the credit is in flight. No stage ever blocks on
+ *   another shard, so shards cannot deadlock on each other.
+ *
+ * Reads (getBalance) go straight to the account's atomic balance from any
+ * thread; a cross-shard transfer in flight is visible as money in neither
+ * account, exactly like Bank.transfer.
+ *
+ * Currency conversion runs on the caller's thread before anything is
+ * queued, keeping rate lookups off the shard threads.
+ *
+ * Blocking methods (credit, debit, transfer) must not be called from a
+ * shard thread; use transferAsync to compose.
+ *
+ * Closing:
+ *   1. stop admitting work: new calls get RejectedExecutionException
+ *   2. wait for every admitted call, cross-shard chains included, to
+ *      finish, so no reservation is left holding money
+ *   3. close the mailboxes
+ *   A stage that is rejected anyway (a mailbox shut underneath it) settles
+ *   its hold on the calling thread instead of dropping it.
+ */
+public class ShardedLedgerBank implements BankInterface, AutoCloseable {
+
+    public static final int DEFAULT_SHARDS = Runtime.getRuntime().availableProcessors();
+
+    // Directory for lookups from any thread; balances are only written by the owning shard
+    private final Map<Long, Account> accounts = new ConcurrentHashMap<>();
+    private final AtomicLong accountNumberGenerator = new AtomicLong(1000000L);
+    private final AtomicLong transferIds = new AtomicLong();
+    private final CurrencyService currencyService;
+    private final Shard[] shards;
+
+    // Admission: calls in flight, and whether close() has started. A
+    // ReentrantLock rather than a monitor so virtual-thread callers don't pin.
+    private final ReentrantLock lifecycle = new ReentrantLock();
+    private final Condition drained = lifecycle.newCondition();
+    private int inFlight;
+    private boolean closed;
+
+    public ShardedLedgerBank(ExchangeRateService exchangeRateService) {
+        this(exchangeRateService, DEFAULT_SHARDS);
+    }
+
+    public ShardedLedgerBank(ExchangeRateService exchangeRateService, int shardCount) {
+        if (exchangeRateService == null) {
+            throw new IllegalArgumentException("Exchange rate service is required");
+        }
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("Shard count must be positive");
+        }
+        this.currencyService = new CurrencyService(exchangeRateService);
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i);
+        }
+    }
+
+    public Account getAccount(Long accountNumber) {
+        return accounts.get(accountNumber);
+    }
+
+    public Long openCommercialAccount(Company company, int pin, double startingDeposit, Currency currency) {
+        Long accountNumber = accountNumberGenerator.getAndIncrement();
+        accounts.put(accountNumber, new CommercialAccount(company, accountNumber, pin, startingDeposit, currency));
+        return accountNumber;
+    }
+
+    public Long openConsumerAccount(Person person, int pin, double startingDeposit, Currency currency) {
+        Long accountNumber = accountNumberGenerator.getAndIncrement();
+        accounts.put(accountNumber, new ConsumerAccount(person, accountNumber, pin, startingDeposit, currency));
+        return accountNumber;
+    }
+
+    public boolean authenticateUser(Long accountNumber, int pin) {
+        Account account = getAccount(accountNumber);
+        return account != null && account.validatePin(pin);
+    }
+
+    public double getBalance(Long accountNumber) {
+        return requireAccount(accountNumber, "Account not found").getBalance();
+    }
+
+    public void credit(Long accountNumber, double amount) {
+        Account account = requireAccount(accountNumber, "Account not found while crediting");
+        admit();
+        try {
+            join(shardFor(accountNumber).submit(() -> {
+                account.creditAccount(amount);
+                return null;
+            }));
+        } finally {
+            release();
+        }
+    }
+
+    public boolean debit(Long accountNumber, double amount) {
+        Account account = requireAccount(accountNumber, "Account not found while debiting");
+        admit();
+        try {
+            return join(shardFor(accountNumber).submit(() -> account.debitAccount(amount)));
+        } finally {
+            release();
+        }
+    }
+
+    public boolean transfer(Long sourceAccountNumber, Long destinationAccountNumber, double amount) {
+        return join(transferAsync(sourceAccountNumber, destinationAccountNumber, amount));
+    }
+
+    /**
+     * Same contract as {@link Bank#transfer}: false for bad input, unknown
+     * accounts or insufficient funds; completes exceptionally (and refunds
+     * the source) if the credit fails, or with RejectedExecutionException
+     * once the bank is closed.
+     */
+    public CompletableFuture<Boolean> transferAsync(Long sourceAccountNumber, Long destinationAccountNumber,
+            double amount) {
+        if (amount <= 0 || sourceAccountNumber == null || destinationAccountNumber == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+        if (sourceAccountNumber.equals(destinationAccountNumber)) {
+            return CompletableFuture.completedFuture(true);
+        }
+        Account source = getAccount(sourceAccountNumber);
+        Account destination = getAccount(destinationAccountNumber);
+        if (source == null || destination == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+
+        long debitMinorUnits = source.getCurrency().toMinorUnits(amount);
+        long creditMinorUnits = destination.getCurrency().toMinorUnits(
+                currencyService.convert(amount, source.getCurrency(), destination.getCurrency()));
+        if (debitMinorUnits <= 0 || creditMinorUnits <= 0) {
+            return CompletableFuture.completedFuture(false); // one side rounds to nothing
+        }
+        try {
+            admit();
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return submitTransfer(sourceAccountNumber, source, destinationAccountNumber, destination,
+                debitMinorUnits, creditMinorUnits)
+                .whenComplete((moved, failure) -> release());
+    }
+
+    /**
+     * Submits transfers without waiting on unrelated ones, so all shards work
+     * on the batch in parallel, with the same results as applying the list in
+     * order (Bank.transferBatch):
+     *
+     *   A→B, A→C      same source: one mailbox, FIFO, nothing to wait for
+     *   A→B, B→C      B→C is held back until A→B has settled, so B is
+     *                 debited only after the credit it may depend on
+     *   (held) B→C, B→D / C→B
+     *                 anything later touching B queues behind the held one,
+     *                 keeping B's own debits and credits in list order
+     *
+     * Only a debit that follows a credit to the same account waits; a
+     * payroll run (one source, many destinations) never does.
+     */
+    public List<TransferStatus> transferBatch(List<TransferRequest> transfers) {
+        Map<Long, Account> resolved = new HashMap<>();
+        CurrencyService.BatchRates rates = currencyService.batchRates();
+        BatchOrder order = new BatchOrder();
+
+        admit();
+        try {
+            List<CompletableFuture<TransferStatus>> pending = new ArrayList<>(transfers.size());
+            for (TransferRequest transfer : transfers) {
+                pending.add(submitBatchTransfer(transfer, resolved, rates, order));
+            }
+            List<TransferStatus> results = new ArrayList<>(pending.size());
+            for (CompletableFuture<TransferStatus> status : pending) {
+                results.add(status.join());
+            }
+            return results;
+        } finally {
+            release();
+        }
+    }
+
+    private CompletableFuture<TransferStatus> submitBatchTransfer(TransferRequest transfer,
+            Map<Long, Account> resolved, CurrencyService.BatchRates rates, BatchOrder order) {
+        Long sourceAccountNumber = transfer.getSourceAccountNumber();
+        Long destinationAccountNumber = transfer.getDestinationAccountNumber();
+        if (transfer.getAmount() <= 0 || sourceAccountNumber == null || destinationAccountNumber == null) {
+            return CompletableFuture.completedFuture(TransferStatus.INVALID_REQUEST);
+        }
+        Account source = resolved.computeIfAbsent(sourceAccountNumber, this::getAccount);
+        Account destination = resolved.computeIfAbsent(destinationAccountNumber, this::getAccount);
+        if (source == null || destination == null) {
+            return CompletableFuture.completedFuture(TransferStatus.ACCOUNT_NOT_FOUND);
+        }
+        if (sourceAccountNumber.equals(destinationAccountNumber)) {
+            return CompletableFuture.completedFuture(TransferStatus.COMPLETED);
+        }
+        long debitMinorUnits = source.getCurrency().toMinorUnits(transfer.getAmount());
+        long creditMinorUnits = destination.getCurrency().toMinorUnits(
+                rates.convert(transfer.getAmount(), source.getCurrency(), destination.getCurrency()));
+        if (debitMinorUnits <= 0 || creditMinorUnits <= 0) {
+            return CompletableFuture.completedFuture(TransferStatus.INVALID_REQUEST);
+        }
+
+        CompletableFuture<?> waitFor = order.prerequisite(sourceAccountNumber, destinationAccountNumber);
+        CompletableFuture<Boolean> moved = waitFor == null
+                ? submitTransfer(sourceAccountNumber, source, destinationAccountNumber, destination,
+                        debitMinorUnits, creditMinorUnits)
+                : waitFor.handle((ignored, failure) -> null)
+                        .thenCompose(ignored -> submitTransfer(sourceAccountNumber, source,
+                                destinationAccountNumber, destination, debitMinorUnits, creditMinorUnits));
+        order.record(sourceAccountNumber, destinationAccountNumber, moved, waitFor != null);
+        return moved.handle((ok, failure) -> failure != null ? TransferStatus.FAILED
+                : ok ? TransferStatus.COMPLETED : TransferStatus.INSUFFICIENT_FUNDS);
+    }
+
+    /**
+     * Per-batch bookkeeping for transferBatch's ordering rules. Touched only
+     * by the submitting thread.
+     *
+     *   credited  account → transfers crediting it, not known to be done
+     *   held      account → the latest held-back transfer debiting it
+     *
+     * A transfer must wait for credited[source] (its debit may need that
+     * money), for held[source] (a held-back debit has not reached the
+     * mailbox yet, so FIFO order no longer keeps the two in list order) and
+     * for held[destination] (crediting first could fund a debit the list
+     * says came earlier). Credits to the same account commute.
+     */
+    private static final class BatchOrder {
+        private final Map<Long, CompletableFuture<?>> credited = new HashMap<>();
+        private final Map<Long, CompletableFuture<?>> held = new HashMap<>();
+
+        /**
+         * @return what the transfer must wait for, or null to submit it now.
+         */
+        CompletableFuture<?> prerequisite(Long source, Long destination) {
+            return allOf(allOf(credited.get(source), held.get(source)), held.get(destination));
+        }
+
+        void record(Long source, Long destination, CompletableFuture<?> transfer, boolean wasHeld) {
+            credited.merge(destination, transfer, BatchOrder::allOf);
+            if (wasHeld) {
+                held.put(source, transfer);
+            }
+        }
+
+        private static CompletableFuture<?> allOf(CompletableFuture<?> first, CompletableFuture<?> second) {
+            if (first == null || first.isDone()) {
+                return second == null || second.isDone() ? null : second;
+            }
+            if (second == null || second.isDone()) {
+                return first;
+            }
+            return CompletableFuture.allOf(first, second);
+        }
+    }
+
+    private CompletableFuture<Boolean> submitTransfer(Long sourceAccountNumber, Account source,
+            Long destinationAccountNumber, Account destination, long debitMinorUnits, long creditMinorUnits) {
+        Shard sourceShard = shardFor(sourceAccountNumber);
+        Shard destinationShard = shardFor(destinationAccountNumber);
+        if (sourceShard == destinationShard) {
+            return sourceShard.submit(() -> {
+                if (!source.debitMinorUnits(debitMinorUnits)) {
+                    return false;
+                }
+                try {
+                    destination.creditMinorUnits(creditMinorUnits);
+                } catch (RuntimeException e) {
+                    source.creditMinorUnits(debitMinorUnits);
+                    throw new IllegalArgumentException("Transfer failed, rolled back: " + e.getMessage(), e);
+                }
+                return true;
+            });
+        }
+
+        long transferId = transferIds.incrementAndGet();
+        return sourceShard.submit(() -> sourceShard.reserve(transferId, source, debitMinorUnits))
+                .thenCompose(reserved -> {
+                    if (!reserved) {
+                        return CompletableFuture.completedFuture(false);
+                    }
+                    return destinationShard.submit(() -> {
+                        destination.creditMinorUnits(creditMinorUnits);
+                        return true;
+                    })
+                            .handle((credited, failure) -> failure)
+                            .thenCompose(failure -> sourceShard.settle(transferId, failure))
+                            .thenApply(failure -> {
+                                if (failure != null) {
+                                    Throwable cause = failure instanceof CompletionException ? failure.getCause()
+                                            : failure;
+                                    throw new IllegalArgumentException(
+                                            "Transfer failed, rolled back: " + cause.getMessage(), cause);
+                                }
+                                return true;
+                            });
+                });
+    }
+
+    /**
+     * Stops admitting work, waits for every admitted call to finish (so no
+     * reservation is left half-done), then closes the mailboxes.
+     */
+    @Override
+    public void close() {
+        lifecycle.lock();
+        try {
+            closed = true;
+            while (inFlight > 0) {
+                drained.awaitUninterruptibly();
+            }
+        } finally {
+            lifecycle.unlock();
+        }
+        for (Shard shard : shards) {
+            shard.mailbox.close();
+        }
+    }
+
+    /**
+     * @return Cross-shard transfers reserved but not yet committed or aborted.
+     */
+    int pendingReservations() {
+        int pending = 0;
+        for (Shard shard : shards) {
+            pending += shard.reservations.size();
+        }
+        return pending;
+    }
+
+    private void admit() {
+        lifecycle.lock();
+        try {
+            if (closed) {
+                throw new RejectedExecutionException("Ledger is closed");
+            }
+            inFlight++;
+        } finally {
+            lifecycle.unlock();
+        }
+    }
+
+    private void release() {
+        lifecycle.lock();
+        try {
+            if (--inFlight == 0) {
+                drained.signalAll();
+            }
+        } finally {
+            lifecycle.unlock();
+        }
+    }
+
+    private Account requireAccount(Long accountNumber, String message) {
+        Account account = getAccount(accountNumber);
+        if (account == null) {
+            throw new AccountNotFoundException(message);
+        }
+        return account;
+    }
+
+    private Shard shardFor(Long accountNumber) {
+        return shards[(int) Math.floorMod(accountNumber, (long) shards.length)];
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * One writer thread plus the holds of its in-flight outgoing transfers.
+     * Holds are placed and settled on the shard thread; the map is concurrent
+     * only so a settle whose mailbox rejected it can run on the caller, and
+     * so monitoring can read its size.
+     */
+    private static final class Shard {
+        final ExecutorService mailbox;
+        final Map<Long, Reservation> reservations = new ConcurrentHashMap<>();
+
+        Shard(int index) {
+            this.mailbox = Executors.newSingleThreadExecutor(
+                    Thread.ofPlatform().name("ledger-shard-" + index).daemon(true).factory());
+        }
+
+        /**
+         * @return the task's future; failed with RejectedExecutionException
+         *         (never thrown) if the mailbox is shut, so a chained stage
+         *         still reaches its abort.
+         */
+        <T> CompletableFuture<T> submit(Supplier<T> task) {
+            try {
+                return CompletableFuture.supplyAsync(task, mailbox);
+            } catch (RejectedExecutionException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+        /**
+         * Commits (failure == null) or aborts a hold on the shard thread. If
+         * the mailbox rejects the task the hold is settled right here: the
+         * balance is atomic and remove() hands the hold to one caller only,
+         * so it is refunded at most once and never lost.
+         *
+         * @return the failure, passed through.
+         */
+        CompletableFuture<Throwable> settle(long transferId, Throwable failure) {
+            Supplier<Throwable> settle = () -> {
+                if (failure == null) {
+                    commit(transferId);
+                } else {
+                    abort(transferId);
+                }
+                return failure;
+            };
+            try {
+                return CompletableFuture.supplyAsync(settle, mailbox);
+            } catch (RejectedExecutionException e) {
+                return CompletableFuture.completedFuture(settle.get());
+            }
+        }
+
+        boolean reserve(long transferId, Account account, long amount) {
+            if (!account.debitMinorUnits(amount)) {
+                return false;
+            }
+            reservations.put(transferId, new Reservation(account, amount));
+            return true;
+        }
+
+        void commit(long transferId) {
+            reservations.remove(transferId);
+        }
+
+        void abort(long transferId) {
+            Reservation reservation = reservations.remove(transferId);
+            if (reservation != null) {
+                reservation.account.creditMinorUnits(reservation.amount);
+            }
+        }
+    }
+
+    private static final class Reservation {
+        final Account account;
+        final long amount;
+
+        Reservation(Account account, long amount) {
+            this.account = account;
+            this.amount = amount;
+        }
+    }
+}
@@ -1,20 +1,290 @@
 package banking;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
-public class TransactionHistoryInMemoryStore implements TransactionHistoryStore {
+/**
+ * In-memory transaction history, partitioned by time and indexed by account.
+ *
+ *   partitions (skip list by partition start, one per day by default)
+ *     ├─ 2025-02-10 ─► all:       (timestamp, seq) ─► record
+ *     │                byAccount: account ─► (timestamp, seq) ─► record
+ *     └─ 2025-02-11 ─► ...
+ *
+ * A transfer is indexed under both its source and its target account, so
+ * "last N transactions for account" walks only that account's entries,
+ * newest partition first, and stops after N — no scan of other accounts or
+ * older days. Range queries skip straight to the partitions they overlap.
+ *
+ * Growth is bounded by whole partitions: with a retention, opening a new
+ * partition drops every partition that ended before newest - retention, and
+ * removeOlderThan does the same on demand. Dropping a partition is one
+ * skip-list removal, not a per-record sweep. A late record that falls in an
+ * already expired partition is not stored; {@link #getExpiredRecords()}
+ * counts it, as it does one whose partition expires while it is being added.
+ *
+ * Every structure is concurrent, so the audit writer appends while callers
+ * query without a store-wide lock. A query racing an append may or may not
+ * see the new record.
+ */
+public class TransactionHistoryInMemoryStore implements TransactionHistoryStore, TransactionRecordDao {
 
-    private List<TransactionRecord> store;
+    public static final Duration DEFAULT_PARTITION_WIDTH = Duration.ofDays(1);
 
+    private final ConcurrentSkipListMap<Long, Partition> partitions = new ConcurrentSkipListMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final LongAdder expiredRecords = new LongAdder();
+    private final long partitionMillis;
+    private final long retentionMillis;
+
+    /**
+     * Daily partitions, kept forever.
+     */
     public TransactionHistoryInMemoryStore() {
-        this.store = new ArrayList<>();
+        this(DEFAULT_PARTITION_WIDTH, null);
+    }
+
+    /**
+     * @param partitionWidth Time covered by one partition.
+     * @param retention      How far behind the newest partition to keep
+     *                       history, or null to keep everything.
+     */
+    public TransactionHistoryInMemoryStore(Duration partitionWidth, Duration retention) {
+        if (partitionWidth == null || partitionWidth.toMillis() <= 0) {
+            throw new IllegalArgumentException("Partition width must be at least one millisecond");
+        }
+        if (retention != null && retention.compareTo(partitionWidth) < 0) {
+            throw new IllegalArgumentException("Retention must cover at least one partition");
+        }
+        this.partitionMillis = partitionWidth.toMillis();
+        this.retentionMillis = retention == null ? -1 : retention.toMillis();
     }
 
     @Override
     public void logTransaction(TransactionRecord record) {
         // FOLLOW UP: TransactionRecord keeps auditing extensible with richer metadata per event.
-        store.add(record);
+        save(TransactionRecordDTO.from(record));
+    }
+
+    @Override
+    public void logTransactions(List<TransactionRecord> records) {
+        for (TransactionRecord record : records) {
+            save(TransactionRecordDTO.from(record));
+        }
+    }
+
+    @Override
+    public void save(TransactionRecordDTO record) {
+        if (record == null || record.getTimestamp() == null) {
+            throw new IllegalArgumentException("Record with a timestamp is required");
+        }
+        EntryKey key = new EntryKey(record.getTimestamp(), sequence.incrementAndGet());
+        long start = partitionStart(record.getTimestamp());
+        while (true) {
+            Partition partition = partitionFor(start);
+            if (partition == null) {
+                expiredRecords.increment();
+                return;
+            }
+            partition.add(key, record);
+            // Dropped while we added: the record went with it, so look again
+            if (partitions.get(start) == partition) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public List<TransactionRecordDTO> findByAccount(Long accountNumber) {
+        List<TransactionRecordDTO> records = new ArrayList<>();
+        for (Partition partition : partitions.values()) {
+            NavigableMap<EntryKey, TransactionRecordDTO> entries = partition.byAccount.get(accountNumber);
+            if (entries != null) {
+                records.addAll(entries.values());
+            }
+        }
+        return records;
+    }
+
+    @Override
+    public HistoryPage findByAccount(Long accountNumber, HistoryPage.Cursor before, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        EntryKey bound = before == null ? null : new EntryKey(before.getTimestamp(), before.getSequence());
+        NavigableMap<Long, Partition> candidates = bound == null ? partitions
+                : partitions.headMap(partitionStart(bound.timestamp), true);
+
+        List<TransactionRecordDTO> page = new ArrayList<>(Math.min(limit, 64));
+        EntryKey last = null;
+        for (Partition partition : candidates.descendingMap().values()) {
+            NavigableMap<EntryKey, TransactionRecordDTO> entries = partition.byAccount.get(accountNumber);
+            if (entries == null) {
+                continue;
+            }
+            NavigableMap<EntryKey, TransactionRecordDTO> older = bound == null ? entries
+                    : entries.headMap(bound, false);
+            for (Map.Entry<EntryKey, TransactionRecordDTO> entry : older.descendingMap().entrySet()) {
+                page.add(entry.getValue());
+                last = entry.getKey();
+                if (page.size() == limit) {
+                    return new HistoryPage(page, new HistoryPage.Cursor(last.timestamp, last.sequence));
+                }
+            }
+        }
+        return new HistoryPage(page, null);
+    }
+
+    @Override
+    public List<TransactionRecordDTO> findByAccountBetween(Long accountNumber, Instant from, Instant to) {
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("Range bounds are required");
+        }
+        List<TransactionRecordDTO> records = new ArrayList<>();
+        if (!from.isBefore(to)) {
+            return records;
+        }
+        EntryKey low = new EntryKey(from, Long.MIN_VALUE);
+        EntryKey high = new EntryKey(to, Long.MIN_VALUE);
+        for (Partition partition : partitions.subMap(partitionStart(from), true, partitionStart(to), true).values()) {
+            NavigableMap<EntryKey, TransactionRecordDTO> entries = partition.byAccount.get(accountNumber);
+            if (entries != null) {
+                records.addAll(entries.subMap(low, true, high, false).values());
+            }
+        }
+        return records;
+    }
+
+    /**
+     * @return Every retained record, oldest first.
+     */
+    @Override
+    public List<TransactionRecordDTO> findAll() {
+        List<TransactionRecordDTO> records = new ArrayList<>();
+        for (Partition partition : partitions.values()) {
+            records.addAll(partition.all.values());
+        }
+        return records;
+    }
+
+    @Override
+    public void forEachRecord(Consumer<? super TransactionRecordDTO> visitor) {
+        for (Partition partition : partitions.values()) {
+            partition.all.values().forEach(visitor);
+        }
+    }
+
+    /**
+     * Drops every partition that ends at or before the cutoff. Records in the
+     * partition straddling the cutoff are kept until it fully ages out.
+     */
+    public void removeOlderThan(Instant cutoff) {
+        partitions.headMap(lastExpiredStart(cutoff.toEpochMilli()), true).clear();
+    }
+
+    /**
+     * @return Time partitions currently held.
+     */
+    public int partitionCount() {
+        return partitions.size();
+    }
+
+    /**
+     * @return Records not kept because they were older than the retention.
+     */
+    public long getExpiredRecords() {
+        return expiredRecords.sum();
+    }
+
+    /**
+     * @return The partition starting at {@code start}, or null if it is
+     *         already beyond the retention.
+     */
+    private Partition partitionFor(long start) {
+        Partition partition = partitions.get(start);
+        if (partition != null) {
+            return partition;
+        }
+        if (isExpired(start)) {
+            return null;
+        }
+        Partition created = new Partition();
+        Partition existing = partitions.putIfAbsent(start, created);
+        if (existing != null) {
+            return existing;
+        }
+        if (retentionMillis >= 0) {
+            // Measured from the newest partition, so a late record cannot expire recent days
+            partitions.headMap(lastExpiredStart(), true).clear();
+        }
+        return created;
+    }
+
+    private boolean isExpired(long start) {
+        return retentionMillis >= 0 && start <= lastExpiredStart();
+    }
+
+    private long lastExpiredStart() {
+        Map.Entry<Long, Partition> newest = partitions.lastEntry();
+        return newest == null ? Long.MIN_VALUE
+                : lastExpiredStart(newest.getKey() + partitionMillis - retentionMillis);
+    }
+
+    // Start of the newest partition that ends at or before the cutoff
+    private long lastExpiredStart(long cutoffMillis) {
+        return Math.floorDiv(cutoffMillis, partitionMillis) * partitionMillis - partitionMillis;
+    }
+
+    private long partitionStart(Instant timestamp) {
+        return Math.floorDiv(timestamp.toEpochMilli(), partitionMillis) * partitionMillis;
+    }
+
+    private static final class Partition {
+        final ConcurrentSkipListMap<EntryKey, TransactionRecordDTO> all = new ConcurrentSkipListMap<>();
+        final Map<Long, ConcurrentSkipListMap<EntryKey, TransactionRecordDTO>> byAccount = new ConcurrentHashMap<>();
+
+        void add(EntryKey key, TransactionRecordDTO record) {
+            all.put(key, record);
+            index(record.getAccountNumber(), key, record);
+            if (record.getTargetAccountNumber() != null
+                    && !record.getTargetAccountNumber().equals(record.getAccountNumber())) {
+                index(record.getTargetAccountNumber(), key, record);
+            }
+        }
+
+        private void index(Long accountNumber, EntryKey key, TransactionRecordDTO record) {
+            if (accountNumber != null) {
+                byAccount.computeIfAbsent(accountNumber, k -> new ConcurrentSkipListMap<>()).put(key, record);
+            }
+        }
     }
 
+    /**
+     * Orders by timestamp; the store-wide sequence keeps same-instant records
+     * distinct and in arrival order.
+     */
+    private static final class EntryKey implements Comparable<EntryKey> {
+        final Instant timestamp;
+        final long sequence;
+
+        EntryKey(Instant timestamp, long sequence) {
+            this.timestamp = timestamp;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(EntryKey other) {
+            int byTime = timestamp.compareTo(other.timestamp);
+            return byTime != 0 ? byTime : Long.compare(sequence, other.sequence);
+        }
+    }
 }
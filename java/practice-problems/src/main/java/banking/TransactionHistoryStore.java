@@ -1,5 +1,17 @@
 package banking;
 
+import java.util.List;
+
 public interface TransactionHistoryStore {
     public void logTransaction(TransactionRecord record);
+
+    /**
+     * Stores a batch in one go (one lock, one round trip). The list is
+     * reused by the caller: copy, don't keep it.
+     */
+    default void logTransactions(List<TransactionRecord> records) {
+        for (TransactionRecord record : records) {
+            logTransaction(record);
+        }
+    }
 }
@@ -9,27 +9,40 @@ public class TransactionRecord {
     private final TransactionType type;
     private final Instant timestamp;
     private final boolean success;
+    private final long latencyNanos; // time the operation took; 0 if not measured
 
     // For credit/debit
     public TransactionRecord(Long accountNumber, double amount,
             TransactionType type, boolean success) {
+        this(accountNumber, amount, type, success, 0);
+    }
+
+    public TransactionRecord(Long accountNumber, double amount,
+            TransactionType type, boolean success, long latencyNanos) {
         this.accountNumber = accountNumber;
         this.targetAccountNumber = null;
         this.amount = amount;
         this.type = type;
         this.timestamp = Instant.now();
         this.success = success;
+        this.latencyNanos = latencyNanos;
     }
 
     // For transfers
     public TransactionRecord(Long sourceAccount, Long targetAccount,
             double amount, boolean success) {
+        this(sourceAccount, targetAccount, amount, success, 0);
+    }
+
+    public TransactionRecord(Long sourceAccount, Long targetAccount,
+            double amount, boolean success, long latencyNanos) {
         this.accountNumber = sourceAccount;
         this.targetAccountNumber = targetAccount;
         this.amount = amount;
         this.type = TransactionType.TRANSFER;
         this.timestamp = Instant.now();
         this.success = success;
+        this.latencyNanos = latencyNanos;
     }
 
     // getters
@@ -56,4 +69,8 @@ public class TransactionRecord {
     public boolean isSuccess() {
         return success;
     }
+
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
 }
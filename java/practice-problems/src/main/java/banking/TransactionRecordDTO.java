@@ -9,15 +9,28 @@ public class TransactionRecordDTO {
     private final TransactionType type;
     private final Instant timestamp;
     private final boolean success;
+    private final long latencyNanos;
 
     public TransactionRecordDTO(Long accountNumber, Long targetAccountNumber, double amount,
             TransactionType type, Instant timestamp, boolean success) {
+        this(accountNumber, targetAccountNumber, amount, type, timestamp, success, 0);
+    }
+
+    public TransactionRecordDTO(Long accountNumber, Long targetAccountNumber, double amount,
+            TransactionType type, Instant timestamp, boolean success, long latencyNanos) {
         this.accountNumber = accountNumber;
         this.targetAccountNumber = targetAccountNumber;
         this.amount = amount;
         this.type = type;
         this.timestamp = timestamp;
         this.success = success;
+        this.latencyNanos = latencyNanos;
+    }
+
+    public static TransactionRecordDTO from(TransactionRecord record) {
+        return new TransactionRecordDTO(record.getAccountNumber(), record.getTargetAccountNumber(),
+                record.getAmount(), record.getType(), record.getTimestamp(), record.isSuccess(),
+                record.getLatencyNanos());
     }
 
     public Long getAccountNumber() {
@@ -43,4 +56,8 @@ public class TransactionRecordDTO {
     public boolean isSuccess() {
         return success;
     }
+
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
 }
@@ -1,9 +1,53 @@
 package banking;
 
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface TransactionRecordDao {
     void save(TransactionRecordDTO record);
+
+    /**
+     * Stores a batch; durable stores send it in as few round trips as they can.
+     */
+    default void saveAll(List<TransactionRecordDTO> records) {
+        for (TransactionRecordDTO record : records) {
+            save(record);
+        }
+    }
+
+    /**
+     * @return Every record the account sent or received, oldest first.
+     */
     List<TransactionRecordDTO> findByAccount(Long accountNumber);
-    List<TransactionRecordDTO> findAll();
+
+    /**
+     * "Last N transactions": one page of the account's history, newest first.
+     *
+     * @param before Cursor from the previous page, or null for the newest.
+     * @param limit  Page size.
+     */
+    HistoryPage findByAccount(Long accountNumber, HistoryPage.Cursor before, int limit);
+
+    /**
+     * @return The account's records with from <= timestamp < to, oldest first.
+     */
+    List<TransactionRecordDTO> findByAccountBetween(Long accountNumber, Instant from, Instant to);
+
+    /**
+     * Visits every record, one at a time, without holding them all in memory.
+     * Use this for exports and reconciliation.
+     */
+    void forEachRecord(Consumer<? super TransactionRecordDTO> visitor);
+
+    /**
+     * Collects every record into one list. Only for small stores and tests —
+     * on a real history this is the whole table on the heap.
+     */
+    default List<TransactionRecordDTO> findAll() {
+        List<TransactionRecordDTO> records = new ArrayList<>();
+        forEachRecord(records::add);
+        return records;
+    }
 }
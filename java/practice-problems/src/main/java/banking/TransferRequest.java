@@ -0,0 +1,29 @@
+package banking;
+
+/**
+ * One entry of a batch transfer ({@link BankInterface#transferBatch}).
+ * Amount is in the source account's currency.
+ */
+public class TransferRequest {
+    private final Long sourceAccountNumber;
+    private final Long destinationAccountNumber;
+    private final double amount;
+
+    public TransferRequest(Long sourceAccountNumber, Long destinationAccountNumber, double amount) {
+        this.sourceAccountNumber = sourceAccountNumber;
+        this.destinationAccountNumber = destinationAccountNumber;
+        this.amount = amount;
+    }
+
+    public Long getSourceAccountNumber() {
+        return sourceAccountNumber;
+    }
+
+    public Long getDestinationAccountNumber() {
+        return destinationAccountNumber;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+}
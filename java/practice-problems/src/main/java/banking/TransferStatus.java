@@ -0,0 +1,16 @@
+package banking;
+
+/**
+ * Outcome of one transfer in a batch.
+ */
+public enum TransferStatus {
+    COMPLETED,
+    INSUFFICIENT_FUNDS,
+    ACCOUNT_NOT_FOUND,
+    INVALID_REQUEST, // non-positive amount or missing account number
+    FAILED; // credit failed and the debit was rolled back
+
+    public boolean isSuccess() {
+        return this == COMPLETED;
+    }
+}
@@ -27,6 +27,13 @@ public class Bank implements BankInterface {
     // FIX 2: Instead of checking balance in Java, use a single atomic SQL:
     // UPDATE accounts SET balance = balance - 400 WHERE balance >= 400
     // The database handles concurrency — no Java-level locking needed.
+    //
+    // VIRTUAL THREADS:
+    // These methods used to be synchronized on the Bank. That serialised every
+    // account behind one monitor, and a virtual thread blocked in JDBC while
+    // holding a monitor pins its carrier thread. Consistency now lives where
+    // the data is: per-account locks in InMemoryTransactionService, a single
+    // atomic UPDATE/transaction in PostgresTransactionService.
     private final AccountDao accountDao;
     private final AuthorisationService authorisationService;
     private final TransactionService transactionService;
@@ -70,20 +77,20 @@ public class Bank implements BankInterface {
         return authorisationService.authenticate(accountNumber, pin);
     }
 
-    public synchronized double getBalance(Long accountNumber) {
+    public double getBalance(Long accountNumber) {
         AccountDTO account = getAccount(accountNumber);
         return account == null ? -1 : account.getBalance();
     }
 
-    public synchronized void credit(Long accountNumber, double amount) {
+    public void credit(Long accountNumber, double amount) {
         transactionService.credit(accountNumber, amount);
     }
 
-    public synchronized boolean debit(Long accountNumber, double amount) {
+    public boolean debit(Long accountNumber, double amount) {
         return transactionService.debit(accountNumber, amount);
     }
 
-    public synchronized boolean transfer(Long sourceAccount, Long destinationAccount, double amount) {
+    public boolean transfer(Long sourceAccount, Long destinationAccount, double amount) {
         return transactionService.transfer(sourceAccount, destinationAccount, amount);
     }
 }
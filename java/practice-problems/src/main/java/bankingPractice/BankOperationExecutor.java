@@ -0,0 +1,65 @@
+package bankingPractice;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs each bank operation on its own virtual thread.
+ *
+ * With PostgresTransactionService every credit/debit/transfer blocks on
+ * JDBC. On platform threads the number of in-flight operations is capped by
+ * the thread pool; on virtual threads a blocked operation parks and frees
+ * its carrier, so concurrency is limited by the DataSource pool instead.
+ *
+ * Usage:
+ *   try (BankOperationExecutor operations = new BankOperationExecutor(bank)) {
+ *       CompletableFuture<Boolean> moved = operations.transfer(from, to, 25.0);
+ *       ...
+ *   } // waits for operations still in flight
+ */
+public class BankOperationExecutor implements AutoCloseable {
+
+    private final BankInterface bank;
+    private final ExecutorService executor;
+
+    public BankOperationExecutor(BankInterface bank) {
+        this(bank, Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("bank-op-", 0).factory()));
+    }
+
+    /**
+     * @param executor Runs the operations; owned and closed by this instance.
+     */
+    public BankOperationExecutor(BankInterface bank, ExecutorService executor) {
+        if (bank == null || executor == null) {
+            throw new IllegalArgumentException("Bank and executor are required");
+        }
+        this.bank = bank;
+        this.executor = executor;
+    }
+
+    public CompletableFuture<Double> getBalance(Long accountNumber) {
+        return CompletableFuture.supplyAsync(() -> bank.getBalance(accountNumber), executor);
+    }
+
+    public CompletableFuture<Void> credit(Long accountNumber, double amount) {
+        return CompletableFuture.runAsync(() -> bank.credit(accountNumber, amount), executor);
+    }
+
+    public CompletableFuture<Boolean> debit(Long accountNumber, double amount) {
+        return CompletableFuture.supplyAsync(() -> bank.debit(accountNumber, amount), executor);
+    }
+
+    public CompletableFuture<Boolean> transfer(Long sourceAccount, Long destinationAccount, double amount) {
+        return CompletableFuture.supplyAsync(
+                () -> bank.transfer(sourceAccount, destinationAccount, amount), executor);
+    }
+
+    /**
+     * Stops accepting operations and waits for those already submitted.
+     */
+    @Override
+    public void close() {
+        executor.close();
+    }
+}
@@ -6,8 +6,11 @@ import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * Simple in-memory transaction service backed by AccountDao. Synchronization is
- * coarse-grained and only safe within a single JVM.
+ * Simple in-memory transaction service backed by AccountDao. Every balance
+ * change takes the per-account ReentrantLock, so credit/debit and transfer on
+ * the same account exclude each other while different accounts proceed in
+ * parallel. j.u.c. locks rather than synchronized keep virtual threads from
+ * pinning their carrier while they wait. Only safe within a single JVM.
  */
 public class InMemoryTransactionService implements TransactionService {
 
@@ -19,27 +22,46 @@ public class InMemoryTransactionService implements TransactionService {
     }
 
     @Override
-    public synchronized void credit(Long accountNumber, double amount) {
-        AccountDTO account = accountDao.findById(accountNumber);
-        if (account == null || amount <= 0) {
+    public void credit(Long accountNumber, double amount) {
+        if (accountNumber == null || amount <= 0) {
             return;
         }
-        accountDao.save(new AccountDTO(accountNumber, account.getHolderName(), account.getPin(),
-                account.getBalance() + amount));
+        Lock accountLock = lockFor(accountNumber);
+        accountLock.lock();
+        try {
+            AccountDTO account = accountDao.findById(accountNumber);
+            if (account == null) {
+                return;
+            }
+            accountDao.save(new AccountDTO(accountNumber, account.getHolderName(), account.getPin(),
+                    account.getBalance() + amount));
+        } finally {
+            accountLock.unlock();
+        }
     }
 
     @Override
-    public synchronized boolean debit(Long accountNumber, double amount) {
-        AccountDTO account = accountDao.findById(accountNumber);
-        if (account == null || amount <= 0) {
+    public boolean debit(Long accountNumber, double amount) {
+        if (accountNumber == null || amount <= 0) {
             return false;
         }
-        if (account.getBalance() < amount) {
-            return false;
+        Lock accountLock = lockFor(accountNumber);
+        accountLock.lock();
+        try {
+            AccountDTO account = accountDao.findById(accountNumber);
+            if (account == null || account.getBalance() < amount) {
+                return false;
+            }
+            accountDao.save(new AccountDTO(accountNumber, account.getHolderName(), account.getPin(),
+                    account.getBalance() - amount));
+            return true;
+        } finally {
+            accountLock.unlock();
         }
-        accountDao.save(new AccountDTO(accountNumber, account.getHolderName(), account.getPin(),
-                account.getBalance() - amount));
-        return true;
+    }
+
+    private Lock lockFor(Long accountNumber) {
+        return accountLocks.computeIfAbsent(accountNumber, k -> new ReentrantLock());
     }
 
     @Override
@@ -47,13 +69,12 @@ public class InMemoryTransactionService implements TransactionService {
         if (sourceAccount == null || destinationAccount == null || amount <= 0) {
             return false;
         }
-
         // Acquire per-account locks in deterministic order to avoid deadlock
         Long first = sourceAccount < destinationAccount ? sourceAccount : destinationAccount;
         Long second = sourceAccount < destinationAccount ? destinationAccount : sourceAccount;
 
-        Lock firstLock = accountLocks.computeIfAbsent(first, k -> new ReentrantLock());
-        Lock secondLock = accountLocks.computeIfAbsent(second, k -> new ReentrantLock());
+        Lock firstLock = lockFor(first);
+        Lock secondLock = lockFor(second);
 
         firstLock.lock();
         secondLock.lock();
@@ -65,6 +86,12 @@ public class InMemoryTransactionService implements TransactionService {
             if (source == null || dest == null || source.getBalance() < amount) {
                 return false;
             }
+            // Same outcome as PostgresTransactionService's debit+credit of one
+            // row: succeeds if the funds are there, balance unchanged. Saving
+            // both legs here would let the stale credit overwrite the debit.
+            if (sourceAccount.equals(destinationAccount)) {
+                return true;
+            }
 
             // Save originals for rollback in case second write fails
             AccountDTO originalSource = source;
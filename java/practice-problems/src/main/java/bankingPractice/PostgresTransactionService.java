@@ -6,6 +6,13 @@ import java.sql.SQLException;
 
 import javax.sql.DataSource;
 
+/**
+ * Balance changes as single SQL statements (credit/debit) or one database
+ * transaction (transfer). Postgres row locks are the only locking: there is
+ * no Java monitor on this path, so a virtual thread blocked on the network
+ * unmounts from its carrier instead of pinning it. Keep it that way —
+ * wrapping these calls in synchronized brings the pinning back.
+ */
 public class PostgresTransactionService implements TransactionService {
 
     private final DataSource dataSource;
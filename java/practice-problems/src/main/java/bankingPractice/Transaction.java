@@ -15,6 +15,7 @@ import banking.TransactionInterface;
 public class Transaction implements TransactionInterface {
     private Long accountNumber;
     private Bank bank;
+    private final long timestamp = System.currentTimeMillis();
 
     /**
      * @param bank          The bank where the account is housed.
@@ -37,4 +38,8 @@ public class Transaction implements TransactionInterface {
     public boolean debit(double amount) {
         return bank.debit(accountNumber, amount);
     }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
 }
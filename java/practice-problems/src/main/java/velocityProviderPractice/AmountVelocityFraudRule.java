@@ -0,0 +1,52 @@
+package practice;
+
+import practice.Solution.VelocityProvider;
+import practice.Solution.WindowAggregate;
+import java.time.Duration;
+
+/**
+ * Blocks a payment when the card's spend in the window, including this
+ * payment, would exceed a limit. e.g. "more than 5,000.00 on this card in 24h"
+ * is {@code new AmountVelocityFraudRule(provider, Duration.ofHours(24), 500_000)}.
+ *
+ * Amounts are compared in minor units and answered from the same window
+ * lookup as the count (see {@link VelocityProvider#getCardUsageAggregate}).
+ */
+public class AmountVelocityFraudRule implements MerchantRule {
+
+    private final VelocityProvider velocityProvider;
+    private final Duration window;
+    private final long maxAmountInWindow;
+
+    public AmountVelocityFraudRule(VelocityProvider velocityProvider, Duration window, long maxAmountInWindow) {
+        if (maxAmountInWindow <= 0) {
+            throw new IllegalArgumentException("Amount limit must be positive");
+        }
+        this.velocityProvider = velocityProvider;
+        this.window = window;
+        this.maxAmountInWindow = maxAmountInWindow;
+    }
+
+    @Override
+    public RuleCheckResult checkRule(Payment payment) {
+        return evaluate(payment, velocityProvider.getCardUsageAggregate(payment, window));
+    }
+
+    @Override
+    public RuleCheckResult checkRule(Payment payment, RuleEvaluationContext context) {
+        return evaluate(payment, context.getCardUsageAggregate(velocityProvider, payment, window));
+    }
+
+    @Override
+    public RuleCost getCost() {
+        return velocityProvider.isRemote() ? RuleCost.REMOTE : RuleCost.LOCAL;
+    }
+
+    private RuleCheckResult evaluate(Payment payment, WindowAggregate aggregate) {
+        long projected = aggregate.getAmountSum() + payment.getAmountMinorUnits();
+
+        return projected > maxAmountInWindow
+                ? RuleCheckResult.builder().allowed(false).reason("Amount velocity exceeded").build()
+                : RuleCheckResult.builder().allowed(true).build();
+    }
+}
@@ -0,0 +1,103 @@
+package practice;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import practice.Solution.VelocityProvider;
+import practice.Solution.WindowAggregate;
+
+/**
+ * Non-blocking counterpart of {@link VelocityProvider}.
+ *
+ * Why:
+ *   With Redis or Postgres behind the provider every lookup parks the
+ *   gateway thread for 0.5–5ms of network time. Returning a future lets
+ *   the caller fire the lookup, do other work (or other lookups), and only
+ *   wait when it actually needs the number.
+ *
+ * Where the waiting happens:
+ *   VelocityProviderImpl       → storage async methods (see
+ *                                {@link Solution.TimestampStorage})
+ *     in-memory                → completes on the caller thread (~1μs)
+ *     RedisTimestampStorage    → pipelined on a shared connection
+ *     PostgresTimestampStorage → JDBC call on a virtual thread
+ *   {@link #offload}           → any blocking provider on a given executor
+ *   {@link #onVirtualThreads}  → same, one virtual thread per call
+ *
+ * Completion:
+ *   Futures may complete on a storage I/O thread. Keep dependent stages
+ *   cheap, or use the *Async variants of CompletableFuture with your own
+ *   executor for anything that blocks.
+ *
+ * Invalid input (null payment, non-positive duration) throws
+ * IllegalArgumentException immediately from VelocityProviderImpl — a
+ * programming error should fail at the call site, not inside a future
+ * nobody joins. The offload adapter validates on the executor and reports
+ * it through the future instead.
+ */
+public interface AsyncVelocityProvider {
+
+    /**
+     * Async {@link VelocityProvider#getCardUsageCount(Payment, Duration)}.
+     */
+    CompletableFuture<Integer> getCardUsageCountAsync(Payment payment, Duration duration);
+
+    /**
+     * Async {@link VelocityProvider#getCardUsageAggregate(Payment, Duration)}.
+     */
+    CompletableFuture<WindowAggregate> getCardUsageAggregateAsync(Payment payment, Duration duration);
+
+    /**
+     * Async {@link VelocityProvider#registerPayment(Payment)}. The future
+     * completes once the payment is visible to subsequent lookups.
+     */
+    CompletableFuture<Void> registerPaymentAsync(Payment payment);
+
+    /**
+     * Adapts a blocking provider by running each call on {@code executor}.
+     * The blocking call still happens, just not on the caller's thread —
+     * use it for providers whose storage has no native async path.
+     */
+    static AsyncVelocityProvider offload(VelocityProvider provider, Executor executor) {
+        return new OffloadingVelocityProvider(provider, executor);
+    }
+
+    /**
+     * {@link #offload} onto one virtual thread per call: blocking provider
+     * calls park cheaply instead of holding a platform thread each.
+     */
+    static AsyncVelocityProvider onVirtualThreads(VelocityProvider provider) {
+        return offload(provider, Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("velocity-", 0).factory()));
+    }
+
+    final class OffloadingVelocityProvider implements AsyncVelocityProvider {
+        private final VelocityProvider provider;
+        private final Executor executor;
+
+        OffloadingVelocityProvider(VelocityProvider provider, Executor executor) {
+            if (provider == null || executor == null) {
+                throw new IllegalArgumentException("Provider and executor are required");
+            }
+            this.provider = provider;
+            this.executor = executor;
+        }
+
+        @Override
+        public CompletableFuture<Integer> getCardUsageCountAsync(Payment payment, Duration duration) {
+            return CompletableFuture.supplyAsync(() -> provider.getCardUsageCount(payment, duration), executor);
+        }
+
+        @Override
+        public CompletableFuture<WindowAggregate> getCardUsageAggregateAsync(Payment payment, Duration duration) {
+            return CompletableFuture.supplyAsync(() -> provider.getCardUsageAggregate(payment, duration), executor);
+        }
+
+        @Override
+        public CompletableFuture<Void> registerPaymentAsync(Payment payment) {
+            return CompletableFuture.runAsync(() -> provider.registerPayment(payment), executor);
+        }
+    }
+}
@@ -0,0 +1,400 @@
+package practice;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import practice.Solution.BucketVisitor;
+import practice.Solution.TimestampBucket;
+import practice.Solution.TimestampStorage;
+import practice.Solution.WindowAggregate;
+
+/**
+ * Puts a hard ceiling on an in-memory TimestampStorage.
+ *
+ * Problem:
+ *   Memory is retention × payment volume. A traffic surge (card-testing
+ *   attack, flash sale) multiplies the volume, and the risk service OOMs —
+ *   taking every rule down, not just velocity.
+ *
+ * Budget:
+ *   maxTrackedCards    cards with exact history
+ *   maxRetainedEntries payments held across all of them
+ *   An insert that pushes either over the limit triggers shedding of the
+ *   least-recently-active cards (insert or lookup) until both are back
+ *   under 90% — the same amortised trim as MerchantVelocityPool.
+ *
+ * What happens to a shed card (OverBudgetPolicy):
+ *   SHED_LEAST_RECENT  history dropped. Cheapest; the card's counts restart
+ *                      from zero (fails OPEN for that card).
+ *   DOWNSAMPLE         history folded into per-slice totals (default 10
+ *                      minutes), stored as compressed TimestampBlocks —
+ *                      a few bytes per slice instead of ~90 per payment.
+ *                      Lookups add every slice that overlaps the window, so
+ *                      edges round outward: counts can only be too HIGH
+ *                      (fails CLOSED). Capped at maxTrackedCards cards;
+ *                      beyond that, cards are shed outright.
+ *   A shed card that pays again starts a fresh exact history.
+ *
+ * Accounting:
+ *   Inserts and evictions keep the entry count exact; the delegate's own
+ *   cleanup does not report what it dropped, so after a sweep the counts
+ *   run high. They are reconciled lazily: only when an insert finds the
+ *   budget exceeded is the delegate scanned, and shedding starts only if
+ *   the reconciled counts are still over. Many sweeps, at most one scan
+ *   per over-budget episode.
+ *
+ *   Reconciling applies per-card deltas (scanned - counted before the
+ *   scan, never positive) rather than overwriting the counters, so inserts
+ *   racing the scan are never lost from the count.
+ *
+ * Applies to in-memory stores that support eviction (evictCard and
+ * forEachBucket; checked at construction). Remote stores have their own
+ * memory policy (Redis maxmemory, Postgres disk).
+ */
+public class BudgetedTimestampStorage implements TimestampStorage, AutoCloseable {
+
+    public enum OverBudgetPolicy {
+        SHED_LEAST_RECENT,
+        DOWNSAMPLE
+    }
+
+    public static final Duration DEFAULT_DOWNSAMPLE_SLICE = Duration.ofMinutes(10);
+
+    private final TimestampStorage delegate;
+    private final long maxRetainedEntries;
+    private final int maxTrackedCards;
+    private final OverBudgetPolicy policy;
+    private final long sliceMillis;
+
+    private final Map<String, CardUsage> usage = new ConcurrentHashMap<>();
+    private final LongAdder retainedEntries = new LongAdder();
+    private final Map<String, List<TimestampBlock>> downsampled = new ConcurrentHashMap<>();
+    // Held while shedding, reconciling or evicting: all three move counts
+    private final ReentrantLock shedLock = new ReentrantLock();
+    private final VelocityStorageMetrics metrics =
+            new VelocityStorageMetrics(usage::size, retainedEntries::sum, downsampled::size);
+    // Set by a cleanup sweep, cleared by the reconcile that follows it
+    private volatile boolean sweptSinceReconcile;
+
+    public BudgetedTimestampStorage(TimestampStorage delegate, long maxRetainedEntries, int maxTrackedCards,
+            OverBudgetPolicy policy) {
+        this(delegate, maxRetainedEntries, maxTrackedCards, policy, DEFAULT_DOWNSAMPLE_SLICE);
+    }
+
+    public BudgetedTimestampStorage(TimestampStorage delegate, long maxRetainedEntries, int maxTrackedCards,
+            OverBudgetPolicy policy, Duration downsampleSlice) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Delegate storage is required");
+        }
+        if (delegate.isRemote()) {
+            throw new IllegalArgumentException("Memory budgets apply to in-memory storages only");
+        }
+        if (!delegate.supportsEviction()) {
+            throw new IllegalArgumentException(
+                    "Memory budgets need a storage that supports eviction: " + delegate.getClass().getSimpleName());
+        }
+        if (maxRetainedEntries <= 0 || maxTrackedCards <= 0) {
+            throw new IllegalArgumentException("Budget limits must be positive");
+        }
+        if (policy == null) {
+            throw new IllegalArgumentException("Over-budget policy is required");
+        }
+        if (downsampleSlice == null || downsampleSlice.isNegative() || downsampleSlice.isZero()) {
+            throw new IllegalArgumentException("Downsample slice must be positive");
+        }
+        this.delegate = delegate;
+        this.maxRetainedEntries = maxRetainedEntries;
+        this.maxTrackedCards = maxTrackedCards;
+        this.policy = policy;
+        this.sliceMillis = downsampleSlice.toMillis();
+    }
+
+    public VelocityStorageMetrics metrics() {
+        return metrics;
+    }
+
+    @Override
+    public void addTimestamp(String cardHash, Instant timestamp, long amount) {
+        delegate.addTimestamp(cardHash, timestamp, amount);
+
+        // Counted inside compute: a reconcile dropping an emptied card cannot
+        // unlink it between our lookup and our increment
+        usage.compute(cardHash, (k, card) -> {
+            CardUsage counted = card == null ? new CardUsage() : card;
+            counted.lastActive = System.nanoTime();
+            counted.entries.incrementAndGet();
+            return counted;
+        });
+        retainedEntries.increment();
+
+        if (overBudget()) {
+            metrics.budgetExceeded.increment();
+            shed();
+        }
+    }
+
+    @Override
+    public int countInWindow(String cardHash, Instant queryTime, Duration duration) {
+        touch(cardHash);
+        int count = delegate.countInWindow(cardHash, queryTime, duration);
+        List<TimestampBlock> coarse = downsampled.get(cardHash);
+        if (coarse == null) {
+            return count;
+        }
+        return count + coarseTotals(coarse, queryTime, duration).count;
+    }
+
+    @Override
+    public WindowAggregate aggregateInWindow(String cardHash, Instant queryTime, Duration duration) {
+        touch(cardHash);
+        WindowAggregate exact = delegate.aggregateInWindow(cardHash, queryTime, duration);
+        List<TimestampBlock> coarse = downsampled.get(cardHash);
+        if (coarse == null) {
+            return exact;
+        }
+        TimestampBlock.WindowTotals totals = coarseTotals(coarse, queryTime, duration);
+        totals.add(exact.getCount(), exact.getAmountSum(), exact.getMaxAmount());
+        return totals.toAggregate();
+    }
+
+    @Override
+    public void removeOlderThan(Instant cutoffTime) {
+        Instant oldestBefore = delegate.getOldestTimestamp();
+        delegate.removeOlderThan(cutoffTime);
+
+        // Slices straddling the cutoff still hold in-retention payments
+        long firstRetainedSlice = sliceStart(cutoffTime.toEpochMilli());
+        for (String cardHash : downsampled.keySet()) {
+            downsampled.computeIfPresent(cardHash, (k, blocks) -> {
+                List<TimestampBlock> kept = new ArrayList<>(blocks.size());
+                for (TimestampBlock block : blocks) {
+                    TimestampBlock tail = block.retainFrom(firstRetainedSlice);
+                    if (tail != null) {
+                        kept.add(tail);
+                    }
+                }
+                return kept.isEmpty() ? null : List.copyOf(kept);
+            });
+        }
+
+        // Only a sweep that actually ran moves the oldest timestamp
+        Instant oldestAfter = delegate.getOldestTimestamp();
+        if (oldestBefore != null && !oldestBefore.equals(oldestAfter)) {
+            sweptSinceReconcile = true;
+        }
+    }
+
+    @Override
+    public Instant getOldestTimestamp() {
+        return delegate.getOldestTimestamp();
+    }
+
+    /**
+     * Visits exact history only; downsampled cards are not exported.
+     */
+    @Override
+    public void forEachBucket(BucketVisitor visitor) {
+        delegate.forEachBucket(visitor);
+    }
+
+    @Override
+    public boolean supportsEviction() {
+        return true;
+    }
+
+    @Override
+    public void evictCard(String cardHash, BucketVisitor evicted) {
+        shedLock.lock();
+        try {
+            usage.remove(cardHash);
+            long[] removed = new long[1];
+            delegate.evictCard(cardHash, (c, millis, count, amountSum, maxAmount) -> {
+                removed[0] += count;
+                if (evicted != null) {
+                    evicted.visit(c, millis, count, amountSum, maxAmount);
+                }
+            });
+            retainedEntries.add(-removed[0]);
+            downsampled.remove(cardHash);
+        } finally {
+            shedLock.unlock();
+        }
+    }
+
+    /**
+     * Closes the delegate if it holds resources (e.g. a seal thread).
+     */
+    @Override
+    public void close() {
+        if (delegate instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to close timestamp storage", e);
+            }
+        }
+    }
+
+    private boolean overBudget() {
+        return usage.size() > maxTrackedCards || retainedEntries.sum() > maxRetainedEntries;
+    }
+
+    private void touch(String cardHash) {
+        CardUsage card = usage.get(cardHash);
+        if (card != null) {
+            card.lastActive = System.nanoTime();
+        }
+    }
+
+    private void shed() {
+        // One shedder at a time; everyone else keeps inserting
+        if (!shedLock.tryLock()) {
+            return;
+        }
+        try {
+            if (sweptSinceReconcile) {
+                reconcile();
+            }
+            if (!overBudget()) {
+                return; // another thread already trimmed, or a sweep made room
+            }
+            int targetCards = (int) (maxTrackedCards * 0.9);
+            long targetEntries = (long) (maxRetainedEntries * 0.9);
+
+            // Snapshot access times first: lastActive keeps changing under
+            // concurrent traffic, which would break the sort's comparator contract
+            List<EvictionCandidate> candidates = new ArrayList<>(usage.size());
+            for (Map.Entry<String, CardUsage> entry : usage.entrySet()) {
+                candidates.add(new EvictionCandidate(entry.getKey(), entry.getValue()));
+            }
+            candidates.sort(Comparator.comparingLong(c -> c.lastActive));
+
+            for (EvictionCandidate candidate : candidates) {
+                if (usage.size() <= targetCards && retainedEntries.sum() <= targetEntries) {
+                    break;
+                }
+                evict(candidate.cardHash, candidate.usage);
+            }
+        } finally {
+            shedLock.unlock();
+        }
+    }
+
+    private void evict(String cardHash, CardUsage card) {
+        if (!usage.remove(cardHash, card)) {
+            return;
+        }
+        TreeMap<Long, TimestampBucket> slices = policy == OverBudgetPolicy.DOWNSAMPLE ? new TreeMap<>() : null;
+        long[] removed = new long[1];
+        delegate.evictCard(cardHash, (c, millis, count, amountSum, maxAmount) -> {
+            removed[0] += count;
+            if (slices != null) {
+                slices.merge(sliceStart(millis), TimestampBucket.of(count, amountSum, maxAmount),
+                        TimestampBucket::plus);
+            }
+        });
+        retainedEntries.add(-removed[0]);
+
+        if (slices != null && !slices.isEmpty()
+                && (downsampled.size() < maxTrackedCards || downsampled.containsKey(cardHash))) {
+            downsampled.compute(cardHash, (k, blocks) -> {
+                if (blocks != null) {
+                    for (TimestampBlock block : blocks) {
+                        block.decodeInto(slices);
+                    }
+                }
+                return List.copyOf(TimestampBlock.encode(slices));
+            });
+            metrics.cardsDownsampled.increment();
+        } else {
+            metrics.cardsShed.increment();
+            metrics.entriesShed.add(removed[0]);
+        }
+    }
+
+    private TimestampBlock.WindowTotals coarseTotals(List<TimestampBlock> coarse, Instant queryTime,
+            Duration duration) {
+        metrics.approximateLookups.increment();
+        // Whole slices: a slice overlapping the window start counts in full
+        long from = sliceStart(queryTime.minus(duration).toEpochMilli());
+        long to = queryTime.toEpochMilli();
+        TimestampBlock.WindowTotals totals = new TimestampBlock.WindowTotals();
+        for (TimestampBlock block : coarse) {
+            block.addTo(totals, from, to);
+        }
+        return totals;
+    }
+
+    /**
+     * Takes back what cleanup sweeps dropped behind our back. Caller holds
+     * shedLock.
+     *
+     *   before  = each card's count, snapshotted first
+     *   scanned = what the delegate holds now
+     *   delta   = min(0, scanned - before)   applied to the live counter
+     *
+     * An insert landing after the snapshot is already in the live counter;
+     * if the scan also saw it, the delta shrinks by one and the count stays
+     * one high — never low. Cards added after the snapshot are left alone.
+     */
+    private void reconcile() {
+        sweptSinceReconcile = false;
+        Map<String, Long> before = new HashMap<>();
+        Map<String, CardUsage> snapshot = new HashMap<>(usage);
+        for (Map.Entry<String, CardUsage> entry : snapshot.entrySet()) {
+            before.put(entry.getKey(), entry.getValue().entries.get());
+        }
+
+        Map<String, Long> scanned = new HashMap<>();
+        delegate.forEachBucket((cardHash, millis, count, amountSum, maxAmount) ->
+                scanned.merge(cardHash, (long) count, Long::sum));
+
+        long totalDelta = 0;
+        for (Map.Entry<String, CardUsage> entry : snapshot.entrySet()) {
+            String cardHash = entry.getKey();
+            CardUsage card = entry.getValue();
+            long delta = Math.min(0, scanned.getOrDefault(cardHash, 0L) - before.get(cardHash));
+            if (delta != 0) {
+                card.entries.addAndGet(delta);
+                totalDelta += delta;
+            }
+            // Emptied by the sweep and not written to since: stop tracking it
+            usage.computeIfPresent(cardHash, (k, current) ->
+                    current == card && current.entries.get() <= 0 ? null : current);
+        }
+        retainedEntries.add(totalDelta);
+    }
+
+    private long sliceStart(long epochMilli) {
+        return Math.floorDiv(epochMilli, sliceMillis) * sliceMillis;
+    }
+
+    private static final class CardUsage {
+        volatile long lastActive = System.nanoTime();
+        final AtomicLong entries = new AtomicLong();
+    }
+
+    private static final class EvictionCandidate {
+        final String cardHash;
+        final CardUsage usage;
+        final long lastActive;
+
+        EvictionCandidate(String cardHash, CardUsage usage) {
+            this.cardHash = cardHash;
+            this.usage = usage;
+            this.lastActive = usage.lastActive;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package practice;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Evaluates a merchant's {@link MerchantRule}s against a payment.
+ *
+ * Rule sets are compiled once, at build time, into an {@link EvaluationPlan}
+ * per merchant (global rules + that merchant's rules). Merchants without
+ * their own rules share the default plan, so plans do not grow with the
+ * number of merchants seen.
+ *
+ * Plan shape:
+ *   1. LOCAL rules, in registration order, stop at the first deny.
+ *   2. REMOTE rules (network lookups). With an executor they run in
+ *      parallel and the first deny wins. Without one they run in order
+ *      like local rules.
+ *
+ * Shared lookups:
+ *   Every evaluation gets a fresh {@link RuleEvaluationContext}. Rules that
+ *   read velocity through it share one lookup per (provider, window), even
+ *   across parallel remote rules.
+ *
+ * Virtual-thread mode ({@link Builder#virtualThreads()}):
+ *   Each {@link #checkRulesAsync} call runs on its own virtual thread, and
+ *   so does each parallel remote rule. Blocking Redis/JDBC lookups then park
+ *   the virtual thread instead of a platform thread, so an instance can keep
+ *   thousands of risk checks in flight without a thread pool to size.
+ *
+ * Usage:
+ *   FraudRulesCheckEngine engine = FraudRulesCheckEngine.builder()
+ *       .addRule(new VelocityBasedFraudRule(provider))
+ *       .addMerchantRule("m-123", new AmountVelocityFraudRule(provider, Duration.ofHours(24), 500_000))
+ *       .parallelExecutor(executor)
+ *       .build();
+ *   RuleCheckResult result = engine.checkRules(payment);
+ */
+public class FraudRulesCheckEngine {
+
+    private static final RuleCheckResult ALLOWED = RuleCheckResult.builder().allowed(true).build();
+
+    // Thread-per-task executors hold no pooled threads, so one shared instance never needs closing
+    private static final Executor VIRTUAL_THREADS = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("risk-check-", 0).factory());
+
+    private final EvaluationPlan defaultPlan;
+    private final Map<String, EvaluationPlan> merchantPlans;
+    private final Executor parallelExecutor;
+    private final Executor checkExecutor;
+
+    private FraudRulesCheckEngine(Builder builder) {
+        this.defaultPlan = EvaluationPlan.compile(builder.globalRules);
+
+        Map<String, EvaluationPlan> plans = new HashMap<>();
+        for (Map.Entry<String, List<MerchantRule>> entry : builder.merchantRules.entrySet()) {
+            List<MerchantRule> rules = new ArrayList<>(builder.globalRules);
+            rules.addAll(entry.getValue());
+            plans.put(entry.getKey(), EvaluationPlan.compile(rules));
+        }
+        this.merchantPlans = Map.copyOf(plans);
+        this.parallelExecutor = builder.parallelExecutor;
+        this.checkExecutor = builder.checkExecutor;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public RuleCheckResult checkRules(Payment payment) {
+        if (payment == null) {
+            throw new IllegalArgumentException("Payment cannot be null");
+        }
+        EvaluationPlan plan = payment.getMerchantId() == null
+                ? defaultPlan
+                : merchantPlans.getOrDefault(payment.getMerchantId(), defaultPlan);
+        return plan.evaluate(payment, new RuleEvaluationContext(), parallelExecutor);
+    }
+
+    /**
+     * {@link #checkRules} off the caller's thread: on a virtual thread in
+     * virtual-thread mode, otherwise on the calling thread (the returned
+     * future is already complete).
+     */
+    public CompletableFuture<RuleCheckResult> checkRulesAsync(Payment payment) {
+        if (checkExecutor == null) {
+            try {
+                return CompletableFuture.completedFuture(checkRules(payment));
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        return CompletableFuture.supplyAsync(() -> checkRules(payment), checkExecutor);
+    }
+
+    /**
+     * Compiled, immutable rule order for one merchant.
+     */
+    static final class EvaluationPlan {
+        private final List<MerchantRule> localRules;
+        private final List<MerchantRule> remoteRules;
+
+        private EvaluationPlan(List<MerchantRule> localRules, List<MerchantRule> remoteRules) {
+            this.localRules = localRules;
+            this.remoteRules = remoteRules;
+        }
+
+        static EvaluationPlan compile(List<MerchantRule> rules) {
+            List<MerchantRule> local = new ArrayList<>();
+            List<MerchantRule> remote = new ArrayList<>();
+            for (MerchantRule rule : rules) {
+                (rule.getCost() == MerchantRule.RuleCost.REMOTE ? remote : local).add(rule);
+            }
+            return new EvaluationPlan(
+                    Collections.unmodifiableList(local),
+                    Collections.unmodifiableList(remote));
+        }
+
+        RuleCheckResult evaluate(Payment payment, RuleEvaluationContext context, Executor executor) {
+            RuleCheckResult denied = evaluateInOrder(localRules, payment, context);
+            if (denied != null) {
+                return denied;
+            }
+            if (executor == null || remoteRules.size() < 2) {
+                denied = evaluateInOrder(remoteRules, payment, context);
+            } else {
+                denied = evaluateInParallel(remoteRules, payment, context, executor);
+            }
+            return denied != null ? denied : ALLOWED;
+        }
+
+        private static RuleCheckResult evaluateInOrder(List<MerchantRule> rules, Payment payment,
+                RuleEvaluationContext context) {
+            for (MerchantRule rule : rules) {
+                RuleCheckResult result = rule.checkRule(payment, context);
+                if (!result.isAllowed()) {
+                    return result;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Starts every remote rule, then completes as soon as one denies (or
+         * fails) or all allow. Rules still running after a deny are cancelled
+         * best-effort; their lookups cannot change the outcome.
+         */
+        private static RuleCheckResult evaluateInParallel(List<MerchantRule> rules, Payment payment,
+                RuleEvaluationContext context, Executor executor) {
+            CompletableFuture<RuleCheckResult> outcome = new CompletableFuture<>();
+            AtomicInteger remaining = new AtomicInteger(rules.size());
+            List<CompletableFuture<RuleCheckResult>> running = new ArrayList<>(rules.size());
+
+            for (MerchantRule rule : rules) {
+                CompletableFuture<RuleCheckResult> future = CompletableFuture
+                        .supplyAsync(() -> rule.checkRule(payment, context), executor);
+                running.add(future);
+                future.whenComplete((result, error) -> {
+                    if (error != null) {
+                        outcome.completeExceptionally(error);
+                    } else if (!result.isAllowed()) {
+                        outcome.complete(result);
+                    } else if (remaining.decrementAndGet() == 0) {
+                        outcome.complete(null);
+                    }
+                });
+            }
+
+            try {
+                return outcome.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                while (cause instanceof CompletionException && cause.getCause() != null) {
+                    cause = cause.getCause();
+                }
+                throw cause instanceof RuntimeException ? (RuntimeException) cause : e;
+            } finally {
+                for (CompletableFuture<RuleCheckResult> future : running) {
+                    future.cancel(true);
+                }
+            }
+        }
+    }
+
+    public static class Builder {
+        private final List<MerchantRule> globalRules = new ArrayList<>();
+        private final Map<String, List<MerchantRule>> merchantRules = new LinkedHashMap<>();
+        private Executor parallelExecutor;
+        private Executor checkExecutor;
+
+        /**
+         * Adds a rule evaluated for every merchant.
+         */
+        public Builder addRule(MerchantRule rule) {
+            if (rule == null) {
+                throw new IllegalArgumentException("Rule cannot be null");
+            }
+            globalRules.add(rule);
+            return this;
+        }
+
+        /**
+         * Adds a rule evaluated only for payments of {@code merchantId},
+         * after the global rules of the same cost class.
+         */
+        public Builder addMerchantRule(String merchantId, MerchantRule rule) {
+            if (merchantId == null || merchantId.isEmpty() || rule == null) {
+                throw new IllegalArgumentException("Merchant id and rule are required");
+            }
+            merchantRules.computeIfAbsent(merchantId, id -> new ArrayList<>()).add(rule);
+            return this;
+        }
+
+        /**
+         * Executor for running REMOTE rules in parallel. Without one, remote
+         * rules run sequentially on the calling thread.
+         */
+        public Builder parallelExecutor(Executor executor) {
+            this.parallelExecutor = executor;
+            return this;
+        }
+
+        /**
+         * Runs every {@link #checkRulesAsync} call and every parallel remote
+         * rule on its own virtual thread. Replaces any parallelExecutor.
+         */
+        public Builder virtualThreads() {
+            this.parallelExecutor = VIRTUAL_THREADS;
+            this.checkExecutor = VIRTUAL_THREADS;
+            return this;
+        }
+
+        public FraudRulesCheckEngine build() {
+            return new FraudRulesCheckEngine(this);
+        }
+    }
+}
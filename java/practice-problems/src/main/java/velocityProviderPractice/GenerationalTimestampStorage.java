@@ -0,0 +1,588 @@
+package practice;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import practice.Solution.BucketVisitor;
+import practice.Solution.OldestTimestampTracker;
+import practice.Solution.TimestampBucket;
+import practice.Solution.TimestampStorage;
+import practice.Solution.WindowAggregate;
+
+/**
+ * In-memory TimestampStorage with a young and an old generation per card.
+ *
+ *   card → Generations (one volatile, immutable snapshot)
+ *            ├── hot:    ConcurrentSkipListMap   recent buckets, appended to
+ *            └── sealed: Segment[]               older buckets, read-only
+ *                         sorted primitive arrays + prefix sums
+ *
+ * Why:
+ *   TreeMapTimestampStorage keeps a week of history and the last minute in
+ *   one structure under one lock: every append shares a lock with every
+ *   7-day scan, and every retained entry is a boxed map node.
+ *   Here:
+ *     - appends only touch the hot skip list (small, lock-free)
+ *     - a window that starts after the newest sealed bucket never looks at
+ *       the segments; longer ones binary-search them and read count/sum
+ *       from prefix sums in O(log n)
+ *     - a sealed bucket costs ~40 bytes of arrays instead of ~90 of nodes
+ *
+ * Background maintenance (one thread, every sealInterval; started by
+ * {@link #start} and stopped by close()):
+ *   seal:  buckets older than (newest timestamp - hotWindow) leave the hot
+ *          map and become a new segment
+ *   merge: more than MAX_SEGMENTS segments → young ones merged (size-
+ *          tiered, see mergeTiered), so a long window binary-searches a
+ *          few arrays, not hundreds
+ *
+ * Concurrency:
+ *   - Readers take no lock. They read `current` once and query that
+ *     snapshot; a seal publishes a new snapshot (new hot map + new segment)
+ *     and never mutates the old one, so a reader sees every bucket exactly
+ *     once, before or after the seal.
+ *   - Appenders take the card's lock in SHARED mode (they don't block each
+ *     other) and insert into current.hot.
+ *   - A seal takes it EXCLUSIVELY just long enough to split the hot map, so
+ *     no append can land in a hot map that is being replaced.
+ *   - Snapshot changes (seal, merge, cleanup) are serialised by
+ *     maintenanceLock.
+ *   - Out-of-order appends (older than the last seal) go to the hot map like
+ *     any other and are sealed next round; segments may overlap in time,
+ *     queries sum every segment that overlaps the window.
+ */
+public class GenerationalTimestampStorage implements TimestampStorage, AutoCloseable {
+
+    public static final Duration DEFAULT_HOT_WINDOW = Duration.ofMinutes(5);
+    public static final Duration DEFAULT_SEAL_INTERVAL = Duration.ofSeconds(10);
+    static final int MAX_SEGMENTS = 4;
+    private static final Segment[] NO_SEGMENTS = new Segment[0];
+
+    private final Map<String, CardGenerations> cards = new ConcurrentHashMap<>();
+    private final long hotWindowMillis;
+    private final OldestTimestampTracker oldestTimestamp = new OldestTimestampTracker();
+    private final LongAccumulator newestMillis = new LongAccumulator(Math::max, Long.MIN_VALUE);
+    private final ReentrantLock maintenanceLock = new ReentrantLock();
+    private final ReentrantLock sweepLock = new ReentrantLock();
+    private final ScheduledExecutorService maintenance;
+
+    /**
+     * Storage without a maintenance thread: call {@link #seal()} to move hot
+     * buckets into segments.
+     *
+     * @param hotWindow How far behind the newest timestamp buckets stay in
+     *                  the hot generation.
+     */
+    public GenerationalTimestampStorage(Duration hotWindow) {
+        this(hotWindow, (ScheduledExecutorService) null);
+    }
+
+    private GenerationalTimestampStorage(Duration hotWindow, ScheduledExecutorService maintenance) {
+        if (hotWindow == null || hotWindow.isNegative() || hotWindow.isZero()) {
+            throw new IllegalArgumentException("Hot window must be positive");
+        }
+        this.hotWindowMillis = hotWindow.toMillis();
+        this.maintenance = maintenance;
+    }
+
+    /**
+     * Storage with the default hot window, sealed every
+     * DEFAULT_SEAL_INTERVAL in the background. Close it to stop the thread.
+     */
+    public static GenerationalTimestampStorage start() {
+        return start(DEFAULT_HOT_WINDOW, DEFAULT_SEAL_INTERVAL);
+    }
+
+    /**
+     * Builds the storage, then starts its maintenance thread. The schedule is
+     * only set up once construction has finished, so the thread never sees a
+     * half-built storage.
+     *
+     * @param hotWindow    How far behind the newest timestamp buckets stay in
+     *                     the hot generation.
+     * @param sealInterval How often the background thread seals and merges.
+     */
+    public static GenerationalTimestampStorage start(Duration hotWindow, Duration sealInterval) {
+        if (sealInterval == null || sealInterval.isNegative() || sealInterval.isZero()) {
+            throw new IllegalArgumentException("Seal interval must be positive");
+        }
+        ScheduledExecutorService maintenance = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("velocity-seal").daemon().factory());
+        GenerationalTimestampStorage storage;
+        try {
+            storage = new GenerationalTimestampStorage(hotWindow, maintenance);
+        } catch (RuntimeException e) {
+            maintenance.shutdownNow();
+            throw e;
+        }
+        long periodMillis = Math.max(1, sealInterval.toMillis());
+        maintenance.scheduleWithFixedDelay(storage::sealQuietly, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        return storage;
+    }
+
+    @Override
+    public void addTimestamp(String cardHash, Instant timestamp, long amount) {
+        long epochMilli = timestamp.toEpochMilli();
+        while (true) {
+            CardGenerations card = cards.computeIfAbsent(cardHash, k -> new CardGenerations());
+            card.lock.readLock().lock();
+            try {
+                if (card.retired) {
+                    continue; // cleanup dropped it after our lookup; use the replacement
+                }
+                card.current.hot.merge(epochMilli, TimestampBucket.of(amount), TimestampBucket::plus);
+                break;
+            } finally {
+                card.lock.readLock().unlock();
+            }
+        }
+        oldestTimestamp.recordInsert(epochMilli);
+        // Capped so a future-dated payment cannot seal the whole hot generation
+        newestMillis.accumulate(Solution.clampToClock(epochMilli));
+    }
+
+    @Override
+    public int countInWindow(String cardHash, Instant queryTime, Duration duration) {
+        CardGenerations card = cards.get(cardHash);
+        if (card == null) {
+            return 0;
+        }
+        long from = queryTime.minus(duration).toEpochMilli();
+        long to = queryTime.toEpochMilli();
+
+        Generations generations = card.current;
+        int count = TimestampBucket.count(generations.hot.subMap(from, true, to, true).values());
+        if (from <= generations.sealedMaxMillis) {
+            for (Segment segment : generations.sealed) {
+                count += segment.count(from, to);
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public WindowAggregate aggregateInWindow(String cardHash, Instant queryTime, Duration duration) {
+        CardGenerations card = cards.get(cardHash);
+        if (card == null) {
+            return WindowAggregate.EMPTY;
+        }
+        long from = queryTime.minus(duration).toEpochMilli();
+        long to = queryTime.toEpochMilli();
+
+        Generations generations = card.current;
+        if (from > generations.sealedMaxMillis) {
+            return TimestampBucket.aggregate(generations.hot.subMap(from, true, to, true).values());
+        }
+        TimestampBlock.WindowTotals totals = new TimestampBlock.WindowTotals();
+        totals.addAll(generations.hot.subMap(from, true, to, true).values());
+        for (Segment segment : generations.sealed) {
+            segment.addTo(totals, from, to);
+        }
+        return totals.toAggregate();
+    }
+
+    @Override
+    public void removeOlderThan(Instant cutoffTime) {
+        long cutoffMillis = cutoffTime.toEpochMilli();
+        if (oldestTimestamp.get() > cutoffMillis) {
+            return;
+        }
+        // A sweep already running covers this one; a seal does not, so wait for it
+        if (!sweepLock.tryLock()) {
+            return;
+        }
+        maintenanceLock.lock();
+        try {
+            oldestTimestamp.beginSweep();
+            long newOldest = Long.MAX_VALUE;
+
+            for (Map.Entry<String, CardGenerations> entry : cards.entrySet()) {
+                CardGenerations card = entry.getValue();
+                Generations generations = card.current;
+                generations.hot.headMap(cutoffMillis).clear();
+
+                Segment[] kept = retainFrom(generations.sealed, cutoffMillis);
+                if (kept != generations.sealed) {
+                    // Same hot map: appends keep landing in it
+                    card.current = new Generations(generations.hot, kept);
+                }
+
+                if (generations.hot.isEmpty() && kept.length == 0) {
+                    retireIfEmpty(entry.getKey(), card);
+                }
+                Generations remaining = card.current;
+                if (!card.retired) {
+                    if (!remaining.hot.isEmpty()) {
+                        newOldest = Math.min(newOldest, remaining.hot.firstKey());
+                    }
+                    for (Segment segment : remaining.sealed) {
+                        newOldest = Math.min(newOldest, segment.millis[0]);
+                    }
+                }
+            }
+            oldestTimestamp.endSweep(newOldest);
+        } finally {
+            maintenanceLock.unlock();
+            sweepLock.unlock();
+        }
+    }
+
+    @Override
+    public Instant getOldestTimestamp() {
+        long v = oldestTimestamp.get();
+        return v == Long.MAX_VALUE ? null : Instant.ofEpochMilli(v);
+    }
+
+    @Override
+    public boolean supportsEviction() {
+        return true;
+    }
+
+    @Override
+    public void evictCard(String cardHash, BucketVisitor evicted) {
+        CardGenerations card = cards.get(cardHash);
+        if (card == null) {
+            return;
+        }
+        Generations removed;
+        card.lock.writeLock().lock();
+        try {
+            if (card.retired) {
+                return;
+            }
+            card.retired = true;
+            cards.remove(cardHash, card);
+            removed = card.current;
+        } finally {
+            card.lock.writeLock().unlock();
+        }
+        if (evicted != null) {
+            TreeMap<Long, TimestampBucket> merged = new TreeMap<>(removed.hot);
+            for (Segment segment : removed.sealed) {
+                segment.decodeInto(merged);
+            }
+            merged.forEach((millis, bucket) -> evicted.visit(cardHash, millis, bucket.count, bucket.amountSum,
+                    bucket.maxAmount));
+        }
+    }
+
+    @Override
+    public void forEachBucket(BucketVisitor visitor) {
+        for (Map.Entry<String, CardGenerations> entry : cards.entrySet()) {
+            Generations generations = entry.getValue().current;
+            TreeMap<Long, TimestampBucket> merged = new TreeMap<>(generations.hot);
+            for (Segment segment : generations.sealed) {
+                segment.decodeInto(merged);
+            }
+            merged.forEach((millis, bucket) -> visitor.visit(entry.getKey(), millis, bucket.count,
+                    bucket.amountSum, bucket.maxAmount));
+        }
+    }
+
+    /**
+     * Seals buckets older than (newest timestamp - hotWindow) and merges
+     * segment runs. Runs on the maintenance thread; callable directly when
+     * the storage was built without one. The newest timestamp is capped at
+     * wall clock + {@link Solution#MAX_FUTURE_SKEW_MILLIS}.
+     */
+    void seal() {
+        long newest = newestMillis.get();
+        if (newest == Long.MIN_VALUE) {
+            return;
+        }
+        long boundary = newest - hotWindowMillis;
+
+        maintenanceLock.lock();
+        try {
+            for (CardGenerations card : cards.values()) {
+                Generations generations = card.current;
+                if (!generations.hot.isEmpty() && generations.hot.firstKey() < boundary) {
+                    sealCard(card, boundary);
+                }
+                generations = card.current;
+                if (generations.sealed.length > MAX_SEGMENTS) {
+                    // Off the append path: hot map unchanged, only segments swap
+                    card.current = new Generations(generations.hot, mergeTiered(generations.sealed));
+                }
+            }
+        } finally {
+            maintenanceLock.unlock();
+        }
+    }
+
+    /**
+     * @return number of sealed segments held for a card (monitoring, tests).
+     */
+    int segmentCount(String cardHash) {
+        CardGenerations card = cards.get(cardHash);
+        return card == null ? 0 : card.current.sealed.length;
+    }
+
+    /**
+     * Stops the maintenance thread. Data stays readable.
+     */
+    @Override
+    public void close() {
+        if (maintenance != null) {
+            maintenance.shutdownNow();
+        }
+    }
+
+    private void sealQuietly() {
+        try {
+            seal();
+        } catch (RuntimeException e) {
+            // Keep the schedule alive; next round retries
+        }
+    }
+
+    private static void sealCard(CardGenerations card, long boundary) {
+        card.lock.writeLock().lock();
+        try {
+            Generations generations = card.current;
+            SortedMap<Long, TimestampBucket> turningCold = generations.hot.headMap(boundary);
+            if (turningCold.isEmpty()) {
+                return;
+            }
+            Segment segment = Segment.of(turningCold);
+            ConcurrentSkipListMap<Long, TimestampBucket> hot = new ConcurrentSkipListMap<>(
+                    generations.hot.tailMap(boundary));
+            Segment[] sealed = Arrays.copyOf(generations.sealed, generations.sealed.length + 1);
+            sealed[sealed.length - 1] = segment;
+            card.current = new Generations(hot, sealed);
+        } finally {
+            card.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Merges the young segments into one, and folds in the oldest (largest)
+     * one only once they have grown as big as it. A card sealed every few
+     * seconds thus rewrites its week of history O(log n) times, not every
+     * few seals.
+     */
+    static Segment[] mergeTiered(Segment[] sealed) {
+        Segment[] young = Arrays.copyOfRange(sealed, 1, sealed.length);
+        int youngBuckets = 0;
+        for (Segment segment : young) {
+            youngBuckets += segment.millis.length;
+        }
+        if (youngBuckets < sealed[0].millis.length) {
+            return new Segment[] { sealed[0], Segment.merge(young) };
+        }
+        return new Segment[] { Segment.merge(sealed) };
+    }
+
+    private void retireIfEmpty(String cardHash, CardGenerations card) {
+        card.lock.writeLock().lock();
+        try {
+            // An append may have slipped in before we got the lock
+            if (card.current.hot.isEmpty() && card.current.sealed.length == 0) {
+                card.retired = true;
+                cards.remove(cardHash, card);
+            }
+        } finally {
+            card.lock.writeLock().unlock();
+        }
+    }
+
+    private static Segment[] retainFrom(Segment[] segments, long cutoffMillis) {
+        Segment[] kept = new Segment[segments.length];
+        int n = 0;
+        boolean changed = false;
+        for (Segment segment : segments) {
+            Segment tail = segment.retainFrom(cutoffMillis);
+            changed |= tail != segment;
+            if (tail != null) {
+                kept[n++] = tail;
+            }
+        }
+        if (!changed) {
+            return segments;
+        }
+        return n == 0 ? NO_SEGMENTS : Arrays.copyOf(kept, n);
+    }
+
+    private static final class CardGenerations {
+        // Shared: appenders. Exclusive: seal and retire.
+        final ReadWriteLock lock = new ReentrantReadWriteLock();
+        volatile Generations current = new Generations(new ConcurrentSkipListMap<>(), NO_SEGMENTS);
+        boolean retired; // guarded by lock
+    }
+
+    /**
+     * One card's published state. Never mutated after publication except for
+     * appends into {@code hot} (and cleanup trimming it).
+     */
+    private static final class Generations {
+        final ConcurrentSkipListMap<Long, TimestampBucket> hot;
+        final Segment[] sealed;
+        final long sealedMaxMillis;
+
+        Generations(ConcurrentSkipListMap<Long, TimestampBucket> hot, Segment[] sealed) {
+            this.hot = hot;
+            this.sealed = sealed;
+            long max = Long.MIN_VALUE;
+            for (Segment segment : sealed) {
+                max = Math.max(max, segment.millis[segment.millis.length - 1]);
+            }
+            this.sealedMaxMillis = max;
+        }
+    }
+
+    /**
+     * Immutable sorted buckets as parallel primitive arrays.
+     *
+     *   millis:      [t0, t1, t2, ...]          ascending, unique
+     *   countPrefix: [0, c0, c0+c1, ...]        length n+1
+     *   sumPrefix:   [0, s0, s0+s1, ...]        length n+1
+     *   maxes:       per bucket
+     *
+     * count/sum over [from, to] = prefix[hi] - prefix[lo] after two binary
+     * searches. Max scans the range unless it covers the whole segment.
+     */
+    static final class Segment {
+        final long[] millis;
+        final int[] countPrefix;
+        final long[] sumPrefix;
+        final long[] maxes;
+        final long max;
+
+        private Segment(long[] millis, int[] countPrefix, long[] sumPrefix, long[] maxes) {
+            this.millis = millis;
+            this.countPrefix = countPrefix;
+            this.sumPrefix = sumPrefix;
+            this.maxes = maxes;
+            long m = 0;
+            for (long value : maxes) {
+                m = Math.max(m, value);
+            }
+            this.max = m;
+        }
+
+        static Segment of(SortedMap<Long, TimestampBucket> buckets) {
+            int n = buckets.size();
+            long[] millis = new long[n];
+            int[] countPrefix = new int[n + 1];
+            long[] sumPrefix = new long[n + 1];
+            long[] maxes = new long[n];
+            int i = 0;
+            for (Map.Entry<Long, TimestampBucket> entry : buckets.entrySet()) {
+                TimestampBucket bucket = entry.getValue();
+                millis[i] = entry.getKey();
+                countPrefix[i + 1] = countPrefix[i] + bucket.count;
+                sumPrefix[i + 1] = sumPrefix[i] + bucket.amountSum;
+                maxes[i] = bucket.maxAmount;
+                i++;
+            }
+            return new Segment(millis, countPrefix, sumPrefix, maxes);
+        }
+
+        static Segment merge(Segment[] segments) {
+            // Background only; a TreeMap keeps equal millis from different
+            // segments folded into one bucket
+            TreeMap<Long, TimestampBucket> merged = new TreeMap<>();
+            for (Segment segment : segments) {
+                segment.decodeInto(merged);
+            }
+            return of(merged);
+        }
+
+        int count(long from, long to) {
+            int lo = lowerBound(from);
+            int hi = upperBound(to);
+            return lo < hi ? countPrefix[hi] - countPrefix[lo] : 0;
+        }
+
+        void addTo(TimestampBlock.WindowTotals totals, long from, long to) {
+            int lo = lowerBound(from);
+            int hi = upperBound(to);
+            if (lo >= hi) {
+                return;
+            }
+            long rangeMax;
+            if (lo == 0 && hi == millis.length) {
+                rangeMax = max;
+            } else {
+                rangeMax = 0; // FOLLOW UP: sparse table for O(1) range max
+                for (int i = lo; i < hi; i++) {
+                    rangeMax = Math.max(rangeMax, maxes[i]);
+                }
+            }
+            totals.add(countPrefix[hi] - countPrefix[lo], sumPrefix[hi] - sumPrefix[lo], rangeMax);
+        }
+
+        void decodeInto(TreeMap<Long, TimestampBucket> target) {
+            for (int i = 0; i < millis.length; i++) {
+                target.merge(millis[i], TimestampBucket.of(countPrefix[i + 1] - countPrefix[i],
+                        sumPrefix[i + 1] - sumPrefix[i], maxes[i]), TimestampBucket::plus);
+            }
+        }
+
+        /**
+         * @return this, a copy without buckets before cutoffMillis, or null
+         *         if nothing is left.
+         */
+        Segment retainFrom(long cutoffMillis) {
+            int lo = lowerBound(cutoffMillis);
+            if (lo == 0) {
+                return this;
+            }
+            if (lo == millis.length) {
+                return null;
+            }
+            int n = millis.length - lo;
+            int[] countPrefix = new int[n + 1];
+            long[] sumPrefix = new long[n + 1];
+            for (int i = 0; i <= n; i++) {
+                countPrefix[i] = this.countPrefix[lo + i] - this.countPrefix[lo];
+                sumPrefix[i] = this.sumPrefix[lo + i] - this.sumPrefix[lo];
+            }
+            return new Segment(Arrays.copyOfRange(millis, lo, millis.length), countPrefix, sumPrefix,
+                    Arrays.copyOfRange(maxes, lo, maxes.length));
+        }
+
+        /** First index with millis >= value. */
+        private int lowerBound(long value) {
+            int lo = 0;
+            int hi = millis.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (millis[mid] < value) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        /** First index with millis > value. */
+        private int upperBound(long value) {
+            int lo = 0;
+            int hi = millis.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (millis[mid] <= value) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+}
@@ -1,33 +1,290 @@
 package practice;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import practice.Solution.VelocityProviderConfig;
 
+/**
+ * Per-merchant velocity configuration: storage retention
+ * ({@link VelocityProviderConfig}) and rule thresholds
+ * ({@link MerchantVelocityLimits}).
+ *
+ * Copy-on-write snapshot:
+ *   All state lives in one immutable {@link Snapshot} behind an
+ *   AtomicReference. Lookups are a volatile read plus a map get — no locks,
+ *   so a reload never blocks a payment. Writers (addConfig, reload) build a
+ *   new snapshot and swap it in; concurrent writers retry via updateAndGet.
+ *
+ * Resolved thresholds:
+ *   A snapshot stores fully resolved values per merchant (merchant override
+ *   or default, field by field), computed once when the snapshot is built
+ *   rather than on every lookup.
+ *
+ * Reload file format (java.util.Properties, durations in ISO-8601):
+ *   default.cleanupThreshold=P7D
+ *   default.velocityWindow=PT1H
+ *   default.velocityLimit=5
+ *   merchant.m-123.cleanupThreshold=P30D
+ *   merchant.m-123.velocityLimit=3
+ *
+ * A reload replaces the whole snapshot, including merchants added through
+ * addConfig/addLimits; a field the file leaves out falls back to the
+ * defaults the service was built with, not to the previous file. A file
+ * that fails to parse, or has a key or field not listed above, leaves the
+ * current snapshot in place.
+ */
 public class MerchantConfigService {
 
     public static final String DEFAULT_MERCHANT_ID = "default";
 
-    private final Map<String, VelocityProviderConfig> configs = new HashMap<>();
-    private final VelocityProviderConfig defaultConfig;
+    private static final String DEFAULT_PREFIX = "default.";
+    private static final String MERCHANT_PREFIX = "merchant.";
+    private static final Set<String> FIELDS =
+            Set.of("cleanupThreshold", "cleanupProbability", "velocityWindow", "velocityLimit");
+
+    // What a reload parses against; never changed by addConfig/addLimits or a file
+    private final VelocityProviderConfig baseConfig;
+    private final MerchantVelocityLimits baseLimits;
+    private final AtomicReference<Snapshot> snapshot;
+    private volatile FileTime lastLoadedModifiedTime;
+    private volatile Exception lastReloadError;
 
     public MerchantConfigService() {
         this(VelocityProviderConfig.defaultConfig());
     }
 
     public MerchantConfigService(VelocityProviderConfig defaultConfig) {
-        this.defaultConfig = defaultConfig;
+        this(defaultConfig, MerchantVelocityLimits.DEFAULT);
+    }
+
+    public MerchantConfigService(VelocityProviderConfig defaultConfig, MerchantVelocityLimits defaultLimits) {
+        this.baseConfig = defaultConfig;
+        this.baseLimits = defaultLimits;
+        this.snapshot = new AtomicReference<>(
+                new Snapshot(0L, defaultConfig, defaultLimits, Map.of(), Map.of()));
     }
 
     public void addConfig(String merchantId, VelocityProviderConfig config) {
-        configs.put(merchantId, config);
+        snapshot.updateAndGet(current -> current.withConfig(merchantId, config));
+    }
+
+    public void addLimits(String merchantId, MerchantVelocityLimits limits) {
+        snapshot.updateAndGet(current -> current.withLimits(merchantId, limits));
     }
 
     public VelocityProviderConfig getConfig(String merchantId) {
+        Snapshot current = snapshot.get();
+        if (merchantId == null || merchantId.isEmpty()) {
+            return current.defaultConfig;
+        }
+        return current.configs.getOrDefault(merchantId, current.defaultConfig);
+    }
+
+    public MerchantVelocityLimits getLimits(String merchantId) {
+        Snapshot current = snapshot.get();
         if (merchantId == null || merchantId.isEmpty()) {
-            return defaultConfig;
+            return current.defaultLimits;
+        }
+        return current.limits.getOrDefault(merchantId, current.defaultLimits);
+    }
+
+    /**
+     * @return The longest cleanupThreshold of the default and every merchant
+     *         config in the current snapshot.
+     */
+    public Duration getMaxCleanupThreshold() {
+        Snapshot current = snapshot.get();
+        Duration max = current.defaultConfig.getCleanupThreshold();
+        for (VelocityProviderConfig config : current.configs.values()) {
+            if (config.getCleanupThreshold().compareTo(max) > 0) {
+                max = config.getCleanupThreshold();
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @return Monotonic snapshot version; changes whenever any config changes.
+     *         Lets callers that cache derived values detect staleness cheaply.
+     */
+    public long getVersion() {
+        return snapshot.get().version;
+    }
+
+    /**
+     * Replaces all configuration with the contents of {@code file}.
+     *
+     * @throws IOException              if the file cannot be read
+     * @throws IllegalArgumentException if a value cannot be parsed
+     */
+    public void reload(Path file) throws IOException {
+        FileTime modifiedTime = Files.getLastModifiedTime(file);
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file)) {
+            properties.load(reader);
+        }
+        // Parse completely before swapping anything in
+        Snapshot loaded;
+        try {
+            loaded = parse(properties, baseConfig, baseLimits);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid duration in " + file + ": " + e.getParsedString(), e);
+        }
+        snapshot.updateAndGet(latest -> loaded.withVersion(latest.version + 1));
+        lastLoadedModifiedTime = modifiedTime;
+    }
+
+    /**
+     * Reloads only if the file changed since the last successful load.
+     *
+     * @return true if a new snapshot was swapped in.
+     */
+    public boolean reloadIfModified(Path file) throws IOException {
+        FileTime modifiedTime = Files.getLastModifiedTime(file);
+        if (modifiedTime.equals(lastLoadedModifiedTime)) {
+            return false;
+        }
+        reload(file);
+        return true;
+    }
+
+    /**
+     * Polls {@code file} every {@code interval} on the given scheduler.
+     * Failures keep the previous snapshot and are exposed through
+     * {@link #getLastReloadError()} so one bad edit cannot stop polling.
+     */
+    public ScheduledFuture<?> scheduleReload(Path file, Duration interval, ScheduledExecutorService scheduler) {
+        return scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                reloadIfModified(file);
+                lastReloadError = null;
+            } catch (IOException | RuntimeException e) {
+                lastReloadError = e;
+            }
+        }, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public Exception getLastReloadError() {
+        return lastReloadError;
+    }
+
+    private static Snapshot parse(Properties properties, VelocityProviderConfig baseConfig,
+            MerchantVelocityLimits baseLimits) {
+        Map<String, Map<String, String>> merchantFields = new HashMap<>();
+        Map<String, String> defaultFields = new HashMap<>();
+
+        for (String key : properties.stringPropertyNames()) {
+            String value = properties.getProperty(key).trim();
+            if (key.startsWith(DEFAULT_PREFIX)) {
+                defaultFields.put(field(key, DEFAULT_PREFIX.length()), value);
+            } else if (key.startsWith(MERCHANT_PREFIX)) {
+                int fieldStart = key.lastIndexOf('.');
+                if (fieldStart <= MERCHANT_PREFIX.length()) {
+                    throw new IllegalArgumentException("Missing merchant id in key: " + key);
+                }
+                String merchantId = key.substring(MERCHANT_PREFIX.length(), fieldStart);
+                merchantFields.computeIfAbsent(merchantId, id -> new HashMap<>())
+                        .put(field(key, fieldStart + 1), value);
+            } else {
+                throw new IllegalArgumentException("Unknown key: " + key);
+            }
+        }
+
+        VelocityProviderConfig defaultConfig = resolveConfig(baseConfig, defaultFields);
+        MerchantVelocityLimits defaultLimits = resolveLimits(baseLimits, defaultFields);
+
+        Map<String, VelocityProviderConfig> configs = new HashMap<>();
+        Map<String, MerchantVelocityLimits> limits = new HashMap<>();
+        for (Map.Entry<String, Map<String, String>> entry : merchantFields.entrySet()) {
+            configs.put(entry.getKey(), resolveConfig(defaultConfig, entry.getValue()));
+            limits.put(entry.getKey(), resolveLimits(defaultLimits, entry.getValue()));
+        }
+        return new Snapshot(0L, defaultConfig, defaultLimits, configs, limits);
+    }
+
+    // A misspelt field would otherwise be a silent no-op
+    private static String field(String key, int fieldStart) {
+        String field = key.substring(fieldStart);
+        if (!FIELDS.contains(field)) {
+            throw new IllegalArgumentException("Unknown field in key: " + key);
+        }
+        return field;
+    }
+
+    private static VelocityProviderConfig resolveConfig(VelocityProviderConfig base, Map<String, String> fields) {
+        if (!fields.containsKey("cleanupThreshold") && !fields.containsKey("cleanupProbability")) {
+            return base;
+        }
+        VelocityProviderConfig.Builder builder = base.toBuilder();
+        if (fields.containsKey("cleanupThreshold")) {
+            builder.cleanupThreshold(Duration.parse(fields.get("cleanupThreshold")));
+        }
+        if (fields.containsKey("cleanupProbability")) {
+            builder.cleanupProbability(Double.parseDouble(fields.get("cleanupProbability")));
+        }
+        return builder.build();
+    }
+
+    private static MerchantVelocityLimits resolveLimits(MerchantVelocityLimits base, Map<String, String> fields) {
+        if (!fields.containsKey("velocityWindow") && !fields.containsKey("velocityLimit")) {
+            return base;
+        }
+        Duration window = fields.containsKey("velocityWindow")
+                ? Duration.parse(fields.get("velocityWindow"))
+                : base.getWindow();
+        int maxCount = fields.containsKey("velocityLimit")
+                ? Integer.parseInt(fields.get("velocityLimit"))
+                : base.getMaxCount();
+        return new MerchantVelocityLimits(window, maxCount);
+    }
+
+    /**
+     * Immutable view of every merchant's resolved configuration.
+     */
+    private static final class Snapshot {
+        final long version;
+        final VelocityProviderConfig defaultConfig;
+        final MerchantVelocityLimits defaultLimits;
+        final Map<String, VelocityProviderConfig> configs;
+        final Map<String, MerchantVelocityLimits> limits;
+
+        Snapshot(long version, VelocityProviderConfig defaultConfig, MerchantVelocityLimits defaultLimits,
+                Map<String, VelocityProviderConfig> configs, Map<String, MerchantVelocityLimits> limits) {
+            this.version = version;
+            this.defaultConfig = defaultConfig;
+            this.defaultLimits = defaultLimits;
+            this.configs = Map.copyOf(configs);
+            this.limits = Map.copyOf(limits);
+        }
+
+        Snapshot withVersion(long newVersion) {
+            return new Snapshot(newVersion, defaultConfig, defaultLimits, configs, limits);
+        }
+
+        Snapshot withConfig(String merchantId, VelocityProviderConfig config) {
+            Map<String, VelocityProviderConfig> copy = new HashMap<>(configs);
+            copy.put(merchantId, config);
+            return new Snapshot(version + 1, defaultConfig, defaultLimits, copy, limits);
+        }
+
+        Snapshot withLimits(String merchantId, MerchantVelocityLimits merchantLimits) {
+            Map<String, MerchantVelocityLimits> copy = new HashMap<>(limits);
+            copy.put(merchantId, merchantLimits);
+            return new Snapshot(version + 1, defaultConfig, defaultLimits, configs, copy);
         }
-        return configs.getOrDefault(merchantId, defaultConfig);
     }
 }
@@ -3,4 +3,26 @@ package practice;
 
 public interface MerchantRule {
     RuleCheckResult checkRule(Payment payment);
+
+    /**
+     * Variant used by {@link FraudRulesCheckEngine}. Rules that query a
+     * VelocityProvider should go through {@code context} so that identical
+     * lookups made by several rules in one evaluation hit the store once.
+     */
+    default RuleCheckResult checkRule(Payment payment, RuleEvaluationContext context) {
+        return checkRule(payment);
+    }
+
+    /**
+     * Lets the engine order rules: LOCAL rules run first, in order, and stop
+     * at the first deny; REMOTE rules (network lookups) run afterwards and may
+     * run in parallel.
+     */
+    default RuleCost getCost() {
+        return RuleCost.LOCAL;
+    }
+
+    enum RuleCost {
+        LOCAL, REMOTE
+    }
 }
@@ -0,0 +1,38 @@
+package practice;
+
+import java.time.Duration;
+
+/**
+ * Per-merchant thresholds for {@link VelocityBasedFraudRule}: block when the
+ * card was used more than {@code maxCount} times within {@code window}.
+ *
+ * Immutable so a resolved instance can be shared by every lookup of a
+ * MerchantConfigService snapshot.
+ */
+public final class MerchantVelocityLimits {
+
+    // The values VelocityBasedFraudRule used to hardcode
+    public static final MerchantVelocityLimits DEFAULT = new MerchantVelocityLimits(Duration.ofHours(1), 5);
+
+    private final Duration window;
+    private final int maxCount;
+
+    public MerchantVelocityLimits(Duration window, int maxCount) {
+        if (window == null || window.isNegative() || window.isZero()) {
+            throw new IllegalArgumentException("Velocity window must be positive");
+        }
+        if (maxCount < 0) {
+            throw new IllegalArgumentException("Velocity limit cannot be negative");
+        }
+        this.window = window;
+        this.maxCount = maxCount;
+    }
+
+    public Duration getWindow() {
+        return window;
+    }
+
+    public int getMaxCount() {
+        return maxCount;
+    }
+}
@@ -0,0 +1,257 @@
+package practice;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import practice.Solution.TimestampStorage;
+import practice.Solution.VelocityProvider;
+import practice.Solution.VelocityProviderConfig;
+import practice.Solution.VelocityProviderImpl;
+import practice.Solution.WindowAggregate;
+
+/**
+ * One VelocityProvider for every merchant, backed by a single shared storage.
+ *
+ * Before: VelocityBasedFraudRule kept a full VelocityProviderImpl per merchant
+ * (own storage maps, locks, dedupe filter, cleanup strategy). With thousands
+ * of merchants that is thousands of copies of the same machinery.
+ *
+ * Now:
+ *   shared VelocityProviderImpl
+ *     └── one TimestampStorage keyed by "merchantId:cardHash"
+ *   MerchantProfile per merchant (tiny: id + resolved retention)
+ *     └── cached in a bounded map, idle merchants evicted least-recently-used
+ *
+ * Per-merchant retention:
+ *   The shared storage keeps data for {@code maxRetention} (the ceiling).
+ *   A merchant configured with a shorter cleanupThreshold only ever sees its
+ *   own retention: query windows are clamped to it.
+ *
+ *   The ceiling defaults to the longest retention configured at startup; an
+ *   explicit ceiling below any configured retention is rejected. A merchant
+ *   added later with a longer retention is capped at the ceiling (the data
+ *   is gone by then) and counted in getCappedRetentions() so it is visible.
+ *
+ * Config changes:
+ *   Profiles remember the MerchantConfigService version they were resolved
+ *   from and are re-resolved after a reload or addConfig.
+ *
+ * Eviction:
+ *   Evicting a profile drops only the cached config, never velocity data —
+ *   the next payment re-resolves it from MerchantConfigService. History ages
+ *   out through the shared cleanup like any other entry.
+ *
+ * Thread safety:
+ *   Profiles live in a ConcurrentHashMap; lookups are lock-free. Eviction runs
+ *   only when the cache overflows and trims it to 90% so the O(n) scan is
+ *   amortised over many insertions.
+ */
+public class MerchantVelocityPool implements VelocityProvider, AsyncVelocityProvider {
+
+    public static final int DEFAULT_MAX_CACHED_MERCHANTS = 10_000;
+
+    private final MerchantConfigService configService;
+    private final VelocityProviderImpl sharedProvider;
+    private final Duration maxRetention;
+    private final int maxCachedMerchants;
+
+    private final Map<String, MerchantProfile> profiles = new ConcurrentHashMap<>();
+    private final AtomicLong cappedRetentions = new AtomicLong();
+
+    /**
+     * Keeps data for the longest retention any configured merchant needs.
+     */
+    public MerchantVelocityPool(MerchantConfigService configService) {
+        this(configService, configService.getMaxCleanupThreshold(), DEFAULT_MAX_CACHED_MERCHANTS);
+    }
+
+    public MerchantVelocityPool(MerchantConfigService configService, Duration maxRetention, int maxCachedMerchants) {
+        this(configService, maxRetention, maxCachedMerchants, null);
+    }
+
+    /**
+     * @param maxRetention How long the shared storage keeps data; must cover
+     *                     every merchant currently configured.
+     * @param storage      Shared storage (e.g. Redis-backed); null for the in-memory default.
+     */
+    public MerchantVelocityPool(MerchantConfigService configService, Duration maxRetention, int maxCachedMerchants,
+            TimestampStorage storage) {
+        if (maxCachedMerchants <= 0) {
+            throw new IllegalArgumentException("Merchant cache size must be positive");
+        }
+        if (maxRetention == null || configService.getMaxCleanupThreshold().compareTo(maxRetention) > 0) {
+            throw new IllegalArgumentException("Max retention " + maxRetention
+                    + " is shorter than the configured merchant retention " + configService.getMaxCleanupThreshold());
+        }
+        this.configService = configService;
+        this.maxRetention = maxRetention;
+        this.maxCachedMerchants = maxCachedMerchants;
+
+        VelocityProviderConfig sharedConfig = configService.getConfig(MerchantConfigService.DEFAULT_MERCHANT_ID)
+                .toBuilder()
+                .cleanupThreshold(maxRetention)
+                .merchantScopedKeys(true)
+                .build();
+        this.sharedProvider = storage == null
+                ? new VelocityProviderImpl(sharedConfig)
+                : new VelocityProviderImpl(sharedConfig, storage);
+    }
+
+    @Override
+    public int getCardUsageCount(Payment payment, Duration duration) {
+        return sharedProvider.getCardUsageCount(payment, clamp(payment, duration));
+    }
+
+    @Override
+    public WindowAggregate getCardUsageAggregate(Payment payment, Duration duration) {
+        return sharedProvider.getCardUsageAggregate(payment, clamp(payment, duration));
+    }
+
+    @Override
+    public int getDistinctMerchantCount(Payment payment, Duration duration) {
+        return sharedProvider.getDistinctMerchantCount(payment, clamp(payment, duration));
+    }
+
+    @Override
+    public int getDistinctCardCount(Payment payment, Duration duration) {
+        return sharedProvider.getDistinctCardCount(payment, clamp(payment, duration));
+    }
+
+    @Override
+    public boolean isRemote() {
+        return sharedProvider.isRemote();
+    }
+
+    @Override
+    public void registerPayment(Payment payment) {
+        if (payment != null) {
+            profileFor(payment.getMerchantId());
+        }
+        sharedProvider.registerPayment(payment);
+    }
+
+    @Override
+    public CompletableFuture<Integer> getCardUsageCountAsync(Payment payment, Duration duration) {
+        return sharedProvider.getCardUsageCountAsync(payment, clamp(payment, duration));
+    }
+
+    @Override
+    public CompletableFuture<WindowAggregate> getCardUsageAggregateAsync(Payment payment, Duration duration) {
+        return sharedProvider.getCardUsageAggregateAsync(payment, clamp(payment, duration));
+    }
+
+    @Override
+    public CompletableFuture<Void> registerPaymentAsync(Payment payment) {
+        if (payment != null) {
+            profileFor(payment.getMerchantId());
+        }
+        return sharedProvider.registerPaymentAsync(payment);
+    }
+
+    /**
+     * @return Number of merchant profiles currently cached (for monitoring).
+     */
+    public int cachedMerchantCount() {
+        return profiles.size();
+    }
+
+    /**
+     * @return Profile resolutions whose configured retention exceeded the
+     *         ceiling and was capped (for monitoring).
+     */
+    public long getCappedRetentions() {
+        return cappedRetentions.get();
+    }
+
+    private Duration clamp(Payment payment, Duration duration) {
+        if (payment == null || duration == null) {
+            return duration; // let the shared provider reject it
+        }
+        Duration retention = profileFor(payment.getMerchantId()).retention;
+        return duration.compareTo(retention) > 0 ? retention : duration;
+    }
+
+    private MerchantProfile profileFor(String merchantId) {
+        String id = merchantId == null || merchantId.isEmpty()
+                ? MerchantConfigService.DEFAULT_MERCHANT_ID
+                : merchantId;
+
+        MerchantProfile profile = profiles.get(id);
+        if (profile != null && profile.configVersion != configService.getVersion()) {
+            profiles.remove(id, profile);
+            profile = null;
+        }
+        if (profile == null) {
+            profile = profiles.computeIfAbsent(id, this::resolveProfile);
+            profile.lastAccess = System.nanoTime();
+            if (profiles.size() > maxCachedMerchants) {
+                evictIdleMerchants();
+            }
+            return profile;
+        }
+        // Plain volatile write per lookup; a shared counter would put a
+        // contended CAS on every payment
+        profile.lastAccess = System.nanoTime();
+        return profile;
+    }
+
+    private MerchantProfile resolveProfile(String merchantId) {
+        // Read the version first: a concurrent reload then at worst causes one
+        // extra re-resolve, never a stale profile tagged with the new version
+        long version = configService.getVersion();
+        Duration retention = configService.getConfig(merchantId).getCleanupThreshold();
+        if (retention.compareTo(maxRetention) > 0) {
+            // Configured after the pool was built; the storage never kept more
+            cappedRetentions.incrementAndGet();
+            retention = maxRetention;
+        }
+        return new MerchantProfile(retention, version);
+    }
+
+    private synchronized void evictIdleMerchants() {
+        int target = (int) (maxCachedMerchants * 0.9);
+        if (profiles.size() <= maxCachedMerchants) {
+            return; // another thread already trimmed
+        }
+        // Snapshot access times first: lastAccess keeps changing under
+        // concurrent lookups, which would break the sort's comparator contract
+        List<EvictionCandidate> candidates = new ArrayList<>(profiles.size());
+        for (Map.Entry<String, MerchantProfile> entry : profiles.entrySet()) {
+            candidates.add(new EvictionCandidate(entry.getKey(), entry.getValue()));
+        }
+        candidates.sort(Comparator.comparingLong(c -> c.lastAccess));
+        for (int i = 0; i < candidates.size() - target; i++) {
+            EvictionCandidate candidate = candidates.get(i);
+            profiles.remove(candidate.merchantId, candidate.profile);
+        }
+    }
+
+    private static final class EvictionCandidate {
+        final String merchantId;
+        final MerchantProfile profile;
+        final long lastAccess;
+
+        EvictionCandidate(String merchantId, MerchantProfile profile) {
+            this.merchantId = merchantId;
+            this.profile = profile;
+            this.lastAccess = profile.lastAccess;
+        }
+    }
+
+    private static final class MerchantProfile {
+        final Duration retention;
+        final long configVersion;
+        volatile long lastAccess;
+
+        MerchantProfile(Duration retention, long configVersion) {
+            this.retention = retention;
+            this.configVersion = configVersion;
+        }
+    }
+}
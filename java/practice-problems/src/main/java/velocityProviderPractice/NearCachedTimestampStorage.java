@@ -0,0 +1,453 @@
+package practice;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import practice.Solution.TimestampStorage;
+import practice.Solution.WindowAggregate;
+
+/**
+ * Short-lived in-process cache of window results in front of a remote
+ * {@link TimestampStorage} (RedisTimestampStorage, ShardedRedisTimestampStorage).
+ *
+ * Why:
+ *   One payment flow runs several rules against the same card and the same
+ *   payment timestamp — count 10m, count 1h, amount 24h — each a ~500μs
+ *   round trip. Within that flow the answers barely change.
+ *
+ * What is cached:
+ *   (card, windowStart, windowEnd) → count [+ amount sum/max]
+ *   Windows end at the payment timestamp, so hits come from repeated
+ *   lookups for the same payment, not from different payments.
+ *
+ * Coherence:
+ *   - Local registrations write through to the remote store, then bump
+ *     every cached window of that card that contains the new timestamp —
+ *     only if the store reports the entry as new (see
+ *     {@link TimestampStorage#addTimestampIfAbsent}). A retried payment the
+ *     store already holds changes nothing, so nothing is bumped.
+ *   - removeOlderThan drops cached windows reaching back past the cutoff.
+ *   - Registrations from other instances are invisible until the entry's
+ *     TTL expires; the TTL is the staleness bound, so keep it short.
+ *   - A fetch that overlaps a local write is not cached: per card, a
+ *     version and an in-flight write count tell whether the fetched value
+ *     may or may not include that write. Caching it then bumping it could
+ *     count the payment twice.
+ *
+ * Memory:
+ *   At most {@code maxCards} cards are cached. Past that, expired entries
+ *   are purged; if the cache is still full, new results are just not
+ *   cached. Cards with a write in flight are always tracked (briefly) so
+ *   racing fetches can see the write.
+ */
+public class NearCachedTimestampStorage implements TimestampStorage, AutoCloseable {
+
+    public static final Duration DEFAULT_TTL = Duration.ofMillis(200);
+    public static final int DEFAULT_MAX_CARDS = 100_000;
+
+    private final TimestampStorage delegate;
+    private final long ttlNanos;
+    private final int maxCards;
+    private final LongSupplier nanoClock;
+
+    private final Map<String, CardCache> cards = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public NearCachedTimestampStorage(TimestampStorage delegate) {
+        this(delegate, DEFAULT_TTL, DEFAULT_MAX_CARDS);
+    }
+
+    public NearCachedTimestampStorage(TimestampStorage delegate, Duration ttl, int maxCards) {
+        this(delegate, ttl, maxCards, System::nanoTime);
+    }
+
+    // Clock injectable for tests
+    NearCachedTimestampStorage(TimestampStorage delegate, Duration ttl, int maxCards, LongSupplier nanoClock) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Delegate storage is required");
+        }
+        if (ttl == null || ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("TTL must be positive");
+        }
+        if (maxCards <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive");
+        }
+        this.delegate = delegate;
+        this.ttlNanos = ttl.toNanos();
+        this.maxCards = maxCards;
+        this.nanoClock = nanoClock;
+    }
+
+    @Override
+    public void addTimestamp(String cardHash, Instant timestamp, long amount) {
+        addTimestamp(cardHash, null, timestamp, amount);
+    }
+
+    @Override
+    public void addTimestamp(String cardHash, String paymentId, Instant timestamp, long amount) {
+        addTimestampIfAbsent(cardHash, paymentId, timestamp, amount);
+    }
+
+    @Override
+    public boolean addTimestampIfAbsent(String cardHash, String paymentId, Instant timestamp, long amount) {
+        CardCache card = beginWrite(cardHash);
+        WriteOutcome outcome = WriteOutcome.FAILED;
+        try {
+            boolean added = delegate.addTimestampIfAbsent(cardHash, paymentId, timestamp, amount);
+            outcome = added ? WriteOutcome.ADDED : WriteOutcome.ALREADY_STORED;
+            return added;
+        } finally {
+            endWrite(card, timestamp.toEpochMilli(), amount, outcome);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> addTimestampAsync(String cardHash, String paymentId, Instant timestamp,
+            long amount) {
+        return addTimestampIfAbsentAsync(cardHash, paymentId, timestamp, amount).thenApply(added -> null);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> addTimestampIfAbsentAsync(String cardHash, String paymentId,
+            Instant timestamp, long amount) {
+        CardCache card = beginWrite(cardHash);
+        CompletableFuture<Boolean> write;
+        try {
+            write = delegate.addTimestampIfAbsentAsync(cardHash, paymentId, timestamp, amount);
+        } catch (RuntimeException e) {
+            endWrite(card, timestamp.toEpochMilli(), amount, WriteOutcome.FAILED);
+            throw e;
+        }
+        return write.whenComplete((added, error) -> endWrite(card, timestamp.toEpochMilli(), amount,
+                error != null ? WriteOutcome.FAILED : added ? WriteOutcome.ADDED : WriteOutcome.ALREADY_STORED));
+    }
+
+    @Override
+    public int countInWindow(String cardHash, Instant queryTime, Duration duration) {
+        long start = queryTime.minus(duration).toEpochMilli();
+        long end = queryTime.toEpochMilli();
+
+        CachedWindow cached = lookup(cardHash, start, end, false);
+        if (cached != null) {
+            return cached.count;
+        }
+        FetchTicket ticket = beginFetch(cardHash);
+        int count = delegate.countInWindow(cardHash, queryTime, duration);
+        endFetch(ticket, start, end, count, 0L, 0L, false);
+        return count;
+    }
+
+    @Override
+    public CompletableFuture<Integer> countInWindowAsync(String cardHash, Instant queryTime, Duration duration) {
+        long start = queryTime.minus(duration).toEpochMilli();
+        long end = queryTime.toEpochMilli();
+
+        CachedWindow cached = lookup(cardHash, start, end, false);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached.count);
+        }
+        FetchTicket ticket = beginFetch(cardHash);
+        return delegate.countInWindowAsync(cardHash, queryTime, duration)
+                .thenApply(count -> {
+                    endFetch(ticket, start, end, count, 0L, 0L, false);
+                    return count;
+                });
+    }
+
+    @Override
+    public WindowAggregate aggregateInWindow(String cardHash, Instant queryTime, Duration duration) {
+        long start = queryTime.minus(duration).toEpochMilli();
+        long end = queryTime.toEpochMilli();
+
+        CachedWindow cached = lookup(cardHash, start, end, true);
+        if (cached != null) {
+            return cached.toAggregate();
+        }
+        FetchTicket ticket = beginFetch(cardHash);
+        WindowAggregate aggregate = delegate.aggregateInWindow(cardHash, queryTime, duration);
+        endFetch(ticket, start, end, aggregate.getCount(), aggregate.getAmountSum(), aggregate.getMaxAmount(), true);
+        return aggregate;
+    }
+
+    @Override
+    public CompletableFuture<WindowAggregate> aggregateInWindowAsync(String cardHash, Instant queryTime,
+            Duration duration) {
+        long start = queryTime.minus(duration).toEpochMilli();
+        long end = queryTime.toEpochMilli();
+
+        CachedWindow cached = lookup(cardHash, start, end, true);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached.toAggregate());
+        }
+        FetchTicket ticket = beginFetch(cardHash);
+        return delegate.aggregateInWindowAsync(cardHash, queryTime, duration)
+                .thenApply(aggregate -> {
+                    endFetch(ticket, start, end, aggregate.getCount(), aggregate.getAmountSum(),
+                            aggregate.getMaxAmount(), true);
+                    return aggregate;
+                });
+    }
+
+    @Override
+    public void removeOlderThan(Instant cutoffTime) {
+        delegate.removeOlderThan(cutoffTime);
+        // A window reaching back past the cutoff may count removed entries
+        long cutoffMillis = cutoffTime.toEpochMilli();
+        long now = nanoClock.getAsLong();
+        for (Map.Entry<String, CardCache> entry : cards.entrySet()) {
+            CardCache card = entry.getValue();
+            synchronized (card) {
+                card.version++; // a fetch overlapping the removal must not be cached
+                card.windows.removeIf(w -> w.start < cutoffMillis || w.expiresAtNanos - now <= 0);
+                if (card.windows.isEmpty() && card.writesInFlight == 0) {
+                    cards.remove(entry.getKey(), card);
+                }
+            }
+        }
+    }
+
+    @Override
+    public Instant getOldestTimestamp() {
+        return delegate.getOldestTimestamp();
+    }
+
+    @Override
+    public boolean isRemote() {
+        return delegate.isRemote();
+    }
+
+    @Override
+    public void forEachBucket(Solution.BucketVisitor visitor) {
+        delegate.forEachBucket(visitor);
+    }
+
+    @Override
+    public boolean supportsEviction() {
+        return delegate.supportsEviction();
+    }
+
+    @Override
+    public void evictCard(String cardHash, Solution.BucketVisitor evicted) {
+        delegate.evictCard(cardHash, evicted);
+        CardCache card = cards.get(cardHash);
+        if (card != null) {
+            synchronized (card) {
+                card.version++; // an overlapping fetch must not re-cache the old history
+                card.windows.clear();
+            }
+        }
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Closes the delegate if it is closeable (e.g. stops Redis batchers).
+     */
+    @Override
+    public void close() {
+        if (delegate instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) delegate).close();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to close the cached storage", e);
+            }
+        }
+    }
+
+    // ── Lookup ────────────────────────────────────────────────────────────
+
+    private CachedWindow lookup(String cardHash, long start, long end, boolean needsAmounts) {
+        CardCache card = cards.get(cardHash);
+        if (card != null) {
+            long now = nanoClock.getAsLong();
+            synchronized (card) {
+                for (Iterator<CachedWindow> it = card.windows.iterator(); it.hasNext();) {
+                    CachedWindow window = it.next();
+                    if (window.expiresAtNanos - now <= 0) {
+                        it.remove();
+                    } else if (window.start == start && window.end == end
+                            && (window.hasAmounts || !needsAmounts)) {
+                        hits.increment();
+                        return window.copy();
+                    }
+                }
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    // ── Fetch: cache only if no local write overlapped ────────────────────
+
+    private FetchTicket beginFetch(String cardHash) {
+        CardCache card = cardFor(cardHash);
+        if (card == null) {
+            return null; // cache full
+        }
+        synchronized (card) {
+            return card.writesInFlight == 0 ? new FetchTicket(card, card.version) : null;
+        }
+    }
+
+    private void endFetch(FetchTicket ticket, long start, long end, int count, long amountSum, long maxAmount,
+            boolean hasAmounts) {
+        if (ticket == null) {
+            return;
+        }
+        CardCache card = ticket.card;
+        synchronized (card) {
+            // Any write that began or finished since beginFetch bumped the version
+            if (card.version != ticket.version || card.writesInFlight != 0 || cards.get(card.cardHash) != card) {
+                return;
+            }
+            card.windows.removeIf(w -> w.start == start && w.end == end);
+            card.windows.add(new CachedWindow(start, end, count, amountSum, maxAmount, hasAmounts,
+                    nanoClock.getAsLong() + ttlNanos));
+        }
+    }
+
+    // ── Write: bump cached windows once the remote store gained the entry ─
+
+    private CardCache beginWrite(String cardHash) {
+        // Always tracked, even past maxCards: a fetch racing this write must
+        // see it. Dropped again in endWrite if nothing is cached.
+        while (true) {
+            CardCache card = cards.computeIfAbsent(cardHash, k -> new CardCache(cardHash));
+            synchronized (card) {
+                if (cards.get(cardHash) != card) {
+                    continue; // purged between lookup and lock
+                }
+                card.version++;
+                card.writesInFlight++;
+                return card;
+            }
+        }
+    }
+
+    private void endWrite(CardCache card, long epochMilli, long amount, WriteOutcome outcome) {
+        synchronized (card) {
+            card.version++;
+            card.writesInFlight--;
+            if (outcome == WriteOutcome.FAILED) {
+                // Unknown whether the remote has it; don't guess
+                card.windows.clear();
+            }
+            if (card.windows.isEmpty() || outcome == WriteOutcome.ALREADY_STORED) {
+                if (card.windows.isEmpty() && card.writesInFlight == 0) {
+                    cards.remove(card.cardHash, card);
+                }
+                return;
+            }
+            for (CachedWindow window : card.windows) {
+                if (epochMilli >= window.start && epochMilli <= window.end) {
+                    window.count++;
+                    window.amountSum += amount;
+                    window.maxAmount = Math.max(window.maxAmount, amount);
+                }
+            }
+        }
+    }
+
+    private CardCache cardFor(String cardHash) {
+        CardCache card = cards.get(cardHash);
+        if (card != null) {
+            return card;
+        }
+        if (cards.size() >= maxCards) {
+            purgeExpired();
+            if (cards.size() >= maxCards) {
+                return null;
+            }
+        }
+        return cards.computeIfAbsent(cardHash, k -> new CardCache(cardHash));
+    }
+
+    private void purgeExpired() {
+        long now = nanoClock.getAsLong();
+        for (Map.Entry<String, CardCache> entry : cards.entrySet()) {
+            CardCache card = entry.getValue();
+            synchronized (card) {
+                card.windows.removeIf(w -> w.expiresAtNanos - now <= 0);
+                if (card.windows.isEmpty() && card.writesInFlight == 0) {
+                    cards.remove(entry.getKey(), card);
+                }
+            }
+        }
+    }
+
+    /**
+     * Cached windows of one card plus the bookkeeping that keeps them
+     * coherent with local writes. Guarded by its own monitor; nothing
+     * blocking ever runs under it.
+     */
+    private static final class CardCache {
+        final String cardHash;
+        final List<CachedWindow> windows = new ArrayList<>(4);
+        long version;
+        int writesInFlight;
+
+        CardCache(String cardHash) {
+            this.cardHash = cardHash;
+        }
+    }
+
+    private enum WriteOutcome {
+        ADDED, ALREADY_STORED, FAILED
+    }
+
+    private static final class FetchTicket {
+        final CardCache card;
+        final long version;
+
+        FetchTicket(CardCache card, long version) {
+            this.card = card;
+            this.version = version;
+        }
+    }
+
+    private static final class CachedWindow {
+        final long start;
+        final long end;
+        final boolean hasAmounts;
+        final long expiresAtNanos;
+        int count;
+        long amountSum;
+        long maxAmount;
+
+        CachedWindow(long start, long end, int count, long amountSum, long maxAmount, boolean hasAmounts,
+                long expiresAtNanos) {
+            this.start = start;
+            this.end = end;
+            this.count = count;
+            this.amountSum = amountSum;
+            this.maxAmount = maxAmount;
+            this.hasAmounts = hasAmounts;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        CachedWindow copy() {
+            return new CachedWindow(start, end, count, amountSum, maxAmount, hasAmounts, expiresAtNanos);
+        }
+
+        WindowAggregate toAggregate() {
+            return count == 0 ? WindowAggregate.EMPTY : new WindowAggregate(count, amountSum, maxAmount);
+        }
+    }
+}
@@ -11,6 +11,8 @@ public class Payment {
     private final String hashedCardNumber;
     /* Optional merchant identifier for per-merchant configs. */
     private final String merchantId;
+    /* Payment amount in minor units (cents); 0 when unknown. */
+    private final long amountMinorUnits;
     
     /*
      * EXTENSIBILITY NOTE - Merchant-Specific Configuration:
@@ -26,13 +28,20 @@ public class Payment {
         this.timestamp = timestamp;
         this.hashedCardNumber = hashedCardNumber;
         this.merchantId = null;
+        this.amountMinorUnits = 0L;
     }
 
     public Payment(String paymentId, Instant timestamp, String hashedCardNumber, String merchantId) {
+        this(paymentId, timestamp, hashedCardNumber, merchantId, 0L);
+    }
+
+    public Payment(String paymentId, Instant timestamp, String hashedCardNumber, String merchantId,
+            long amountMinorUnits) {
         this.paymentId = paymentId;
         this.timestamp = timestamp;
         this.hashedCardNumber = hashedCardNumber;
         this.merchantId = merchantId;
+        this.amountMinorUnits = amountMinorUnits;
     }
 
     public String getPaymentId() {
@@ -50,4 +59,8 @@ public class Payment {
     public String getMerchantId() {
         return merchantId;
     }
+
+    public long getAmountMinorUnits() {
+        return amountMinorUnits;
+    }
 }
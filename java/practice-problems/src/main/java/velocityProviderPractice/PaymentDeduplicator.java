@@ -0,0 +1,332 @@
+package practice;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded, time-expiring "have we already registered this paymentId?" check.
+ *
+ * Makes VelocityProvider.registerPayment idempotent: queue retries of the
+ * same payment must not inflate velocity counts.
+ *
+ * Two tiers:
+ *   1. Exact recent set — ConcurrentHashMap of paymentIds seen in the last
+ *      {@code exactWindow}, capped at {@code maxExactEntries}. Retries almost
+ *      always arrive within seconds, so this answers nearly every duplicate
+ *      exactly.
+ *   2. Rotating Bloom filter — two generations (current + previous), each
+ *      covering {@code dedupeWindow}. Remembers older IDs in a fixed number
+ *      of bits after they have been evicted from the exact set.
+ *
+ * Decision for a paymentId:
+ *   in exact set                       → duplicate
+ *   Bloom "maybe" but not in exact set → duplicate (old retry, or a false
+ *                                        positive with probability ~fpp)
+ *   otherwise                          → first sighting, record it
+ *
+ * Trade-off:
+ *   A Bloom false positive drops one legitimate registration (under-count by
+ *   one). With the default fpp of 1e-6 that is far below the inflation caused
+ *   by real retries.
+ *
+ * Saturation:
+ *   A filter's false-positive rate only holds up to the number of payments
+ *   it was sized for. A generation that reaches that count ends early, so
+ *   each filter stays at or below its designed fpp whatever the volume. The
+ *   cost of under-sizing is a shorter Bloom memory (still at least the
+ *   exact window for recent retries), never dropped genuine payments.
+ *
+ * Two-step registration:
+ *   claim() reserves the ID in the exact set; confirm() adds it to the Bloom
+ *   filter once the write it guards has succeeded; release() undoes a claim
+ *   whose write failed, so the retry is counted instead of dropped as a
+ *   duplicate. A Bloom bit cannot be cleared, hence nothing goes into the
+ *   filter until the write is known to have landed.
+ *
+ *   An unconfirmed claim is the only record of its ID, so size pressure
+ *   never evicts it: the exact set may run over maxExactEntries by the
+ *   claims in flight, and such a claim leaves only by age or release().
+ *   A released claim stays in the eviction queue as a tombstone (its map
+ *   entry is gone) and is skipped when it reaches the head.
+ *
+ * Memory:
+ *   Bloom: 2 × (-n·ln(fpp) / ln(2)²) bits, ~29 bits per expected payment at 1e-6
+ *   Exact: bounded by maxExactEntries
+ *   Nothing grows with total traffic.
+ *
+ * Clock:
+ *   Uses payment timestamps, not wall-clock time, so behaviour matches the
+ *   timestamp storage and is deterministic in tests.
+ */
+public class PaymentDeduplicator {
+
+    private final long exactWindowMillis;
+    private final int maxExactEntries;
+    private final long generationMillis;
+    private final int expectedPaymentsPerGeneration;
+    private final double falsePositiveProbability;
+
+    private final Map<String, ExactEntry> exactIds = new ConcurrentHashMap<>();
+    private final Queue<ExactEntry> exactOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger exactSize = new AtomicInteger();
+    private final AtomicLong saturatedRotations = new AtomicLong();
+
+    private volatile BloomFilter current;
+    private volatile BloomFilter previous;
+    private volatile long currentGenerationStart = Long.MIN_VALUE;
+
+    public PaymentDeduplicator(Duration dedupeWindow, Duration exactWindow, int maxExactEntries,
+            int expectedPaymentsPerWindow, double falsePositiveProbability) {
+        if (dedupeWindow == null || dedupeWindow.isNegative() || dedupeWindow.isZero()) {
+            throw new IllegalArgumentException("Dedupe window must be positive");
+        }
+        if (exactWindow == null || exactWindow.isNegative() || exactWindow.compareTo(dedupeWindow) > 0) {
+            throw new IllegalArgumentException("Exact window must be between zero and the dedupe window");
+        }
+        if (maxExactEntries <= 0 || expectedPaymentsPerWindow <= 0) {
+            throw new IllegalArgumentException("Dedupe capacities must be positive");
+        }
+        if (falsePositiveProbability <= 0 || falsePositiveProbability >= 1) {
+            throw new IllegalArgumentException("False positive probability must be between 0 and 1");
+        }
+        this.exactWindowMillis = exactWindow.toMillis();
+        this.maxExactEntries = maxExactEntries;
+        this.generationMillis = dedupeWindow.toMillis();
+        this.expectedPaymentsPerGeneration = expectedPaymentsPerWindow;
+        this.falsePositiveProbability = falsePositiveProbability;
+        this.current = new BloomFilter(expectedPaymentsPerWindow, falsePositiveProbability);
+        this.previous = new BloomFilter(expectedPaymentsPerWindow, falsePositiveProbability);
+    }
+
+    /**
+     * Records the payment ID if it has not been seen within the dedupe window.
+     * Same as {@link #claim} followed by {@link #confirm}.
+     *
+     * @return true on the first sighting; false for a duplicate.
+     */
+    public boolean firstSeen(String paymentId, Instant timestamp) {
+        if (!claim(paymentId, timestamp)) {
+            return false;
+        }
+        confirm(paymentId, timestamp);
+        return true;
+    }
+
+    /**
+     * Reserves the payment ID if it has not been seen within the dedupe
+     * window. Until it is confirmed or released, concurrent retries of the
+     * same ID are treated as duplicates.
+     *
+     * @return true on the first sighting; false for a duplicate.
+     */
+    public boolean claim(String paymentId, Instant timestamp) {
+        long now = timestamp.toEpochMilli();
+        rotateIfNeeded(now);
+        evictExact(now);
+
+        if (exactIds.containsKey(paymentId)) {
+            return false;
+        }
+        long hash = HyperLogLog.hash(paymentId);
+        if (current.mightContain(hash) || previous.mightContain(hash)) {
+            return false;
+        }
+        // putIfAbsent settles races between two concurrent first sightings
+        ExactEntry entry = new ExactEntry(paymentId, now);
+        if (exactIds.putIfAbsent(paymentId, entry) != null) {
+            return false;
+        }
+        exactSize.incrementAndGet();
+        exactOrder.add(entry);
+        return true;
+    }
+
+    /**
+     * The write guarded by a successful claim landed: remember the ID beyond
+     * the exact window.
+     */
+    public void confirm(String paymentId, Instant timestamp) {
+        BloomFilter filter = current;
+        filter.add(HyperLogLog.hash(paymentId));
+        // Only now may size pressure evict it: the filter remembers it
+        ExactEntry entry = exactIds.get(paymentId);
+        if (entry != null) {
+            entry.confirmed = true;
+        }
+        if (filter.insertions() >= expectedPaymentsPerGeneration) {
+            rotateFull(filter, timestamp.toEpochMilli());
+        }
+    }
+
+    /**
+     * The write guarded by a successful claim failed: forget the claim so a
+     * retry is counted. Its order entry becomes a tombstone, skipped by
+     * eviction.
+     */
+    public void release(String paymentId) {
+        ExactEntry entry = exactIds.get(paymentId);
+        if (entry != null && !entry.confirmed && exactIds.remove(paymentId, entry)) {
+            exactSize.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return IDs currently held in the exact set.
+     */
+    int exactSize() {
+        return exactSize.get();
+    }
+
+    /**
+     * @return Generations ended early because their filter was full.
+     */
+    public long getSaturatedRotations() {
+        return saturatedRotations.get();
+    }
+
+    private void rotateIfNeeded(long now) {
+        long generationStart = currentGenerationStart;
+        if (generationStart != Long.MIN_VALUE && now - generationStart < generationMillis) {
+            return;
+        }
+        synchronized (this) {
+            if (currentGenerationStart == Long.MIN_VALUE) {
+                currentGenerationStart = now;
+                return;
+            }
+            if (now - currentGenerationStart < generationMillis) {
+                return;
+            }
+            // Anything older than two generations is forgotten entirely
+            previous = now - currentGenerationStart < 2 * generationMillis
+                    ? current
+                    : new BloomFilter(expectedPaymentsPerGeneration, falsePositiveProbability);
+            current = new BloomFilter(expectedPaymentsPerGeneration, falsePositiveProbability);
+            currentGenerationStart = now;
+        }
+    }
+
+    private synchronized void rotateFull(BloomFilter full, long now) {
+        if (current != full) {
+            return; // another thread already rotated it out
+        }
+        previous = full;
+        current = new BloomFilter(expectedPaymentsPerGeneration, falsePositiveProbability);
+        currentGenerationStart = now;
+        saturatedRotations.incrementAndGet();
+    }
+
+    private void evictExact(long now) {
+        // By age: the queue is in claim order, so stop at the first young entry
+        ExactEntry head;
+        while ((head = exactOrder.peek()) != null
+                && (now - head.seenAtMillis > exactWindowMillis || exactIds.get(head.paymentId) != head)) {
+            if (exactOrder.remove(head)) {
+                unlink(head);
+            }
+        }
+        // By size: oldest confirmed first, stepping over claims still in flight
+        if (exactSize.get() > maxExactEntries) {
+            Iterator<ExactEntry> entries = exactOrder.iterator();
+            while (exactSize.get() > maxExactEntries && entries.hasNext()) {
+                ExactEntry entry = entries.next();
+                if (entry.confirmed || exactIds.get(entry.paymentId) != entry) {
+                    entries.remove();
+                    unlink(entry);
+                }
+            }
+        }
+    }
+
+    private void unlink(ExactEntry entry) {
+        // Whoever removes the map entry (here or release) owns the decrement;
+        // by identity, so a tombstone cannot take out a newer claim of its ID
+        if (exactIds.remove(entry.paymentId, entry)) {
+            exactSize.decrementAndGet();
+        }
+    }
+
+    private static final class ExactEntry {
+        final String paymentId;
+        final long seenAtMillis;
+        volatile boolean confirmed;
+
+        ExactEntry(String paymentId, long seenAtMillis) {
+            this.paymentId = paymentId;
+            this.seenAtMillis = seenAtMillis;
+        }
+    }
+
+    /**
+     * Lock-free Bloom filter over a pre-hashed 64-bit key.
+     * k probe positions come from enhanced double hashing: x += y, y += i.
+     * Plain h1 + i·h2 degenerates when h2 shares a factor with the bit count
+     * (the probes cycle over a few bits, so a small filter false-positives
+     * far above its design rate); the growing step breaks those cycles.
+     */
+    static final class BloomFilter {
+        private final AtomicLongArray words;
+        private final long bitCount;
+        private final int hashCount;
+        private final AtomicInteger insertions = new AtomicInteger();
+
+        BloomFilter(int expectedInsertions, double falsePositiveProbability) {
+            long bits = (long) Math.ceil(
+                    -expectedInsertions * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2)));
+            int wordCount = (int) Math.min(Integer.MAX_VALUE - 8, (bits + 63) / 64);
+            this.words = new AtomicLongArray(Math.max(1, wordCount));
+            this.bitCount = (long) words.length() * 64;
+            this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * Math.log(2)));
+        }
+
+        void add(long hash) {
+            insertions.incrementAndGet();
+            long x = hash;
+            long y = mix(hash);
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Math.floorMod(x, bitCount);
+                x += y;
+                y += i;
+                int index = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long word = words.get(index);
+                while ((word & mask) == 0 && !words.compareAndSet(index, word, word | mask)) {
+                    word = words.get(index);
+                }
+            }
+        }
+
+        int insertions() {
+            return insertions.get();
+        }
+
+        boolean mightContain(long hash) {
+            long x = hash;
+            long y = mix(hash);
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Math.floorMod(x, bitCount);
+                x += y;
+                y += i;
+                if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // SplitMix64 finaliser: an independent-looking second hash from the first
+        private static long mix(long z) {
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            return z ^ (z >>> 31);
+        }
+    }
+}
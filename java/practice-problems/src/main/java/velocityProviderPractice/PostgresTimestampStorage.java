@@ -3,6 +3,9 @@ package practice;
 import java.time.Duration;
 import java.time.Instant;
 import java.sql.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 import javax.sql.DataSource;
 
 /**
@@ -21,10 +24,12 @@ import javax.sql.DataSource;
  * │ card_hash    VARCHAR(64) NOT NULL     -- hashed card number │
  * │ payment_id   VARCHAR(36) NOT NULL     -- UUID from Payment  │
  * │ timestamp    TIMESTAMPTZ NOT NULL     -- payment time       │
+ * │ amount       BIGINT NOT NULL DEFAULT 0 -- minor units       │
  * │ created_at   TIMESTAMPTZ DEFAULT NOW()-- when row inserted  │
  * ├─────────────────────────────────────────────────────────────┤
  * │ INDEXES:                                                    │
  * │ idx_card_timestamp ON (card_hash, timestamp DESC)           │
+ * │                    INCLUDE (amount)                         │
  * │ idx_payment_id ON (payment_id) UNIQUE                      │
  * └─────────────────────────────────────────────────────────────┘
  *
@@ -88,13 +93,36 @@ import javax.sql.DataSource;
  *   Postgres handles concurrency internally — no synchronized blocks needed.
  *   Connection pool (DataSource) manages concurrent access.
  *   Each thread gets its own connection from the pool.
+ *
+ * Async path:
+ *   JDBC is blocking all the way down; there is no driver-level way to hand
+ *   the socket wait back to the caller. The *Async methods run the same
+ *   statements on {@code asyncExecutor} — by default one virtual thread per
+ *   call. A virtual thread blocked in JDBC unmounts from its carrier, so
+ *   thousands of in-flight lookups cost a few KB each instead of a platform
+ *   thread each. The DataSource pool still caps real concurrency; excess
+ *   calls wait for a connection, parked rather than pinned, as long as
+ *   nothing on this path blocks inside a synchronized block.
+ *   Pass a null executor to run them inline on the caller thread.
  */
 public class PostgresTimestampStorage implements Solution.TimestampStorage {
 
+    private static final int SCAN_FETCH_SIZE = 10_000;
+
     private final DataSource dataSource;
+    private final Executor asyncExecutor;
 
     public PostgresTimestampStorage(DataSource dataSource) {
+        this(dataSource, Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("velocity-pg-", 0).factory()));
+    }
+
+    /**
+     * @param asyncExecutor Runs the *Async methods; null runs them on the caller thread.
+     */
+    public PostgresTimestampStorage(DataSource dataSource, Executor asyncExecutor) {
         this.dataSource = dataSource;
+        this.asyncExecutor = asyncExecutor;
     }
 
     /**
@@ -113,6 +141,7 @@ public class PostgresTimestampStorage implements Solution.TimestampStorage {
                     card_hash    VARCHAR(64) NOT NULL,
                     payment_id   VARCHAR(36) NOT NULL UNIQUE,
                     timestamp    TIMESTAMPTZ NOT NULL,
+                    amount       BIGINT NOT NULL DEFAULT 0,
                     created_at   TIMESTAMPTZ DEFAULT NOW()
                 )
             """);
@@ -128,9 +157,12 @@ public class PostgresTimestampStorage implements Solution.TimestampStorage {
             // This enables index-only scans:
             //   Postgres answers COUNT(*) directly from the index
             //   without touching the table (heap) at all
+            //
+            // INCLUDE (amount) keeps SUM/MAX(amount) index-only as well —
+            // the amount is stored in the index leaf but is not part of the key.
             stmt.execute("""
-                CREATE INDEX IF NOT EXISTS idx_card_timestamp 
-                ON card_payments(card_hash, timestamp DESC)
+                CREATE INDEX IF NOT EXISTS idx_card_timestamp
+                ON card_payments(card_hash, timestamp DESC) INCLUDE (amount)
             """);
 
             // Unique index on payment_id for idempotency
@@ -141,7 +173,17 @@ public class PostgresTimestampStorage implements Solution.TimestampStorage {
     }
 
     @Override
-    public void addTimestamp(String cardHash, Instant timestamp) {
+    public void addTimestamp(String cardHash, Instant timestamp, long amount) {
+        addTimestamp(cardHash, null, timestamp, amount);
+    }
+
+    @Override
+    public void addTimestamp(String cardHash, String paymentId, Instant timestamp, long amount) {
+        addTimestampIfAbsent(cardHash, paymentId, timestamp, amount);
+    }
+
+    @Override
+    public boolean addTimestampIfAbsent(String cardHash, String paymentId, Instant timestamp, long amount) {
         // INSERT INTO card_payments (card_hash, payment_id, timestamp)
         // VALUES ('abc123', 'uuid-xxx', '2025-02-11T10:30:00Z')
         //
@@ -151,12 +193,12 @@ public class PostgresTimestampStorage implements Solution.TimestampStorage {
         //   Without this: duplicate rows → inflated velocity count → 
         //   legitimate cards blocked as fraud. Bad.
         //
-        // Note: We don't have payment_id in the TimestampStorage interface.
-        // In a real implementation, I'd extend the interface or pass Payment directly.
-        // Using cardHash + timestamp as a workaround here.
+        // payment_id comes from Payment via the provider. Callers that only
+        // have (cardHash, timestamp) fall back to cardHash + timestamp, which
+        // collapses two genuine payments in the same millisecond.
         String sql = """
-            INSERT INTO card_payments (card_hash, payment_id, timestamp) 
-            VALUES (?, ?, ?)
+            INSERT INTO card_payments (card_hash, payment_id, timestamp, amount)
+            VALUES (?, ?, ?, ?)
             ON CONFLICT (payment_id) DO NOTHING
         """;
 
@@ -164,15 +206,37 @@ public class PostgresTimestampStorage implements Solution.TimestampStorage {
              PreparedStatement ps = conn.prepareStatement(sql)) {
 
             ps.setString(1, cardHash);
-            ps.setString(2, cardHash + ":" + timestamp.toEpochMilli()); // workaround — ideally payment_id
+            ps.setString(2, paymentId != null ? paymentId : cardHash + ":" + timestamp.toEpochMilli());
             ps.setTimestamp(3, Timestamp.from(timestamp));
-            ps.executeUpdate();
+            ps.setLong(4, amount);
+            // 0 rows: ON CONFLICT skipped a payment already stored
+            return ps.executeUpdate() == 1;
 
         } catch (SQLException e) {
             throw new RuntimeException("Failed to register payment", e);
         }
     }
 
+    @Override
+    public CompletableFuture<Void> addTimestampAsync(String cardHash, String paymentId, Instant timestamp,
+            long amount) {
+        if (asyncExecutor == null) {
+            return Solution.TimestampStorage.super.addTimestampAsync(cardHash, paymentId, timestamp, amount);
+        }
+        return CompletableFuture.runAsync(
+                () -> addTimestamp(cardHash, paymentId, timestamp, amount), asyncExecutor);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> addTimestampIfAbsentAsync(String cardHash, String paymentId,
+            Instant timestamp, long amount) {
+        if (asyncExecutor == null) {
+            return Solution.TimestampStorage.super.addTimestampIfAbsentAsync(cardHash, paymentId, timestamp, amount);
+        }
+        return CompletableFuture.supplyAsync(
+                () -> addTimestampIfAbsent(cardHash, paymentId, timestamp, amount), asyncExecutor);
+    }
+
     @Override
     public int countInWindow(String cardHash, Instant queryTime, Duration duration) {
         // SELECT COUNT(*) FROM card_payments
@@ -191,9 +255,9 @@ public class PostgresTimestampStorage implements Solution.TimestampStorage {
         // vs Redis ZCOUNT: ~0.5ms
         // vs TreeMap.subMap: ~0.001ms
         String sql = """
-            SELECT COUNT(*) 
-            FROM card_payments 
-            WHERE card_hash = ? 
+            SELECT COUNT(*)
+            FROM card_payments
+            WHERE card_hash = ?
               AND timestamp BETWEEN ? AND ?
         """;
 
@@ -215,6 +279,57 @@ public class PostgresTimestampStorage implements Solution.TimestampStorage {
         }
     }
 
+    @Override
+    public CompletableFuture<Integer> countInWindowAsync(String cardHash, Instant queryTime, Duration duration) {
+        if (asyncExecutor == null) {
+            return Solution.TimestampStorage.super.countInWindowAsync(cardHash, queryTime, duration);
+        }
+        return CompletableFuture.supplyAsync(
+                () -> countInWindow(cardHash, queryTime, duration), asyncExecutor);
+    }
+
+    @Override
+    public Solution.WindowAggregate aggregateInWindow(String cardHash, Instant queryTime, Duration duration) {
+        // Same index range as countInWindow; SUM/MAX come from the INCLUDE
+        // column so this stays an index-only scan.
+        String sql = """
+            SELECT COUNT(*), COALESCE(SUM(amount), 0), COALESCE(MAX(amount), 0)
+            FROM card_payments
+            WHERE card_hash = ?
+              AND timestamp BETWEEN ? AND ?
+        """;
+
+        Instant windowStart = queryTime.minus(duration);
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+
+            ps.setString(1, cardHash);
+            ps.setTimestamp(2, Timestamp.from(windowStart));
+            ps.setTimestamp(3, Timestamp.from(queryTime));
+
+            ResultSet rs = ps.executeQuery();
+            rs.next();
+            int count = rs.getInt(1);
+            return count == 0
+                    ? Solution.WindowAggregate.EMPTY
+                    : new Solution.WindowAggregate(count, rs.getLong(2), rs.getLong(3));
+
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to aggregate payments", e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Solution.WindowAggregate> aggregateInWindowAsync(String cardHash, Instant queryTime,
+            Duration duration) {
+        if (asyncExecutor == null) {
+            return Solution.TimestampStorage.super.aggregateInWindowAsync(cardHash, queryTime, duration);
+        }
+        return CompletableFuture.supplyAsync(
+                () -> aggregateInWindow(cardHash, queryTime, duration), asyncExecutor);
+    }
+
     @Override
     public void removeOlderThan(Instant cutoffTime) {
         // DELETE FROM card_payments WHERE timestamp < '2025-02-04T10:30:00Z'
@@ -243,6 +358,47 @@ public class PostgresTimestampStorage implements Solution.TimestampStorage {
         }
     }
 
+    @Override
+    public boolean isRemote() {
+        return true;
+    }
+
+    @Override
+    public void forEachBucket(Solution.BucketVisitor visitor) {
+        // One pass over the whole table, grouped the way in-memory stores
+        // keep it (card, millisecond). Ordered by card so the export's
+        // dictionary run-lengths and timestamp deltas stay small.
+        //
+        // autoCommit off + fetchSize: the driver uses a server-side cursor
+        // and pulls FETCH_SIZE rows at a time instead of materialising the
+        // whole result set in the heap.
+        //
+        // Heavy — run against a replica, never the primary at peak.
+        String sql = """
+            SELECT card_hash, timestamp, COUNT(*), SUM(amount), MAX(amount)
+            FROM card_payments
+            GROUP BY card_hash, timestamp
+            ORDER BY card_hash, timestamp
+        """;
+
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setFetchSize(SCAN_FETCH_SIZE);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        visitor.visit(rs.getString(1), rs.getTimestamp(2).toInstant().toEpochMilli(),
+                                rs.getInt(3), rs.getLong(4), rs.getLong(5));
+                    }
+                }
+            } finally {
+                conn.rollback(); // read-only; just closes the cursor's transaction
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to scan payments", e);
+        }
+    }
+
     @Override
     public Instant getOldestTimestamp() {
         // SELECT MIN(timestamp) FROM card_payments
@@ -0,0 +1,170 @@
+package practice;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+
+/**
+ * Coalesces Redis commands from many callers into pipelined batches.
+ *
+ * Blocking model (RedisTimestampStorage sync methods):
+ *   caller ── borrow connection ── ZCOUNT ── wait RTT ── return connection
+ *   N concurrent callers → N connections, N threads parked for one RTT each.
+ *
+ * Batched model (this class):
+ *   callers ── enqueue command, get a future ──┐
+ *                                              ▼
+ *   dispatcher ── drain up to maxBatchSize ── one connection, one pipeline
+ *              ── sync() (one RTT for the whole batch) ── complete futures
+ *
+ * Under load the queue fills while the previous batch is in flight, so batch
+ * size grows with traffic and throughput per connection is roughly
+ * batchSize / RTT instead of 1 / RTT. At low load a batch is one command and
+ * latency is the same as a direct call.
+ *
+ * Dispatchers:
+ *   Each dispatcher thread holds at most one pooled connection at a time, so
+ *   {@code dispatchers} is also the number of connections this uses. Commands
+ *   in one batch are independent; Redis runs them in order, but callers must
+ *   not rely on ordering across separate submits.
+ *
+ * Futures complete on a dispatcher thread. Stages chained with thenApply run
+ * there too, so they must stay cheap (parsing a reply, not another blocking
+ * call) or they stall every caller behind them.
+ */
+final class RedisCommandBatcher implements AutoCloseable {
+
+    private static final long POLL_MILLIS = 100;
+
+    private final JedisPool pool;
+    private final int maxBatchSize;
+    private final BlockingQueue<PendingCommand<?>> queue = new LinkedBlockingQueue<>();
+    private final List<Thread> dispatchers;
+    private volatile boolean closed;
+
+    RedisCommandBatcher(JedisPool pool, int dispatchers, int maxBatchSize) {
+        if (dispatchers <= 0 || maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Dispatcher count and batch size must be positive");
+        }
+        this.pool = pool;
+        this.maxBatchSize = maxBatchSize;
+        this.dispatchers = new ArrayList<>(dispatchers);
+        for (int i = 0; i < dispatchers; i++) {
+            Thread thread = new Thread(this::dispatchLoop, "redis-batcher-" + i);
+            thread.setDaemon(true);
+            this.dispatchers.add(thread);
+            thread.start();
+        }
+    }
+
+    /**
+     * Queues a command; it is appended to the next pipeline a dispatcher
+     * flushes.
+     *
+     * @param command Appends exactly one command to the pipeline and returns its response.
+     */
+    <T> CompletableFuture<T> submit(Function<Pipeline, Response<T>> command) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Redis batcher is closed"));
+        }
+        PendingCommand<T> pending = new PendingCommand<>(command);
+        queue.add(pending);
+        // Lost the race with close(): take it back unless a dispatcher already has it
+        if (closed && queue.remove(pending)) {
+            pending.future.completeExceptionally(new IllegalStateException("Redis batcher is closed"));
+        }
+        return pending.future;
+    }
+
+    /**
+     * Stops accepting commands, flushes what is already queued and waits for
+     * the dispatchers to finish.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Thread thread : dispatchers) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        List<PendingCommand<?>> leftover = new ArrayList<>();
+        queue.drainTo(leftover);
+        for (PendingCommand<?> pending : leftover) {
+            pending.future.completeExceptionally(new IllegalStateException("Redis batcher is closed"));
+        }
+    }
+
+    private void dispatchLoop() {
+        List<PendingCommand<?>> batch = new ArrayList<>(maxBatchSize);
+        while (!closed || !queue.isEmpty()) {
+            PendingCommand<?> first;
+            try {
+                // Timed poll so an idle dispatcher notices close()
+                first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (first == null) {
+                continue;
+            }
+            batch.add(first);
+            queue.drainTo(batch, maxBatchSize - 1);
+            flush(batch);
+            batch.clear();
+        }
+    }
+
+    private void flush(List<PendingCommand<?>> batch) {
+        try (Jedis jedis = pool.getResource();
+             Pipeline pipeline = jedis.pipelined()) {
+            for (PendingCommand<?> pending : batch) {
+                pending.append(pipeline);
+            }
+            pipeline.sync();
+        } catch (RuntimeException e) {
+            // Connection-level failure: nothing in this batch has a reply
+            for (PendingCommand<?> pending : batch) {
+                pending.future.completeExceptionally(e);
+            }
+            return;
+        }
+        for (PendingCommand<?> pending : batch) {
+            pending.complete();
+        }
+    }
+
+    private static final class PendingCommand<T> {
+        final Function<Pipeline, Response<T>> command;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        Response<T> response;
+
+        PendingCommand(Function<Pipeline, Response<T>> command) {
+            this.command = command;
+        }
+
+        void append(Pipeline pipeline) {
+            response = command.apply(pipeline);
+        }
+
+        void complete() {
+            // A single command can fail (e.g. WRONGTYPE) while the rest succeed
+            try {
+                future.complete(response.get());
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package practice;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Redis Cluster key → slot mapping, computed client-side.
+ *
+ *   slot = CRC16-XMODEM(hashed part of key) mod 16384
+ *
+ * Hash tags:
+ *   If the key contains "{...}" with at least one character between the
+ *   first '{' and the next '}', only that part is hashed. So
+ *   "velocity:m-1:{abc}" and "velocity:{abc}" land in the same slot —
+ *   every key of one card lives on one node and can share a pipeline,
+ *   MULTI or Lua script.
+ *
+ * Same algorithm and edge cases as the Redis Cluster spec (and JedisCluster),
+ * so keys route identically whether a real cluster or our own shard list
+ * is behind them.
+ */
+final class RedisSlots {
+
+    static final int SLOT_COUNT = 16384;
+
+    private static final int[] CRC16_TABLE = new int[256];
+
+    static {
+        // CRC16-CCITT (XMODEM): polynomial 0x1021, initial value 0
+        for (int i = 0; i < 256; i++) {
+            int crc = i << 8;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+            }
+            CRC16_TABLE[i] = crc & 0xFFFF;
+        }
+    }
+
+    private RedisSlots() {
+    }
+
+    static int slot(String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        int start = 0;
+        int end = bytes.length;
+
+        int open = indexOf(bytes, (byte) '{', 0);
+        if (open >= 0) {
+            int close = indexOf(bytes, (byte) '}', open + 1);
+            // "{}" is not a tag: the whole key is hashed
+            if (close > open + 1) {
+                start = open + 1;
+                end = close;
+            }
+        }
+        return crc16(bytes, start, end) & (SLOT_COUNT - 1);
+    }
+
+    static int crc16(byte[] bytes, int start, int end) {
+        int crc = 0;
+        for (int i = start; i < end; i++) {
+            crc = ((crc << 8) ^ CRC16_TABLE[((crc >>> 8) ^ bytes[i]) & 0xFF]) & 0xFFFF;
+        }
+        return crc;
+    }
+
+    private static int indexOf(byte[] bytes, byte target, int from) {
+        for (int i = from; i < bytes.length; i++) {
+            if (bytes[i] == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
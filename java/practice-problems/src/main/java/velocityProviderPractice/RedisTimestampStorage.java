@@ -2,20 +2,33 @@ package practice;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.params.ScanParams;
+import redis.clients.jedis.resps.ScanResult;
+import redis.clients.jedis.resps.Tuple;
 
 /**
  * Redis-backed implementation of {@link Solution.TimestampStorage}.
  *
  * Uses Redis Sorted Sets — essentially a TreeMap in the cloud.
  * One sorted set per card: key = "velocity:{cardHash}"
- * Each entry: score = epoch millis (timestamp), member = unique payment ID
+ * Each entry: score = epoch millis (timestamp),
+ *             member = "epochMillis:amount:paymentId" (unique, carries the amount)
  *
  * Maps to in-memory implementation:
  * TreeMap.merge() → ZADD (insert with score)
  * TreeMap.subMap().sum() → ZCOUNT (count entries in score range)
+ * TimestampBucket.aggregate → ZRANGEBYSCORE + sum/max of the member amounts
  * headMap().clear() → TTL auto-expiry (no manual cleanup needed)
  *
  * Why Redis Sorted Sets:
@@ -24,10 +37,13 @@ import redis.clients.jedis.JedisPool;
  * - Distributed — multiple JVMs share the same data
  * - Built-in TTL — replaces entire ProbabilisticCleanupStrategy
  *
- * Why UUID as member:
+ * Why paymentId as member:
  * Redis sorted sets require unique members. If two payments arrive
  * at the same millisecond, using epochMillis alone would overwrite
- * the first entry. UUID ensures both are stored. ZCOUNT counts both.
+ * the first entry. The paymentId ensures both are stored. ZCOUNT counts both.
+ * It also makes ZADD idempotent: a retried registration re-adds the same
+ * member and the count does not change. Callers without a paymentId fall
+ * back to a random UUID.
  *
  * Trade-off vs in-memory:
  * In-memory: ~1μs per operation, single JVM, no durability
@@ -38,56 +54,258 @@ import redis.clients.jedis.JedisPool;
  * Redis = real-time velocity queries (fast reads)
  * PostgreSQL = system of record (durable, ACID, audit trail)
  * Write to both. Read from Redis. Fall back to Postgres if Redis is down.
+ *
+ * Async path (countInWindowAsync, aggregateInWindowAsync, addTimestampAsync):
+ * Instead of every caller borrowing a connection and parking for one RTT,
+ * commands are queued to a {@link RedisCommandBatcher} that pipelines them
+ * over a few shared connections. The blocking methods are unchanged.
+ * The batcher threads start on first async use; close() stops them for
+ * good: every later call, blocking or async, is rejected with
+ * IllegalStateException rather than quietly restarting the batcher.
  */
-public class RedisTimestampStorage implements Solution.TimestampStorage {
+public class RedisTimestampStorage implements Solution.TimestampStorage, AutoCloseable {
+
+    public static final int DEFAULT_PIPELINE_CONNECTIONS = 2;
+    public static final int DEFAULT_MAX_PIPELINE_BATCH = 256;
 
     // All keys prefixed with "velocity:" for namespace isolation
     // e.g., "velocity:abc123" for card hash "abc123"
     private static final String KEY_PREFIX = "velocity:";
+    private static final int SCAN_PAGE = 500;
 
     // JedisPool manages a pool of Redis connections
     // try-with-resources auto-returns connections to the pool
     private final JedisPool pool;
 
+    private final int pipelineConnections;
+    private final int maxPipelineBatch;
+    private volatile RedisCommandBatcher batcher;
+    // Guarded by this for writes; read unlocked on every call
+    private volatile boolean closed;
+
     public RedisTimestampStorage(JedisPool pool) {
+        this(pool, DEFAULT_PIPELINE_CONNECTIONS, DEFAULT_MAX_PIPELINE_BATCH);
+    }
+
+    /**
+     * @param pipelineConnections Connections (and dispatcher threads) used by the async path
+     * @param maxPipelineBatch    Most commands sent in one pipeline round trip
+     */
+    public RedisTimestampStorage(JedisPool pool, int pipelineConnections, int maxPipelineBatch) {
+        if (pipelineConnections <= 0 || maxPipelineBatch <= 0) {
+            throw new IllegalArgumentException("Pipeline connections and batch size must be positive");
+        }
         this.pool = pool;
+        this.pipelineConnections = pipelineConnections;
+        this.maxPipelineBatch = maxPipelineBatch;
+    }
+
+    @Override
+    public void addTimestamp(String cardHash, Instant timestamp, long amount) {
+        addTimestamp(cardHash, null, timestamp, amount);
+    }
+
+    @Override
+    public void addTimestamp(String cardHash, String paymentId, Instant timestamp, long amount) {
+        addTimestampIfAbsent(cardHash, paymentId, timestamp, amount);
     }
 
     @Override
-    public void addTimestamp(String cardHash, Instant timestamp) {
+    public boolean addTimestampIfAbsent(String cardHash, String paymentId, Instant timestamp, long amount) {
         String key = KEY_PREFIX + cardHash;
         long epochMilli = timestamp.toEpochMilli();
 
-        // UUID ensures uniqueness — two payments at same millisecond
-        // become two separate members with the same score.
-        // Without UUID: second ZADD overwrites the first → wrong count
-        String member = epochMilli + ":" + UUID.randomUUID().toString();
+        // paymentId ensures uniqueness — two payments at same millisecond
+        // become two separate members with the same score, while a retry of
+        // the same payment maps onto the existing member.
+        // Without it: second ZADD overwrites the first → wrong count
+        // The amount rides along in the member so sums need no second key.
+        String member = member(epochMilli, paymentId, amount);
 
-        try (Jedis jedis = pool.getResource()) {
+        try (Jedis jedis = resource()) {
             // ZADD velocity:card123 1707000200 "1707000200:uuid-abc"
             // Adds member with timestamp as score
             // Sorted set stays ordered by score automatically
-            jedis.zadd(key, epochMilli, member);
+            // Replies 1 for a new member, 0 for a retry of a stored payment
+            long added = jedis.zadd(key, epochMilli, member);
 
             // TODO: Add jedis.expire(key, ttlSeconds) here
             // This would replace the entire cleanup strategy —
             // Redis auto-deletes the key after ttlSeconds.
             // Requires adding ttlSeconds as a constructor parameter.
+            return added == 1;
         }
     }
 
+    @Override
+    public CompletableFuture<Void> addTimestampAsync(String cardHash, String paymentId, Instant timestamp,
+            long amount) {
+        return addTimestampIfAbsentAsync(cardHash, paymentId, timestamp, amount).thenApply(added -> null);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> addTimestampIfAbsentAsync(String cardHash, String paymentId,
+            Instant timestamp, long amount) {
+        String key = KEY_PREFIX + cardHash;
+        long epochMilli = timestamp.toEpochMilli();
+        String member = member(epochMilli, paymentId, amount);
+
+        return submit(pipeline -> pipeline.zadd(key, epochMilli, member))
+                .thenApply(added -> added == 1);
+    }
+
+    static String member(long epochMilli, String paymentId, long amount) {
+        String id = paymentId != null ? paymentId : UUID.randomUUID().toString();
+        return epochMilli + ":" + amount + ":" + id;
+    }
+
     @Override
     public int countInWindow(String cardHash, Instant queryTime, Duration duration) {
         String key = KEY_PREFIX + cardHash;
         long start = queryTime.minus(duration).toEpochMilli();
         long end = queryTime.toEpochMilli();
 
-        try (Jedis jedis = pool.getResource()) {
+        try (Jedis jedis = resource()) {
             // ZCOUNT velocity:card123 1707000000 1707000600
             // Counts all members with score between start and end (inclusive)
             // Uses skip list internally — O(log n), does NOT iterate all entries
             // Equivalent to: TreeMap.subMap(start, end).values().stream().sum()
-            return jedis.zcount(key, start, end).intValue();
+            return (int) jedis.zcount(key, start, end);
+        }
+    }
+
+    @Override
+    public Solution.WindowAggregate aggregateInWindow(String cardHash, Instant queryTime, Duration duration) {
+        String key = KEY_PREFIX + cardHash;
+        long start = queryTime.minus(duration).toEpochMilli();
+        long end = queryTime.toEpochMilli();
+
+        // ZRANGEBYSCORE velocity:card123 start end
+        // O(log n + k): unlike ZCOUNT this ships the k members back, which is
+        // fine for velocity windows (tens of payments per card).
+        // A Lua script could sum server-side if k ever grows large.
+        List<String> members;
+        try (Jedis jedis = resource()) {
+            members = jedis.zrangeByScore(key, start, end);
+        }
+        return aggregate(members);
+    }
+
+    @Override
+    public CompletableFuture<Integer> countInWindowAsync(String cardHash, Instant queryTime, Duration duration) {
+        String key = KEY_PREFIX + cardHash;
+        long start = queryTime.minus(duration).toEpochMilli();
+        long end = queryTime.toEpochMilli();
+
+        return submit(pipeline -> pipeline.zcount(key, start, end))
+                .thenApply(Long::intValue);
+    }
+
+    @Override
+    public CompletableFuture<Solution.WindowAggregate> aggregateInWindowAsync(String cardHash, Instant queryTime,
+            Duration duration) {
+        String key = KEY_PREFIX + cardHash;
+        long start = queryTime.minus(duration).toEpochMilli();
+        long end = queryTime.toEpochMilli();
+
+        // Parsing the members is cheap enough to run on the dispatcher thread
+        return submit(pipeline -> pipeline.zrangeByScore(key, start, end))
+                .thenApply(RedisTimestampStorage::aggregate);
+    }
+
+    static Solution.WindowAggregate aggregate(List<String> members) {
+        int count = 0;
+        long amountSum = 0L;
+        long maxAmount = 0L;
+        for (String member : members) {
+            long amount = parseAmount(member);
+            count++;
+            amountSum += amount;
+            maxAmount = Math.max(maxAmount, amount);
+        }
+        return count == 0
+                ? Solution.WindowAggregate.EMPTY
+                : new Solution.WindowAggregate(count, amountSum, maxAmount);
+    }
+
+    // Members written before amounts were tracked are "epochMillis:uuid"
+    // (UUIDs contain dashes, never colons) — treat them as amount 0.
+    private static long parseAmount(String member) {
+        int first = member.indexOf(':');
+        int second = member.indexOf(':', first + 1);
+        if (second < 0) {
+            return 0L;
+        }
+        return Long.parseLong(member.substring(first + 1, second));
+    }
+
+    /**
+     * SCAN over every velocity key, then each page's sorted sets read back
+     * in one pipeline (ZRANGE key 0 -1 WITHSCORES). O(keyspace): an export
+     * tool, never the payment path — point it at a replica.
+     */
+    @Override
+    public void forEachBucket(Solution.BucketVisitor visitor) {
+        try (Jedis jedis = resource()) {
+            forEachKeyPage(jedis, page -> {
+                for (Map.Entry<String, List<Tuple>> card : readSortedSets(jedis, page).entrySet()) {
+                    visitBuckets(card.getKey().substring(KEY_PREFIX.length()), card.getValue(), visitor);
+                }
+            });
+        }
+    }
+
+    /**
+     * Hands {@code page} every velocity key on this connection's node, one
+     * SCAN page at a time. Keys written during the scan may or may not be
+     * seen (SCAN's guarantee).
+     */
+    static void forEachKeyPage(Jedis jedis, Consumer<List<String>> page) {
+        ScanParams params = new ScanParams().match(KEY_PREFIX + "*").count(SCAN_PAGE);
+        String cursor = ScanParams.SCAN_POINTER_START;
+        do {
+            ScanResult<String> result = jedis.scan(cursor, params);
+            if (!result.getResult().isEmpty()) {
+                page.accept(result.getResult());
+            }
+            cursor = result.getCursor();
+        } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+    }
+
+    /**
+     * Every member of each key, ascending by score, in one pipeline.
+     */
+    static Map<String, List<Tuple>> readSortedSets(Jedis jedis, List<String> keys) {
+        Map<String, Response<List<Tuple>>> responses = new LinkedHashMap<>();
+        try (Pipeline pipeline = jedis.pipelined()) {
+            for (String key : keys) {
+                responses.put(key, pipeline.zrangeWithScores(key, 0, -1));
+            }
+            pipeline.sync();
+        }
+        Map<String, List<Tuple>> members = new LinkedHashMap<>();
+        responses.forEach((key, response) -> members.put(key, response.get()));
+        return members;
+    }
+
+    /**
+     * Folds one card's members (ascending by score) into per-millisecond
+     * buckets, the way TimestampBucket folds in-memory payments.
+     */
+    static void visitBuckets(String cardHash, List<Tuple> members, Solution.BucketVisitor visitor) {
+        int i = 0;
+        while (i < members.size()) {
+            long epochMilli = (long) members.get(i).getScore();
+            int count = 0;
+            long amountSum = 0L;
+            long maxAmount = Long.MIN_VALUE;
+            for (; i < members.size() && (long) members.get(i).getScore() == epochMilli; i++) {
+                long amount = parseAmount(members.get(i).getElement());
+                count++;
+                amountSum += amount;
+                maxAmount = Math.max(maxAmount, amount);
+            }
+            visitor.visit(cardHash, epochMilli, count, amountSum, maxAmount);
         }
     }
 
@@ -102,6 +320,53 @@ public class RedisTimestampStorage implements Solution.TimestampStorage {
         // That's expensive at scale — TTL is simpler and free.
     }
 
+    @Override
+    public boolean isRemote() {
+        return true;
+    }
+
+    /**
+     * Stops the async batcher (flushing commands already queued) and rejects
+     * every later call. The JedisPool is owned by the caller and stays open.
+     */
+    @Override
+    public void close() {
+        RedisCommandBatcher current;
+        synchronized (this) {
+            closed = true;
+            current = batcher;
+        }
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    private Jedis resource() {
+        if (closed) {
+            throw new IllegalStateException("Redis timestamp storage is closed");
+        }
+        return pool.getResource();
+    }
+
+    private <T> CompletableFuture<T> submit(Function<Pipeline, Response<T>> command) {
+        RedisCommandBatcher current = batcher;
+        if (current == null) {
+            synchronized (this) {
+                if (closed) {
+                    return CompletableFuture.failedFuture(
+                            new IllegalStateException("Redis timestamp storage is closed"));
+                }
+                current = batcher;
+                if (current == null) {
+                    current = new RedisCommandBatcher(pool, pipelineConnections, maxPipelineBatch);
+                    batcher = current;
+                }
+            }
+        }
+        // A batcher closed under us fails the command itself
+        return current.submit(command);
+    }
+
     @Override
     public Instant getOldestTimestamp() {
         // Not meaningful with TTL-based cleanup.
@@ -0,0 +1,92 @@
+package practice;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import practice.Solution.VelocityProvider;
+import practice.Solution.WindowAggregate;
+
+/**
+ * Per-evaluation memo of velocity lookups, created by
+ * {@link FraudRulesCheckEngine} for every checkRules call.
+ *
+ * Several rules often ask the same question about the same payment
+ * (count-in-1h for a velocity rule, sum-in-1h for an amount rule). Each
+ * distinct (provider, window) pair is fetched once as a full
+ * {@link WindowAggregate}; counts are read from it.
+ *
+ * Rules may run in parallel, so concurrent askers of the same lookup share
+ * one in-flight future instead of each issuing the remote call. The lookup
+ * itself runs outside any map lock.
+ *
+ * Scope: one payment, one evaluation. Never cache across payments — the
+ * payment timestamp is part of every window.
+ */
+public class RuleEvaluationContext {
+
+    private final Map<LookupKey, CompletableFuture<WindowAggregate>> aggregates = new ConcurrentHashMap<>();
+
+    public int getCardUsageCount(VelocityProvider provider, Payment payment, Duration window) {
+        return getCardUsageAggregate(provider, payment, window).getCount();
+    }
+
+    public WindowAggregate getCardUsageAggregate(VelocityProvider provider, Payment payment, Duration window) {
+        LookupKey key = new LookupKey(provider, window);
+
+        CompletableFuture<WindowAggregate> existing = aggregates.get(key);
+        if (existing == null) {
+            CompletableFuture<WindowAggregate> mine = new CompletableFuture<>();
+            existing = aggregates.putIfAbsent(key, mine);
+            if (existing == null) {
+                try {
+                    mine.complete(provider.getCardUsageAggregate(payment, window));
+                } catch (RuntimeException e) {
+                    mine.completeExceptionally(e);
+                    throw e;
+                }
+                return mine.join();
+            }
+        }
+        try {
+            return existing.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+
+    /**
+     * @return Number of distinct store lookups made so far (for tests/metrics).
+     */
+    public int lookupCount() {
+        return aggregates.size();
+    }
+
+    private static final class LookupKey {
+        private final VelocityProvider provider;
+        private final Duration window;
+
+        LookupKey(VelocityProvider provider, Duration window) {
+            this.provider = provider;
+            this.window = window;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof LookupKey)) {
+                return false;
+            }
+            LookupKey other = (LookupKey) o;
+            // Identity: two providers never share data just because they are equal
+            return provider == other.provider && window.equals(other.window);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(provider), window);
+        }
+    }
+}
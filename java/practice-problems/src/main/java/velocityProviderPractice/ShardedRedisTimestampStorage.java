@@ -0,0 +1,464 @@
+package practice;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.resps.Tuple;
+
+/**
+ * {@link Solution.TimestampStorage} spread over several Redis instances
+ * with client-side slot routing.
+ *
+ * Why:
+ *   RedisTimestampStorage sends every card through one JedisPool, i.e. one
+ *   Redis node — a single-threaded server caps the whole fleet's throughput.
+ *
+ * Routing:
+ *   storage key ── hash tag ── CRC16 slot (0..16383) ── shard
+ *
+ *   "abc"         → "velocity:{abc}"          ┐
+ *   "m-1:{abc}"   → "velocity:m-1:{abc}"      ├─ slot(abc) → same shard
+ *   "m-2:{abc}"   → "velocity:m-2:{abc}"      ┘
+ *
+ *   Card-only keys get wrapped in braces here; merchant-scoped keys already
+ *   carry the tag (see VelocityProviderImpl.merchantCardKey). Every key of
+ *   one card therefore lives on one shard.
+ *
+ *   Slots are split into equal contiguous ranges, one per shard — the same
+ *   layout redis-cli creates for a fresh cluster. The slot math is Redis
+ *   Cluster's ({@link RedisSlots}), so moving to a managed cluster changes
+ *   the client, not the keys.
+ *
+ * Retention:
+ *   With a retention, each write also runs ZREMRANGEBYSCORE (trim this
+ *   card's expired members) and PEXPIRE (drop the key once the card goes
+ *   quiet), pipelined right behind the ZADD on the same connection — one
+ *   round trip, and the key always exists when its expiry is set.
+ *   removeOlderThan is a no-op either way.
+ *
+ * Pipelines:
+ *   - single calls: one pooled connection per call, as in RedisTimestampStorage
+ *   - async calls:  one RedisCommandBatcher per shard, pipelining across callers
+ *   - bulk calls:   grouped by shard, one pipeline per shard, shards in parallel
+ *
+ * Closing:
+ *   close() stops the batchers and the bulk threads; every later call is
+ *   rejected with IllegalStateException, as in RedisTimestampStorage.
+ *
+ * Trade-off:
+ *   Co-locating a card's keys means a very hot card is still one node's
+ *   problem. That is the price of single-node multi-key operations; spreading
+ *   a card across nodes would turn every lookup into a fan-out.
+ */
+public class ShardedRedisTimestampStorage implements Solution.TimestampStorage, AutoCloseable {
+
+    private static final String KEY_PREFIX = "velocity:";
+
+    private final List<JedisPool> shards;
+    private final long retentionMillis;
+    private final int pipelineConnections;
+    private final int maxPipelineBatch;
+    // Bulk calls block on I/O per shard; a virtual thread per shard call is free
+    private final ExecutorService bulkExecutor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("redis-bulk-", 0).factory());
+
+    // Lifecycle lock, not synchronized: callers may be virtual threads
+    private final ReentrantLock lifecycle = new ReentrantLock();
+    private volatile RedisCommandBatcher[] batchers;
+    // Guarded by lifecycle for writes; read unlocked on every call
+    private volatile boolean closed;
+
+    /**
+     * @param shards    One pool per Redis instance; order defines slot ownership
+     * @param retention Per-card retention enforced on write; null to keep everything
+     */
+    public ShardedRedisTimestampStorage(List<JedisPool> shards, Duration retention) {
+        this(shards, retention,
+                RedisTimestampStorage.DEFAULT_PIPELINE_CONNECTIONS,
+                RedisTimestampStorage.DEFAULT_MAX_PIPELINE_BATCH);
+    }
+
+    public ShardedRedisTimestampStorage(List<JedisPool> shards, Duration retention,
+            int pipelineConnectionsPerShard, int maxPipelineBatch) {
+        if (shards == null || shards.isEmpty() || shards.size() > RedisSlots.SLOT_COUNT) {
+            throw new IllegalArgumentException("Between 1 and 16384 shards are required");
+        }
+        if (retention != null && (retention.isNegative() || retention.isZero())) {
+            throw new IllegalArgumentException("Retention must be positive");
+        }
+        if (pipelineConnectionsPerShard <= 0 || maxPipelineBatch <= 0) {
+            throw new IllegalArgumentException("Pipeline connections and batch size must be positive");
+        }
+        this.shards = List.copyOf(shards);
+        this.retentionMillis = retention == null ? 0L : retention.toMillis();
+        this.pipelineConnections = pipelineConnectionsPerShard;
+        this.maxPipelineBatch = maxPipelineBatch;
+    }
+
+    /**
+     * One payment for {@link #addTimestamps}.
+     */
+    public static final class BulkEntry {
+        final String cardHash;
+        final String paymentId;
+        final Instant timestamp;
+        final long amount;
+
+        public BulkEntry(String cardHash, String paymentId, Instant timestamp, long amount) {
+            this.cardHash = cardHash;
+            this.paymentId = paymentId;
+            this.timestamp = timestamp;
+            this.amount = amount;
+        }
+    }
+
+    @Override
+    public void addTimestamp(String cardHash, Instant timestamp, long amount) {
+        addTimestamp(cardHash, null, timestamp, amount);
+    }
+
+    @Override
+    public void addTimestamp(String cardHash, String paymentId, Instant timestamp, long amount) {
+        addTimestampIfAbsent(cardHash, paymentId, timestamp, amount);
+    }
+
+    @Override
+    public boolean addTimestampIfAbsent(String cardHash, String paymentId, Instant timestamp, long amount) {
+        Response<Long> added;
+        try (Jedis jedis = resourceFor(cardHash);
+             Pipeline pipeline = jedis.pipelined()) {
+            added = appendWrite(pipeline, cardHash, paymentId, timestamp, amount);
+            pipeline.sync();
+        }
+        return added.get() == 1;
+    }
+
+    /**
+     * Writes many payments with one pipeline per shard, shards in parallel.
+     * For backfills and replays; the live path registers one at a time.
+     */
+    public void addTimestamps(Collection<BulkEntry> entries) {
+        checkOpen();
+        Map<Integer, List<BulkEntry>> byShard = new HashMap<>();
+        for (BulkEntry entry : entries) {
+            byShard.computeIfAbsent(shardFor(entry.cardHash), s -> new ArrayList<>()).add(entry);
+        }
+
+        List<CompletableFuture<Void>> writes = new ArrayList<>(byShard.size());
+        for (Map.Entry<Integer, List<BulkEntry>> shard : byShard.entrySet()) {
+            writes.add(CompletableFuture.runAsync(() -> {
+                try (Jedis jedis = shards.get(shard.getKey()).getResource();
+                     Pipeline pipeline = jedis.pipelined()) {
+                    for (BulkEntry entry : shard.getValue()) {
+                        appendWrite(pipeline, entry.cardHash, entry.paymentId, entry.timestamp, entry.amount);
+                    }
+                    pipeline.sync();
+                }
+            }, bulkExecutor));
+        }
+        CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0])).join();
+    }
+
+    @Override
+    public CompletableFuture<Void> addTimestampAsync(String cardHash, String paymentId, Instant timestamp,
+            long amount) {
+        return addTimestampIfAbsentAsync(cardHash, paymentId, timestamp, amount).thenApply(added -> null);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> addTimestampIfAbsentAsync(String cardHash, String paymentId,
+            Instant timestamp, long amount) {
+        RedisCommandBatcher batcher = batcherFor(cardHash);
+        if (batcher == null) {
+            return CompletableFuture.failedFuture(closedException());
+        }
+
+        // One submit: the batcher orders commands within it, not across submits,
+        // so PEXPIRE must travel with the ZADD that creates the key
+        return batcher
+                .submit(pipeline -> appendWrite(pipeline, cardHash, paymentId, timestamp, amount))
+                .thenApply(count -> count == 1);
+    }
+
+    @Override
+    public int countInWindow(String cardHash, Instant queryTime, Duration duration) {
+        try (Jedis jedis = resourceFor(cardHash)) {
+            return (int) jedis.zcount(redisKey(cardHash),
+                    queryTime.minus(duration).toEpochMilli(), queryTime.toEpochMilli());
+        }
+    }
+
+    /**
+     * Counts for many cards: one pipeline per shard, shards in parallel.
+     *
+     * @return Count per card hash, for every card asked about.
+     */
+    public Map<String, Integer> countInWindow(Collection<String> cardHashes, Instant queryTime, Duration duration) {
+        checkOpen();
+        long start = queryTime.minus(duration).toEpochMilli();
+        long end = queryTime.toEpochMilli();
+
+        Map<Integer, List<String>> byShard = new HashMap<>();
+        for (String cardHash : cardHashes) {
+            byShard.computeIfAbsent(shardFor(cardHash), s -> new ArrayList<>()).add(cardHash);
+        }
+
+        List<CompletableFuture<Map<String, Integer>>> reads = new ArrayList<>(byShard.size());
+        for (Map.Entry<Integer, List<String>> shard : byShard.entrySet()) {
+            reads.add(CompletableFuture.supplyAsync(() -> {
+                Map<String, Response<Long>> responses = new HashMap<>();
+                try (Jedis jedis = shards.get(shard.getKey()).getResource();
+                     Pipeline pipeline = jedis.pipelined()) {
+                    for (String cardHash : shard.getValue()) {
+                        responses.put(cardHash, pipeline.zcount(redisKey(cardHash), start, end));
+                    }
+                    pipeline.sync();
+                }
+                Map<String, Integer> counts = new HashMap<>();
+                responses.forEach((cardHash, response) -> counts.put(cardHash, response.get().intValue()));
+                return counts;
+            }, bulkExecutor));
+        }
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (CompletableFuture<Map<String, Integer>> read : reads) {
+            counts.putAll(read.join());
+        }
+        return counts;
+    }
+
+    @Override
+    public CompletableFuture<Integer> countInWindowAsync(String cardHash, Instant queryTime, Duration duration) {
+        String key = redisKey(cardHash);
+        long start = queryTime.minus(duration).toEpochMilli();
+        long end = queryTime.toEpochMilli();
+        RedisCommandBatcher batcher = batcherFor(cardHash);
+        if (batcher == null) {
+            return CompletableFuture.failedFuture(closedException());
+        }
+
+        return batcher
+                .submit(pipeline -> pipeline.zcount(key, start, end))
+                .thenApply(Long::intValue);
+    }
+
+    @Override
+    public Solution.WindowAggregate aggregateInWindow(String cardHash, Instant queryTime, Duration duration) {
+        List<String> members;
+        try (Jedis jedis = resourceFor(cardHash)) {
+            members = jedis.zrangeByScore(redisKey(cardHash),
+                    queryTime.minus(duration).toEpochMilli(), queryTime.toEpochMilli());
+        }
+        return RedisTimestampStorage.aggregate(members);
+    }
+
+    @Override
+    public CompletableFuture<Solution.WindowAggregate> aggregateInWindowAsync(String cardHash, Instant queryTime,
+            Duration duration) {
+        String key = redisKey(cardHash);
+        long start = queryTime.minus(duration).toEpochMilli();
+        long end = queryTime.toEpochMilli();
+        RedisCommandBatcher batcher = batcherFor(cardHash);
+        if (batcher == null) {
+            return CompletableFuture.failedFuture(closedException());
+        }
+
+        return batcher
+                .submit(pipeline -> pipeline.zrangeByScore(key, start, end))
+                .thenApply(RedisTimestampStorage::aggregate);
+    }
+
+    @Override
+    public void removeOlderThan(Instant cutoffTime) {
+        // No-op: expired members are trimmed per card on write, idle cards
+        // expire by TTL (see class comment). A global sweep would have to
+        // SCAN every shard.
+    }
+
+    /**
+     * Oldest member across all shards: SCAN every shard's velocity keys and
+     * read each key's lowest score (ZRANGE key 0 0 WITHSCORES), pipelined per
+     * SCAN page, shards in parallel.
+     *
+     * O(keys) round-trip work — for diagnostics and exports, not a per-payment
+     * path. Cleanup never needs it here (retention is enforced on write).
+     *
+     * @return The oldest stored timestamp, or null if no shard holds any.
+     */
+    @Override
+    public Instant getOldestTimestamp() {
+        checkOpen();
+        List<CompletableFuture<Long>> scans = new ArrayList<>(shards.size());
+        for (JedisPool shard : shards) {
+            scans.add(CompletableFuture.supplyAsync(() -> oldestMillis(shard), bulkExecutor));
+        }
+        long oldest = Long.MAX_VALUE;
+        for (CompletableFuture<Long> scan : scans) {
+            oldest = Math.min(oldest, scan.join());
+        }
+        return oldest == Long.MAX_VALUE ? null : Instant.ofEpochMilli(oldest);
+    }
+
+    private static long oldestMillis(JedisPool shard) {
+        long[] oldest = { Long.MAX_VALUE };
+        try (Jedis jedis = shard.getResource()) {
+            RedisTimestampStorage.forEachKeyPage(jedis, page -> {
+                List<Response<List<Tuple>>> firsts = new ArrayList<>(page.size());
+                try (Pipeline pipeline = jedis.pipelined()) {
+                    for (String key : page) {
+                        firsts.add(pipeline.zrangeWithScores(key, 0, 0));
+                    }
+                    pipeline.sync();
+                }
+                for (Response<List<Tuple>> first : firsts) {
+                    for (Tuple tuple : first.get()) {
+                        oldest[0] = Math.min(oldest[0], (long) tuple.getScore());
+                    }
+                }
+            });
+        }
+        return oldest[0];
+    }
+
+    /**
+     * Shard by shard, SCAN every velocity key and read its sorted set back
+     * (see RedisTimestampStorage.forEachBucket). Shards are visited one
+     * after another so the visitor sees one thread. O(keyspace): export
+     * tooling only.
+     */
+    @Override
+    public void forEachBucket(Solution.BucketVisitor visitor) {
+        checkOpen();
+        for (JedisPool shard : shards) {
+            try (Jedis jedis = shard.getResource()) {
+                RedisTimestampStorage.forEachKeyPage(jedis, page -> {
+                    for (Map.Entry<String, List<Tuple>> card
+                            : RedisTimestampStorage.readSortedSets(jedis, page).entrySet()) {
+                        RedisTimestampStorage.visitBuckets(storageKey(card.getKey()), card.getValue(), visitor);
+                    }
+                });
+            }
+        }
+    }
+
+    @Override
+    public boolean isRemote() {
+        return true;
+    }
+
+    /**
+     * Stops the async batchers (flushing queued commands) and waits for bulk
+     * calls in flight. The pools are owned by the caller.
+     */
+    @Override
+    public void close() {
+        RedisCommandBatcher[] current;
+        lifecycle.lock();
+        try {
+            closed = true;
+            current = batchers;
+        } finally {
+            lifecycle.unlock();
+        }
+        if (current != null) {
+            for (RedisCommandBatcher batcher : current) {
+                batcher.close();
+            }
+        }
+        bulkExecutor.close();
+    }
+
+    /**
+     * @return Index of the shard owning the slot of this storage key.
+     */
+    int shardFor(String cardHash) {
+        return (int) ((long) RedisSlots.slot(redisKey(cardHash)) * shards.size() / RedisSlots.SLOT_COUNT);
+    }
+
+    /**
+     * Redis key for a storage key, hash-tagged on the card hash.
+     */
+    static String redisKey(String cardHash) {
+        return cardHash.indexOf('{') >= 0
+                ? KEY_PREFIX + cardHash
+                : KEY_PREFIX + "{" + cardHash + "}";
+    }
+
+    /**
+     * Inverse of {@link #redisKey}: drops the braces this class added.
+     */
+    static String storageKey(String redisKey) {
+        String key = redisKey.substring(KEY_PREFIX.length());
+        boolean wrapped = key.startsWith("{") && key.endsWith("}") && key.indexOf('{', 1) < 0;
+        return wrapped ? key.substring(1, key.length() - 1) : key;
+    }
+
+    /**
+     * @return The ZADD reply: 1 if the member is new.
+     */
+    private Response<Long> appendWrite(Pipeline pipeline, String cardHash, String paymentId, Instant timestamp,
+            long amount) {
+        String key = redisKey(cardHash);
+        long epochMilli = timestamp.toEpochMilli();
+        Response<Long> added = pipeline.zadd(key, epochMilli,
+                RedisTimestampStorage.member(epochMilli, paymentId, amount));
+        if (retentionMillis > 0) {
+            pipeline.zremrangeByScore(key, 0, epochMilli - retentionMillis - 1);
+            pipeline.pexpire(key, retentionMillis);
+        }
+        return added;
+    }
+
+    private Jedis resourceFor(String cardHash) {
+        checkOpen();
+        return shards.get(shardFor(cardHash)).getResource();
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw closedException();
+        }
+    }
+
+    private static IllegalStateException closedException() {
+        return new IllegalStateException("Sharded Redis timestamp storage is closed");
+    }
+
+    /**
+     * @return The card's shard batcher, or null once closed.
+     */
+    private RedisCommandBatcher batcherFor(String cardHash) {
+        RedisCommandBatcher[] current = batchers;
+        if (current == null) {
+            lifecycle.lock();
+            try {
+                if (closed) {
+                    return null;
+                }
+                current = batchers;
+                if (current == null) {
+                    current = new RedisCommandBatcher[shards.size()];
+                    for (int i = 0; i < current.length; i++) {
+                        current[i] = new RedisCommandBatcher(shards.get(i), pipelineConnections, maxPipelineBatch);
+                    }
+                    batchers = current;
+                }
+            } finally {
+                lifecycle.unlock();
+            }
+        }
+        return current[shardFor(cardHash)];
+    }
+}
@@ -0,0 +1,110 @@
+package practice;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory {@link Solution.DistinctCountStorage} backed by time-sliced
+ * HyperLogLog sketches.
+ *
+ * Layout:
+ *   key → TreeMap<sliceStartMillis, HyperLogLog>
+ *   e.g. "card123" → {10:00 → HLL{m1, m2}, 10:01 → HLL{m2, m7}, ...}
+ *
+ * Query "distinct merchants for card123 in the last hour":
+ *   1. subMap over slices overlapping [queryTime - duration, queryTime]
+ *   2. merge those sketches into a scratch sketch (set union)
+ *   3. estimate()
+ *
+ * Why slices instead of one sketch per key:
+ *   HyperLogLog cannot delete. One sketch per key would only ever grow and
+ *   could not answer "last hour" vs "last day". Slicing by time lets cleanup
+ *   drop whole slices and lets any window be assembled from its slices.
+ *
+ * Accuracy:
+ *   - Window edges are slice-granular: the oldest overlapping slice may
+ *     include events up to one slice width before the window start.
+ *   - Per-slice sketches stay exact while sparse (see HyperLogLog).
+ *
+ * Memory:
+ *   Bounded by (retention / sliceWidth) sketches per active key. With the
+ *   default 1-minute slice most slices stay sparse (a card rarely hits more
+ *   than a few merchants in a minute), so typical cost is a few hundred bytes
+ *   per active minute rather than the merchant IDs of every payment.
+ *
+ * Thread safety:
+ *   Each key's slice map is mutated and read under its own monitor.
+ *   Creation and removal of a key go through ConcurrentHashMap.compute so a
+ *   cleanup that empties a key can never drop a concurrent insert.
+ */
+public class SlicedHyperLogLogStorage implements Solution.DistinctCountStorage {
+
+    private final ConcurrentHashMap<String, TreeMap<Long, HyperLogLog>> slicesByKey = new ConcurrentHashMap<>();
+    private final long sliceMillis;
+    private final int precision;
+
+    public SlicedHyperLogLogStorage(Duration sliceWidth, int precision) {
+        if (sliceWidth == null || sliceWidth.isNegative() || sliceWidth.isZero()) {
+            throw new IllegalArgumentException("Slice width must be positive");
+        }
+        this.sliceMillis = sliceWidth.toMillis();
+        this.precision = precision;
+        // Fail fast on an invalid precision rather than on the first payment
+        new HyperLogLog(precision);
+    }
+
+    @Override
+    public void addValue(String key, String value, Instant timestamp) {
+        long sliceStart = sliceStart(timestamp.toEpochMilli());
+
+        slicesByKey.compute(key, (k, slices) -> {
+            TreeMap<Long, HyperLogLog> target = slices == null ? new TreeMap<>() : slices;
+            synchronized (target) {
+                target.computeIfAbsent(sliceStart, s -> new HyperLogLog(precision)).add(value);
+            }
+            return target;
+        });
+    }
+
+    @Override
+    public long estimateDistinctInWindow(String key, Instant queryTime, Duration duration) {
+        TreeMap<Long, HyperLogLog> slices = slicesByKey.get(key);
+        if (slices == null) {
+            return 0;
+        }
+
+        long windowStartSlice = sliceStart(queryTime.minus(duration).toEpochMilli());
+        long queryTimeMillis = queryTime.toEpochMilli();
+
+        HyperLogLog union = new HyperLogLog(precision);
+        synchronized (slices) {
+            for (HyperLogLog slice : slices.subMap(windowStartSlice, true, queryTimeMillis, true).values()) {
+                union.merge(slice);
+            }
+        }
+        return union.estimate();
+    }
+
+    @Override
+    public void removeOlderThan(Instant cutoffTime) {
+        // Only drop slices that end before the cutoff; a slice straddling the
+        // cutoff still holds values that are inside the retention period.
+        long firstRetainedSlice = sliceStart(cutoffTime.toEpochMilli());
+
+        for (Map.Entry<String, TreeMap<Long, HyperLogLog>> entry : slicesByKey.entrySet()) {
+            slicesByKey.computeIfPresent(entry.getKey(), (k, slices) -> {
+                synchronized (slices) {
+                    slices.headMap(firstRetainedSlice, false).clear();
+                    return slices.isEmpty() ? null : slices;
+                }
+            });
+        }
+    }
+
+    private long sliceStart(long epochMilli) {
+        return Math.floorDiv(epochMilli, sliceMillis) * sliceMillis;
+    }
+}
@@ -2,9 +2,12 @@
 package practice;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
 import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import practice.Solution.TimestampStorage;
@@ -31,6 +34,17 @@ public class Solution {
          */
         int getCardUsageCount(Payment payment, Duration duration);
 
+        /**
+         * Same lookup as {@link #getCardUsageCount(Payment, Duration)} but also
+         * returns the sum and maximum of the payment amounts in the window, so
+         * amount-based rules ("more than 5,000.00 in 24h") need no extra scan.
+         *
+         * @param payment  The payment being processed
+         * @param duration The interval to aggregate
+         * @return Count, amount sum and max amount (minor units) in the interval.
+         */
+        WindowAggregate getCardUsageAggregate(Payment payment, Duration duration);
+
         /**
          * After the payment is processed this method is called.
          *
@@ -38,6 +52,37 @@ public class Solution {
          */
         void registerPayment(Payment payment);
 
+        /**
+         * Returns approximately how many distinct merchants the card in the
+         * Payment has been used at within {@code duration} before the payment
+         * timestamp. Used to spot card-testing (one card probed across many
+         * merchants).
+         *
+         * @param payment  The payment being processed
+         * @param duration The interval to count
+         * @return Estimated number of distinct merchants in the interval.
+         */
+        int getDistinctMerchantCount(Payment payment, Duration duration);
+
+        /**
+         * Returns approximately how many distinct cards have been used at the
+         * merchant of the Payment within {@code duration} before the payment
+         * timestamp. Used to spot enumeration attacks against one merchant.
+         *
+         * @param payment  The payment being processed (must carry a merchantId)
+         * @param duration The interval to count
+         * @return Estimated number of distinct cards in the interval.
+         */
+        int getDistinctCardCount(Payment payment, Duration duration);
+
+        /**
+         * @return true if lookups leave the JVM (Redis, Postgres). Rule engines
+         *         use this to run cheap in-memory checks first.
+         */
+        default boolean isRemote() {
+            return false;
+        }
+
         /**
          * @return Instance of a Velocity provider
          */
@@ -83,17 +128,31 @@ public class Solution {
      * - 20x scale: partition by card hash, keep per-card state local, and bound
      * history with cleanup
      */
-    static class VelocityProviderImpl implements VelocityProvider {
+    static class VelocityProviderImpl implements VelocityProvider, AsyncVelocityProvider, AutoCloseable {
+
+        // Namespaces inside the shared distinct-count storage
+        private static final String CARD_KEY_PREFIX = "card:";
+        private static final String MERCHANT_KEY_PREFIX = "merchant:";
 
         // Storage strategy for payment timestamps
         private final TimestampStorage timestampStorage;
 
+        // Approximate distinct-count sketches (card → merchants, merchant → cards)
+        private final DistinctCountStorage distinctCountStorage;
+
         // Cleanup strategy for old data
         private final CleanupStrategy cleanupStrategy;
 
+        // Drops retried registrations of the same paymentId
+        private final PaymentDeduplicator deduplicator;
+
         // Configuration for the provider
         private final VelocityProviderConfig config;
 
+        // Storage this provider built itself and so must close; null when the
+        // caller supplied one (the caller owns its lifecycle)
+        private final TimestampStorage ownedStorage;
+
         /**
          * Default constructor with standard configuration.
          */
@@ -109,12 +168,23 @@ public class Solution {
             this.config = config;
             // FOLLOW UP: toggle storage impl here (TreeMap vs SkipList) based on
             // performance needs
-            this.timestampStorage = config.isUseSkipListStorage()
-                    ? new SkipListTimestampStorage()
-                    : new TreeMapTimestampStorage();
+            TimestampStorage storage;
+            if (config.isUseSkipListStorage()) {
+                storage = new SkipListTimestampStorage();
+            } else if (config.isUseGenerationalStorage()) {
+                storage = GenerationalTimestampStorage.start();
+            } else if (config.getColdCompressionAfter() != null) {
+                storage = new TreeMapTimestampStorage(config.getColdCompressionAfter());
+            } else {
+                storage = new TreeMapTimestampStorage();
+            }
+            this.timestampStorage = withMemoryBudget(config, storage);
+            this.ownedStorage = timestampStorage;
+            this.distinctCountStorage = newDistinctCountStorage(config);
             this.cleanupStrategy = new ProbabilisticCleanupStrategy(
                     config.getCleanupThreshold(),
                     config.getCleanupProbability());
+            this.deduplicator = newDeduplicator(config);
         }
 
         /**
@@ -123,10 +193,62 @@ public class Solution {
          */
         public VelocityProviderImpl(VelocityProviderConfig config, TimestampStorage storage) {
             this.config = config;
-            this.timestampStorage = storage;
+            this.timestampStorage = withMemoryBudget(config, storage);
+            this.ownedStorage = null;
+            this.distinctCountStorage = newDistinctCountStorage(config);
             this.cleanupStrategy = new ProbabilisticCleanupStrategy(
                     config.getCleanupThreshold(),
                     config.getCleanupProbability());
+            this.deduplicator = newDeduplicator(config);
+        }
+
+        private static TimestampStorage withMemoryBudget(VelocityProviderConfig config, TimestampStorage storage) {
+            if (config.getOverBudgetPolicy() == null) {
+                return storage;
+            }
+            return new BudgetedTimestampStorage(storage, config.getMaxRetainedEntries(),
+                    config.getMaxTrackedCards(), config.getOverBudgetPolicy());
+        }
+
+        /**
+         * @return Shedding/downsampling counters, or null if no memory budget
+         *         is configured.
+         */
+        public VelocityStorageMetrics getStorageMetrics() {
+            return timestampStorage instanceof BudgetedTimestampStorage budgeted ? budgeted.metrics() : null;
+        }
+
+        /**
+         * Closes the storage this provider created (stopping e.g. the
+         * generational storage's seal thread). A storage passed to the
+         * constructor is left open for its owner to close.
+         */
+        @Override
+        public void close() {
+            if (ownedStorage instanceof AutoCloseable closeable) {
+                try {
+                    closeable.close();
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new RuntimeException("Failed to close timestamp storage", e);
+                }
+            }
+        }
+
+        private static PaymentDeduplicator newDeduplicator(VelocityProviderConfig config) {
+            return new PaymentDeduplicator(
+                    config.getDedupeWindow(),
+                    config.getDedupeExactWindow(),
+                    config.getDedupeMaxExactEntries(),
+                    config.getDedupeExpectedPayments(),
+                    config.getDedupeFalsePositiveProbability());
+        }
+
+        private static DistinctCountStorage newDistinctCountStorage(VelocityProviderConfig config) {
+            return new SlicedHyperLogLogStorage(
+                    config.getDistinctCountSliceWidth(),
+                    config.getDistinctCountPrecision());
         }
 
         @Override
@@ -135,7 +257,48 @@ public class Solution {
             validateDuration(duration);
 
             return timestampStorage.countInWindow(
-                    payment.getHashedCardNumber(),
+                    storageKey(payment),
+                    payment.getTimestamp(),
+                    duration);
+        }
+
+        @Override
+        public boolean isRemote() {
+            return timestampStorage.isRemote();
+        }
+
+        @Override
+        public WindowAggregate getCardUsageAggregate(Payment payment, Duration duration) {
+            validatePayment(payment);
+            validateDuration(duration);
+
+            return timestampStorage.aggregateInWindow(
+                    storageKey(payment),
+                    payment.getTimestamp(),
+                    duration);
+        }
+
+        @Override
+        public int getDistinctMerchantCount(Payment payment, Duration duration) {
+            validatePayment(payment);
+            validateDuration(duration);
+
+            return (int) distinctCountStorage.estimateDistinctInWindow(
+                    CARD_KEY_PREFIX + payment.getHashedCardNumber(),
+                    payment.getTimestamp(),
+                    duration);
+        }
+
+        @Override
+        public int getDistinctCardCount(Payment payment, Duration duration) {
+            validatePayment(payment);
+            validateDuration(duration);
+            if (payment.getMerchantId() == null || payment.getMerchantId().isEmpty()) {
+                throw new IllegalArgumentException("Merchant id is required for distinct card counts");
+            }
+
+            return (int) distinctCountStorage.estimateDistinctInWindow(
+                    MERCHANT_KEY_PREFIX + payment.getMerchantId(),
                     payment.getTimestamp(),
                     duration);
         }
@@ -144,14 +307,150 @@ public class Solution {
         public void registerPayment(Payment payment) {
             validatePayment(payment);
 
-            timestampStorage.addTimestamp(
-                    payment.getHashedCardNumber(),
-                    payment.getTimestamp());
+            // Idempotent on paymentId: a retried registration is a no-op.
+            // Payments without an ID cannot be deduplicated and are always counted.
+            if (!claimFirstSighting(payment)) {
+                return;
+            }
+
+            try {
+                timestampStorage.addTimestamp(
+                        storageKey(payment),
+                        payment.getPaymentId(),
+                        payment.getTimestamp(),
+                        payment.getAmountMinorUnits());
+            } catch (RuntimeException e) {
+                // Not stored: the caller's retry must be counted, not dropped as a duplicate
+                releaseSighting(payment);
+                throw e;
+            }
+            confirmSighting(payment);
+
+            cleanupIfDue(payment.getTimestamp());
+        }
+
+        @Override
+        public CompletableFuture<Integer> getCardUsageCountAsync(Payment payment, Duration duration) {
+            validatePayment(payment);
+            validateDuration(duration);
+
+            return timestampStorage.countInWindowAsync(
+                    storageKey(payment),
+                    payment.getTimestamp(),
+                    duration);
+        }
+
+        @Override
+        public CompletableFuture<WindowAggregate> getCardUsageAggregateAsync(Payment payment, Duration duration) {
+            validatePayment(payment);
+            validateDuration(duration);
+
+            return timestampStorage.aggregateInWindowAsync(
+                    storageKey(payment),
+                    payment.getTimestamp(),
+                    duration);
+        }
+
+        /**
+         * Dedupe and distinct counts are in-memory and run on the caller
+         * thread; only the timestamp write goes through the storage's async
+         * path. Cleanup is chained after the write so it never delays it.
+         */
+        @Override
+        public CompletableFuture<Void> registerPaymentAsync(Payment payment) {
+            validatePayment(payment);
+
+            if (!claimFirstSighting(payment)) {
+                return CompletableFuture.completedFuture(null);
+            }
+
+            CompletableFuture<Void> write;
+            try {
+                write = timestampStorage.addTimestampAsync(
+                        storageKey(payment),
+                        payment.getPaymentId(),
+                        payment.getTimestamp(),
+                        payment.getAmountMinorUnits());
+            } catch (RuntimeException e) {
+                releaseSighting(payment);
+                throw e;
+            }
+            return write
+                    .whenComplete((ignored, failure) -> {
+                        if (failure != null) {
+                            releaseSighting(payment);
+                        } else {
+                            confirmSighting(payment);
+                        }
+                    })
+                    .thenRun(() -> cleanupIfDue(payment.getTimestamp()));
+        }
+
+        /**
+         * Claims the paymentId and records the card/merchant pair for distinct
+         * counts. The claim must be confirmed once the timestamp write lands,
+         * or released if it fails. Distinct-count sketches are idempotent, so
+         * recording the pair before the write cannot inflate them on a retry.
+         *
+         * @return false if this paymentId was already registered.
+         */
+        private boolean claimFirstSighting(Payment payment) {
+            String paymentId = payment.getPaymentId();
+            if (paymentId != null && !deduplicator.claim(paymentId, payment.getTimestamp())) {
+                return false;
+            }
+
+            // Distinct counts need both sides of the card/merchant pair
+            String merchantId = payment.getMerchantId();
+            if (merchantId != null && !merchantId.isEmpty()) {
+                distinctCountStorage.addValue(
+                        CARD_KEY_PREFIX + payment.getHashedCardNumber(), merchantId, payment.getTimestamp());
+                distinctCountStorage.addValue(
+                        MERCHANT_KEY_PREFIX + merchantId, payment.getHashedCardNumber(), payment.getTimestamp());
+            }
+            return true;
+        }
+
+        private void confirmSighting(Payment payment) {
+            if (payment.getPaymentId() != null) {
+                deduplicator.confirm(payment.getPaymentId(), payment.getTimestamp());
+            }
+        }
+
+        private void releaseSighting(Payment payment) {
+            if (payment.getPaymentId() != null) {
+                deduplicator.release(payment.getPaymentId());
+            }
+        }
 
+        private void cleanupIfDue(Instant currentTime) {
             // Trigger cleanup if strategy decides it's time
             if (cleanupStrategy.shouldCleanup()) {
-                cleanupStrategy.cleanup(timestampStorage, payment.getTimestamp());
+                cleanupStrategy.cleanup(timestampStorage, currentTime);
+                distinctCountStorage.removeOlderThan(currentTime.minus(config.getCleanupThreshold()));
+            }
+        }
+
+        /**
+         * Key used in the timestamp storage. With merchant-scoped keys, many
+         * merchants share one storage without seeing each other's history:
+         * "merchantId:{cardHash}". Payments without a merchant use the card hash.
+         */
+        private String storageKey(Payment payment) {
+            String merchantId = payment.getMerchantId();
+            if (!config.isMerchantScopedKeys() || merchantId == null || merchantId.isEmpty()) {
+                return payment.getHashedCardNumber();
             }
+            return merchantCardKey(merchantId, payment.getHashedCardNumber());
+        }
+
+        /**
+         * The braces are a Redis Cluster hash tag: only the card hash decides
+         * the slot, so all of a card's keys (any merchant, or none) live on
+         * one shard. In-memory storages treat them as plain characters.
+         */
+        static String merchantCardKey(String merchantId, String cardHash) {
+            return merchantId + ":{" + cardHash + "}";
         }
 
         /**
@@ -187,11 +486,62 @@ public class Solution {
         private final Duration cleanupThreshold;
         private final double cleanupProbability;
         private final boolean useSkipListStorage;
+        private final Duration distinctCountSliceWidth;
+        private final int distinctCountPrecision;
+        private final Duration dedupeWindow;
+        private final Duration dedupeExactWindow;
+        private final int dedupeMaxExactEntries;
+        private final int dedupeExpectedPayments;
+        private final double dedupeFalsePositiveProbability;
+        private final boolean merchantScopedKeys;
+        private final Duration coldCompressionAfter;
+        private final boolean useGenerationalStorage;
+        private final long maxRetainedEntries;
+        private final int maxTrackedCards;
+        private final BudgetedTimestampStorage.OverBudgetPolicy overBudgetPolicy;
 
         private VelocityProviderConfig(Builder builder) {
             this.cleanupThreshold = builder.cleanupThreshold;
             this.cleanupProbability = builder.cleanupProbability;
             this.useSkipListStorage = builder.useSkipListStorage;
+            this.distinctCountSliceWidth = builder.distinctCountSliceWidth;
+            this.distinctCountPrecision = builder.distinctCountPrecision;
+            this.dedupeWindow = builder.dedupeWindow;
+            this.dedupeExactWindow = builder.dedupeExactWindow;
+            this.dedupeMaxExactEntries = builder.dedupeMaxExactEntries;
+            this.dedupeExpectedPayments = builder.dedupeExpectedPayments;
+            this.dedupeFalsePositiveProbability = builder.dedupeFalsePositiveProbability;
+            this.merchantScopedKeys = builder.merchantScopedKeys;
+            this.coldCompressionAfter = builder.coldCompressionAfter;
+            this.useGenerationalStorage = builder.useGenerationalStorage;
+            this.maxRetainedEntries = builder.maxRetainedEntries;
+            this.maxTrackedCards = builder.maxTrackedCards;
+            this.overBudgetPolicy = builder.overBudgetPolicy;
+        }
+
+        /**
+         * @return A builder pre-populated with this configuration, for deriving
+         *         variants (e.g. a shared pool config from a merchant default).
+         */
+        public Builder toBuilder() {
+            Builder builder = new Builder();
+            builder.cleanupThreshold = cleanupThreshold;
+            builder.cleanupProbability = cleanupProbability;
+            builder.useSkipListStorage = useSkipListStorage;
+            builder.distinctCountSliceWidth = distinctCountSliceWidth;
+            builder.distinctCountPrecision = distinctCountPrecision;
+            builder.dedupeWindow = dedupeWindow;
+            builder.dedupeExactWindow = dedupeExactWindow;
+            builder.dedupeMaxExactEntries = dedupeMaxExactEntries;
+            builder.dedupeExpectedPayments = dedupeExpectedPayments;
+            builder.dedupeFalsePositiveProbability = dedupeFalsePositiveProbability;
+            builder.merchantScopedKeys = merchantScopedKeys;
+            builder.coldCompressionAfter = coldCompressionAfter;
+            builder.useGenerationalStorage = useGenerationalStorage;
+            builder.maxRetainedEntries = maxRetainedEntries;
+            builder.maxTrackedCards = maxTrackedCards;
+            builder.overBudgetPolicy = overBudgetPolicy;
+            return builder;
         }
 
         public static VelocityProviderConfig defaultConfig() {
@@ -210,6 +560,66 @@ public class Solution {
             return useSkipListStorage;
         }
 
+        public Duration getDistinctCountSliceWidth() {
+            return distinctCountSliceWidth;
+        }
+
+        public int getDistinctCountPrecision() {
+            return distinctCountPrecision;
+        }
+
+        public Duration getDedupeWindow() {
+            return dedupeWindow;
+        }
+
+        public Duration getDedupeExactWindow() {
+            return dedupeExactWindow;
+        }
+
+        public int getDedupeMaxExactEntries() {
+            return dedupeMaxExactEntries;
+        }
+
+        public int getDedupeExpectedPayments() {
+            return dedupeExpectedPayments;
+        }
+
+        public double getDedupeFalsePositiveProbability() {
+            return dedupeFalsePositiveProbability;
+        }
+
+        public boolean isMerchantScopedKeys() {
+            return merchantScopedKeys;
+        }
+
+        /**
+         * @return Age after which TreeMap storage compresses buckets, or null
+         *         if compression is off.
+         */
+        public Duration getColdCompressionAfter() {
+            return coldCompressionAfter;
+        }
+
+        public boolean isUseGenerationalStorage() {
+            return useGenerationalStorage;
+        }
+
+        public long getMaxRetainedEntries() {
+            return maxRetainedEntries;
+        }
+
+        public int getMaxTrackedCards() {
+            return maxTrackedCards;
+        }
+
+        /**
+         * @return What happens to cards shed over the memory budget, or null
+         *         if memory is unbounded.
+         */
+        public BudgetedTimestampStorage.OverBudgetPolicy getOverBudgetPolicy() {
+            return overBudgetPolicy;
+        }
+
         /**
          * Builder pattern for flexible configuration.
          */
@@ -219,6 +629,24 @@ public class Solution {
             private Duration cleanupThreshold = Duration.ofDays(7);
             private double cleanupProbability = 0.001; // 0.1% chance per registration
             private boolean useSkipListStorage = false; // FOLLOW UP: opt-in to lock-free skip list per card
+            // Distinct-count window edges are accurate to one slice
+            private Duration distinctCountSliceWidth = Duration.ofMinutes(1);
+            private int distinctCountPrecision = 11; // 2KB dense sketch, ~2.3% error
+            // Retries beyond the exact window are still caught by the Bloom filter
+            private Duration dedupeWindow = Duration.ofHours(24);
+            private Duration dedupeExactWindow = Duration.ofMinutes(10);
+            private int dedupeMaxExactEntries = 100_000;
+            // Sizes each Bloom generation; a generation that fills up ends early
+            // rather than letting its false-positive rate climb
+            private int dedupeExpectedPayments = 100_000;
+            private double dedupeFalsePositiveProbability = 1e-6;
+            private boolean merchantScopedKeys = false; // key storage by merchantId:cardHash
+            private Duration coldCompressionAfter = null; // off: everything stays in the TreeMap
+            private boolean useGenerationalStorage = false; // hot skip list + sealed arrays per card
+            // Unbounded by default; set with memoryBudget(...)
+            private long maxRetainedEntries = 0;
+            private int maxTrackedCards = 0;
+            private BudgetedTimestampStorage.OverBudgetPolicy overBudgetPolicy = null;
 
             public Builder cleanupThreshold(Duration threshold) {
                 this.cleanupThreshold = threshold;
@@ -238,7 +666,101 @@ public class Solution {
                 return this;
             }
 
+            public Builder distinctCountSliceWidth(Duration sliceWidth) {
+                if (sliceWidth == null || sliceWidth.isNegative() || sliceWidth.isZero()) {
+                    throw new IllegalArgumentException("Slice width must be positive");
+                }
+                this.distinctCountSliceWidth = sliceWidth;
+                return this;
+            }
+
+            public Builder distinctCountPrecision(int precision) {
+                if (precision < HyperLogLog.MIN_PRECISION || precision > HyperLogLog.MAX_PRECISION) {
+                    throw new IllegalArgumentException("Precision must be between "
+                            + HyperLogLog.MIN_PRECISION + " and " + HyperLogLog.MAX_PRECISION);
+                }
+                this.distinctCountPrecision = precision;
+                return this;
+            }
+
+            public Builder dedupeWindow(Duration dedupeWindow, Duration exactWindow) {
+                if (dedupeWindow == null || dedupeWindow.isNegative() || dedupeWindow.isZero()) {
+                    throw new IllegalArgumentException("Dedupe window must be positive");
+                }
+                if (exactWindow == null || exactWindow.isNegative() || exactWindow.compareTo(dedupeWindow) > 0) {
+                    throw new IllegalArgumentException("Exact window must be between zero and the dedupe window");
+                }
+                this.dedupeWindow = dedupeWindow;
+                this.dedupeExactWindow = exactWindow;
+                return this;
+            }
+
+            public Builder dedupeCapacity(int maxExactEntries, int expectedPayments) {
+                if (maxExactEntries <= 0 || expectedPayments <= 0) {
+                    throw new IllegalArgumentException("Dedupe capacities must be positive");
+                }
+                this.dedupeMaxExactEntries = maxExactEntries;
+                this.dedupeExpectedPayments = expectedPayments;
+                return this;
+            }
+
+            public Builder dedupeFalsePositiveProbability(double probability) {
+                if (probability <= 0 || probability >= 1) {
+                    throw new IllegalArgumentException("False positive probability must be between 0 and 1");
+                }
+                this.dedupeFalsePositiveProbability = probability;
+                return this;
+            }
+
+            public Builder merchantScopedKeys(boolean merchantScopedKeys) {
+                this.merchantScopedKeys = merchantScopedKeys;
+                return this;
+            }
+
+            /**
+             * Compresses buckets older than {@code coldAfter} into cold blocks
+             * (TreeMap storage only). Should exceed the shortest common rule
+             * window so those stay on the uncompressed path; null turns it off.
+             */
+            public Builder compressColdHistory(Duration coldAfter) {
+                if (coldAfter != null && (coldAfter.isNegative() || coldAfter.isZero())) {
+                    throw new IllegalArgumentException("Cold threshold must be positive");
+                }
+                this.coldCompressionAfter = coldAfter;
+                return this;
+            }
+
+            public Builder useGenerationalStorage(boolean useGenerationalStorage) {
+                this.useGenerationalStorage = useGenerationalStorage;
+                return this;
+            }
+
+            /**
+             * Caps in-memory storage at {@code maxRetainedEntries} payments
+             * across {@code maxTrackedCards} cards; beyond that the least
+             * recently active cards are shed or downsampled per {@code policy}.
+             */
+            public Builder memoryBudget(long maxRetainedEntries, int maxTrackedCards,
+                    BudgetedTimestampStorage.OverBudgetPolicy policy) {
+                if (maxRetainedEntries <= 0 || maxTrackedCards <= 0) {
+                    throw new IllegalArgumentException("Budget limits must be positive");
+                }
+                if (policy == null) {
+                    throw new IllegalArgumentException("Over-budget policy is required");
+                }
+                this.maxRetainedEntries = maxRetainedEntries;
+                this.maxTrackedCards = maxTrackedCards;
+                this.overBudgetPolicy = policy;
+                return this;
+            }
+
             public VelocityProviderConfig build() {
+                if ((useSkipListStorage || useGenerationalStorage) && coldCompressionAfter != null) {
+                    throw new IllegalArgumentException("Cold compression is only supported by TreeMap storage");
+                }
+                if (useSkipListStorage && useGenerationalStorage) {
+                    throw new IllegalArgumentException("Choose one of skip list or generational storage");
+                }
                 return new VelocityProviderConfig(this);
             }
         }
@@ -253,13 +775,49 @@ public class Solution {
         /**
          * Adds a timestamp for a specific card.
          */
-        void addTimestamp(String cardHash, Instant timestamp);
+        default void addTimestamp(String cardHash, Instant timestamp) {
+            addTimestamp(cardHash, timestamp, 0L);
+        }
+
+        /**
+         * Adds a timestamp and the payment amount (minor units) for a specific
+         * card.
+         */
+        void addTimestamp(String cardHash, Instant timestamp, long amount);
+
+        /**
+         * Adds a timestamp carrying the originating payment ID. Durable stores
+         * use the ID to make the write idempotent; in-memory stores rely on
+         * the provider's deduplicator and ignore it.
+         */
+        default void addTimestamp(String cardHash, String paymentId, Instant timestamp, long amount) {
+            addTimestamp(cardHash, timestamp, amount);
+        }
+
+        /**
+         * {@link #addTimestamp(String, String, Instant, long)} that also says
+         * whether the store gained an entry. Stores that deduplicate on the
+         * payment ID return false for a payment they already hold; the
+         * default suits stores that ignore the ID, where every write is new.
+         *
+         * @return false if the write was an idempotent no-op.
+         */
+        default boolean addTimestampIfAbsent(String cardHash, String paymentId, Instant timestamp, long amount) {
+            addTimestamp(cardHash, paymentId, timestamp, amount);
+            return true;
+        }
 
         /**
          * Counts timestamps within a time window for a card.
          */
         int countInWindow(String cardHash, Instant queryTime, Duration duration);
 
+        /**
+         * Aggregates count, amount sum and max amount within a time window for a
+         * card in a single lookup.
+         */
+        WindowAggregate aggregateInWindow(String cardHash, Instant queryTime, Duration duration);
+
         /**
          * Removes all timestamps older than the cutoff time.
          */
@@ -269,19 +827,247 @@ public class Solution {
          * Gets the oldest timestamp across all cards.
          */
         Instant getOldestTimestamp();
+
+        /**
+         * @return true if operations involve a network round trip.
+         */
+        default boolean isRemote() {
+            return false;
+        }
+
+        /**
+         * Visits every stored timestamp bucket, grouped by card and in
+         * ascending time order within a card. Used by bulk export, not on the
+         * payment path. Weakly consistent: concurrent writes may or may not
+         * be seen.
+         *
+         * @throws UnsupportedOperationException if the store cannot be scanned
+         */
+        default void forEachBucket(BucketVisitor visitor) {
+            throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support scans");
+        }
+
+        /**
+         * @return true if {@link #evictCard} and {@link #forEachBucket} are
+         *         implemented. Checked up front by wrappers that rely on them
+         *         (BudgetedTimestampStorage) instead of failing mid-shed.
+         */
+        default boolean supportsEviction() {
+            return false;
+        }
+
+        /**
+         * Drops a card's whole history, handing every removed bucket to
+         * {@code evicted} (may be null). Used to shed memory, not on the
+         * payment path. An insert racing the eviction either lands before it
+         * (and is evicted) or after it (and starts a fresh history).
+         *
+         * @throws UnsupportedOperationException if the store cannot evict
+         */
+        default void evictCard(String cardHash, BucketVisitor evicted) {
+            throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support eviction");
+        }
+
+        /**
+         * Async {@link #countInWindow}. The default runs the blocking call on
+         * the caller's thread — right for in-memory stores, where a thread hop
+         * would cost more than the lookup. Remote stores override it.
+         */
+        default CompletableFuture<Integer> countInWindowAsync(String cardHash, Instant queryTime,
+                Duration duration) {
+            try {
+                return CompletableFuture.completedFuture(countInWindow(cardHash, queryTime, duration));
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+        /**
+         * Async {@link #aggregateInWindow}; same default as countInWindowAsync.
+         */
+        default CompletableFuture<WindowAggregate> aggregateInWindowAsync(String cardHash, Instant queryTime,
+                Duration duration) {
+            try {
+                return CompletableFuture.completedFuture(aggregateInWindow(cardHash, queryTime, duration));
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+        /**
+         * Async {@link #addTimestamp(String, String, Instant, long)}; same
+         * default as countInWindowAsync.
+         */
+        default CompletableFuture<Void> addTimestampAsync(String cardHash, String paymentId, Instant timestamp,
+                long amount) {
+            try {
+                addTimestamp(cardHash, paymentId, timestamp, amount);
+                return CompletableFuture.completedFuture(null);
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+        /**
+         * Async {@link #addTimestampIfAbsent}; same default as
+         * countInWindowAsync.
+         */
+        default CompletableFuture<Boolean> addTimestampIfAbsentAsync(String cardHash, String paymentId,
+                Instant timestamp, long amount) {
+            try {
+                return CompletableFuture.completedFuture(addTimestampIfAbsent(cardHash, paymentId, timestamp, amount));
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+    }
+
+    /**
+     * Result of a window lookup: how many payments, and how much money.
+     * Amounts are in minor units (cents) to avoid floating-point drift.
+     */
+    static final class WindowAggregate {
+        static final WindowAggregate EMPTY = new WindowAggregate(0, 0L, 0L);
+
+        private final int count;
+        private final long amountSum;
+        private final long maxAmount;
+
+        WindowAggregate(int count, long amountSum, long maxAmount) {
+            this.count = count;
+            this.amountSum = amountSum;
+            this.maxAmount = maxAmount;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public long getAmountSum() {
+            return amountSum;
+        }
+
+        public long getMaxAmount() {
+            return maxAmount;
+        }
+    }
+
+    /**
+     * Per-timestamp accumulator stored as the value of the per-card sorted maps.
+     * Replaces the former boxed Integer count so that count, sum and max are
+     * kept together and a window lookup walks the map once.
+     *
+     * Immutable: merges allocate a new bucket, which keeps it safe for
+     * ConcurrentSkipListMap.merge (the remapping function may be retried).
+     * Duplicate millis per card are rare, so this is one allocation per payment
+     * either way.
+     */
+    static final class TimestampBucket {
+        final int count;
+        final long amountSum;
+        final long maxAmount;
+
+        private TimestampBucket(int count, long amountSum, long maxAmount) {
+            this.count = count;
+            this.amountSum = amountSum;
+            this.maxAmount = maxAmount;
+        }
+
+        static TimestampBucket of(long amount) {
+            return new TimestampBucket(1, amount, amount);
+        }
+
+        static TimestampBucket of(int count, long amountSum, long maxAmount) {
+            return new TimestampBucket(count, amountSum, maxAmount);
+        }
+
+        TimestampBucket plus(TimestampBucket other) {
+            return new TimestampBucket(
+                    count + other.count,
+                    amountSum + other.amountSum,
+                    Math.max(maxAmount, other.maxAmount));
+        }
+
+        /**
+         * Folds a range of buckets into a WindowAggregate using primitive
+         * accumulators (no boxing, single pass).
+         */
+        static WindowAggregate aggregate(Collection<TimestampBucket> buckets) {
+            int count = 0;
+            long amountSum = 0L;
+            long maxAmount = 0L;
+            for (TimestampBucket bucket : buckets) {
+                count += bucket.count;
+                amountSum += bucket.amountSum;
+                if (bucket.maxAmount > maxAmount) {
+                    maxAmount = bucket.maxAmount;
+                }
+            }
+            return count == 0 ? WindowAggregate.EMPTY : new WindowAggregate(count, amountSum, maxAmount);
+        }
+
+        static int count(Collection<TimestampBucket> buckets) {
+            int count = 0;
+            for (TimestampBucket bucket : buckets) {
+                count += bucket.count;
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Receives one timestamp bucket per call from
+     * {@link TimestampStorage#forEachBucket}: all payments of a card in the
+     * same millisecond, folded the same way {@link TimestampBucket} folds them.
+     */
+    @FunctionalInterface
+    interface BucketVisitor {
+        void visit(String cardHash, long epochMilli, int count, long amountSum, long maxAmount);
+    }
+
+    /**
+     * Interface for approximate distinct-count storage.
+     * Tracks which values (merchant IDs, card hashes) were seen for a key over
+     * time, without keeping the values themselves.
+     */
+    interface DistinctCountStorage {
+        /**
+         * Records that {@code value} was seen for {@code key} at {@code timestamp}.
+         */
+        void addValue(String key, String value, Instant timestamp);
+
+        /**
+         * Estimates the number of distinct values seen for a key within a time
+         * window.
+         */
+        long estimateDistinctInWindow(String key, Instant queryTime, Duration duration);
+
+        /**
+         * Removes all data older than the cutoff time.
+         */
+        void removeOlderThan(Instant cutoffTime);
     }
 
     /**
      * TreeMap-based implementation of TimestampStorage.
-     * Uses TreeMap<Long, Integer> to track counts per timestamp, properly handling
-     * duplicates.
+     * Uses TreeMap<Long, TimestampBucket> to track counts and amounts per
+     * timestamp, properly handling duplicates.
      * Optimized for time-range queries with O(log n) complexity.
      * 
      * SCALABILITY NOTES:
      * - Per-request cost: O(log n + k) where n = timestamps per card, k = results
      * in window
      * - Memory bounded by cleanup threshold (default 7 days)
-     * - Thread-safe: ConcurrentHashMap + per-card TreeMap synchronization
+     * - Thread-safe: ConcurrentHashMap + per-card ReadWriteLock (see CardTimeline)
+     * 
+     * COLD COMPRESSION (optional, constructor with coldAfter):
+     * - Buckets older than (newest timestamp seen - coldAfter) move out of the
+     *   TreeMap into compressed TimestampBlocks during the cleanup sweep
+     * - ~90 bytes per TreeMap entry → ~5 bytes per compressed bucket
+     * - Short windows only touch the TreeMap; long ones add block totals and
+     *   decode at most the blocks cut by the window edges
+     * - Out-of-order inserts always land in the TreeMap; blocks may overlap
+     *   in time, queries sum all that overlap the window
      * 
      * SHARDING STRATEGY:
      * - Current: Keyed by hashedCardNumber for natural distribution
@@ -297,35 +1083,84 @@ public class Solution {
      * - Too aggressive cleanup = lost data = incorrect counts
      */
     static class TreeMapTimestampStorage implements TimestampStorage {
-        // Thread-safe map of card hash to timestamp counts
-        // TreeMap<epochMilli, count> allows duplicate timestamps with proper counting
-        private final ConcurrentHashMap<String, TreeMap<Long, Integer>> cardTimestamps;
-        private final ConcurrentHashMap<String, ReadWriteLock> lock;
-        // FOLLOW UP: make the type AtomicLong
-        private final AtomicLong oldestTimestampMillis = new AtomicLong(Long.MAX_VALUE);
+        // Thread-safe map of card hash to that card's timeline
+        // TreeMap<epochMilli, bucket> allows duplicate timestamps with proper counting
+        private final ConcurrentHashMap<String, CardTimeline> cardTimestamps;
+        private final OldestTimestampTracker oldestTimestamp = new OldestTimestampTracker();
+        // A ReentrantLock rather than a synchronized method: a virtual thread
+        // parked on a monitor pins its carrier thread, one parked on a
+        // j.u.c. lock does not
+        private final ReentrantLock cleanupLock = new ReentrantLock();
+
+        // Cold compression; coldAfterMillis < 0 means off
+        private final long coldAfterMillis;
+        // The cold boundary moves in steps of this much, not with every payment
+        private final long compactStepMillis;
+        private final LongAccumulator newestMillis = new LongAccumulator(Math::max, Long.MIN_VALUE);
+        // Written under cleanupLock, read without it for the early exit
+        private volatile long compactedBefore = Long.MIN_VALUE;
+        // Compaction runs at most this many times per coldAfter period
+        private static final int COMPACTIONS_PER_COLD_PERIOD = 8;
 
         public TreeMapTimestampStorage() {
             this.cardTimestamps = new java.util.concurrent.ConcurrentHashMap<>();
-            this.lock = new java.util.concurrent.ConcurrentHashMap<>();
+            this.coldAfterMillis = -1;
+            this.compactStepMillis = 1;
         }
 
-        @Override
-        public void addTimestamp(String cardHash, Instant timestamp) {
-            TreeMap<Long, Integer> timestamps = cardTimestamps.computeIfAbsent(
-                    cardHash,
-                    k -> new TreeMap<>());
+        /**
+         * @param coldAfter Age (relative to the newest timestamp stored) after
+         *                  which buckets are compressed into cold blocks.
+         */
+        public TreeMapTimestampStorage(Duration coldAfter) {
+            if (coldAfter == null || coldAfter.isNegative() || coldAfter.isZero()) {
+                throw new IllegalArgumentException("Cold threshold must be positive");
+            }
+            this.cardTimestamps = new java.util.concurrent.ConcurrentHashMap<>();
+            this.coldAfterMillis = coldAfter.toMillis();
+            this.compactStepMillis = Math.max(1, coldAfterMillis / COMPACTIONS_PER_COLD_PERIOD);
+        }
 
-            ReadWriteLock writeLock = lock.computeIfAbsent(cardHash, k -> new ReentrantReadWriteLock());
-            long timestampToAddInEpochMilli = timestamp.toEpochMilli();
+        /**
+         * One card's timestamps and the lock guarding them. Keeping the lock
+         * inside the value (instead of a second map keyed by card) means a
+         * card and its lock are created and dropped together — two threads
+         * can never guard the same TreeMap with different locks.
+         *
+         * {@code retired} is set, under the write lock, when cleanup drops an
+         * empty timeline from the map. A writer that fetched the timeline just
+         * before that sees the flag and retries on a fresh one, so its insert
+         * cannot land in a map nobody will read again.
+         */
+        private static final class CardTimeline {
+            final TreeMap<Long, TimestampBucket> buckets = new TreeMap<>();
+            final ReadWriteLock lock = new ReentrantReadWriteLock();
+            boolean retired;
+            // Compressed older buckets; only written by the sweep
+            List<TimestampBlock> cold = List.of();
+
+            boolean isEmpty() {
+                return buckets.isEmpty() && cold.isEmpty();
+            }
+        }
 
-            // Synchronize on the same timestamps object as countInWindow
-            writeLock.writeLock().lock();
+        @Override
+        public void addTimestamp(String cardHash, Instant timestamp, long amount) {
+            long timestampToAddInEpochMilli = timestamp.toEpochMilli();
 
-            try {
-                // Increment count for this timestamp (handles duplicates)
-                timestamps.merge(timestampToAddInEpochMilli, 1, Integer::sum); // FOLLOW UP: O(logn)
-            } finally {
-                writeLock.writeLock().unlock();
+            while (true) {
+                CardTimeline timeline = cardTimestamps.computeIfAbsent(cardHash, k -> new CardTimeline());
+                timeline.lock.writeLock().lock();
+                try {
+                    if (timeline.retired) {
+                        continue; // cleanup removed it after our lookup; fetch the replacement
+                    }
+                    // Increment count for this timestamp (handles duplicates)
+                    timeline.buckets.merge(timestampToAddInEpochMilli, TimestampBucket.of(amount), TimestampBucket::plus); // FOLLOW UP: O(logn)
+                    break;
+                } finally {
+                    timeline.lock.writeLock().unlock();
+                }
             }
 
             // reads value atomically, applies the operation using compare and set. If
@@ -335,89 +1170,293 @@ public class Solution {
             // It atomically updates the value to the minimum of the current value and the
             // new timestamp. It prevents race conditions that would occur with a simple
             // volatile check-then-set.
-            this.oldestTimestampMillis.accumulateAndGet(timestampToAddInEpochMilli, Math::min);
+            oldestTimestamp.recordInsert(timestampToAddInEpochMilli);
+            if (coldAfterMillis >= 0) {
+                newestMillis.accumulate(clampToClock(timestampToAddInEpochMilli));
+            }
         }
 
         @Override
         public int countInWindow(String cardHash, Instant queryTime, Duration duration) {
-            TreeMap<Long, Integer> timestamps = cardTimestamps.get(cardHash);
+            CardTimeline timeline = cardTimestamps.get(cardHash);
 
-            if (timestamps == null || timestamps.isEmpty()) {
+            if (timeline == null) {
                 return 0;
             }
 
             long windowStartMillis = queryTime.minus(duration).toEpochMilli();
             long queryTimeMillis = queryTime.toEpochMilli();
 
-            ReadWriteLock readLock = lock.computeIfAbsent(cardHash, k -> new ReentrantReadWriteLock());
-
             // Use TreeMap's subMap for efficient range query: O(log n + k)
             // where k is the number of unique timestamps in the result
             // Sum all counts within the time window
-            readLock.readLock().lock();
+            timeline.lock.readLock().lock();
             try {
-                return timestamps.subMap(windowStartMillis, true, queryTimeMillis, true)
-                        .values()
-                        .stream()
-                        .mapToInt(Integer::intValue)
-                        .sum();
+                int count = TimestampBucket.count(
+                        timeline.buckets.subMap(windowStartMillis, true, queryTimeMillis, true).values());
+                if (timeline.cold.isEmpty()) {
+                    return count;
+                }
+                TimestampBlock.WindowTotals totals = new TimestampBlock.WindowTotals();
+                for (TimestampBlock block : timeline.cold) {
+                    block.addTo(totals, windowStartMillis, queryTimeMillis);
+                }
+                return count + totals.count;
             } finally {
-                readLock.readLock().unlock();
+                timeline.lock.readLock().unlock();
             }
 
         }
 
         @Override
-        public synchronized void removeOlderThan(Instant cutoffTime) {
+        public WindowAggregate aggregateInWindow(String cardHash, Instant queryTime, Duration duration) {
+            CardTimeline timeline = cardTimestamps.get(cardHash);
+
+            if (timeline == null) {
+                return WindowAggregate.EMPTY;
+            }
+
+            long windowStartMillis = queryTime.minus(duration).toEpochMilli();
+            long queryTimeMillis = queryTime.toEpochMilli();
+
+            timeline.lock.readLock().lock();
+            try {
+                NavigableMap<Long, TimestampBucket> hot =
+                        timeline.buckets.subMap(windowStartMillis, true, queryTimeMillis, true);
+                if (timeline.cold.isEmpty()) {
+                    return TimestampBucket.aggregate(hot.values());
+                }
+                TimestampBlock.WindowTotals totals = new TimestampBlock.WindowTotals();
+                totals.addAll(hot.values());
+                for (TimestampBlock block : timeline.cold) {
+                    block.addTo(totals, windowStartMillis, queryTimeMillis);
+                }
+                return totals.toAggregate();
+            } finally {
+                timeline.lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public void removeOlderThan(Instant cutoffTime) {
             long cutoffMillis = cutoffTime.toEpochMilli();
+            long compactBefore = compactionBoundary();
 
-            if (oldestTimestampMillis.get() > cutoffMillis) {
-                return; // No data old enough to clean
+            if (oldestTimestamp.get() > cutoffMillis && compactBefore <= compactedBefore) {
+                return; // No data old enough to clean, nothing new turned cold
+            }
+            // A sweep already running covers this one; don't queue behind it
+            if (!cleanupLock.tryLock()) {
+                return;
             }
+            try {
+                sweep(cutoffMillis, compactBefore);
+                compactedBefore = Math.max(compactedBefore, compactBefore);
+            } finally {
+                cleanupLock.unlock();
+            }
+        }
 
-            Long newOldest = Long.MAX_VALUE;
+        /**
+         * Where the cold tier should end: coldAfter behind the newest payment,
+         * rounded down to a multiple of compactStepMillis.
+         *
+         *   newest payment   ──────────────┬──┬──┬──┬──►
+         *   boundary          ┬──────────┬──────────┬──►
+         *                     only moves (and so only compacts) once per step
+         *
+         * Without the rounding every newer payment moved the boundary, so every
+         * cleanup call walked all cards to compact a handful of buckets.
+         */
+        private long compactionBoundary() {
+            long newest = newestMillis.get();
+            if (coldAfterMillis < 0 || newest == Long.MIN_VALUE) {
+                return Long.MIN_VALUE;
+            }
+            return Math.floorDiv(newest - coldAfterMillis, compactStepMillis) * compactStepMillis;
+        }
 
-            // Clean old timestamps from each card's TreeMap
-            for (Map.Entry<String, TreeMap<Long, Integer>> entry : cardTimestamps.entrySet()) {
-                ReadWriteLock writeLock = lock.computeIfAbsent(entry.getKey(), k -> new ReentrantReadWriteLock());
+        private void sweep(long cutoffMillis, long compactBefore) {
+            oldestTimestamp.beginSweep();
+            long newOldest = Long.MAX_VALUE;
 
-                writeLock.writeLock().lock();
+            // Clean old timestamps from each card's TreeMap
+            for (Map.Entry<String, CardTimeline> entry : cardTimestamps.entrySet()) {
+                CardTimeline timeline = entry.getValue();
+                timeline.lock.writeLock().lock();
 
                 try {
-                    TreeMap<Long, Integer> timestamps = entry.getValue();
+                    if (timeline.retired) {
+                        continue; // evicted after we read the entry; no longer ours to touch
+                    }
+                    TreeMap<Long, TimestampBucket> timestamps = timeline.buckets;
 
                     // Remove old timestamps (headMap returns entries < cutoff)
                     timestamps.headMap(cutoffMillis, false).clear();
+                    if (!timeline.cold.isEmpty()) {
+                        timeline.cold = retainFrom(timeline.cold, cutoffMillis);
+                    }
+                    if (compactBefore > cutoffMillis) {
+                        compact(timeline, compactBefore);
+                    }
 
-                    // Track new oldest timestamp if card has remaining data
-                    if (!timestamps.isEmpty()) {
-                        Long first = timestamps.firstKey();
-                        if (first < newOldest) {
-                            newOldest = first;
+                    if (timeline.isEmpty()) {
+                        // Retire and unlink while still holding the write lock,
+                        // so no insert can slip in between the check and the removal
+                        timeline.retired = true;
+                        cardTimestamps.remove(entry.getKey(), timeline);
+                    } else {
+                        // Track new oldest timestamp if card has remaining data
+                        if (!timestamps.isEmpty()) {
+                            newOldest = Math.min(newOldest, timestamps.firstKey());
+                        }
+                        for (TimestampBlock block : timeline.cold) {
+                            newOldest = Math.min(newOldest, block.firstMillis);
                         }
                     }
                 } finally {
-                    writeLock.writeLock().unlock();
+                    timeline.lock.writeLock().unlock();
+                }
+            }
+
+            oldestTimestamp.endSweep(newOldest);
+        }
 
+        /**
+         * @return Bytes held in cold blocks across all cards (monitoring, tests).
+         */
+        long compressedBytes() {
+            long bytes = 0;
+            for (CardTimeline timeline : cardTimestamps.values()) {
+                timeline.lock.readLock().lock();
+                try {
+                    for (TimestampBlock block : timeline.cold) {
+                        bytes += block.sizeInBytes();
+                    }
+                } finally {
+                    timeline.lock.readLock().unlock();
                 }
             }
-            // Remove empty card entries using removeIf (ConcurrentHashMap supports this)
-            // FOLLOWUP: Remove also the locks from the locks structure
-            cardTimestamps.entrySet().removeIf(entry -> {
-                if (entry.getValue().isEmpty()) {
-                    lock.remove(entry.getKey());
-                    return true;
+            return bytes;
+        }
+
+        private static List<TimestampBlock> retainFrom(List<TimestampBlock> blocks, long cutoffMillis) {
+            List<TimestampBlock> kept = new ArrayList<>(blocks.size());
+            for (TimestampBlock block : blocks) {
+                TimestampBlock tail = block.retainFrom(cutoffMillis);
+                if (tail != null) {
+                    kept.add(tail);
                 }
-                return false;
-            });
+            }
+            return kept.isEmpty() ? List.of() : kept;
+        }
 
-            oldestTimestampMillis.set(newOldest);
+        /**
+         * Moves buckets older than compactBefore from the TreeMap into cold
+         * blocks. Caller holds the timeline's write lock.
+         *
+         * If the newest cold block is not full and everything moving is later
+         * than it, the two are re-encoded together, so a card swept often
+         * does not end up with many one-bucket blocks.
+         */
+        private static void compact(CardTimeline timeline, long compactBefore) {
+            NavigableMap<Long, TimestampBucket> turningCold = timeline.buckets.headMap(compactBefore, false);
+            if (turningCold.isEmpty()) {
+                return;
+            }
+            List<TimestampBlock> cold = new ArrayList<>(timeline.cold);
+            TreeMap<Long, TimestampBucket> toEncode = new TreeMap<>(turningCold);
+            if (!cold.isEmpty()) {
+                TimestampBlock last = cold.get(cold.size() - 1);
+                if (last.buckets < TimestampBlock.MAX_BUCKETS && last.lastMillis < toEncode.firstKey()) {
+                    cold.remove(cold.size() - 1);
+                    last.decodeInto(toEncode);
+                }
+            }
+            cold.addAll(TimestampBlock.encode(toEncode));
+            timeline.cold = cold;
+            turningCold.clear();
+        }
+
+        @Override
+        public boolean supportsEviction() {
+            return true;
+        }
+
+        @Override
+        public void evictCard(String cardHash, BucketVisitor evicted) {
+            CardTimeline timeline = cardTimestamps.get(cardHash);
+            if (timeline == null) {
+                return;
+            }
+            TreeMap<Long, TimestampBucket> removed;
+            timeline.lock.writeLock().lock();
+            try {
+                if (timeline.retired) {
+                    return; // cleanup or another eviction got there first
+                }
+                timeline.retired = true;
+                cardTimestamps.remove(cardHash, timeline);
+                removed = timeline.buckets;
+                for (TimestampBlock block : timeline.cold) {
+                    block.decodeInto(removed);
+                }
+            } finally {
+                timeline.lock.writeLock().unlock();
+            }
+            // Retired: nobody writes to it any more, safe to read unlocked
+            if (evicted != null) {
+                removed.forEach((millis, bucket) -> evicted.visit(cardHash, millis, bucket.count, bucket.amountSum,
+                        bucket.maxAmount));
+            }
+        }
+
+        @Override
+        public void forEachBucket(BucketVisitor visitor) {
+            for (Map.Entry<String, CardTimeline> entry : cardTimestamps.entrySet()) {
+                CardTimeline timeline = entry.getValue();
+                long[] millis;
+                int[] counts;
+                long[] amountSums;
+                long[] maxAmounts;
+                // Copy under the read lock, visit outside it: the visitor may
+                // block on I/O and writers to this card must not wait for it.
+                // Parallel primitive arrays, so the copy holds no bucket objects
+                timeline.lock.readLock().lock();
+                try {
+                    NavigableMap<Long, TimestampBucket> all = timeline.buckets;
+                    if (!timeline.cold.isEmpty()) {
+                        // Blocks may overlap each other and the TreeMap; merge for time order
+                        TreeMap<Long, TimestampBucket> merged = new TreeMap<>(timeline.buckets);
+                        for (TimestampBlock block : timeline.cold) {
+                            block.decodeInto(merged);
+                        }
+                        all = merged;
+                    }
+                    millis = new long[all.size()];
+                    counts = new int[millis.length];
+                    amountSums = new long[millis.length];
+                    maxAmounts = new long[millis.length];
+                    int i = 0;
+                    for (Map.Entry<Long, TimestampBucket> bucket : all.entrySet()) {
+                        TimestampBucket value = bucket.getValue();
+                        millis[i] = bucket.getKey();
+                        counts[i] = value.count;
+                        amountSums[i] = value.amountSum;
+                        maxAmounts[i++] = value.maxAmount;
+                    }
+                } finally {
+                    timeline.lock.readLock().unlock();
+                }
+                for (int i = 0; i < millis.length; i++) {
+                    visitor.visit(entry.getKey(), millis[i], counts[i], amountSums[i], maxAmounts[i]);
+                }
+            }
         }
 
         @Override
         public Instant getOldestTimestamp() {
-            long v = oldestTimestampMillis.get();
-            // FOLLOW UP: handle the case when oldestTimestampMillis is still MAX_VALUE
+            long v = oldestTimestamp.get();
             return v == Long.MAX_VALUE ? null : Instant.ofEpochMilli(v);
         }
     }
@@ -428,70 +1467,216 @@ public class Solution {
      * TreeMap.
      * Keeps same API/complexity while allowing concurrent readers/writers on
      * disjoint keys.
+     *
+     * Inserts only look the card up (computeIfAbsent) and merge into its skip
+     * list, so writers to one card, or to cards sharing a hash bin, do not
+     * queue behind each other. Dropping a card — cleanup emptying it, or an
+     * eviction — retires it under the write side of its lock; inserts hold
+     * the shared read side, so one that fetched the card just before sees the
+     * flag and retries on a fresh one instead of landing in an unlinked map.
      */
     static class SkipListTimestampStorage implements TimestampStorage {
-        private final Map<String, java.util.concurrent.ConcurrentSkipListMap<Long, Integer>> cardTimestamps;
-        private final AtomicLong oldestTimestampMillis = new AtomicLong(Long.MAX_VALUE);
+        private final ConcurrentHashMap<String, CardSkipList> cardTimestamps;
+        private final OldestTimestampTracker oldestTimestamp = new OldestTimestampTracker();
+        private final ReentrantLock cleanupLock = new ReentrantLock();
 
         public SkipListTimestampStorage() {
             this.cardTimestamps = new java.util.concurrent.ConcurrentHashMap<>();
         }
 
-        @Override
-        public void addTimestamp(String cardHash, Instant timestamp) {
-            java.util.concurrent.ConcurrentSkipListMap<Long, Integer> timestamps = cardTimestamps.computeIfAbsent(
-                    cardHash,
-                    k -> new java.util.concurrent.ConcurrentSkipListMap<>());
+        /**
+         * One card's buckets. Writers share the read lock (the skip list takes
+         * concurrent merges); only retiring the card takes the write lock.
+         */
+        private static final class CardSkipList {
+            final java.util.concurrent.ConcurrentSkipListMap<Long, TimestampBucket> buckets =
+                    new java.util.concurrent.ConcurrentSkipListMap<>();
+            final ReadWriteLock lock = new ReentrantReadWriteLock();
+            boolean retired;
+
+            /**
+             * @return true if the card was retired; caller unlinks it.
+             */
+            boolean retireIfEmpty() {
+                lock.writeLock().lock();
+                try {
+                    retired = buckets.isEmpty();
+                    return retired;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+        }
 
+        @Override
+        public void addTimestamp(String cardHash, Instant timestamp, long amount) {
             long epochMilli = timestamp.toEpochMilli();
-            timestamps.merge(epochMilli, 1, Integer::sum);
-            oldestTimestampMillis.accumulateAndGet(epochMilli, Math::min);
+            while (true) {
+                CardSkipList card = cardTimestamps.computeIfAbsent(cardHash, k -> new CardSkipList());
+                card.lock.readLock().lock();
+                try {
+                    if (card.retired) {
+                        continue; // dropped after our lookup; fetch the replacement
+                    }
+                    card.buckets.merge(epochMilli, TimestampBucket.of(amount), TimestampBucket::plus);
+                    break;
+                } finally {
+                    card.lock.readLock().unlock();
+                }
+            }
+            oldestTimestamp.recordInsert(epochMilli);
         }
 
         @Override
         public int countInWindow(String cardHash, Instant queryTime, Duration duration) {
-            java.util.concurrent.ConcurrentSkipListMap<Long, Integer> timestamps = cardTimestamps.get(cardHash);
-            if (timestamps == null || timestamps.isEmpty())
+            CardSkipList card = cardTimestamps.get(cardHash);
+            if (card == null || card.buckets.isEmpty())
                 return 0;
 
             long windowStartMillis = queryTime.minus(duration).toEpochMilli();
             long queryTimeMillis = queryTime.toEpochMilli();
 
-            return timestamps.subMap(windowStartMillis, true, queryTimeMillis, true)
-                    .values()
-                    .stream()
-                    .mapToInt(Integer::intValue)
-                    .sum();
+            return TimestampBucket.count(
+                    card.buckets.subMap(windowStartMillis, true, queryTimeMillis, true).values());
+        }
+
+        @Override
+        public WindowAggregate aggregateInWindow(String cardHash, Instant queryTime, Duration duration) {
+            CardSkipList card = cardTimestamps.get(cardHash);
+            if (card == null || card.buckets.isEmpty())
+                return WindowAggregate.EMPTY;
+
+            long windowStartMillis = queryTime.minus(duration).toEpochMilli();
+            long queryTimeMillis = queryTime.toEpochMilli();
+
+            return TimestampBucket.aggregate(
+                    card.buckets.subMap(windowStartMillis, true, queryTimeMillis, true).values());
         }
 
         @Override
         public void removeOlderThan(Instant cutoffTime) {
             long cutoffMillis = cutoffTime.toEpochMilli();
-            if (oldestTimestampMillis.get() > cutoffMillis)
+            if (oldestTimestamp.get() > cutoffMillis)
+                return;
+            if (!cleanupLock.tryLock())
                 return;
 
-            long newOldest = System.currentTimeMillis();
+            try {
+                oldestTimestamp.beginSweep();
+                long newOldest = Long.MAX_VALUE;
+
+                for (String cardHash : cardTimestamps.keySet()) {
+                    CardSkipList remaining = cardTimestamps.computeIfPresent(cardHash, (k, card) -> {
+                        card.buckets.headMap(cutoffMillis, false).clear();
+                        return card.buckets.isEmpty() && card.retireIfEmpty() ? null : card;
+                    });
+                    if (remaining != null) {
+                        // An insert may have landed since; firstEntry tolerates an empty map
+                        Map.Entry<Long, TimestampBucket> first = remaining.buckets.firstEntry();
+                        if (first != null && first.getKey() < newOldest)
+                            newOldest = first.getKey();
+                    }
+                }
 
-            for (Map.Entry<String, java.util.concurrent.ConcurrentSkipListMap<Long, Integer>> entry : cardTimestamps
-                    .entrySet()) {
-                java.util.concurrent.ConcurrentSkipListMap<Long, Integer> timestamps = entry.getValue();
-                timestamps.headMap(cutoffMillis, false).clear();
+                oldestTimestamp.endSweep(newOldest);
+            } finally {
+                cleanupLock.unlock();
+            }
+        }
 
-                if (timestamps.isEmpty()) {
-                    cardTimestamps.remove(entry.getKey(), timestamps);
-                } else {
-                    Long first = timestamps.firstKey();
-                    if (first < newOldest)
-                        newOldest = first;
+        @Override
+        public boolean supportsEviction() {
+            return true;
+        }
+
+        @Override
+        public void evictCard(String cardHash, BucketVisitor evicted) {
+            CardSkipList[] removed = new CardSkipList[1];
+            cardTimestamps.computeIfPresent(cardHash, (k, card) -> {
+                // Waits out inserts in progress; later ones see the flag and retry
+                card.lock.writeLock().lock();
+                try {
+                    card.retired = true;
+                } finally {
+                    card.lock.writeLock().unlock();
                 }
+                removed[0] = card;
+                return null;
+            });
+            if (removed[0] != null && evicted != null) {
+                removed[0].buckets.forEach((millis, bucket) -> evicted.visit(cardHash, millis, bucket.count,
+                        bucket.amountSum, bucket.maxAmount));
             }
+        }
 
-            oldestTimestampMillis.set(newOldest);
+        @Override
+        public void forEachBucket(BucketVisitor visitor) {
+            // Skip list iterators are weakly consistent; no locking needed
+            for (Map.Entry<String, CardSkipList> entry : cardTimestamps.entrySet()) {
+                for (Map.Entry<Long, TimestampBucket> bucket : entry.getValue().buckets.entrySet()) {
+                    TimestampBucket value = bucket.getValue();
+                    visitor.visit(entry.getKey(), bucket.getKey(), value.count, value.amountSum, value.maxAmount);
+                }
+            }
         }
 
         @Override
         public Instant getOldestTimestamp() {
-            return Instant.ofEpochMilli(oldestTimestampMillis.get());
+            long v = oldestTimestamp.get();
+            return v == Long.MAX_VALUE ? null : Instant.ofEpochMilli(v);
+        }
+    }
+
+    /**
+     * How far ahead of the wall clock a payment timestamp may be before
+     * storages stop trusting it as "the newest payment". A storage that ages
+     * data relative to its newest payment would otherwise turn its whole live
+     * history cold on one payment from a client with a broken clock.
+     */
+    static final long MAX_FUTURE_SKEW_MILLIS = Duration.ofMinutes(5).toMillis();
+
+    /**
+     * @return epochMilli, or wall clock + MAX_FUTURE_SKEW_MILLIS if it is
+     *         further in the future than that.
+     */
+    static long clampToClock(long epochMilli) {
+        return Math.min(epochMilli, System.currentTimeMillis() + MAX_FUTURE_SKEW_MILLIS);
+    }
+
+    /**
+     * Lower bound on the oldest timestamp in a storage, used to skip sweeps
+     * when nothing is old enough.
+     *
+     * A sweep recomputes the bound from what it saw, but an insert of an
+     * older timestamp can land behind the sweep's cursor. Setting the bound
+     * to the sweep's result would then raise it above that insert and later
+     * sweeps would skip it. So inserts also record into
+     * {@code oldestSinceSweep}, and endSweep folds that back in after
+     * publishing its own result. Callers run at most one sweep at a time.
+     */
+    static final class OldestTimestampTracker {
+        private final AtomicLong oldest = new AtomicLong(Long.MAX_VALUE);
+        private final AtomicLong oldestSinceSweep = new AtomicLong(Long.MAX_VALUE);
+
+        void recordInsert(long epochMilli) {
+            // Order matters: see endSweep
+            oldestSinceSweep.accumulateAndGet(epochMilli, Math::min);
+            oldest.accumulateAndGet(epochMilli, Math::min);
+        }
+
+        long get() {
+            return oldest.get();
+        }
+
+        void beginSweep() {
+            oldestSinceSweep.set(Long.MAX_VALUE);
+        }
+
+        void endSweep(long oldestRemaining) {
+            oldest.set(oldestRemaining);
+            // Any insert whose update of 'oldest' was overwritten above had
+            // already recorded into oldestSinceSweep
+            oldest.accumulateAndGet(oldestSinceSweep.get(), Math::min);
         }
     }
 
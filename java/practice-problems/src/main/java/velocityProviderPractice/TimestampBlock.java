@@ -0,0 +1,232 @@
+package practice;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import practice.Solution.TimestampBucket;
+import practice.Solution.WindowAggregate;
+
+/**
+ * Immutable, compressed run of one card's timestamp buckets — the cold
+ * tier of {@link Solution.TreeMapTimestampStorage}.
+ *
+ * Why:
+ *   A TreeMap entry costs ~90 bytes (Entry 40 + boxed Long 16 +
+ *   TimestampBucket 32) for what is really 8-16 bytes of data. With 7-day
+ *   retention almost every entry is cold and only ever read by long
+ *   windows, so it is paying that overhead for nothing.
+ *
+ * Encoding (one byte[] per block, up to MAX_BUCKETS buckets, ascending):
+ *   timestamp   first: in the header field (firstMillis)
+ *               second: delta from first                (varint)
+ *               rest: delta-of-delta, zigzag            (varint)
+ *   count       varint
+ *   amountSum   zigzag varint
+ *   maxAmount   zigzag varint, ONLY when count > 1 (count == 1 → max == sum)
+ *
+ *   Payments from one card arrive at a roughly steady rate, so consecutive
+ *   deltas are similar and their difference is small — typically 1-3 bytes.
+ *   A whole bucket is usually 4-7 bytes.
+ *
+ * Reading:
+ *   The header keeps [firstMillis, lastMillis] and the block's totals.
+ *     window misses the block   → skipped
+ *     window covers the block   → answered from the totals, no decoding
+ *     window cuts the block     → decoded, stopping past the window end
+ *   Most long windows cover whole blocks, so only the one or two blocks at
+ *   the window edges are ever decompressed.
+ */
+final class TimestampBlock {
+
+    static final int MAX_BUCKETS = 128;
+
+    final long firstMillis;
+    final long lastMillis;
+    final int buckets;
+    final int count;
+    final long amountSum;
+    final long maxAmount;
+    private final byte[] data;
+
+    private TimestampBlock(long firstMillis, long lastMillis, int buckets, int count, long amountSum,
+            long maxAmount, byte[] data) {
+        this.firstMillis = firstMillis;
+        this.lastMillis = lastMillis;
+        this.buckets = buckets;
+        this.count = count;
+        this.amountSum = amountSum;
+        this.maxAmount = maxAmount;
+        this.data = data;
+    }
+
+    /**
+     * Encodes ascending buckets into blocks of at most MAX_BUCKETS.
+     */
+    static List<TimestampBlock> encode(SortedMap<Long, TimestampBucket> source) {
+        List<TimestampBlock> blocks = new ArrayList<>(source.size() / MAX_BUCKETS + 1);
+        Iterator<Map.Entry<Long, TimestampBucket>> it = source.entrySet().iterator();
+        while (it.hasNext()) {
+            blocks.add(encodeNext(it));
+        }
+        return blocks;
+    }
+
+    private static TimestampBlock encodeNext(Iterator<Map.Entry<Long, TimestampBucket>> it) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(MAX_BUCKETS * 5);
+        long firstMillis = 0;
+        long previousMillis = 0;
+        long previousDelta = 0;
+        int buckets = 0;
+        int count = 0;
+        long amountSum = 0;
+        long maxAmount = 0;
+
+        while (buckets < MAX_BUCKETS && it.hasNext()) {
+            Map.Entry<Long, TimestampBucket> entry = it.next();
+            long millis = entry.getKey();
+            TimestampBucket bucket = entry.getValue();
+
+            if (buckets == 0) {
+                firstMillis = millis;
+            } else if (buckets == 1) {
+                previousDelta = millis - previousMillis;
+                Varints.writeUnsigned(out, previousDelta);
+            } else {
+                long delta = millis - previousMillis;
+                Varints.writeSigned(out, delta - previousDelta);
+                previousDelta = delta;
+            }
+            previousMillis = millis;
+
+            Varints.writeUnsigned(out, bucket.count);
+            Varints.writeSigned(out, bucket.amountSum);
+            if (bucket.count > 1) {
+                Varints.writeSigned(out, bucket.maxAmount);
+            }
+
+            buckets++;
+            count += bucket.count;
+            amountSum += bucket.amountSum;
+            maxAmount = Math.max(maxAmount, bucket.maxAmount);
+        }
+        return new TimestampBlock(firstMillis, previousMillis, buckets, count, amountSum, maxAmount,
+                out.toByteArray());
+    }
+
+    boolean overlaps(long fromMillis, long toMillis) {
+        return firstMillis <= toMillis && lastMillis >= fromMillis;
+    }
+
+    /**
+     * Adds the buckets within [fromMillis, toMillis] to {@code window}.
+     */
+    void addTo(WindowTotals window, long fromMillis, long toMillis) {
+        if (!overlaps(fromMillis, toMillis)) {
+            return;
+        }
+        if (fromMillis <= firstMillis && lastMillis <= toMillis) {
+            window.add(count, amountSum, maxAmount);
+            return;
+        }
+        decode((millis, bucketCount, bucketSum, bucketMax) -> {
+            if (millis > toMillis) {
+                return false;
+            }
+            if (millis >= fromMillis) {
+                window.add(bucketCount, bucketSum, bucketMax);
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Copies every bucket into {@code target}, merging with what is there.
+     */
+    void decodeInto(TreeMap<Long, TimestampBucket> target) {
+        decode((millis, bucketCount, bucketSum, bucketMax) -> {
+            target.merge(millis, TimestampBucket.of(bucketCount, bucketSum, bucketMax), TimestampBucket::plus);
+            return true;
+        });
+    }
+
+    /**
+     * @return this block without buckets before {@code cutoffMillis}: the
+     *         block itself, a re-encoded tail, or null if nothing is left.
+     */
+    TimestampBlock retainFrom(long cutoffMillis) {
+        if (firstMillis >= cutoffMillis) {
+            return this;
+        }
+        if (lastMillis < cutoffMillis) {
+            return null;
+        }
+        TreeMap<Long, TimestampBucket> tail = new TreeMap<>();
+        decodeInto(tail);
+        return encode(tail.tailMap(cutoffMillis, true)).get(0);
+    }
+
+    int sizeInBytes() {
+        return data.length;
+    }
+
+    private void decode(BucketCursor cursor) {
+        ByteBuffer in = ByteBuffer.wrap(data);
+        long millis = firstMillis;
+        long delta = 0;
+        for (int i = 0; i < buckets; i++) {
+            if (i == 1) {
+                delta = Varints.readUnsigned(in);
+                millis += delta;
+            } else if (i > 1) {
+                delta += Varints.readSigned(in);
+                millis += delta;
+            }
+            int bucketCount = (int) Varints.readUnsigned(in);
+            long bucketSum = Varints.readSigned(in);
+            long bucketMax = bucketCount > 1 ? Varints.readSigned(in) : bucketSum;
+            if (!cursor.next(millis, bucketCount, bucketSum, bucketMax)) {
+                return;
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface BucketCursor {
+        /** @return false to stop decoding */
+        boolean next(long millis, int count, long amountSum, long maxAmount);
+    }
+
+    /**
+     * Mutable running totals for one window lookup across the hot TreeMap
+     * and any number of cold blocks.
+     */
+    static final class WindowTotals {
+        int count;
+        long amountSum;
+        long maxAmount;
+
+        void add(int bucketCount, long bucketSum, long bucketMax) {
+            count += bucketCount;
+            amountSum += bucketSum;
+            if (bucketMax > maxAmount) {
+                maxAmount = bucketMax;
+            }
+        }
+
+        void addAll(Iterable<TimestampBucket> buckets) {
+            for (TimestampBucket bucket : buckets) {
+                add(bucket.count, bucket.amountSum, bucket.maxAmount);
+            }
+        }
+
+        WindowAggregate toAggregate() {
+            return count == 0 ? WindowAggregate.EMPTY : new WindowAggregate(count, amountSum, maxAmount);
+        }
+    }
+}
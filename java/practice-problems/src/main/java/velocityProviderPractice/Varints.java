@@ -0,0 +1,60 @@
+package practice;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * LEB128 varints and zigzag encoding — the same scheme as protobuf.
+ *
+ *   unsigned: 7 bits per byte, high bit set = "more bytes follow"
+ *     1        → 0x01                (1 byte)
+ *     300      → 0xAC 0x02           (2 bytes)
+ *     ~1.7e12  → 6 bytes             (an epoch-millis timestamp)
+ *
+ *   zigzag: maps signed to unsigned so small negatives stay small
+ *     0 → 0, -1 → 1, 1 → 2, -2 → 3, ...
+ *
+ * Timestamps as raw longs cost 8 bytes; as deltas between neighbours they
+ * are usually 1-3 bytes.
+ */
+final class Varints {
+
+    private Varints() {
+    }
+
+    static void writeUnsigned(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static void writeSigned(ByteArrayOutputStream out, long value) {
+        writeUnsigned(out, zigzag(value));
+    }
+
+    static long readUnsigned(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    static long readSigned(ByteBuffer in) {
+        return unzigzag(readUnsigned(in));
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -1,42 +1,56 @@
 package practice;
 
 import practice.Solution.VelocityProvider;
-import practice.Solution.VelocityProviderImpl;
-import java.time.Duration;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 public class VelocityBasedFraudRule implements MerchantRule {
 
+    // Either a caller-supplied provider or a MerchantVelocityPool that shares
+    // one storage across all merchants (see MerchantVelocityPool).
+    private final VelocityProvider velocityProvider;
+    // Source of per-merchant window/limit; null means MerchantVelocityLimits.DEFAULT
     private final MerchantConfigService configService;
-    private final Map<String, VelocityProvider> providersByMerchant = new ConcurrentHashMap<>();
 
     public VelocityBasedFraudRule(MerchantConfigService configService) {
+        this.velocityProvider = new MerchantVelocityPool(configService);
+        this.configService = configService;
+    }
+
+    public VelocityBasedFraudRule(VelocityProvider velocityProvider, MerchantConfigService configService) {
+        this.velocityProvider = velocityProvider;
         this.configService = configService;
     }
 
     // Legacy/test constructor: single shared provider for all merchants.
     public VelocityBasedFraudRule(VelocityProvider velocityProvider) {
-        this.configService = null;
-        providersByMerchant.put(MerchantConfigService.DEFAULT_MERCHANT_ID, velocityProvider);
+        this(velocityProvider, null);
     }
 
     @Override
     public RuleCheckResult checkRule(Payment payment) {
-        String merchantId = payment.getMerchantId() == null
-                ? MerchantConfigService.DEFAULT_MERCHANT_ID
-                : payment.getMerchantId();
-
-        VelocityProvider provider;
-        if (configService == null) {
-            provider = providersByMerchant.get(MerchantConfigService.DEFAULT_MERCHANT_ID);
-        } else {
-            provider = providersByMerchant.computeIfAbsent(
-                    merchantId,
-                    id -> new VelocityProviderImpl(configService.getConfig(id)));
-        }
-
-        return provider.getCardUsageCount(payment, Duration.ofHours(1)) > 5
+        MerchantVelocityLimits limits = limitsFor(payment);
+        return evaluate(velocityProvider.getCardUsageCount(payment, limits.getWindow()), limits);
+    }
+
+    @Override
+    public RuleCheckResult checkRule(Payment payment, RuleEvaluationContext context) {
+        MerchantVelocityLimits limits = limitsFor(payment);
+        return evaluate(context.getCardUsageCount(velocityProvider, payment, limits.getWindow()), limits);
+    }
+
+    @Override
+    public RuleCost getCost() {
+        return velocityProvider.isRemote() ? RuleCost.REMOTE : RuleCost.LOCAL;
+    }
+
+    private MerchantVelocityLimits limitsFor(Payment payment) {
+        // Resolved per snapshot by MerchantConfigService — a lock-free map get
+        return configService == null
+                ? MerchantVelocityLimits.DEFAULT
+                : configService.getLimits(payment.getMerchantId());
+    }
+
+    private static RuleCheckResult evaluate(int count, MerchantVelocityLimits limits) {
+        return count > limits.getMaxCount()
                 ? RuleCheckResult.builder().allowed(false).build()
                 : RuleCheckResult.builder().allowed(true).build();
     }
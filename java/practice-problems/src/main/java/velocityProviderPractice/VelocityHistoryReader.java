@@ -0,0 +1,169 @@
+package practice;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import practice.Solution.BucketVisitor;
+import practice.Solution.TimestampStorage;
+
+/**
+ * Reads files written by {@link VelocityHistoryExporter}, one row group at
+ * a time, either into a visitor or straight into a storage.
+ *
+ * Loading into a storage:
+ *   A row is a bucket (count, sum, max), but storages take one payment at
+ *   a time. A bucket of n payments is replayed as n payments in the same
+ *   millisecond: one at max, the rest splitting (sum - max) evenly. Count,
+ *   sum and max of every window come out exactly as exported; only the
+ *   individual amounts inside a bucket are not preserved (the in-memory
+ *   stores never kept them).
+ *
+ *   Replayed payments get name-based UUIDs derived from (card, millis, i),
+ *   so loading the same file twice into Redis or Postgres is idempotent.
+ *
+ *   Writes go through addTimestampAsync with up to MAX_IN_FLIGHT pending,
+ *   so remote stores get pipelined batches instead of one round trip per
+ *   payment. In-memory stores complete each write inline.
+ */
+public final class VelocityHistoryReader implements AutoCloseable {
+
+    static final int MAX_IN_FLIGHT = 1_024;
+
+    private final DataInputStream in;
+    private final List<String> dictionary = new ArrayList<>();
+
+    public VelocityHistoryReader(InputStream in) throws IOException {
+        if (in == null) {
+            throw new IllegalArgumentException("Input stream is required");
+        }
+        this.in = new DataInputStream(in);
+        byte[] magic = new byte[VelocityHistoryExporter.MAGIC.length];
+        this.in.readFully(magic);
+        if (!Arrays.equals(magic, VelocityHistoryExporter.MAGIC)) {
+            throw new IOException("Not a velocity history file");
+        }
+    }
+
+    /**
+     * Visits every row in file order.
+     *
+     * @return number of rows read
+     */
+    public long forEach(BucketVisitor visitor) throws IOException {
+        long total = 0;
+        int rows;
+        while ((rows = (int) readUnsigned()) > 0) {
+            readRowGroup(rows, visitor);
+            total += rows;
+        }
+        return total;
+    }
+
+    /**
+     * Replays every row into {@code storage}; see the class comment.
+     *
+     * @return number of payments written
+     */
+    public long loadInto(TimestampStorage storage) throws IOException {
+        Deque<CompletableFuture<Void>> inFlight = new ArrayDeque<>();
+        long[] written = new long[1];
+        forEach((cardHash, epochMilli, count, amountSum, maxAmount) -> {
+            Instant timestamp = Instant.ofEpochMilli(epochMilli);
+            long rest = amountSum - maxAmount;
+            for (int i = 0; i < count; i++) {
+                long amount;
+                if (i == 0) {
+                    amount = maxAmount;
+                } else {
+                    // Spread the remainder so the first (rest % (count-1)) get one more
+                    amount = rest / (count - 1) + (i - 1 < rest % (count - 1) ? 1 : 0);
+                }
+                if (inFlight.size() == MAX_IN_FLIGHT) {
+                    inFlight.poll().join();
+                }
+                inFlight.add(storage.addTimestampAsync(cardHash, replayId(cardHash, epochMilli, i), timestamp,
+                        amount));
+                written[0]++;
+            }
+        });
+        for (CompletableFuture<Void> write : inFlight) {
+            write.join();
+        }
+        return written[0];
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    static String replayId(String cardHash, long epochMilli, int index) {
+        return UUID.nameUUIDFromBytes((cardHash + ":" + epochMilli + ":" + index).getBytes(StandardCharsets.UTF_8))
+                .toString();
+    }
+
+    private void readRowGroup(int rows, BucketVisitor visitor) throws IOException {
+        int newCards = (int) readUnsigned();
+        for (int i = 0; i < newCards; i++) {
+            byte[] bytes = new byte[(int) readUnsigned()];
+            in.readFully(bytes);
+            dictionary.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+
+        ByteBuffer cards = readColumn();
+        ByteBuffer timestamps = readColumn();
+        ByteBuffer counts = readColumn();
+        ByteBuffer amountSums = readColumn();
+        ByteBuffer maxAmounts = readColumn();
+
+        String cardHash = null;
+        long runRemaining = 0;
+        long millis = 0;
+        for (int row = 0; row < rows; row++) {
+            if (runRemaining == 0) {
+                cardHash = dictionary.get((int) Varints.readUnsigned(cards));
+                runRemaining = Varints.readUnsigned(cards);
+            }
+            runRemaining--;
+            long delta = Varints.readSigned(timestamps);
+            millis = row == 0 ? delta : millis + delta;
+            int count = (int) Varints.readUnsigned(counts);
+            long amountSum = Varints.readSigned(amountSums);
+            long maxAmount = count > 1 ? Varints.readSigned(maxAmounts) : amountSum;
+            visitor.visit(cardHash, millis, count, amountSum, maxAmount);
+        }
+    }
+
+    private ByteBuffer readColumn() throws IOException {
+        byte[] bytes = new byte[(int) readUnsigned()];
+        in.readFully(bytes);
+        return ByteBuffer.wrap(bytes);
+    }
+
+    private long readUnsigned() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Truncated velocity history file");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
@@ -0,0 +1,95 @@
+package practice;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Counters for memory-budget enforcement ({@link BudgetedTimestampStorage}).
+ *
+ * Cumulative counters only ever grow; export them as monotonic counters
+ * (rate() over them shows shedding as it happens). The gauges are read live
+ * from the storage.
+ *
+ *   budgetExceeded      times an insert found the budget exceeded
+ *   cardsShed           cards whose history was dropped outright
+ *   entriesShed         payments dropped with them
+ *   cardsDownsampled    cards whose history was folded into coarse slices
+ *   approximateLookups  window lookups that had to include coarse slices
+ *
+ * LongAdder: incremented on the payment path from many threads, read
+ * rarely by a scraper.
+ */
+public final class VelocityStorageMetrics {
+
+    final LongAdder budgetExceeded = new LongAdder();
+    final LongAdder cardsShed = new LongAdder();
+    final LongAdder entriesShed = new LongAdder();
+    final LongAdder cardsDownsampled = new LongAdder();
+    final LongAdder approximateLookups = new LongAdder();
+
+    private final IntSupplier trackedCards;
+    private final LongSupplier retainedEntries;
+    private final IntSupplier downsampledCards;
+
+    /**
+     * Gauges are passed as suppliers over the storage's own collections, so
+     * the storage can build its metrics without handing out {@code this}
+     * before it is constructed.
+     */
+    VelocityStorageMetrics(IntSupplier trackedCards, LongSupplier retainedEntries, IntSupplier downsampledCards) {
+        this.trackedCards = trackedCards;
+        this.retainedEntries = retainedEntries;
+        this.downsampledCards = downsampledCards;
+    }
+
+    public long getBudgetExceeded() {
+        return budgetExceeded.sum();
+    }
+
+    public long getCardsShed() {
+        return cardsShed.sum();
+    }
+
+    public long getEntriesShed() {
+        return entriesShed.sum();
+    }
+
+    public long getCardsDownsampled() {
+        return cardsDownsampled.sum();
+    }
+
+    public long getApproximateLookups() {
+        return approximateLookups.sum();
+    }
+
+    /** Gauge: cards with exact history (may include cards a sweep emptied, see below). */
+    public int getTrackedCards() {
+        return trackedCards.getAsInt();
+    }
+
+    /**
+     * Gauge: payments held exactly. After a cleanup sweep it reads high
+     * until the next over-budget check reconciles it with the delegate.
+     */
+    public long getRetainedEntries() {
+        return retainedEntries.getAsLong();
+    }
+
+    /** Gauge: cards held only as coarse slices. */
+    public int getDownsampledCards() {
+        return downsampledCards.getAsInt();
+    }
+
+    @Override
+    public String toString() {
+        return "VelocityStorageMetrics{trackedCards=" + getTrackedCards()
+                + ", retainedEntries=" + getRetainedEntries()
+                + ", downsampledCards=" + getDownsampledCards()
+                + ", budgetExceeded=" + getBudgetExceeded()
+                + ", cardsShed=" + getCardsShed()
+                + ", entriesShed=" + getEntriesShed()
+                + ", cardsDownsampled=" + getCardsDownsampled()
+                + ", approximateLookups=" + getApproximateLookups() + "}";
+    }
+}
@@ -305,7 +305,7 @@ public class Solution {
         private final Map<String, TreeMap<Long, Integer>> cardTimestamps;
         private AtomicLong oldestTimestampMillis = new AtomicLong(Long.MAX_VALUE);
 
-        ReadwriteLock
+        // FOLLOW UP: ReadWriteLock per card for parallel reads
 
         public TreeMapTimestampStorage() {
             this.cardTimestamps = new java.util.concurrent.ConcurrentHashMap<>();
@@ -4,6 +4,10 @@ import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class AccountTest {
 
     @Test
@@ -34,4 +38,43 @@ public class AccountTest {
 
         assertSame(owner, account.getAccountHolder());
     }
+
+    @Test
+    public void testMinorUnitsDoNotDrift() {
+        Account account = new ConsumerAccount(new Person("Dorothy", "Vaughan", 707), 3L, 1111, 0.0, Currency.USD);
+        for (int i = 0; i < 1_000; i++) {
+            account.creditAccount(0.1);
+        }
+        // A double accumulator ends at 99.9999999999986
+        assertEquals(10_000, account.getBalanceMinorUnits());
+        assertEquals(100.0, account.getBalance(), 0.0);
+
+        Account yen = new ConsumerAccount(new Person("Dorothy", "Vaughan", 707), 4L, 1111, 500.0, Currency.JPY);
+        assertEquals(500, yen.getBalanceMinorUnits());
+        assertTrue(yen.debitMinorUnits(500));
+        assertFalse(yen.debitMinorUnits(1));
+    }
+
+    @Test
+    public void testConcurrentDebitsNeverOverdraw() throws Exception {
+        Account account = new ConsumerAccount(new Person("Annie", "Easley", 808), 5L, 2222, 100.0, Currency.USD);
+        AtomicInteger succeeded = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < 1_000; i++) {
+                    if (account.debitAccount(0.07)) {
+                        succeeded.incrementAndGet();
+                    }
+                    account.creditAccount(0.01);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // Every debit and credit applied exactly once, never below zero
+        assertEquals(10_000 + 8_000 - succeeded.get() * 7L, account.getBalanceMinorUnits());
+        assertTrue(account.getBalanceMinorUnits() >= 0);
+    }
 }
@@ -0,0 +1,188 @@
+package banking;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AsyncAuditWriterTest {
+
+    @Test
+    public void testRingBufferDeliversEveryElementOnce() throws Exception {
+        AuditRingBuffer<Long> ring = new AuditRingBuffer<>(64);
+        int producers = 4;
+        int perProducer = 5_000;
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            long base = (long) p * perProducer;
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (long i = 0; i < perProducer; i++) {
+                    while (!ring.offer(base + i)) {
+                        Thread.yield(); // full: let the consumer run, even on one CPU
+                    }
+                }
+            }));
+        }
+
+        Set<Long> seen = new HashSet<>();
+        long[] lastPerProducer = new long[producers];
+        Arrays.fill(lastPerProducer, -1);
+        while (seen.size() < producers * perProducer) {
+            int drained = ring.drain(value -> {
+                assertTrue(seen.add(value), "duplicate " + value);
+                // Each producer's elements arrive in the order it offered them
+                int producer = (int) (value / perProducer);
+                assertTrue(value > lastPerProducer[producer]);
+                lastPerProducer[producer] = value;
+            }, 128);
+            if (drained == 0) {
+                Thread.yield(); // empty: let the producers run
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, ring.drain(value -> fail("unexpected " + value), 128));
+    }
+
+    @Test
+    public void testAuditingBankWritesInBatchesOffTheCallerThread() throws Exception {
+        List<Integer> batchSizes = new ArrayList<>();
+        Set<Thread> writerThreads = new HashSet<>();
+        TransactionHistoryInMemoryStore history = new TransactionHistoryInMemoryStore() {
+            @Override
+            public synchronized void logTransactions(List<TransactionRecord> records) {
+                batchSizes.add(records.size());
+                writerThreads.add(Thread.currentThread());
+                super.logTransactions(records);
+            }
+        };
+        RequestIdInMemoryStore requestIds = new RequestIdInMemoryStore();
+
+        Bank bank = new Bank(new InMemoryExchangeRateService());
+        Long account = bank.openConsumerAccount(new Person("Ada", "Lovelace", 1), 1234, 0.0, Currency.USD);
+
+        try (AsyncAuditWriter writer = new AsyncAuditWriter(history, requestIds)) {
+            AuditingBank audited = new AuditingBank(bank, writer);
+            int threads = 8;
+            int perThread = 2_000;
+            CountDownLatch done = new CountDownLatch(threads);
+            for (int t = 0; t < threads; t++) {
+                Thread.ofPlatform().start(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        audited.credit(account, 1.0);
+                    }
+                    done.countDown();
+                });
+            }
+            done.await();
+            writer.flush();
+
+            assertEquals(threads * perThread, history.findAll().size());
+            assertEquals(threads * perThread, requestIds.getRequestIds().size());
+            assertEquals(threads * perThread, bank.getBalance(account), 0.0);
+            assertFalse(writerThreads.isEmpty());
+            for (Thread thread : writerThreads) {
+                assertEquals("audit-writer", thread.getName());
+            }
+            // Bursts of callers are coalesced into multi-record batches
+            assertTrue(batchSizes.stream().mapToInt(Integer::intValue).max().orElse(0) > 1);
+        }
+    }
+
+    @Test
+    public void testFullRingFallsBackToCallerAndCloseDrains() {
+        TransactionHistoryInMemoryStore history = new TransactionHistoryInMemoryStore();
+        RequestIdInMemoryStore requestIds = new RequestIdInMemoryStore();
+        AsyncAuditWriter writer = new AsyncAuditWriter(history, requestIds, 2, 1);
+        for (int i = 0; i < 1_000; i++) {
+            writer.logTransaction(new TransactionRecord(1L, 1.0, TransactionType.CREDIT, true));
+        }
+        writer.close();
+
+        // Nothing dropped, however far the writer fell behind
+        assertEquals(1_000, history.findAll().size());
+        writer.logRequestId("after-close");
+        assertEquals(List.of("after-close"), requestIds.getRequestIds());
+        assertTrue(writer.getSynchronousWrites() >= 1);
+    }
+
+    @Test
+    public void testRejectedBatchesAreRetriedThenWrittenOneByOne() {
+        // Fails the first two batch writes, then recovers: the retry gets it in
+        AtomicInteger batchFailures = new AtomicInteger(2);
+        TransactionHistoryInMemoryStore flaky = new TransactionHistoryInMemoryStore() {
+            @Override
+            public void logTransactions(List<TransactionRecord> records) {
+                if (batchFailures.getAndDecrement() > 0) {
+                    throw new IllegalStateException("connection reset");
+                }
+                super.logTransactions(records);
+            }
+        };
+        AsyncAuditWriter writer = new AsyncAuditWriter(flaky, new RequestIdInMemoryStore(), 1_024, 16);
+        for (int i = 0; i < 100; i++) {
+            writer.logTransaction(new TransactionRecord(1L, 1.0, TransactionType.CREDIT, true));
+        }
+        writer.close();
+        assertEquals(100, flaky.findAll().size());
+        assertEquals(0, writer.getFailedWrites());
+
+        // Batches never go in, single entries do: nothing is lost
+        TransactionHistoryInMemoryStore noBatches = new TransactionHistoryInMemoryStore() {
+            @Override
+            public void logTransactions(List<TransactionRecord> records) {
+                throw new IllegalStateException("batch insert unsupported");
+            }
+        };
+        writer = new AsyncAuditWriter(noBatches, new RequestIdInMemoryStore(), 1_024, 16);
+        for (int i = 0; i < 100; i++) {
+            writer.logTransaction(new TransactionRecord(1L, 1.0, TransactionType.CREDIT, true));
+        }
+        writer.close();
+        assertEquals(100, noBatches.findAll().size());
+        assertEquals(0, writer.getFailedWrites());
+    }
+
+    @Test
+    public void testCloseReportsEntriesTheStoreRejected() {
+        TransactionRecord poison = new TransactionRecord(666L, 1.0, TransactionType.CREDIT, true);
+        TransactionHistoryInMemoryStore history = new TransactionHistoryInMemoryStore() {
+            @Override
+            public void logTransactions(List<TransactionRecord> records) {
+                if (records.contains(poison)) {
+                    throw new IllegalStateException("constraint violation");
+                }
+                super.logTransactions(records);
+            }
+
+            @Override
+            public void logTransaction(TransactionRecord record) {
+                if (record == poison) {
+                    throw new IllegalStateException("constraint violation");
+                }
+                super.logTransaction(record);
+            }
+        };
+        AsyncAuditWriter writer = new AsyncAuditWriter(history, new RequestIdInMemoryStore(), 1_024, 16);
+        for (int i = 0; i < 10; i++) {
+            writer.logTransaction(i == 5 ? poison : new TransactionRecord(1L, 1.0, TransactionType.CREDIT, true));
+        }
+
+        // Interrupted or not, close drains before it reports
+        Thread.currentThread().interrupt();
+        IllegalStateException error = assertThrows(IllegalStateException.class, writer::close);
+        assertTrue(Thread.interrupted());
+        assertEquals("constraint violation", error.getCause().getMessage());
+        assertEquals(1, writer.getFailedWrites());
+        // Only the poison entry is missing; its batch-mates made it
+        assertEquals(9, history.findAll().size());
+    }
+}
@@ -0,0 +1,59 @@
+package banking;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+public class AuditingBankTest {
+
+    @Test
+    public void testTransfersAreAuditedWithLatency() {
+        TransactionHistoryInMemoryStore history = new TransactionHistoryInMemoryStore();
+        RequestIdInMemoryStore requestIds = new RequestIdInMemoryStore();
+        Bank bank = new Bank(new InMemoryExchangeRateService());
+        BankInterface audited = new AuditingBank(bank, new TransactionHistoryLogger(history),
+                new RequestIdLogger(requestIds));
+
+        Long source = audited.openConsumerAccount(new Person("Ada", "Lovelace", 1), 1234, 100.0, Currency.USD);
+        Long target = audited.openConsumerAccount(new Person("Alan", "Turing", 2), 4321, 0.0, Currency.USD);
+
+        assertTrue(audited.transfer(source, target, 40.0));
+        assertFalse(audited.transfer(source, target, 500.0));
+        audited.credit(source, 5.0);
+
+        List<TransactionRecordDTO> records = history.findAll();
+        assertEquals(3, records.size());
+        TransactionRecordDTO moved = records.get(0);
+        assertEquals(TransactionType.TRANSFER, moved.getType());
+        assertEquals(source, moved.getAccountNumber());
+        assertEquals(target, moved.getTargetAccountNumber());
+        assertTrue(moved.isSuccess());
+        assertFalse(records.get(1).isSuccess());
+        for (TransactionRecordDTO record : records) {
+            assertTrue(record.getLatencyNanos() > 0);
+        }
+        assertEquals(3, requestIds.getRequestIds().size());
+
+        TransactionRecord timed = new TransactionRecord(source, target, 40.0, true, 12_345);
+        assertEquals(timed.getLatencyNanos(), TransactionRecordDTO.from(timed).getLatencyNanos());
+    }
+
+    @Test
+    public void testTransferThatThrowsIsStillAudited() {
+        TransactionHistoryInMemoryStore history = new TransactionHistoryInMemoryStore();
+        Bank bank = new Bank(new InMemoryExchangeRateService());
+        BankInterface audited = new AuditingBank(bank, new TransactionHistoryLogger(history),
+                new RequestIdLogger(new RequestIdInMemoryStore()));
+        Long source = audited.openConsumerAccount(new Person("Ada", "Lovelace", 1), 1234, 100.0, Currency.USD);
+        Long target = audited.openConsumerAccount(new Person("Alan", "Turing", 2), 4321, 0.0, Currency.USD);
+        bank.getAccount(target).creditMinorUnits(Long.MAX_VALUE);
+
+        // Credit overflows and is rolled back
+        assertThrows(IllegalArgumentException.class, () -> audited.transfer(source, target, 1.0));
+        assertEquals(1, history.findAll().size());
+        assertFalse(history.findAll().get(0).isSuccess());
+        assertNull(RequestContext.getRequestId());
+    }
+}
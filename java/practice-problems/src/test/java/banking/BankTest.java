@@ -4,6 +4,10 @@ import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class BankTest {
 
     private Bank newBank() {
@@ -61,4 +65,104 @@ public class BankTest {
         assertThrows(AccountNotFoundException.class, () -> bank.debit(missing, 10.0));
         assertThrows(AccountNotFoundException.class, () -> bank.credit(missing, 10.0));
     }
+
+    @Test
+    public void testConcurrentTransfersConserveMoney() throws Exception {
+        Bank bank = newBank();
+        Long merchant = bank.openCommercialAccount(new Company("Acme", 505), 1111, 0.0, Currency.USD);
+        List<Long> customers = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            customers.add(bank.openConsumerAccount(new Person("Customer", "" + i, 600 + i), 1234, 10.0, Currency.USD));
+        }
+
+        // Everyone pays the same merchant, which used to serialise on its monitor
+        List<Thread> threads = new ArrayList<>();
+        for (Long customer : customers) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < 2_000; i++) {
+                    bank.transfer(customer, merchant, 0.01);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // 10.00 each: the first 1,000 cents succeed, the rest are refused
+        assertEquals(80.0, bank.getBalance(merchant), 0.0);
+        for (Long customer : customers) {
+            assertEquals(0.0, bank.getBalance(customer), 0.0);
+        }
+    }
+
+    @Test
+    public void testCrossCurrencyTransferRoundsToMinorUnits() {
+        Bank bank = newBank();
+        Long euros = bank.openConsumerAccount(new Person("Emmy", "Noether", 707), 1111, 100.0, Currency.EUR);
+        Long dollars = bank.openConsumerAccount(new Person("Emmy", "Noether", 707), 1111, 0.0, Currency.USD);
+
+        assertTrue(bank.transfer(euros, dollars, 10.01));
+        assertEquals(89.99, bank.getBalance(euros), 0.0);
+        assertEquals(1081, bank.getAccount(dollars).getBalanceMinorUnits()); // 10.8108 -> 10.81
+        assertFalse(bank.transfer(euros, dollars, 1_000.0));
+        assertEquals(8_999, bank.getAccount(euros).getBalanceMinorUnits());
+    }
+
+    @Test
+    public void testTransferWhoseCreditRoundsToNothingIsRejected() {
+        InMemoryExchangeRateService rates = new InMemoryExchangeRateService();
+        rates.setRate(Currency.USD, Currency.JPY, 40.0); // one cent buys 0.4 yen
+        Bank bank = new Bank(rates);
+        Long dollars = bank.openConsumerAccount(new Person("Ada", "Lovelace", 808), 1111, 1.0, Currency.USD);
+        Long yen = bank.openConsumerAccount(new Person("Ada", "Lovelace", 808), 1111, 0.0, Currency.JPY);
+
+        assertFalse(bank.transfer(dollars, yen, 0.001)); // 0.1 cents -> 0.04 yen
+        assertFalse(bank.transfer(dollars, yen, 0.01)); // 1 cent -> 0.4 yen
+        assertEquals(List.of(TransferStatus.INVALID_REQUEST, TransferStatus.INVALID_REQUEST),
+                bank.transferBatch(List.of(new TransferRequest(dollars, yen, 0.001),
+                        new TransferRequest(dollars, yen, 0.01))));
+
+        // Nothing left the source, so nothing was lost in flight
+        assertEquals(100, bank.getAccount(dollars).getBalanceMinorUnits());
+        assertEquals(0, bank.getAccount(yen).getBalanceMinorUnits());
+        assertTrue(bank.transfer(dollars, yen, 0.02)); // 0.8 yen -> 1
+        assertEquals(98, bank.getAccount(dollars).getBalanceMinorUnits());
+        assertEquals(1, bank.getAccount(yen).getBalanceMinorUnits());
+    }
+
+    @Test
+    public void testTransferBatchReportsEachTransfer() {
+        AtomicInteger rateLookups = new AtomicInteger();
+        InMemoryExchangeRateService rates = new InMemoryExchangeRateService();
+        Bank bank = new Bank((from, to) -> {
+            rateLookups.incrementAndGet();
+            return rates.getExchangeRate(from, to);
+        });
+        Long employer = bank.openCommercialAccount(new Company("Acme", 909), 1111, 1_000.0, Currency.EUR);
+        List<TransferRequest> payroll = new ArrayList<>();
+        List<Long> employees = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Long employee = bank.openConsumerAccount(new Person("Employee", "" + i, i), 1234, 0.0, Currency.USD);
+            employees.add(employee);
+            payroll.add(new TransferRequest(employer, employee, 9.0));
+        }
+        payroll.add(new TransferRequest(employer, employees.get(0), 200.0)); // only 100.00 left
+        payroll.add(new TransferRequest(employer, 999999999L, 1.0));
+        payroll.add(new TransferRequest(employer, employees.get(0), -1.0));
+        payroll.add(new TransferRequest(employer, employees.get(1), 50.0));
+
+        List<TransferStatus> results = bank.transferBatch(payroll);
+
+        assertEquals(104, results.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(TransferStatus.COMPLETED, results.get(i));
+        }
+        assertEquals(TransferStatus.INSUFFICIENT_FUNDS, results.get(100));
+        assertEquals(TransferStatus.ACCOUNT_NOT_FOUND, results.get(101));
+        assertEquals(TransferStatus.INVALID_REQUEST, results.get(102));
+        assertEquals(TransferStatus.COMPLETED, results.get(103));
+        assertEquals(50.0, bank.getBalance(employer), 0.0);
+        assertEquals(9.72, bank.getBalance(employees.get(0)), 0.0);
+        // EUR -> USD looked up once for the whole batch
+        assertEquals(1, rateLookups.get());
+    }
 }
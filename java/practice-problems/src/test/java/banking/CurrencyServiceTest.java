@@ -0,0 +1,90 @@
+package banking;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CurrencyServiceTest {
+
+    @Test
+    public void testBulkConvertMatchesPerAmountConvert() {
+        InMemoryExchangeRateService rates = new InMemoryExchangeRateService();
+        rates.setRate(Currency.USD, Currency.JPY, 150.0);
+        CurrencyService service = new CurrencyService(rates);
+        Currency[] currencies = Currency.values();
+        Random random = new Random(5);
+
+        int n = 10_000;
+        double[] amounts = new double[n];
+        long[] minorUnits = new long[n];
+        Currency[] from = new Currency[n];
+        Currency[] to = new Currency[n];
+        for (int i = 0; i < n; i++) {
+            from[i] = currencies[random.nextInt(currencies.length)];
+            to[i] = currencies[random.nextInt(currencies.length)];
+            minorUnits[i] = random.nextInt(10_000_000);
+            amounts[i] = from[i].fromMinorUnits(minorUnits[i]);
+        }
+        // JPY only has a USD rate here
+        for (int i = 0; i < n; i++) {
+            if ((from[i] == Currency.JPY && to[i] != Currency.USD && to[i] != Currency.JPY)
+                    || (to[i] == Currency.JPY && from[i] != Currency.USD && from[i] != Currency.JPY)) {
+                to[i] = from[i];
+            }
+        }
+
+        double[] pairs = new double[n];
+        service.convert(amounts, from, to, pairs);
+        double[] inUsd = new double[n];
+        service.convert(amounts, from, Currency.USD, inUsd);
+        long[] usdCents = new long[n];
+        service.convertMinorUnits(minorUnits, from, Currency.USD, usdCents);
+        for (int i = 0; i < n; i++) {
+            assertEquals(service.convert(amounts[i], from[i], to[i]), pairs[i], 1e-9);
+            double usd = service.convert(amounts[i], from[i], Currency.USD);
+            assertEquals(usd, inUsd[i], 1e-9);
+            assertEquals(Currency.USD.toMinorUnits(usd), usdCents[i], 1);
+        }
+
+        // Same pair, in place
+        double[] euros = { 1.0, 2.5, 100.0 };
+        service.convert(euros, Currency.EUR, Currency.USD, euros);
+        assertArrayEquals(new double[] { 1.08, 2.7, 108.0 }, euros, 1e-12);
+
+        long[] yen = new long[1];
+        service.convertMinorUnits(new long[] { 1_234 }, new Currency[] { Currency.USD }, Currency.JPY, yen);
+        assertEquals(1_851, yen[0]); // 12.34 USD * 150
+
+        assertThrows(IllegalArgumentException.class,
+                () -> service.convert(new double[2], new Currency[1], Currency.USD, new double[2]));
+        assertThrows(IllegalArgumentException.class, () -> service.convert(new double[] { 1.0 },
+                new Currency[] { Currency.GBP }, Currency.JPY, new double[1]));
+    }
+
+    @Test
+    public void testBulkConvertLooksEachPairUpOnce() {
+        AtomicInteger lookups = new AtomicInteger();
+        InMemoryExchangeRateService rates = new InMemoryExchangeRateService();
+        // A pair-by-pair service without a snapshot
+        CurrencyService service = new CurrencyService((from, to) -> {
+            lookups.incrementAndGet();
+            return rates.getExchangeRate(from, to);
+        });
+        double[] amounts = new double[1_000];
+        Currency[] from = new Currency[amounts.length];
+        for (int i = 0; i < amounts.length; i++) {
+            amounts[i] = i;
+            from[i] = i % 3 == 0 ? Currency.EUR : i % 3 == 1 ? Currency.GBP : Currency.USD;
+        }
+        double[] result = new double[amounts.length];
+        service.convert(amounts, from, Currency.USD, result);
+
+        assertEquals(2, lookups.get()); // EUR->USD and GBP->USD; USD->USD needs none
+        assertEquals(3 * 1.08, result[3], 1e-12);
+        assertEquals(4 * 1.27, result[4], 1e-12);
+        assertEquals(5.0, result[5], 0.0);
+    }
+}
@@ -0,0 +1,231 @@
+package banking;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+public class EventLedgerTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testRestartReplaysEveryChange() throws Exception {
+        Long alice;
+        Long acme;
+        try (EventLedger ledger = EventLedger.open(directory)) {
+            Bank bank = new Bank(new InMemoryExchangeRateService(), ledger);
+            alice = bank.openConsumerAccount(new Person("Alice", "Liddell", 11), 1234, 100.0, Currency.USD);
+            acme = bank.openCommercialAccount(new Company("Acme", 22), 9999, 0.0, Currency.EUR);
+            bank.credit(alice, 25.5);
+            assertTrue(bank.debit(alice, 10.0));
+            assertFalse(bank.debit(alice, 1_000.0)); // refused: not an event
+            assertTrue(bank.transfer(alice, acme, 54.0));
+            assertEquals(5, ledger.lastSequence());
+        }
+
+        // Only PIN hashes reach the disk
+        for (Path file : listFiles()) {
+            byte[] contents = Files.readAllBytes(file);
+            assertFalse(containsInt(contents, 1234), file + " holds a plaintext PIN");
+            assertFalse(containsInt(contents, 9999), file + " holds a plaintext PIN");
+        }
+
+        try (EventLedger ledger = EventLedger.open(directory)) {
+            Bank bank = new Bank(new InMemoryExchangeRateService(), ledger);
+            assertEquals(61.5, bank.getBalance(alice), 0.0);
+            assertEquals(50.0, bank.getBalance(acme), 0.0);
+            assertTrue(bank.authenticateUser(alice, 1234));
+            assertTrue(bank.authenticateUser(acme, 9999));
+            assertEquals("Liddell", ((Person) bank.getAccount(alice).getAccountHolder()).getLastName());
+            assertEquals("Acme", ((Company) bank.getAccount(acme).getAccountHolder()).getCompanyName());
+            assertFalse(bank.authenticateUser(alice, 9999));
+
+            // New accounts never reuse a recovered number
+            Long next = bank.openConsumerAccount(new Person("Bob", "Builder", 33), 1111, 0.0, Currency.GBP);
+            assertTrue(next > Math.max(alice, acme));
+            assertEquals(6, ledger.lastSequence());
+        }
+    }
+
+    @Test
+    public void testSnapshotsBoundReplayAndDropSegments() throws Exception {
+        Random random = new Random(9);
+        List<Long> accounts = new ArrayList<>();
+        long[] expected;
+        try (EventLedger ledger = EventLedger.open(directory, EventLedger.MIN_SEGMENT_BYTES, 500)) {
+            Bank bank = new Bank(new InMemoryExchangeRateService(), ledger);
+            for (int i = 0; i < 20; i++) {
+                accounts.add(bank.openConsumerAccount(new Person("Holder", "" + i, i), 1000 + i, 50.0, Currency.USD));
+            }
+            for (int i = 0; i < 5_000; i++) {
+                Long from = accounts.get(random.nextInt(accounts.size()));
+                Long to = accounts.get(random.nextInt(accounts.size()));
+                switch (random.nextInt(3)) {
+                    case 0 -> bank.credit(from, random.nextInt(1_000) / 100.0);
+                    case 1 -> bank.debit(from, random.nextInt(1_000) / 100.0);
+                    default -> bank.transfer(from, to, random.nextInt(1_000) / 100.0);
+                }
+            }
+            ledger.snapshot();
+            expected = accounts.stream().mapToLong(a -> bank.getAccount(a).getBalanceMinorUnits()).toArray();
+        }
+
+        // 5,000 events over 4KB segments: most were deleted once covered
+        assertEquals(1, countFiles(".snap"));
+        assertTrue(countFiles(".log") <= 2, countFiles(".log") + " segments left");
+
+        try (EventLedger ledger = EventLedger.open(directory, EventLedger.MIN_SEGMENT_BYTES, 500)) {
+            Bank bank = new Bank(new InMemoryExchangeRateService(), ledger);
+            for (int i = 0; i < accounts.size(); i++) {
+                assertEquals(expected[i], bank.getAccount(accounts.get(i)).getBalanceMinorUnits());
+            }
+            // Appends after a snapshot restore are replayed on top of it
+            bank.credit(accounts.get(0), 1.0);
+        }
+        try (EventLedger ledger = EventLedger.open(directory, EventLedger.MIN_SEGMENT_BYTES, 500)) {
+            assertEquals(expected[0] + 100, ledger.accounts().get(accounts.get(0)).getBalanceMinorUnits());
+        }
+    }
+
+    @Test
+    public void testDamagedTailIsDropped() throws Exception {
+        Long account;
+        try (EventLedger ledger = EventLedger.open(directory)) {
+            Bank bank = new Bank(new InMemoryExchangeRateService(), ledger);
+            account = bank.openConsumerAccount(new Person("Carol", "Danvers", 44), 1, 10.0, Currency.USD);
+            bank.credit(account, 1.11);
+            bank.credit(account, 2.01); // the record we damage
+        }
+
+        // Flip the last non-zero byte of the segment: inside the final record
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.filter(p -> p.toString().endsWith(".log")).findFirst().orElseThrow();
+        }
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer contents = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            int last = contents.limit() - 1;
+            while (contents.get(last) == 0) {
+                last--;
+            }
+            contents.put(last, (byte) (contents.get(last) ^ 0x01));
+        }
+
+        try (EventLedger ledger = EventLedger.open(directory)) {
+            Bank bank = new Bank(new InMemoryExchangeRateService(), ledger);
+            assertEquals(11.11, bank.getBalance(account), 0.0);
+            assertEquals(2, ledger.lastSequence());
+            // Appends continue cleanly after the dropped record
+            bank.credit(account, 0.89);
+        }
+        try (EventLedger ledger = EventLedger.open(directory)) {
+            assertEquals(1_200, ledger.accounts().get(account).getBalanceMinorUnits());
+        }
+    }
+
+    @Test
+    public void testDamageBeforeTheLastSegmentFailsStartup() throws Exception {
+        try (EventLedger ledger = EventLedger.open(directory, EventLedger.MIN_SEGMENT_BYTES, 1_000_000)) {
+            Bank bank = new Bank(new InMemoryExchangeRateService(), ledger);
+            Long account = bank.openConsumerAccount(new Person("Dana", "Scully", 55), 1, 0.0, Currency.USD);
+            for (int i = 0; i < 1_000; i++) {
+                bank.credit(account, 0.01);
+            }
+        }
+        List<Path> segments = listFiles().stream().filter(p -> p.toString().endsWith(".log")).toList();
+        assertTrue(segments.size() >= 3, segments.size() + " segments");
+
+        // Flip a payload byte of the first record of the first segment
+        try (FileChannel channel = FileChannel.open(segments.get(0), StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            ByteBuffer contents = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            contents.put(8, (byte) (contents.get(8) ^ 0x01));
+        }
+
+        IOException error = assertThrows(IOException.class,
+                () -> EventLedger.open(directory, EventLedger.MIN_SEGMENT_BYTES, 1_000_000));
+        assertTrue(error.getMessage().contains("damaged before the tail"), error.getMessage());
+        // Nothing was deleted: the damage can still be repaired by hand
+        assertEquals(segments, listFiles().stream().filter(p -> p.toString().endsWith(".log")).toList());
+    }
+
+    @Test
+    public void testFailedBackgroundSnapshotIsCounted() throws Exception {
+        try (EventLedger ledger = EventLedger.open(directory, EventLedger.MIN_SEGMENT_BYTES, 5)) {
+            // A directory where the snapshot's temp file should go makes the write fail
+            Path blocker = directory.resolve(String.format("snapshot-%020d.snap.tmp", 5));
+            Files.createDirectory(blocker);
+            Bank bank = new Bank(new InMemoryExchangeRateService(), ledger);
+            Long account = bank.openConsumerAccount(new Person("Fox", "Mulder", 66), 1, 0.0, Currency.USD);
+            for (int i = 0; i < 4; i++) {
+                bank.credit(account, 1.0);
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (ledger.getFailedSnapshots() == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(1, ledger.getFailedSnapshots());
+            assertNotNull(ledger.getLastSnapshotError());
+
+            // Appends carry on; the next attempt succeeds once the path is free
+            Files.delete(blocker);
+            bank.credit(account, 1.0);
+            ledger.snapshot();
+            assertEquals(1, countFiles(".snap"));
+        }
+    }
+
+    @Test
+    public void testAppendAfterCloseSkipsTheSnapshot() throws Exception {
+        EventLedger ledger = EventLedger.open(directory, EventLedger.MIN_SEGMENT_BYTES, 1);
+        Bank bank = new Bank(new InMemoryExchangeRateService(), ledger);
+        Long account = bank.openConsumerAccount(new Person("Dana", "Scully", 67), 1, 0.0, Currency.USD);
+        ledger.close();
+
+        // Due a snapshot, but the snapshot thread is gone; the credit still stands
+        bank.credit(account, 2.5);
+        assertEquals(0, ledger.getFailedSnapshots());
+        ledger.sync();
+
+        try (EventLedger reopened = EventLedger.open(directory, EventLedger.MIN_SEGMENT_BYTES, 1)) {
+            assertEquals(250, reopened.accounts().get(account).getBalanceMinorUnits());
+        }
+    }
+
+    private static boolean containsInt(byte[] contents, int value) {
+        byte[] pattern = ByteBuffer.allocate(4).putInt(value).array();
+        for (int i = 0; i + pattern.length <= contents.length; i++) {
+            if (Arrays.equals(contents, i, i + pattern.length, pattern, 0, pattern.length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<Path> listFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().toList();
+        }
+    }
+
+    private long countFiles(String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(p -> p.toString().endsWith(suffix)).count();
+        }
+    }
+}
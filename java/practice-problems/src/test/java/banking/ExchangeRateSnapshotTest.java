@@ -0,0 +1,82 @@
+package banking;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+public class ExchangeRateSnapshotTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testSnapshotsAreImmutableAndSwappedWhole() {
+        InMemoryExchangeRateService service = new InMemoryExchangeRateService();
+        ExchangeRateSnapshot before = service.getSnapshot();
+        assertEquals(1.08, service.getExchangeRate(Currency.EUR, Currency.USD), 0.0);
+        assertEquals(1 / 1.08, service.getExchangeRate(Currency.USD, Currency.EUR), 0.0);
+        assertEquals(1.0, service.getExchangeRate(Currency.JPY, Currency.JPY), 0.0);
+        assertThrows(IllegalArgumentException.class, () -> service.getExchangeRate(Currency.USD, Currency.JPY));
+
+        service.setRate(Currency.USD, Currency.JPY, 150.0);
+        assertEquals(150.0, service.getExchangeRate(Currency.USD, Currency.JPY), 0.0);
+        // Readers holding the old snapshot keep a consistent view
+        assertFalse(before.hasRate(Currency.USD, Currency.JPY));
+        assertNotSame(before, service.getSnapshot());
+
+        Bank bank = new Bank(service);
+        Long dollars = bank.openConsumerAccount(new Person("Ada", "Lovelace", 1), 1234, 10.0, Currency.USD);
+        Long yen = bank.openConsumerAccount(new Person("Ada", "Lovelace", 1), 1234, 0.0, Currency.JPY);
+        assertTrue(bank.transfer(dollars, yen, 2.0));
+        assertEquals(300, bank.getAccount(yen).getBalanceMinorUnits());
+
+        assertThrows(IllegalArgumentException.class,
+                () -> new ExchangeRateSnapshot.Builder().rate(Currency.USD, Currency.EUR, 0.0));
+        assertThrows(IllegalArgumentException.class,
+                () -> new ExchangeRateSnapshot.Builder().rate(Currency.USD, Currency.USD, 1.0));
+    }
+
+    @Test
+    public void testRefresherReloadsRatesFile() throws Exception {
+        Path file = directory.resolve("rates.txt");
+        Files.writeString(file, """
+                # quoted both ways: the explicit inverse wins over 1/rate
+                USD EUR 0.9
+                EUR USD 1.1
+
+                USD JPY 150
+                """);
+        InMemoryExchangeRateService service = new InMemoryExchangeRateService();
+        try (ExchangeRateRefresher refresher = ExchangeRateRefresher.fromFile(service, file, Duration.ofHours(1))) {
+            assertEquals(1.1, service.getExchangeRate(Currency.EUR, Currency.USD), 0.0);
+            assertEquals(0.9, service.getExchangeRate(Currency.USD, Currency.EUR), 0.0);
+            assertEquals(1 / 150.0, service.getExchangeRate(Currency.JPY, Currency.USD), 0.0);
+            // Pairs the file leaves out are gone, not carried over
+            assertThrows(IllegalArgumentException.class, () -> service.getExchangeRate(Currency.GBP, Currency.USD));
+
+            Files.writeString(file, "USD JPY 155\n");
+            assertTrue(refresher.refresh());
+            assertEquals(155.0, service.getExchangeRate(Currency.USD, Currency.JPY), 0.0);
+
+            // A broken file keeps the last good rates
+            Files.writeString(file, "USD JPY\n");
+            assertFalse(refresher.refresh());
+            Files.writeString(file, "USD XYZ 1.0\n");
+            assertFalse(refresher.refresh());
+            assertEquals(155.0, service.getExchangeRate(Currency.USD, Currency.JPY), 0.0);
+            assertEquals(2, refresher.getRefreshes());
+            assertEquals(2, refresher.getFailedRefreshes());
+        }
+
+        // The first load must succeed
+        assertThrows(IllegalArgumentException.class, () -> ExchangeRateRefresher.fromFile(service,
+                directory.resolve("missing.txt"), Duration.ofHours(1)));
+        assertThrows(IllegalArgumentException.class,
+                () -> ExchangeRateRefresher.start(service, () -> null, Duration.ofHours(1)));
+    }
+}
@@ -0,0 +1,95 @@
+package banking;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import testsupport.FakeDataSource;
+
+/**
+ * JDBC plumbing checked against a recording fake DataSource: there is no
+ * Postgres in the test environment, so SQL semantics are out of scope here.
+ */
+public class PostgresTransactionRecordDaoTest {
+
+    private static final Instant NOW = Instant.parse("2025-02-11T10:00:00Z");
+    private static final List<String> COLUMNS = List.of("id", "account_number", "target_account_number",
+            "amount", "type", "timestamp", "success", "latency_nanos");
+
+    @Test
+    public void testSaveAllBindsEveryColumnInOrderAndCommitsOnce() {
+        FakeDataSource database = new FakeDataSource();
+        PostgresTransactionRecordDao dao = new PostgresTransactionRecordDao(database.proxy());
+
+        List<TransactionRecordDTO> records = new ArrayList<>();
+        records.add(new TransactionRecordDTO(1L, 2L, 40.0, TransactionType.TRANSFER, NOW, true, 900));
+        for (int i = 1; i <= PostgresTransactionRecordDao.BATCH_SIZE; i++) {
+            records.add(new TransactionRecordDTO(3L, null, i, TransactionType.CREDIT, NOW.plusMillis(i), false));
+        }
+        dao.saveAll(records);
+
+        // account, target, amount, type, timestamp (UTC, whatever the JVM zone), success, latency
+        assertEquals(records.size(), database.batched.size());
+        assertEquals(List.of(1L, 2L, 40.0, "TRANSFER", utc(NOW), true, 900L), database.batched.get(0));
+        assertEquals(Arrays.asList(3L, null, 1.0, "CREDIT", utc(NOW.plusMillis(1)), false, 0L),
+                database.batched.get(1));
+        // One full chunk, then the remainder; one transaction around both
+        assertEquals(List.of("setAutoCommit(false)", "executeBatch", "executeBatch", "commit", "setAutoCommit(true)"),
+                database.calls);
+        assertEquals(0, database.open.get(), "unclosed JDBC objects");
+    }
+
+    @Test
+    public void testFailedBatchRollsBackAndCleansUp() {
+        FakeDataSource database = new FakeDataSource();
+        database.failBatches = true;
+        PostgresTransactionRecordDao dao = new PostgresTransactionRecordDao(database.proxy());
+
+        List<TransactionRecordDTO> records = List.of(
+                new TransactionRecordDTO(1L, null, 5.0, TransactionType.CREDIT, NOW, true),
+                new TransactionRecordDTO(1L, null, 6.0, TransactionType.DEBIT, NOW, true));
+        RuntimeException error = assertThrows(RuntimeException.class, () -> dao.saveAll(records));
+        assertEquals("Failed to save 2 transaction records", error.getMessage());
+        assertInstanceOf(SQLException.class, error.getCause());
+
+        assertEquals(List.of("setAutoCommit(false)", "executeBatch", "rollback", "setAutoCommit(true)"),
+                database.calls);
+        assertEquals(0, database.open.get(), "unclosed JDBC objects");
+    }
+
+    @Test
+    public void testPageBindsBothBranchesAndReturnsAKeysetCursor() {
+        FakeDataSource database = new FakeDataSource(COLUMNS, List.of(
+                new Object[] { 42L, 7L, null, 3.0, "CREDIT", utc(NOW), true, 10L },
+                new Object[] { 41L, 8L, 7L, 2.0, "TRANSFER", utc(NOW.minusSeconds(1)), true, 0L }));
+        PostgresTransactionRecordDao dao = new PostgresTransactionRecordDao(database.proxy());
+
+        HistoryPage page = dao.findByAccount(7L, new HistoryPage.Cursor(NOW.plusSeconds(1), 50L), 2);
+
+        // (account, cursor timestamp, cursor id, limit) per branch, then the outer limit
+        OffsetDateTime cursor = utc(NOW.plusSeconds(1));
+        assertEquals(List.of(7L, cursor, 50L, 2, 7L, cursor, 50L, 2, 2), database.queried.get(0));
+        assertEquals(2, page.getRecords().size());
+        assertEquals(8L, page.getRecords().get(1).getAccountNumber());
+        assertEquals(7L, page.getRecords().get(1).getTargetAccountNumber());
+        assertEquals(TransactionType.TRANSFER, page.getRecords().get(1).getType());
+        // A full page points at its last row
+        assertEquals(NOW.minusSeconds(1), page.getNext().getTimestamp());
+        assertEquals(41L, page.getNext().getSequence());
+        assertEquals(0, database.open.get(), "unclosed JDBC objects");
+
+        assertThrows(IllegalArgumentException.class, () -> dao.findByAccount(7L, null, 0));
+    }
+
+    private static OffsetDateTime utc(Instant instant) {
+        return OffsetDateTime.ofInstant(instant, ZoneOffset.UTC);
+    }
+}
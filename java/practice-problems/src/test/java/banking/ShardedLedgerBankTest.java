@@ -0,0 +1,239 @@
+package banking;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+public class ShardedLedgerBankTest {
+
+    @Test
+    public void testBankInterfaceBehaviour() {
+        try (ShardedLedgerBank bank = new ShardedLedgerBank(new InMemoryExchangeRateService(), 4)) {
+            Long account = bank.openConsumerAccount(new Person("Grace", "Hopper", 303), 2468, 100.0, Currency.USD);
+            assertTrue(bank.authenticateUser(account, 2468));
+            assertFalse(bank.authenticateUser(account, 1111));
+
+            bank.credit(account, 50.0);
+            assertTrue(bank.debit(account, 70.0));
+            assertFalse(bank.debit(account, 500.0));
+            assertEquals(80.0, bank.getBalance(account), 0.0);
+
+            Long missing = 999999999L;
+            assertThrows(AccountNotFoundException.class, () -> bank.getBalance(missing));
+            assertThrows(AccountNotFoundException.class, () -> bank.credit(missing, 10.0));
+            assertThrows(AccountNotFoundException.class, () -> bank.debit(missing, 10.0));
+            assertFalse(bank.transfer(account, missing, 10.0));
+            assertFalse(bank.transfer(account, account + 1, -1.0));
+        }
+    }
+
+    @Test
+    public void testTransferWhoseCreditRoundsToNothingIsRejected() {
+        InMemoryExchangeRateService rates = new InMemoryExchangeRateService();
+        rates.setRate(Currency.USD, Currency.JPY, 40.0);
+        try (ShardedLedgerBank bank = new ShardedLedgerBank(rates, 4)) {
+            Long dollars = bank.openConsumerAccount(new Person("Ada", "Lovelace", 808), 1111, 1.0, Currency.USD);
+            Long yen = bank.openConsumerAccount(new Person("Ada", "Lovelace", 808), 1111, 0.0, Currency.JPY);
+
+            assertFalse(bank.transfer(dollars, yen, 0.001));
+            assertFalse(bank.transfer(dollars, yen, 0.01));
+            assertEquals(List.of(TransferStatus.INVALID_REQUEST),
+                    bank.transferBatch(List.of(new TransferRequest(dollars, yen, 0.01))));
+            assertEquals(1.0, bank.getBalance(dollars), 0.0);
+            assertEquals(0.0, bank.getBalance(yen), 0.0);
+        }
+    }
+
+    @Test
+    public void testCrossShardTransfersConserveMoney() throws Exception {
+        try (ShardedLedgerBank bank = new ShardedLedgerBank(new InMemoryExchangeRateService(), 4)) {
+            List<Long> accounts = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                accounts.add(bank.openConsumerAccount(new Person("Holder", "" + i, i), 1234, 100.0, Currency.USD));
+            }
+            Long merchant = accounts.get(0);
+
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                Random random = new Random(t);
+                threads.add(Thread.ofPlatform().start(() -> {
+                    List<CompletableFuture<Boolean>> inFlight = new ArrayList<>();
+                    for (int i = 0; i < 2_000; i++) {
+                        Long from = accounts.get(random.nextInt(accounts.size()));
+                        // Half of all traffic hits one hot merchant account
+                        Long to = random.nextBoolean() ? merchant : accounts.get(random.nextInt(accounts.size()));
+                        inFlight.add(bank.transferAsync(from, to, 0.01 * (1 + random.nextInt(500))));
+                    }
+                    inFlight.forEach(CompletableFuture::join);
+                }));
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            long total = 0;
+            for (Long account : accounts) {
+                long balance = bank.getAccount(account).getBalanceMinorUnits();
+                assertTrue(balance >= 0);
+                total += balance;
+            }
+            assertEquals(16 * 10_000, total);
+            assertEquals(0, bank.pendingReservations());
+        }
+    }
+
+    @Test
+    public void testFailedCreditReleasesReservation() {
+        try (ShardedLedgerBank bank = new ShardedLedgerBank(new InMemoryExchangeRateService(), 2)) {
+            Long source = bank.openConsumerAccount(new Person("Ada", "Lovelace", 1), 1, 100.0, Currency.USD);
+            Long destination = bank.openConsumerAccount(new Person("Alan", "Turing", 2), 2, 0.0, Currency.USD);
+            bank.getAccount(destination).creditMinorUnits(Long.MAX_VALUE - 10);
+
+            // Credit overflows on the destination shard; the source hold is refunded
+            assertThrows(IllegalArgumentException.class, () -> bank.transfer(source, destination, 1.0));
+            assertEquals(100.0, bank.getBalance(source), 0.0);
+            assertEquals(0, bank.pendingReservations());
+
+            assertTrue(bank.transfer(destination, source, 0.05));
+            assertEquals(100.05, bank.getBalance(source), 0.0);
+        }
+    }
+
+    @Test
+    public void testCloseDrainsCrossShardTransfersInFlight() throws Exception {
+        ShardedLedgerBank bank = new ShardedLedgerBank(new InMemoryExchangeRateService(), 4);
+        List<Long> accounts = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            accounts.add(bank.openConsumerAccount(new Person("Holder", "" + i, i), 1234, 100.0, Currency.USD));
+        }
+
+        List<CompletableFuture<Boolean>> transfers = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch started = new CountDownLatch(4);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Random random = new Random(t);
+            threads.add(Thread.ofPlatform().start(() -> {
+                started.countDown();
+                for (int i = 0; i < 20_000; i++) {
+                    // Adjacent account numbers sit on different shards
+                    int from = random.nextInt(accounts.size());
+                    CompletableFuture<Boolean> transfer = bank.transferAsync(accounts.get(from),
+                            accounts.get((from + 1) % accounts.size()), 0.01 * (1 + random.nextInt(100)));
+                    transfers.add(transfer);
+                    if (transfer.isCompletedExceptionally()) {
+                        return; // closed
+                    }
+                }
+            }));
+        }
+        started.await();
+        Thread.sleep(20);
+        bank.close();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Every admitted transfer finished before the mailboxes closed; later ones were turned away
+        int rejected = 0;
+        for (CompletableFuture<Boolean> transfer : transfers) {
+            assertTrue(transfer.isDone());
+            if (transfer.isCompletedExceptionally()) {
+                ExecutionException error = assertThrows(ExecutionException.class, transfer::get);
+                assertInstanceOf(RejectedExecutionException.class, error.getCause());
+                rejected++;
+            }
+        }
+        assertTrue(rejected > 0 || transfers.size() == 4 * 20_000);
+        assertEquals(0, bank.pendingReservations());
+        long total = 0;
+        for (Long account : accounts) {
+            total += bank.getAccount(account).getBalanceMinorUnits();
+        }
+        assertEquals(8 * 10_000, total);
+
+        Long first = accounts.get(0);
+        assertThrows(RejectedExecutionException.class, () -> bank.transfer(first, accounts.get(1), 1.0));
+        assertThrows(RejectedExecutionException.class, () -> bank.credit(first, 1.0));
+        assertThrows(RejectedExecutionException.class,
+                () -> bank.transferBatch(List.of(new TransferRequest(first, accounts.get(1), 1.0))));
+        bank.close();
+    }
+
+    @Test
+    public void testTransferBatchAcrossShards() {
+        try (ShardedLedgerBank bank = new ShardedLedgerBank(new InMemoryExchangeRateService(), 4)) {
+            Long employer = bank.openCommercialAccount(new Company("Acme", 909), 1111, 100.0, Currency.USD);
+            List<TransferRequest> payroll = new ArrayList<>();
+            for (int i = 0; i < 12; i++) {
+                Long employee = bank.openConsumerAccount(new Person("Employee", "" + i, i), 1234, 0.0, Currency.USD);
+                payroll.add(new TransferRequest(employer, employee, 10.0));
+            }
+            payroll.add(new TransferRequest(null, employer, 1.0));
+
+            List<TransferStatus> results = bank.transferBatch(payroll);
+
+            // List order per source account: the first ten are paid
+            for (int i = 0; i < 12; i++) {
+                assertEquals(i < 10 ? TransferStatus.COMPLETED : TransferStatus.INSUFFICIENT_FUNDS, results.get(i));
+            }
+            assertEquals(TransferStatus.INVALID_REQUEST, results.get(12));
+            assertEquals(0.0, bank.getBalance(employer), 0.0);
+            assertEquals(0, bank.pendingReservations());
+        }
+    }
+
+    @Test
+    public void testChainedBatchTransfersMatchBank() {
+        try (ShardedLedgerBank sharded = new ShardedLedgerBank(new InMemoryExchangeRateService(), 4)) {
+            Bank bank = new Bank(new InMemoryExchangeRateService());
+            List<Long> shardedAccounts = new ArrayList<>();
+            List<Long> bankAccounts = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                // Only the first account starts with money: everything else moves along chains
+                double deposit = i == 0 ? 50.0 : 0.0;
+                shardedAccounts.add(sharded.openConsumerAccount(new Person("Holder", "" + i, i), 1, deposit,
+                        Currency.USD));
+                bankAccounts.add(bank.openConsumerAccount(new Person("Holder", "" + i, i), 1, deposit,
+                        Currency.USD));
+            }
+
+            // A→B→C→...: each debit needs the credit listed just before it
+            List<int[]> pairs = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                pairs.add(new int[] { i, i + 1 });
+            }
+            Random random = new Random(9);
+            for (int i = 0; i < 300; i++) {
+                int from = random.nextInt(6);
+                pairs.add(new int[] { from, (from + 1 + random.nextInt(5)) % 6 });
+            }
+            List<TransferRequest> shardedBatch = new ArrayList<>();
+            List<TransferRequest> bankBatch = new ArrayList<>();
+            for (int i = 0; i < pairs.size(); i++) {
+                int[] pair = pairs.get(i);
+                double amount = i < 5 ? 10.0 : 1.0 + random.nextInt(20);
+                shardedBatch.add(new TransferRequest(shardedAccounts.get(pair[0]), shardedAccounts.get(pair[1]),
+                        amount));
+                bankBatch.add(new TransferRequest(bankAccounts.get(pair[0]), bankAccounts.get(pair[1]), amount));
+            }
+
+            List<TransferStatus> shardedResults = sharded.transferBatch(shardedBatch);
+            assertEquals(bank.transferBatch(bankBatch), shardedResults);
+            assertEquals(List.of(TransferStatus.COMPLETED, TransferStatus.COMPLETED, TransferStatus.COMPLETED,
+                    TransferStatus.COMPLETED, TransferStatus.COMPLETED), shardedResults.subList(0, 5));
+            for (int i = 0; i < 6; i++) {
+                assertEquals(bank.getBalance(bankAccounts.get(i)), sharded.getBalance(shardedAccounts.get(i)), 0.0);
+            }
+            assertEquals(0, sharded.pendingReservations());
+        }
+    }
+}
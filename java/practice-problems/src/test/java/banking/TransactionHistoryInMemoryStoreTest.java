@@ -0,0 +1,116 @@
+package banking;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TransactionHistoryInMemoryStoreTest {
+
+    private static final Instant START = Instant.parse("2025-02-11T00:00:00Z");
+
+    @Test
+    public void testPagesWalkAccountHistoryNewestFirst() {
+        TransactionHistoryInMemoryStore store = new TransactionHistoryInMemoryStore();
+        // Three days of credits for two accounts, plus a transfer between them
+        for (int i = 0; i < 72; i++) {
+            Instant at = START.plus(Duration.ofHours(i));
+            store.save(new TransactionRecordDTO(1L, null, i, TransactionType.CREDIT, at, true));
+            store.save(new TransactionRecordDTO(2L, null, i, TransactionType.CREDIT, at, true));
+        }
+        Instant transferAt = START.plus(Duration.ofHours(71));
+        store.save(new TransactionRecordDTO(2L, 1L, 5.0, TransactionType.TRANSFER, transferAt, true));
+        assertEquals(3, store.partitionCount());
+
+        // Newest first; the transfer shares its hour with a credit and came later
+        List<TransactionRecordDTO> seen = new ArrayList<>();
+        HistoryPage page = store.findByAccount(1L, null, 10);
+        assertEquals(TransactionType.TRANSFER, page.getRecords().get(0).getType());
+        assertEquals(71.0, page.getRecords().get(1).getAmount(), 0.0);
+        int pages = 0;
+        while (true) {
+            pages++;
+            seen.addAll(page.getRecords());
+            if (page.getNext() == null) {
+                break;
+            }
+            page = store.findByAccount(1L, page.getNext(), 10);
+        }
+        assertEquals(8, pages);
+        assertEquals(73, seen.size());
+        for (int i = 1; i < seen.size(); i++) {
+            assertFalse(seen.get(i).getTimestamp().isAfter(seen.get(i - 1).getTimestamp()));
+        }
+        assertEquals(0.0, seen.get(72).getAmount(), 0.0);
+
+        // Chronological views agree with the pages
+        assertEquals(73, store.findByAccount(1L).size());
+        assertEquals(73, store.findByAccount(2L).size());
+        assertEquals(145, store.findAll().size());
+        long[] visited = new long[1];
+        store.forEachRecord(record -> visited[0]++);
+        assertEquals(145, visited[0]);
+        assertTrue(store.findByAccount(3L).isEmpty());
+        assertTrue(store.findByAccount(3L, null, 5).getRecords().isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> store.findByAccount(1L, null, 0));
+    }
+
+    @Test
+    public void testRangeQueriesAcrossPartitions() {
+        TransactionHistoryInMemoryStore store = new TransactionHistoryInMemoryStore(Duration.ofHours(1), null);
+        for (int minute = 0; minute < 180; minute++) {
+            store.save(new TransactionRecordDTO(7L, null, minute, TransactionType.DEBIT,
+                    START.plus(Duration.ofMinutes(minute)), true));
+        }
+        assertEquals(3, store.partitionCount());
+
+        // [00:50, 02:10): spans three hourly partitions, end exclusive
+        List<TransactionRecordDTO> range = store.findByAccountBetween(7L,
+                START.plus(Duration.ofMinutes(50)), START.plus(Duration.ofMinutes(130)));
+        assertEquals(80, range.size());
+        assertEquals(50.0, range.get(0).getAmount(), 0.0);
+        assertEquals(129.0, range.get(79).getAmount(), 0.0);
+
+        assertTrue(store.findByAccountBetween(7L, START, START).isEmpty());
+        assertTrue(store.findByAccountBetween(8L, START, START.plus(Duration.ofHours(3))).isEmpty());
+    }
+
+    @Test
+    public void testRetentionDropsWholePartitions() {
+        TransactionHistoryInMemoryStore store = new TransactionHistoryInMemoryStore(Duration.ofHours(1),
+                Duration.ofHours(2));
+        for (int hour = 0; hour < 10; hour++) {
+            store.save(new TransactionRecordDTO(1L, null, hour, TransactionType.CREDIT,
+                    START.plus(Duration.ofHours(hour)), true));
+        }
+        // Each new hour expired everything more than two hours behind it
+        assertEquals(2, store.partitionCount());
+        assertEquals(List.of(8.0, 9.0), store.findAll().stream().map(TransactionRecordDTO::getAmount).toList());
+        assertEquals(0, store.getExpiredRecords());
+
+        // Late records: kept within the retention, counted and dropped beyond it
+        store.save(new TransactionRecordDTO(1L, null, 8.5, TransactionType.CREDIT,
+                START.plus(Duration.ofMinutes(8 * 60 + 30)), true));
+        store.save(new TransactionRecordDTO(1L, null, 7.5, TransactionType.CREDIT,
+                START.plus(Duration.ofMinutes(7 * 60 + 30)), true));
+        assertEquals(2, store.partitionCount());
+        assertEquals(List.of(8.0, 8.5, 9.0), store.findAll().stream().map(TransactionRecordDTO::getAmount).toList());
+        assertEquals(1, store.getExpiredRecords());
+
+        TransactionHistoryInMemoryStore unbounded = new TransactionHistoryInMemoryStore(Duration.ofHours(1), null);
+        for (int hour = 0; hour < 10; hour++) {
+            unbounded.save(new TransactionRecordDTO(1L, null, hour, TransactionType.CREDIT,
+                    START.plus(Duration.ofHours(hour)), true));
+        }
+        unbounded.removeOlderThan(START.plus(Duration.ofMinutes(270)));
+        assertEquals(6, unbounded.partitionCount());
+        assertEquals(4.0, unbounded.findByAccount(1L).get(0).getAmount(), 0.0);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> new TransactionHistoryInMemoryStore(Duration.ofHours(1), Duration.ofMinutes(30)));
+    }
+}
@@ -0,0 +1,73 @@
+package bankingPractice;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class BankConcurrencyTest {
+
+    @Test
+    public void testConcurrentOperationsConserveMoney() throws Exception {
+        // Bank methods are no longer synchronized: the per-account locks in
+        // InMemoryTransactionService are all that keeps these consistent
+        Bank bank = new Bank();
+        List<Long> accounts = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            accounts.add(bank.openConsumerAccount(new Person("Ada", "Lovelace", i), 1234, 100));
+        }
+        AtomicLong credited = new AtomicLong();
+        AtomicLong debited = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int w = 0; w < 8; w++) {
+            Random random = new Random(w);
+            workers.add(Thread.ofPlatform().start(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 5_000; i++) {
+                    Long from = accounts.get(random.nextInt(accounts.size()));
+                    Long to = accounts.get(random.nextInt(accounts.size()));
+                    bank.transfer(from, to, 3);
+                    if (i % 3 == 0) {
+                        bank.credit(to, 1);
+                        credited.incrementAndGet();
+                    }
+                    if (i % 5 == 0 && bank.debit(from, 2)) {
+                        debited.addAndGet(2);
+                    }
+                }
+            }));
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        double total = 0;
+        for (Long account : accounts) {
+            assertTrue(bank.getBalance(account) >= 0);
+            total += bank.getBalance(account);
+        }
+        assertEquals(800 + credited.get() - debited.get(), total, 1e-6);
+    }
+
+    @Test
+    public void testSelfTransferNeitherCreatesNorLosesMoney() {
+        Bank bank = new Bank();
+        Long account = bank.openConsumerAccount(new Person("Ada", "Lovelace", 1), 1234, 50);
+
+        // Same outcome as the single-row debit+credit in PostgresTransactionService
+        assertTrue(bank.transfer(account, account, 20));
+        assertFalse(bank.transfer(account, account, 80));
+        assertEquals(50, bank.getBalance(account), 0.0);
+    }
+}
@@ -0,0 +1,139 @@
+package bankingPractice;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class BankOperationExecutorTest {
+
+    @Test
+    public void testOperationsRunOnVirtualThreadsAndConserveMoney() {
+        Set<Boolean> ranOnVirtual = ConcurrentHashMap.newKeySet();
+        InMemoryAccountDao accounts = new InMemoryAccountDao();
+        TransactionService transactions = new RecordingTransactionService(
+                new InMemoryTransactionService(accounts), ranOnVirtual, null);
+        Bank bank = new Bank(accounts, transactions);
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            ids.add(bank.openConsumerAccount(new Person("Ada", "Lovelace", i), 1234, 1_000));
+        }
+
+        List<CompletableFuture<?>> operations = new ArrayList<>();
+        List<CompletableFuture<Boolean>> debits = new ArrayList<>();
+        int credits = 0;
+        Random random = new Random(1);
+        try (BankOperationExecutor executor = new BankOperationExecutor(bank)) {
+            for (int i = 0; i < 5_000; i++) {
+                Long from = ids.get(random.nextInt(ids.size()));
+                Long to = ids.get(random.nextInt(ids.size()));
+                operations.add(executor.transfer(from, to, 7));
+                if (i % 3 == 0) {
+                    operations.add(executor.credit(from, 1));
+                    credits++;
+                }
+                if (i % 5 == 0) {
+                    debits.add(executor.debit(to, 1));
+                }
+            }
+        }
+        // close() waited for everything submitted
+        operations.forEach(operation -> assertTrue(operation.isDone()));
+        long debited = debits.stream().filter(CompletableFuture::join).count();
+
+        double total = 0;
+        for (Long id : ids) {
+            total += bank.getBalance(id);
+        }
+        assertEquals(10_000 + credits - debited, total, 1e-6);
+        assertEquals(Set.of(true), ranOnVirtual);
+    }
+
+    @Test
+    public void testCloseWaitsForInFlightOperations() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        InMemoryAccountDao accounts = new InMemoryAccountDao();
+        Bank bank = new Bank(accounts, new RecordingTransactionService(
+                new InMemoryTransactionService(accounts), ConcurrentHashMap.newKeySet(), () -> {
+                    entered.countDown();
+                    release.await(10, TimeUnit.SECONDS);
+                }));
+        Long from = bank.openConsumerAccount(new Person("Ada", "Lovelace", 1), 1234, 100);
+        Long to = bank.openConsumerAccount(new Person("Ada", "Lovelace", 2), 1234, 0);
+
+        BankOperationExecutor executor = new BankOperationExecutor(bank);
+        CompletableFuture<Boolean> transfer = executor.transfer(from, to, 40);
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        Thread.ofPlatform().start(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                // released below regardless
+            }
+            release.countDown();
+        });
+        executor.close();
+
+        assertTrue(transfer.isDone());
+        assertTrue(transfer.join());
+        assertEquals(40, bank.getBalance(to), 0.0);
+        assertThrows(RejectedExecutionException.class, () -> executor.credit(to, 1));
+        assertThrows(IllegalArgumentException.class, () -> new BankOperationExecutor(null));
+    }
+
+    private interface Pause {
+        void await() throws InterruptedException;
+    }
+
+    /**
+     * Records which kind of thread ran each operation; optionally blocks
+     * transfers to hold them in flight.
+     */
+    private static final class RecordingTransactionService implements TransactionService {
+        private final TransactionService delegate;
+        private final Set<Boolean> ranOnVirtual;
+        private final Pause beforeTransfer;
+
+        RecordingTransactionService(TransactionService delegate, Set<Boolean> ranOnVirtual, Pause beforeTransfer) {
+            this.delegate = delegate;
+            this.ranOnVirtual = ranOnVirtual;
+            this.beforeTransfer = beforeTransfer;
+        }
+
+        @Override
+        public void credit(Long accountNumber, double amount) {
+            ranOnVirtual.add(Thread.currentThread().isVirtual());
+            delegate.credit(accountNumber, amount);
+        }
+
+        @Override
+        public boolean debit(Long accountNumber, double amount) {
+            ranOnVirtual.add(Thread.currentThread().isVirtual());
+            return delegate.debit(accountNumber, amount);
+        }
+
+        @Override
+        public boolean transfer(Long sourceAccount, Long destinationAccount, double amount) {
+            ranOnVirtual.add(Thread.currentThread().isVirtual());
+            if (beforeTransfer != null) {
+                try {
+                    beforeTransfer.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return delegate.transfer(sourceAccount, destinationAccount, amount);
+        }
+    }
+}
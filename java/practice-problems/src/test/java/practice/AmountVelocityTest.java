@@ -0,0 +1,60 @@
+package practice;
+
+import org.junit.jupiter.api.Test;
+
+import practice.Solution.VelocityProvider;
+import practice.Solution.VelocityProviderConfig;
+import practice.Solution.VelocityProviderImpl;
+import practice.Solution.WindowAggregate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+public class AmountVelocityTest {
+
+    private static Payment payment(Instant timestamp, String cardHash, long amount) {
+        return new Payment(UUID.randomUUID().toString(), timestamp, cardHash, "m1", amount);
+    }
+
+    @Test
+    public void testAggregateSumsAmountsInWindow() {
+        for (boolean skipList : new boolean[] {false, true}) {
+            VelocityProvider provider = new VelocityProviderImpl(
+                new VelocityProviderConfig.Builder().useSkipListStorage(skipList).build());
+            Instant baseTime = Instant.parse("2025-02-11T10:00:00Z");
+
+            provider.registerPayment(payment(baseTime, "card1", 1_000));
+            // Two payments in the same millisecond must both be kept
+            provider.registerPayment(payment(baseTime.plusSeconds(60), "card1", 2_500));
+            provider.registerPayment(payment(baseTime.plusSeconds(60), "card1", 500));
+            provider.registerPayment(payment(baseTime.plusSeconds(60), "card2", 9_999));
+
+            WindowAggregate aggregate = provider.getCardUsageAggregate(
+                payment(baseTime.plusSeconds(120), "card1", 0), Duration.ofMinutes(5));
+
+            assertEquals(3, aggregate.getCount());
+            assertEquals(4_000, aggregate.getAmountSum());
+            assertEquals(2_500, aggregate.getMaxAmount());
+
+            WindowAggregate recent = provider.getCardUsageAggregate(
+                payment(baseTime.plusSeconds(120), "card1", 0), Duration.ofSeconds(90));
+            assertEquals(2, recent.getCount());
+            assertEquals(3_000, recent.getAmountSum());
+        }
+    }
+
+    @Test
+    public void testAmountRuleBlocksWhenProjectedSpendExceedsLimit() {
+        VelocityProvider provider = VelocityProvider.getProvider();
+        Instant now = Instant.parse("2025-02-11T10:00:00Z");
+        provider.registerPayment(payment(now.minus(Duration.ofHours(2)), "card1", 400_000));
+
+        AmountVelocityFraudRule rule = new AmountVelocityFraudRule(provider, Duration.ofHours(24), 500_000);
+
+        assertTrue(rule.checkRule(payment(now, "card1", 100_000)).isAllowed());
+        assertFalse(rule.checkRule(payment(now, "card1", 100_001)).isAllowed());
+    }
+}
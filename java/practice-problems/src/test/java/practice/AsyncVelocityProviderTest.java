@@ -0,0 +1,91 @@
+package practice;
+
+import org.junit.jupiter.api.Test;
+
+import practice.Solution.VelocityProvider;
+import practice.Solution.VelocityProviderImpl;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class AsyncVelocityProviderTest {
+
+    @Test
+    public void testAsyncRegistrationIsVisibleToAsyncLookups() {
+        VelocityProviderImpl provider = new VelocityProviderImpl();
+        Instant now = Instant.parse("2025-02-11T10:00:00Z");
+
+        CompletableFuture.allOf(
+            provider.registerPaymentAsync(new Payment("pay-1", now, "card1", "m1", 1_000)),
+            provider.registerPaymentAsync(new Payment("pay-1", now, "card1", "m1", 1_000)),
+            provider.registerPaymentAsync(new Payment("pay-2", now.plusSeconds(1), "card1", "m1", 2_500))
+        ).join();
+
+        Payment query = new Payment("query", now.plusSeconds(10), "card1");
+        assertEquals(2, provider.getCardUsageCountAsync(query, Duration.ofMinutes(1)).join());
+        assertEquals(3_500, provider.getCardUsageAggregateAsync(query, Duration.ofMinutes(1)).join().getAmountSum());
+        assertEquals(2, provider.getCardUsageCount(query, Duration.ofMinutes(1)));
+    }
+
+    @Test
+    public void testInvalidInputFailsAtCallSite() {
+        VelocityProviderImpl provider = new VelocityProviderImpl();
+        Payment payment = new Payment("pay-1", Instant.now(), "card1");
+
+        assertThrows(IllegalArgumentException.class, () -> provider.registerPaymentAsync(null));
+        assertThrows(IllegalArgumentException.class,
+            () -> provider.getCardUsageCountAsync(payment, Duration.ZERO));
+    }
+
+    @Test
+    public void testOffloadRunsBlockingProviderOnExecutor() {
+        ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "velocity-io"));
+        AtomicReference<String> registeredOn = new AtomicReference<>();
+        VelocityProvider blocking = new VelocityProviderImpl() {
+            @Override
+            public void registerPayment(Payment payment) {
+                registeredOn.set(Thread.currentThread().getName());
+                super.registerPayment(payment);
+            }
+        };
+        try {
+            AsyncVelocityProvider async = AsyncVelocityProvider.offload(blocking, executor);
+            Instant now = Instant.parse("2025-02-11T10:00:00Z");
+
+            async.registerPaymentAsync(new Payment("pay-1", now, "card1")).join();
+
+            assertEquals("velocity-io", registeredOn.get());
+            assertEquals(1, async.getCardUsageCountAsync(
+                new Payment("query", now.plusSeconds(1), "card1"), Duration.ofMinutes(1)).join());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testVirtualThreadOffloadRunsEachCallOnAVirtualThread() {
+        AtomicReference<Thread> registeredOn = new AtomicReference<>();
+        VelocityProvider blocking = new VelocityProviderImpl() {
+            @Override
+            public void registerPayment(Payment payment) {
+                registeredOn.set(Thread.currentThread());
+                super.registerPayment(payment);
+            }
+        };
+        AsyncVelocityProvider async = AsyncVelocityProvider.onVirtualThreads(blocking);
+        Instant now = Instant.parse("2025-02-11T10:00:00Z");
+
+        async.registerPaymentAsync(new Payment("pay-1", now, "card1")).join();
+
+        assertTrue(registeredOn.get().isVirtual());
+        assertTrue(registeredOn.get().getName().startsWith("velocity-"));
+        assertEquals(1, async.getCardUsageCountAsync(
+            new Payment("query", now.plusSeconds(1), "card1"), Duration.ofMinutes(1)).join());
+    }
+}
@@ -0,0 +1,117 @@
+package practice;
+
+import org.junit.jupiter.api.Test;
+
+import practice.Solution.TreeMapTimestampStorage;
+import practice.Solution.VelocityProviderConfig;
+import practice.Solution.VelocityProviderImpl;
+import practice.Solution.WindowAggregate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Random;
+
+public class ColdHistoryCompressionTest {
+
+    private static final Instant NOW = Instant.parse("2025-02-11T10:00:00Z");
+
+    @Test
+    public void testCompressedStorageAnswersLikePlainTreeMap() {
+        TreeMapTimestampStorage plain = new TreeMapTimestampStorage();
+        TreeMapTimestampStorage compressed = new TreeMapTimestampStorage(Duration.ofHours(1));
+        Random random = new Random(3);
+
+        for (int i = 0; i < 20_000; i++) {
+            String card = "card" + random.nextInt(25);
+            // Mostly in order, some late arrivals hours back
+            Instant at = NOW.minus(Duration.ofDays(7)).plusSeconds(i * 30L)
+                    .minusSeconds(random.nextInt(10) == 0 ? random.nextInt(6 * 3600) : 0);
+            long amount = random.nextInt(50_000);
+            plain.addTimestamp(card, at, amount);
+            compressed.addTimestamp(card, at, amount);
+            if (i % 2_000 == 0) {
+                compressed.removeOlderThan(NOW.minus(Duration.ofDays(8)));
+            }
+        }
+        compressed.removeOlderThan(NOW.minus(Duration.ofDays(8)));
+        assertTrue(compressed.compressedBytes() > 0, "nothing was compressed");
+
+        Instant end = NOW.minus(Duration.ofDays(7)).plusSeconds(20_000 * 30L);
+        for (int card = 0; card < 25; card++) {
+            for (Duration window : new Duration[] { Duration.ofMinutes(10), Duration.ofHours(2),
+                    Duration.ofHours(37), Duration.ofDays(7) }) {
+                for (int shift = 0; shift < 5; shift++) {
+                    Instant queryTime = end.minus(Duration.ofHours(shift * 17L));
+                    WindowAggregate expected = plain.aggregateInWindow("card" + card, queryTime, window);
+                    WindowAggregate actual = compressed.aggregateInWindow("card" + card, queryTime, window);
+                    assertEquals(expected.getCount(), actual.getCount());
+                    assertEquals(expected.getAmountSum(), actual.getAmountSum());
+                    assertEquals(expected.getMaxAmount(), actual.getMaxAmount());
+                    assertEquals(expected.getCount(), compressed.countInWindow("card" + card, queryTime, window));
+                }
+            }
+        }
+
+        // Cleanup trims blocks as well as the TreeMap
+        Instant cutoff = NOW.minus(Duration.ofDays(4));
+        plain.removeOlderThan(cutoff);
+        compressed.removeOlderThan(cutoff);
+        assertEquals(plain.getOldestTimestamp(), compressed.getOldestTimestamp());
+        for (int card = 0; card < 25; card++) {
+            assertEquals(plain.countInWindow("card" + card, end, Duration.ofDays(30)),
+                    compressed.countInWindow("card" + card, end, Duration.ofDays(30)));
+        }
+    }
+
+    @Test
+    public void testColdBucketsTakeAFewBytes() {
+        TreeMapTimestampStorage compressed = new TreeMapTimestampStorage(Duration.ofMinutes(5));
+        Random random = new Random(11);
+        int buckets = 10_000;
+        for (int i = 0; i < buckets; i++) {
+            // ~1 payment per 10 minutes per card, with jitter
+            compressed.addTimestamp("card" + i % 10, NOW.plusSeconds(i * 60L + random.nextInt(30)),
+                    100 + random.nextInt(20_000));
+        }
+        compressed.removeOlderThan(NOW);
+
+        // vs ~90 bytes per TreeMap entry
+        long bytes = compressed.compressedBytes();
+        assertTrue(bytes < buckets * 8L, "cold blocks take " + bytes + " bytes");
+        assertEquals(buckets, compressed.countInWindow("card0", NOW.plus(Duration.ofDays(30)), Duration.ofDays(30)) * 10);
+    }
+
+    @Test
+    public void testFutureTimestampDoesNotTurnHistoryCold() {
+        TreeMapTimestampStorage compressed = new TreeMapTimestampStorage(Duration.ofHours(1));
+        Instant now = Instant.now();
+        for (int i = 0; i < 10; i++) {
+            compressed.addTimestamp("card1", now.minus(Duration.ofMinutes(i)), 100);
+        }
+        // A client clock ten days ahead counts as "now" for the cold boundary
+        compressed.addTimestamp("card2", now.plus(Duration.ofDays(10)), 100);
+        compressed.removeOlderThan(now.minus(Duration.ofDays(1)));
+        assertEquals(0, compressed.compressedBytes());
+        assertEquals(10, compressed.countInWindow("card1", now, Duration.ofHours(1)));
+    }
+
+    @Test
+    public void testProviderConfig() {
+        assertThrows(IllegalArgumentException.class, () -> new VelocityProviderConfig.Builder()
+            .useSkipListStorage(true).compressColdHistory(Duration.ofHours(1)).build());
+        assertThrows(IllegalArgumentException.class,
+            () -> new VelocityProviderConfig.Builder().compressColdHistory(Duration.ZERO));
+
+        VelocityProviderImpl provider = new VelocityProviderImpl(new VelocityProviderConfig.Builder()
+            .compressColdHistory(Duration.ofMinutes(30)).cleanupProbability(1.0).build());
+        for (int i = 0; i < 100; i++) {
+            provider.registerPayment(new Payment("pay-" + i, NOW.plus(Duration.ofMinutes(i)), "card1", "m1", 10));
+        }
+        Payment query = new Payment("query", NOW.plus(Duration.ofMinutes(100)), "card1");
+        assertEquals(100, provider.getCardUsageCount(query, Duration.ofDays(1)));
+        assertEquals(1_000, provider.getCardUsageAggregate(query, Duration.ofDays(1)).getAmountSum());
+        assertEquals(10, provider.getCardUsageCount(query, Duration.ofMinutes(10)));
+    }
+}
@@ -0,0 +1,85 @@
+package practice;
+
+import org.junit.jupiter.api.Test;
+
+import practice.Solution.VelocityProvider;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+public class DistinctCountVelocityTest {
+
+    @Test
+    public void testDistinctMerchantsPerCardWithinWindow() {
+        VelocityProvider provider = VelocityProvider.getProvider();
+        Instant baseTime = Instant.parse("2025-02-11T10:00:00Z");
+        String cardHash = "cardTester";
+
+        // Same merchant twice, then three new merchants
+        String[] merchants = {"m1", "m1", "m2", "m3", "m4"};
+        for (int i = 0; i < merchants.length; i++) {
+            provider.registerPayment(new Payment(
+                UUID.randomUUID().toString(),
+                baseTime.plus(Duration.ofMinutes(i * 5)),
+                cardHash,
+                merchants[i]
+            ));
+        }
+
+        Payment queryPayment = new Payment(
+            UUID.randomUUID().toString(),
+            baseTime.plus(Duration.ofMinutes(30)),
+            cardHash,
+            "m5"
+        );
+
+        assertEquals(4, provider.getDistinctMerchantCount(queryPayment, Duration.ofHours(1)));
+        // Only the payments at 20 minutes (m4) and later fall in a 10 minute window
+        assertEquals(1, provider.getDistinctMerchantCount(queryPayment, Duration.ofMinutes(10)));
+    }
+
+    @Test
+    public void testDistinctCardsPerMerchant() {
+        VelocityProvider provider = VelocityProvider.getProvider();
+        Instant now = Instant.parse("2025-02-11T10:00:00Z");
+
+        for (int i = 0; i < 10; i++) {
+            provider.registerPayment(new Payment(
+                UUID.randomUUID().toString(),
+                now.plusSeconds(i),
+                "card" + (i % 4),
+                "merchantX"
+            ));
+        }
+
+        Payment queryPayment = new Payment(UUID.randomUUID().toString(), now.plusSeconds(30), "card0", "merchantX");
+        assertEquals(4, provider.getDistinctCardCount(queryPayment, Duration.ofMinutes(5)));
+    }
+
+    @Test
+    public void testDistinctCardCountRequiresMerchant() {
+        VelocityProvider provider = VelocityProvider.getProvider();
+        Payment payment = new Payment(UUID.randomUUID().toString(), Instant.now(), "card1");
+
+        assertThrows(IllegalArgumentException.class,
+            () -> provider.getDistinctCardCount(payment, Duration.ofMinutes(5)));
+    }
+
+    @Test
+    public void testHyperLogLogEstimateWithinErrorBound() {
+        HyperLogLog left = new HyperLogLog(11);
+        HyperLogLog right = new HyperLogLog(11);
+        for (int i = 0; i < 20_000; i++) {
+            left.add("merchant-" + i);
+            right.add("merchant-" + (i + 10_000));
+        }
+        left.merge(right);
+
+        // 30,000 distinct values; allow ~3 standard errors
+        long estimate = left.estimate();
+        assertTrue(Math.abs(estimate - 30_000) < 30_000 * 0.07, "Estimate was " + estimate);
+    }
+}
@@ -0,0 +1,295 @@
+package practice;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Just enough of a Redis server (RESP2, sorted-set commands the velocity
+ * storages use) to run them in tests without a real instance. Several can
+ * run side by side as a stand-in for a sharded deployment.
+ *
+ * Supported: ZADD, ZCOUNT, ZRANGE [WITHSCORES], ZRANGEBYSCORE,
+ * ZREMRANGEBYSCORE, SCAN (MATCH prefix*, whole keyspace in one page),
+ * PEXPIRE/EXPIRE (recorded, never fired; a key recreated by ZADD starts
+ * without one, as in Redis), PING. Anything else answers +OK so
+ * client handshakes succeed.
+ */
+final class FakeRedisServer implements AutoCloseable {
+
+    private final ServerSocket serverSocket;
+    private final Map<String, Map<String, Double>> sortedSets = new HashMap<>();
+    private final Set<String> expiring = new HashSet<>();
+    private final Set<Socket> clients = ConcurrentHashMap.newKeySet();
+    private volatile int commandCount;
+    private final AtomicInteger replyFlushes = new AtomicInteger();
+
+    FakeRedisServer() throws IOException {
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread.ofVirtual().start(this::acceptLoop);
+    }
+
+    int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    synchronized Set<String> keys() {
+        return Set.copyOf(sortedSets.keySet());
+    }
+
+    /**
+     * @return Keys that exist with no TTL set since they were created.
+     */
+    synchronized Set<String> keysWithoutTtl() {
+        Set<String> keys = new HashSet<>(sortedSets.keySet());
+        keys.removeAll(expiring);
+        return keys;
+    }
+
+    int commandCount() {
+        return commandCount;
+    }
+
+    /**
+     * Times replies were flushed back to a client: one per round trip, so a
+     * pipelined client sees far fewer than {@link #commandCount()}.
+     */
+    int replyFlushes() {
+        return replyFlushes.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Socket client : clients) {
+            client.close();
+        }
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket client = serverSocket.accept();
+                clients.add(client);
+                Thread.ofVirtual().start(() -> serve(client));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket client) {
+        try (client;
+             InputStream in = new BufferedInputStream(client.getInputStream());
+             OutputStream out = new BufferedOutputStream(client.getOutputStream())) {
+            while (true) {
+                List<String> command = readCommand(in);
+                if (command == null) {
+                    return;
+                }
+                execute(command, out);
+                // Flush only once the client has nothing more queued, like a
+                // real server answering a pipeline
+                if (in.available() == 0) {
+                    out.flush();
+                    replyFlushes.incrementAndGet();
+                }
+            }
+        } catch (IOException e) {
+            // client went away
+        } finally {
+            clients.remove(client);
+        }
+    }
+
+    private synchronized void execute(List<String> command, OutputStream out) throws IOException {
+        commandCount++;
+        String name = command.get(0).toUpperCase();
+        switch (name) {
+            case "PING":
+                writeSimple(out, "PONG");
+                break;
+            case "ZADD": {
+                if (!sortedSets.containsKey(command.get(1))) {
+                    expiring.remove(command.get(1));
+                }
+                Map<String, Double> set = sortedSets.computeIfAbsent(command.get(1), k -> new HashMap<>());
+                boolean added = set.put(command.get(3), Double.parseDouble(command.get(2))) == null;
+                writeInteger(out, added ? 1 : 0);
+                break;
+            }
+            case "ZCOUNT":
+                writeInteger(out, inRange(command).size());
+                break;
+            case "ZRANGE": {
+                List<String> members = sortedByScore(command.get(1));
+                int size = members.size();
+                int start = rangeIndex(Integer.parseInt(command.get(2)), size);
+                int stop = Math.min(rangeIndex(Integer.parseInt(command.get(3)), size), size - 1);
+                boolean withScores = command.size() > 4 && command.get(4).equalsIgnoreCase("WITHSCORES");
+                List<String> reply = new ArrayList<>();
+                for (int i = start; i <= stop; i++) {
+                    reply.add(members.get(i));
+                    if (withScores) {
+                        reply.add(Double.toString(sortedSets.get(command.get(1)).get(members.get(i))));
+                    }
+                }
+                writeArray(out, reply);
+                break;
+            }
+            case "SCAN": {
+                String prefix = "";
+                for (int i = 2; i + 1 < command.size(); i += 2) {
+                    if (command.get(i).equalsIgnoreCase("MATCH")) {
+                        prefix = command.get(i + 1).replace("*", "");
+                    }
+                }
+                List<String> keys = new ArrayList<>();
+                for (String key : sortedSets.keySet()) {
+                    if (key.startsWith(prefix)) {
+                        keys.add(key);
+                    }
+                }
+                out.write("*2\r\n".getBytes(StandardCharsets.UTF_8));
+                writeBulk(out, "0");
+                writeArray(out, keys);
+                break;
+            }
+            case "ZRANGEBYSCORE": {
+                List<String> members = inRange(command);
+                members.sort((a, b) -> Double.compare(
+                        sortedSets.get(command.get(1)).get(a), sortedSets.get(command.get(1)).get(b)));
+                writeArray(out, members);
+                break;
+            }
+            case "ZREMRANGEBYSCORE": {
+                List<String> members = inRange(command);
+                Map<String, Double> set = sortedSets.get(command.get(1));
+                members.forEach(set::remove);
+                if (set != null && set.isEmpty()) {
+                    sortedSets.remove(command.get(1));
+                }
+                writeInteger(out, members.size());
+                break;
+            }
+            case "EXPIRE":
+            case "PEXPIRE": {
+                boolean exists = sortedSets.containsKey(command.get(1));
+                if (exists) {
+                    expiring.add(command.get(1));
+                }
+                writeInteger(out, exists ? 1 : 0);
+                break;
+            }
+            default:
+                writeSimple(out, "OK");
+        }
+    }
+
+    private List<String> sortedByScore(String key) {
+        Map<String, Double> set = sortedSets.getOrDefault(key, Map.of());
+        List<String> members = new ArrayList<>(set.keySet());
+        members.sort((a, b) -> Double.compare(set.get(a), set.get(b)));
+        return members;
+    }
+
+    private static int rangeIndex(int index, int size) {
+        return index < 0 ? Math.max(size + index, 0) : index;
+    }
+
+    private List<String> inRange(List<String> command) {
+        Map<String, Double> set = sortedSets.get(command.get(1));
+        List<String> members = new ArrayList<>();
+        if (set == null) {
+            return members;
+        }
+        double min = parseScore(command.get(2));
+        double max = parseScore(command.get(3));
+        set.forEach((member, score) -> {
+            if (score >= min && score <= max) {
+                members.add(member);
+            }
+        });
+        return members;
+    }
+
+    private static double parseScore(String score) {
+        switch (score) {
+            case "-inf":
+                return Double.NEGATIVE_INFINITY;
+            case "+inf":
+            case "inf":
+                return Double.POSITIVE_INFINITY;
+            default:
+                return Double.parseDouble(score);
+        }
+    }
+
+    private static List<String> readCommand(InputStream in) throws IOException {
+        String header = readLine(in);
+        if (header == null) {
+            return null;
+        }
+        if (header.charAt(0) != '*') {
+            throw new IOException("Inline commands are not supported: " + header);
+        }
+        int count = Integer.parseInt(header.substring(1));
+        List<String> args = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int length = Integer.parseInt(readLine(in).substring(1));
+            byte[] bytes = in.readNBytes(length);
+            in.readNBytes(2); // CRLF
+            args.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        return args;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\r') {
+                in.read(); // '\n'
+                return line.toString();
+            }
+            line.append((char) c);
+        }
+        return null;
+    }
+
+    private static void writeSimple(OutputStream out, String value) throws IOException {
+        out.write(("+" + value + "\r\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeInteger(OutputStream out, long value) throws IOException {
+        out.write((":" + value + "\r\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeArray(OutputStream out, List<String> values) throws IOException {
+        out.write(("*" + values.size() + "\r\n").getBytes(StandardCharsets.UTF_8));
+        for (String value : values) {
+            writeBulk(out, value);
+        }
+    }
+
+    private static void writeBulk(OutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.write(("$" + bytes.length + "\r\n").getBytes(StandardCharsets.UTF_8));
+        out.write(bytes);
+        out.write("\r\n".getBytes(StandardCharsets.UTF_8));
+    }
+}
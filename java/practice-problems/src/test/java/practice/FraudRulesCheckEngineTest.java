@@ -0,0 +1,316 @@
+package practice;
+
+import org.junit.jupiter.api.Test;
+
+import practice.Solution.VelocityProvider;
+import practice.Solution.WindowAggregate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class FraudRulesCheckEngineTest {
+
+    private static final Instant NOW = Instant.parse("2025-02-11T10:00:00Z");
+
+    @Test
+    public void testRulesSharingALookupHitTheStoreOnce() {
+        CountingProvider provider = new CountingProvider(false);
+        for (int i = 0; i < 3; i++) {
+            provider.registerPayment(new Payment("pay-" + i, NOW.minusSeconds(60 * i), "card1", "m1", 100));
+        }
+        AtomicReference<RuleEvaluationContext> seen = new AtomicReference<>();
+        FraudRulesCheckEngine engine = FraudRulesCheckEngine.builder()
+                .addRule(new AmountVelocityFraudRule(provider, Duration.ofHours(1), 10_000))
+                .addRule(new VelocityBasedFraudRule(provider))
+                .addRule(new MerchantRule() {
+                    @Override
+                    public RuleCheckResult checkRule(Payment payment) {
+                        throw new AssertionError("engine must pass the context");
+                    }
+
+                    @Override
+                    public RuleCheckResult checkRule(Payment payment, RuleEvaluationContext context) {
+                        seen.set(context);
+                        // A different window is a different lookup
+                        context.getCardUsageCount(provider, payment, Duration.ofMinutes(5));
+                        return allow();
+                    }
+                })
+                .build();
+
+        assertTrue(engine.checkRules(new Payment("q", NOW, "card1", "m1", 100)).isAllowed());
+        assertEquals(2, provider.aggregateCalls.get());
+        assertEquals(2, seen.get().lookupCount());
+
+        // Every evaluation gets a fresh context: nothing is cached across payments
+        RuleEvaluationContext first = seen.get();
+        assertTrue(engine.checkRules(new Payment("q2", NOW, "card1", "m1", 100)).isAllowed());
+        assertEquals(4, provider.aggregateCalls.get());
+        assertNotSame(first, seen.get());
+    }
+
+    @Test
+    public void testLocalRulesRunFirstAndStopAtTheFirstDeny() {
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        FraudRulesCheckEngine engine = FraudRulesCheckEngine.builder()
+                .addRule(new RecordingRule("remote", true, MerchantRule.RuleCost.REMOTE, order))
+                .addRule(new RecordingRule("local-1", true, MerchantRule.RuleCost.LOCAL, order))
+                .addMerchantRule("m1", new RecordingRule("m1-local", true, MerchantRule.RuleCost.LOCAL, order))
+                .addRule(new RecordingRule("local-2", true, MerchantRule.RuleCost.LOCAL, order))
+                .addMerchantRule("m2", new RecordingRule("m2-deny", false, MerchantRule.RuleCost.LOCAL, order))
+                .build();
+
+        // Registration order is kept within a cost class; merchant rules follow the global ones
+        assertTrue(engine.checkRules(new Payment("a", NOW, "card1", "m1")).isAllowed());
+        assertEquals(List.of("local-1", "local-2", "m1-local", "remote"), order);
+
+        // A local deny never reaches the remote rule
+        order.clear();
+        RuleCheckResult denied = engine.checkRules(new Payment("b", NOW, "card1", "m2"));
+        assertFalse(denied.isAllowed());
+        assertEquals("m2-deny", denied.getReason());
+        assertEquals(List.of("local-1", "local-2", "m2-deny"), order);
+
+        // Unknown merchants and payments without one get the global rules only
+        order.clear();
+        assertTrue(engine.checkRules(new Payment("c", NOW, "card1")).isAllowed());
+        assertEquals(List.of("local-1", "local-2", "remote"), order);
+
+        // Without an executor, remote rules also stop at the first deny
+        order.clear();
+        FraudRulesCheckEngine sequential = FraudRulesCheckEngine.builder()
+                .addRule(new RecordingRule("remote-deny", false, MerchantRule.RuleCost.REMOTE, order))
+                .addRule(new RecordingRule("remote-after", true, MerchantRule.RuleCost.REMOTE, order))
+                .build();
+        assertEquals("remote-deny", sequential.checkRules(new Payment("d", NOW, "card1")).getReason());
+        assertEquals(List.of("remote-deny"), order);
+    }
+
+    @Test
+    public void testRemoteRulesRunConcurrentlyWithAnExecutor() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            // Both rules must be inside checkRule at once to get past the barrier
+            CyclicBarrier bothRunning = new CyclicBarrier(2);
+            MerchantRule meetsOther = new RemoteRule(payment -> {
+                bothRunning.await(5, TimeUnit.SECONDS);
+                return allow();
+            });
+            FraudRulesCheckEngine engine = FraudRulesCheckEngine.builder()
+                    .addRule(meetsOther)
+                    .addRule(meetsOther)
+                    .parallelExecutor(executor)
+                    .build();
+            assertTrue(engine.checkRules(new Payment("a", NOW, "card1")).isAllowed());
+
+            // The first deny wins without waiting for slower rules
+            CountDownLatch release = new CountDownLatch(1);
+            FraudRulesCheckEngine denying = FraudRulesCheckEngine.builder()
+                    .addRule(new RemoteRule(payment -> {
+                        release.await(10, TimeUnit.SECONDS);
+                        return allow();
+                    }))
+                    .addRule(new RemoteRule(payment -> deny("fast")))
+                    .parallelExecutor(executor)
+                    .build();
+            long start = System.nanoTime();
+            assertEquals("fast", denying.checkRules(new Payment("b", NOW, "card1")).getReason());
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+            release.countDown();
+
+            // A failing rule fails the check with its own exception
+            FraudRulesCheckEngine failing = FraudRulesCheckEngine.builder()
+                    .addRule(new RemoteRule(payment -> allow()))
+                    .addRule(new RemoteRule(payment -> {
+                        throw new IllegalStateException("store down");
+                    }))
+                    .parallelExecutor(executor)
+                    .build();
+            IllegalStateException error = assertThrows(IllegalStateException.class,
+                    () -> failing.checkRules(new Payment("c", NOW, "card1")));
+            assertEquals("store down", error.getMessage());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testParallelRulesShareOneInFlightLookup() {
+        CountingProvider provider = new CountingProvider(true);
+        for (int i = 0; i < 6; i++) {
+            provider.registerPayment(new Payment("pay-" + i, NOW.minusSeconds(60 * i), "card1", "m1", 100));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            FraudRulesCheckEngine engine = FraudRulesCheckEngine.builder()
+                    .addRule(new AmountVelocityFraudRule(provider, Duration.ofHours(1), 10_000))
+                    .addRule(new VelocityBasedFraudRule(provider))
+                    .parallelExecutor(executor)
+                    .build();
+
+            // Six payments in the hour: the count rule denies
+            assertFalse(engine.checkRules(new Payment("q", NOW, "card1", "m1", 100)).isAllowed());
+            assertEquals(1, provider.aggregateCalls.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testVirtualThreadModeRunsChecksOffTheCallerThread() {
+        Set<Boolean> ranOnVirtual = ConcurrentHashMap.newKeySet();
+        MerchantRule slowRemote = new RemoteRule(payment -> {
+            ranOnVirtual.add(Thread.currentThread().isVirtual());
+            Thread.sleep(20);
+            return allow();
+        });
+        FraudRulesCheckEngine engine = FraudRulesCheckEngine.builder()
+                .addRule(slowRemote)
+                .addRule(slowRemote)
+                .virtualThreads()
+                .build();
+
+        // Far more blocked checks than carrier threads: they park, not queue
+        List<CompletableFuture<RuleCheckResult>> checks = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < 500; i++) {
+            checks.add(engine.checkRulesAsync(new Payment("pay-" + i, NOW, "card1")));
+        }
+        checks.forEach(check -> assertTrue(check.join().isAllowed()));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        assertEquals(Set.of(true), ranOnVirtual);
+
+        // Without it, checkRulesAsync runs inline and fails through the future
+        FraudRulesCheckEngine inline = FraudRulesCheckEngine.builder().build();
+        assertTrue(inline.checkRulesAsync(new Payment("a", NOW, "card1")).isDone());
+        assertTrue(inline.checkRulesAsync(null).isCompletedExceptionally());
+    }
+
+    private static RuleCheckResult allow() {
+        return RuleCheckResult.builder().allowed(true).build();
+    }
+
+    private static RuleCheckResult deny(String reason) {
+        return RuleCheckResult.builder().allowed(false).reason(reason).build();
+    }
+
+    private static final class RecordingRule implements MerchantRule {
+        private final String name;
+        private final boolean allowed;
+        private final RuleCost cost;
+        private final List<String> order;
+
+        RecordingRule(String name, boolean allowed, RuleCost cost, List<String> order) {
+            this.name = name;
+            this.allowed = allowed;
+            this.cost = cost;
+            this.order = order;
+        }
+
+        @Override
+        public RuleCheckResult checkRule(Payment payment) {
+            order.add(name);
+            return allowed ? allow() : deny(name);
+        }
+
+        @Override
+        public RuleCost getCost() {
+            return cost;
+        }
+    }
+
+    private interface Check {
+        RuleCheckResult apply(Payment payment) throws Exception;
+    }
+
+    private static final class RemoteRule implements MerchantRule {
+        private final Check check;
+
+        RemoteRule(Check check) {
+            this.check = check;
+        }
+
+        @Override
+        public RuleCheckResult checkRule(Payment payment) {
+            try {
+                return check.apply(payment);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public RuleCost getCost() {
+            return RuleCost.REMOTE;
+        }
+    }
+
+    /**
+     * In-memory provider that counts aggregate lookups and can pose as remote
+     * (with a little latency, so parallel rules overlap).
+     */
+    private static final class CountingProvider implements VelocityProvider {
+        private final VelocityProvider delegate = VelocityProvider.getProvider();
+        private final boolean remote;
+        final AtomicInteger aggregateCalls = new AtomicInteger();
+
+        CountingProvider(boolean remote) {
+            this.remote = remote;
+        }
+
+        @Override
+        public int getCardUsageCount(Payment payment, Duration duration) {
+            return getCardUsageAggregate(payment, duration).getCount();
+        }
+
+        @Override
+        public WindowAggregate getCardUsageAggregate(Payment payment, Duration duration) {
+            aggregateCalls.incrementAndGet();
+            if (remote) {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return delegate.getCardUsageAggregate(payment, duration);
+        }
+
+        @Override
+        public void registerPayment(Payment payment) {
+            delegate.registerPayment(payment);
+        }
+
+        @Override
+        public int getDistinctMerchantCount(Payment payment, Duration duration) {
+            return delegate.getDistinctMerchantCount(payment, duration);
+        }
+
+        @Override
+        public int getDistinctCardCount(Payment payment, Duration duration) {
+            return delegate.getDistinctCardCount(payment, duration);
+        }
+
+        @Override
+        public boolean isRemote() {
+            return remote;
+        }
+    }
+}
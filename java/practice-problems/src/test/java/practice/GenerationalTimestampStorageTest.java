@@ -0,0 +1,123 @@
+package practice;
+
+import org.junit.jupiter.api.Test;
+
+import practice.Solution.TreeMapTimestampStorage;
+import practice.Solution.VelocityProviderConfig;
+import practice.Solution.VelocityProviderImpl;
+import practice.Solution.WindowAggregate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Random;
+
+public class GenerationalTimestampStorageTest {
+
+    private static final Instant START = Instant.parse("2025-02-11T10:00:00Z");
+
+    @Test
+    public void testSealedAndHotAnswerLikeTreeMap() {
+        TreeMapTimestampStorage reference = new TreeMapTimestampStorage();
+        try (GenerationalTimestampStorage storage = new GenerationalTimestampStorage(Duration.ofMinutes(5))) {
+            Random random = new Random(5);
+
+            Instant last = START;
+            for (int i = 0; i < 30_000; i++) {
+                String card = "card" + random.nextInt(10);
+                // Mostly advancing, every 20th payment arrives up to an hour late
+                last = START.plusSeconds(i * 2L);
+                Instant at = i % 20 == 0 ? last.minusSeconds(random.nextInt(3_600)) : last;
+                long amount = random.nextInt(100_000);
+                reference.addTimestamp(card, at, amount);
+                storage.addTimestamp(card, at, amount);
+                if (i % 500 == 0) {
+                    storage.seal();
+                }
+            }
+            storage.seal();
+
+            for (int card = 0; card < 10; card++) {
+                assertTrue(storage.segmentCount("card" + card) <= GenerationalTimestampStorage.MAX_SEGMENTS + 1);
+                for (Duration window : new Duration[] { Duration.ofMinutes(1), Duration.ofMinutes(10),
+                        Duration.ofHours(3), Duration.ofDays(2) }) {
+                    for (int back = 0; back < 4; back++) {
+                        Instant queryTime = last.minus(Duration.ofMinutes(back * 97L));
+                        WindowAggregate expected = reference.aggregateInWindow("card" + card, queryTime, window);
+                        WindowAggregate actual = storage.aggregateInWindow("card" + card, queryTime, window);
+                        assertEquals(expected.getCount(), actual.getCount());
+                        assertEquals(expected.getAmountSum(), actual.getAmountSum());
+                        assertEquals(expected.getMaxAmount(), actual.getMaxAmount());
+                        assertEquals(expected.getCount(), storage.countInWindow("card" + card, queryTime, window));
+                    }
+                }
+            }
+    }
+    }
+
+    @Test
+    public void testCleanupTrimsSegmentsAndDropsEmptyCards() {
+        try (GenerationalTimestampStorage storage = new GenerationalTimestampStorage(Duration.ofMinutes(1))) {
+            storage.addTimestamp("old", START, 1);
+            for (int i = 0; i < 60; i++) {
+                storage.addTimestamp("busy", START.plus(Duration.ofMinutes(i)), 10);
+            }
+            storage.seal();
+            assertEquals(1, storage.segmentCount("old"));
+
+            storage.removeOlderThan(START.plus(Duration.ofMinutes(30)));
+            assertEquals(0, storage.segmentCount("old"));
+            assertEquals(0, storage.countInWindow("old", START.plusSeconds(1), Duration.ofHours(1)));
+            assertEquals(30, storage.countInWindow("busy", START.plus(Duration.ofHours(1)), Duration.ofHours(2)));
+            assertEquals(START.plus(Duration.ofMinutes(30)), storage.getOldestTimestamp());
+
+            // A retired card comes back on its next payment
+            storage.addTimestamp("old", START.plus(Duration.ofHours(2)), 5);
+            assertEquals(1, storage.countInWindow("old", START.plus(Duration.ofHours(2)), Duration.ofMinutes(1)));
+    }
+    }
+
+    @Test
+    public void testBackgroundSealingWithProviderConfig() throws Exception {
+        assertThrows(IllegalArgumentException.class, () -> new VelocityProviderConfig.Builder()
+            .useGenerationalStorage(true).useSkipListStorage(true).build());
+
+        try (VelocityProviderImpl provider = new VelocityProviderImpl(new VelocityProviderConfig.Builder()
+            .useGenerationalStorage(true).build())) {
+            for (int i = 0; i < 50; i++) {
+                provider.registerPayment(new Payment("pay-" + i, START.plus(Duration.ofMinutes(i)), "card1", "m1", 100));
+            }
+            Payment query = new Payment("query", START.plus(Duration.ofMinutes(50)), "card1");
+            assertEquals(50, provider.getCardUsageCount(query, Duration.ofHours(1)));
+            assertEquals(5_000, provider.getCardUsageAggregate(query, Duration.ofHours(1)).getAmountSum());
+        }
+        assertThrows(IllegalArgumentException.class,
+            () -> GenerationalTimestampStorage.start(Duration.ofMinutes(1), null));
+
+        try (GenerationalTimestampStorage storage = GenerationalTimestampStorage.start(Duration.ofMinutes(1),
+                Duration.ofMillis(5))) {
+            for (int i = 0; i < 10; i++) {
+                storage.addTimestamp("card1", START.plus(Duration.ofMinutes(i)), 1);
+            }
+            long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+            while (storage.segmentCount("card1") == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(1, storage.segmentCount("card1"));
+            assertEquals(10, storage.countInWindow("card1", START.plus(Duration.ofMinutes(9)), Duration.ofHours(1)));
+        }
+    }
+
+    @Test
+    public void testFutureTimestampDoesNotSealTheHotGeneration() {
+        try (GenerationalTimestampStorage storage = new GenerationalTimestampStorage(Duration.ofMinutes(15))) {
+            Instant now = Instant.now();
+            storage.addTimestamp("card1", now.minusSeconds(30), 1);
+            // A client clock a day ahead counts as "now" when picking what to seal
+            storage.addTimestamp("card2", now.plus(Duration.ofDays(1)), 1);
+            storage.seal();
+            assertEquals(0, storage.segmentCount("card1"));
+        }
+    }
+}
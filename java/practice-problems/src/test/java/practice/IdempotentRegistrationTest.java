@@ -0,0 +1,172 @@
+package practice;
+
+import org.junit.jupiter.api.Test;
+
+import practice.Solution.TreeMapTimestampStorage;
+import practice.Solution.VelocityProvider;
+import practice.Solution.VelocityProviderConfig;
+import practice.Solution.VelocityProviderImpl;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class IdempotentRegistrationTest {
+
+    @Test
+    public void testRetriedRegistrationIsCountedOnce() {
+        VelocityProvider provider = VelocityProvider.getProvider();
+        Instant now = Instant.parse("2025-02-11T10:00:00Z");
+
+        Payment payment = new Payment("pay-1", now, "card1", "m1", 1_000);
+        provider.registerPayment(payment);
+        provider.registerPayment(payment);
+        provider.registerPayment(new Payment("pay-1", now.plusSeconds(5), "card1", "m1", 1_000));
+        provider.registerPayment(new Payment("pay-2", now, "card1", "m1", 1_000));
+
+        Payment query = new Payment("query", now.plusSeconds(10), "card1");
+        assertEquals(2, provider.getCardUsageCount(query, Duration.ofMinutes(1)));
+        assertEquals(2_000, provider.getCardUsageAggregate(query, Duration.ofMinutes(1)).getAmountSum());
+    }
+
+    @Test
+    public void testRetryAfterExactWindowIsCaughtByBloomFilter() {
+        VelocityProvider provider = new VelocityProviderImpl(new VelocityProviderConfig.Builder()
+            .dedupeWindow(Duration.ofHours(1), Duration.ofSeconds(1))
+            .dedupeCapacity(2, 1_000)
+            .build());
+        Instant now = Instant.parse("2025-02-11T10:00:00Z");
+
+        provider.registerPayment(new Payment("pay-1", now, "card1"));
+        // Push pay-1 out of the exact set by size and by age
+        provider.registerPayment(new Payment("pay-2", now.plusSeconds(2), "card1"));
+        provider.registerPayment(new Payment("pay-3", now.plusSeconds(3), "card1"));
+        provider.registerPayment(new Payment("pay-1", now.plusSeconds(30), "card1"));
+
+        Payment query = new Payment("query", now.plusSeconds(60), "card1");
+        assertEquals(3, provider.getCardUsageCount(query, Duration.ofMinutes(5)));
+    }
+
+    @Test
+    public void testDeduplicatorForgetsAfterTwoGenerations() {
+        PaymentDeduplicator deduplicator = new PaymentDeduplicator(
+            Duration.ofMinutes(10), Duration.ofMinutes(1), 10, 1_000, 1e-6);
+        Instant now = Instant.parse("2025-02-11T10:00:00Z");
+
+        assertTrue(deduplicator.firstSeen("pay-1", now));
+        assertFalse(deduplicator.firstSeen("pay-1", now.plus(Duration.ofMinutes(5))));
+        assertFalse(deduplicator.firstSeen("pay-1", now.plus(Duration.ofMinutes(15))));
+        assertTrue(deduplicator.firstSeen("pay-1", now.plus(Duration.ofMinutes(45))));
+    }
+
+    @Test
+    public void testFailedWriteDoesNotMarkPaymentSeen() {
+        FailingFirstWriteStorage storage = new FailingFirstWriteStorage();
+        VelocityProviderImpl provider = new VelocityProviderImpl(VelocityProviderConfig.defaultConfig(), storage);
+        Instant now = Instant.parse("2025-02-11T10:00:00Z");
+        Payment payment = new Payment("pay-1", now, "card1", "m1", 1_000);
+
+        assertThrows(IllegalStateException.class, () -> provider.registerPayment(payment));
+        // The retry is counted, and a second retry is the duplicate
+        provider.registerPayment(payment);
+        provider.registerPayment(payment);
+
+        Payment query = new Payment("query", now.plusSeconds(10), "card1");
+        assertEquals(2, storage.writes.get());
+        assertEquals(1, provider.getCardUsageCount(query, Duration.ofMinutes(1)));
+    }
+
+    @Test
+    public void testFailedAsyncWriteDoesNotMarkPaymentSeen() {
+        FailingFirstWriteStorage storage = new FailingFirstWriteStorage();
+        VelocityProviderImpl provider = new VelocityProviderImpl(VelocityProviderConfig.defaultConfig(), storage);
+        Instant now = Instant.parse("2025-02-11T10:00:00Z");
+        Payment payment = new Payment("pay-1", now, "card1", "m1", 1_000);
+
+        CompletableFuture<Void> first = provider.registerPaymentAsync(payment);
+        assertThrows(CompletionException.class, first::join);
+        provider.registerPaymentAsync(payment).join();
+        provider.registerPaymentAsync(payment).join();
+
+        Payment query = new Payment("query", now.plusSeconds(10), "card1");
+        assertEquals(1, provider.getCardUsageCount(query, Duration.ofMinutes(1)));
+    }
+
+    @Test
+    public void testReleasedClaimsDoNotCrowdOutUnconfirmedOnes() {
+        PaymentDeduplicator deduplicator = new PaymentDeduplicator(
+            Duration.ofHours(1), Duration.ofMinutes(10), 4, 1_000, 1e-6);
+        Instant now = Instant.parse("2025-02-11T10:00:00Z");
+
+        // Failed writes hand their slots back
+        for (int i = 0; i < 10; i++) {
+            assertTrue(deduplicator.claim("failed-" + i, now));
+            deduplicator.release("failed-" + i);
+        }
+        assertEquals(0, deduplicator.exactSize());
+
+        // Writes in flight are held under capacity pressure; their retries stay duplicates
+        for (int i = 0; i < 3; i++) {
+            assertTrue(deduplicator.claim("pending-" + i, now));
+        }
+        for (int i = 0; i < 6; i++) {
+            assertTrue(deduplicator.firstSeen("done-" + i, now));
+        }
+        for (int i = 0; i < 3; i++) {
+            assertFalse(deduplicator.claim("pending-" + i, now), "pending-" + i);
+        }
+        // Confirmed entries were evicted down to capacity and are still in the Bloom filter
+        assertEquals(4, deduplicator.exactSize());
+        assertFalse(deduplicator.firstSeen("done-0", now));
+
+        // A tombstone with the same timestamp cannot remove a newer claim of its ID
+        PaymentDeduplicator retried = new PaymentDeduplicator(
+            Duration.ofHours(1), Duration.ofMinutes(10), 4, 1_000, 1e-6);
+        assertTrue(retried.claim("pending", now));
+        assertTrue(retried.claim("pay-1", now));
+        retried.release("pay-1");
+        assertTrue(retried.claim("pay-1", now));
+        for (int i = 0; i < 4; i++) {
+            assertTrue(retried.firstSeen("other-" + i, now));
+        }
+        assertFalse(retried.claim("pay-1", now));
+    }
+
+    @Test
+    public void testFullBloomGenerationRotatesInsteadOfSaturating() {
+        // Sized for 100 payments a day, fed 20,000 distinct ones within an hour
+        PaymentDeduplicator deduplicator = new PaymentDeduplicator(
+            Duration.ofDays(1), Duration.ofSeconds(1), 10, 100, 1e-6);
+        Instant now = Instant.parse("2025-02-11T10:00:00Z");
+
+        int dropped = 0;
+        for (int i = 0; i < 20_000; i++) {
+            if (!deduplicator.firstSeen("pay-" + i, now.plusMillis(i * 100L))) {
+                dropped++;
+            }
+        }
+        assertEquals(0, dropped);
+        assertTrue(deduplicator.getSaturatedRotations() >= 199);
+        // Recent IDs are still remembered
+        assertFalse(deduplicator.firstSeen("pay-19999", now.plus(Duration.ofHours(1))));
+    }
+
+    /**
+     * Throws on the first write, like a store timing out once.
+     */
+    private static final class FailingFirstWriteStorage extends TreeMapTimestampStorage {
+        final AtomicInteger writes = new AtomicInteger();
+
+        @Override
+        public void addTimestamp(String cardHash, Instant timestamp, long amount) {
+            if (writes.incrementAndGet() == 1) {
+                throw new IllegalStateException("store unavailable");
+            }
+            super.addTimestamp(cardHash, timestamp, amount);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package practice;
+
+import org.junit.jupiter.api.Test;
+
+import practice.BudgetedTimestampStorage.OverBudgetPolicy;
+import practice.Solution.TimestampStorage;
+import practice.Solution.TreeMapTimestampStorage;
+import practice.Solution.VelocityProviderConfig;
+import practice.Solution.VelocityProviderImpl;
+import practice.Solution.WindowAggregate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class MemoryBudgetTest {
+
+    private static final Instant START = Instant.parse("2025-02-11T10:00:00Z");
+
+    @Test
+    public void testShedsLeastRecentlyActiveCards() {
+        BudgetedTimestampStorage storage = new BudgetedTimestampStorage(new TreeMapTimestampStorage(),
+                1_000, 10, OverBudgetPolicy.SHED_LEAST_RECENT);
+        for (int card = 0; card < 10; card++) {
+            for (int i = 0; i < 5; i++) {
+                storage.addTimestamp("card" + card, START.plusSeconds(card * 10L + i), 100);
+            }
+        }
+        // A lookup counts as activity: card0 is now the most recent
+        assertEquals(5, storage.countInWindow("card0", START.plusSeconds(200), Duration.ofHours(1)));
+
+        // 11th card: trim to 90% (9 cards) by dropping card1 and card2
+        storage.addTimestamp("card10", START.plusSeconds(200), 100);
+        Instant queryTime = START.plusSeconds(300);
+        assertEquals(5, storage.countInWindow("card0", queryTime, Duration.ofHours(1)));
+        assertEquals(0, storage.countInWindow("card1", queryTime, Duration.ofHours(1)));
+        assertEquals(0, storage.countInWindow("card2", queryTime, Duration.ofHours(1)));
+        assertEquals(5, storage.countInWindow("card3", queryTime, Duration.ofHours(1)));
+
+        VelocityStorageMetrics metrics = storage.metrics();
+        assertEquals(1, metrics.getBudgetExceeded());
+        assertEquals(2, metrics.getCardsShed());
+        assertEquals(10, metrics.getEntriesShed());
+        assertEquals(9, metrics.getTrackedCards());
+        assertEquals(41, metrics.getRetainedEntries());
+
+        // Cleanup drops entries behind the budget's back; no scan yet, the counts run high
+        storage.removeOlderThan(START.plusSeconds(50));
+        assertEquals(41, metrics.getRetainedEntries());
+        assertEquals(9, metrics.getTrackedCards());
+
+        // The next over-budget insert reconciles first: the sweep made room, so nothing is shed
+        storage.addTimestamp("card11", START.plusSeconds(300), 100);
+        storage.addTimestamp("card12", START.plusSeconds(300), 100);
+        assertEquals(2, metrics.getBudgetExceeded());
+        assertEquals(2, metrics.getCardsShed());
+        assertEquals(28, metrics.getRetainedEntries());
+        assertEquals(8, metrics.getTrackedCards());
+        assertEquals(5, storage.countInWindow("card9", queryTime, Duration.ofHours(1)));
+    }
+
+    @Test
+    public void testReconcileKeepsInsertsRacingTheSweep() throws Exception {
+        BudgetedTimestampStorage storage = new BudgetedTimestampStorage(new TreeMapTimestampStorage(),
+                5_000, 10, OverBudgetPolicy.SHED_LEAST_RECENT);
+        for (int card = 0; card < 4; card++) {
+            for (int i = 0; i < 1_000; i++) {
+                storage.addTimestamp("card" + card, START.plusMillis(i), 1);
+            }
+        }
+        // The sweep empties every card, but the counters still say 4,000
+        storage.removeOlderThan(START.plusSeconds(5));
+        assertEquals(4_000, storage.metrics().getRetainedEntries());
+
+        // Crossing 5,000 reconciles while the other writers keep inserting
+        int perThread = 500;
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            String card = "card" + t;
+            writers.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    storage.addTimestamp(card, START.plusSeconds(10 + i), 1);
+                }
+            }));
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        assertTrue(storage.metrics().getBudgetExceeded() >= 1);
+        assertEquals(0, storage.metrics().getCardsShed());
+        // Racing inserts may be counted high, never low
+        long retained = storage.metrics().getRetainedEntries();
+        assertTrue(retained >= 4L * perThread && retained < 4_000, "retained " + retained);
+        for (int t = 0; t < 4; t++) {
+            assertEquals(perThread, storage.countInWindow("card" + t, START.plusSeconds(10 + perThread),
+                    Duration.ofHours(1)));
+        }
+    }
+
+    @Test
+    public void testRejectsStoragesWithoutEvictionAndClosesTheDelegate() {
+        TimestampStorage unevictable = new TimestampStorage() {
+            @Override
+            public void addTimestamp(String cardHash, Instant timestamp, long amount) {
+            }
+
+            @Override
+            public int countInWindow(String cardHash, Instant queryTime, Duration duration) {
+                return 0;
+            }
+
+            @Override
+            public WindowAggregate aggregateInWindow(String cardHash, Instant queryTime, Duration duration) {
+                return WindowAggregate.EMPTY;
+            }
+
+            @Override
+            public void removeOlderThan(Instant cutoffTime) {
+            }
+
+            @Override
+            public Instant getOldestTimestamp() {
+                return null;
+            }
+        };
+        assertThrows(IllegalArgumentException.class, () -> new BudgetedTimestampStorage(unevictable,
+                100, 10, OverBudgetPolicy.SHED_LEAST_RECENT));
+
+        AtomicBoolean closed = new AtomicBoolean();
+        class ClosableStorage extends TreeMapTimestampStorage implements AutoCloseable {
+            @Override
+            public void close() {
+                closed.set(true);
+            }
+        }
+        try (BudgetedTimestampStorage storage = new BudgetedTimestampStorage(new ClosableStorage(),
+                100, 10, OverBudgetPolicy.SHED_LEAST_RECENT)) {
+            storage.addTimestamp("card1", START, 1);
+        }
+        assertTrue(closed.get());
+    }
+
+    @Test
+    public void testDownsampledCountsFailClosed() {
+        TreeMapTimestampStorage reference = new TreeMapTimestampStorage();
+        BudgetedTimestampStorage storage = new BudgetedTimestampStorage(new TreeMapTimestampStorage(),
+                500, 20, OverBudgetPolicy.DOWNSAMPLE, Duration.ofMinutes(10));
+        Random random = new Random(17);
+
+        Instant end = START.plus(Duration.ofHours(3));
+        for (int i = 0; i < 5_000; i++) {
+            String card = "card" + random.nextInt(20);
+            Instant at = START.plusMillis(random.nextInt((int) Duration.ofHours(3).toMillis()));
+            long amount = 1 + random.nextInt(10_000);
+            reference.addTimestamp(card, at, amount);
+            storage.addTimestamp(card, at, amount);
+        }
+        // Every card fits exactly or coarsely, so nothing was dropped outright
+        assertTrue(storage.metrics().getCardsDownsampled() > 0);
+        assertEquals(0, storage.metrics().getCardsShed());
+        assertTrue(storage.metrics().getTrackedCards() <= 20);
+        assertTrue(storage.metrics().getRetainedEntries() <= 500);
+
+        for (int card = 0; card < 20; card++) {
+            for (Duration window : new Duration[] { Duration.ofMinutes(7), Duration.ofMinutes(45),
+                    Duration.ofHours(2), Duration.ofHours(5) }) {
+                Instant queryTime = end.minus(Duration.ofMinutes(card));
+                WindowAggregate expected = reference.aggregateInWindow("card" + card, queryTime, window);
+                WindowAggregate actual = storage.aggregateInWindow("card" + card, queryTime, window);
+                assertTrue(actual.getCount() >= expected.getCount());
+                assertTrue(actual.getAmountSum() >= expected.getAmountSum());
+                assertTrue(storage.countInWindow("card" + card, queryTime, window) >= expected.getCount());
+            }
+            // Slice-aligned windows covering the latest payment are exact
+            for (Duration window : new Duration[] { Duration.ofMinutes(30), Duration.ofHours(2) }) {
+                WindowAggregate expected = reference.aggregateInWindow("card" + card, end, window);
+                WindowAggregate actual = storage.aggregateInWindow("card" + card, end, window);
+                assertEquals(expected.getCount(), actual.getCount());
+                assertEquals(expected.getAmountSum(), actual.getAmountSum());
+                assertEquals(expected.getMaxAmount(), actual.getMaxAmount());
+            }
+        }
+        assertTrue(storage.metrics().getApproximateLookups() > 0);
+
+        // Cleanup trims coarse slices too
+        storage.removeOlderThan(end.plus(Duration.ofHours(1)));
+        for (int card = 0; card < 20; card++) {
+            assertEquals(0, storage.countInWindow("card" + card, end, Duration.ofDays(1)));
+        }
+        assertEquals(0, storage.metrics().getDownsampledCards());
+    }
+
+    @Test
+    public void testProviderConfig() {
+        assertThrows(IllegalArgumentException.class, () -> new VelocityProviderConfig.Builder()
+            .memoryBudget(0, 10, OverBudgetPolicy.DOWNSAMPLE));
+        assertThrows(IllegalArgumentException.class, () -> new VelocityProviderConfig.Builder()
+            .memoryBudget(100, 10, null));
+        assertNull(new VelocityProviderImpl().getStorageMetrics());
+
+        VelocityProviderImpl provider = new VelocityProviderImpl(new VelocityProviderConfig.Builder()
+            .memoryBudget(100, 5, OverBudgetPolicy.SHED_LEAST_RECENT).useSkipListStorage(true).build());
+        for (int i = 0; i < 20; i++) {
+            provider.registerPayment(new Payment("pay-" + i, START.plusSeconds(i), "card" + i, "m1", 100));
+        }
+        VelocityStorageMetrics metrics = provider.getStorageMetrics();
+        assertTrue(metrics.getTrackedCards() <= 5);
+        assertTrue(metrics.getCardsShed() >= 15);
+        assertEquals(1, provider.getCardUsageCount(new Payment("q", START.plusSeconds(30), "card19"),
+                Duration.ofMinutes(1)));
+        assertEquals(0, provider.getCardUsageCount(new Payment("q", START.plusSeconds(30), "card0"),
+                Duration.ofMinutes(1)));
+    }
+}
@@ -0,0 +1,153 @@
+package practice;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class MerchantConfigServiceTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testReloadSwapsInResolvedConfig() throws Exception {
+        MerchantConfigService configs = new MerchantConfigService();
+        MerchantVelocityPool pool = new MerchantVelocityPool(configs);
+        VelocityBasedFraudRule rule = new VelocityBasedFraudRule(pool, configs);
+        Instant now = Instant.parse("2025-02-11T10:00:00Z");
+        for (int i = 0; i < 3; i++) {
+            pool.registerPayment(new Payment("pay-" + i, now, "card1", "m1"));
+        }
+        Payment query = new Payment("query", now.plusSeconds(60), "card1", "m1");
+        assertTrue(rule.checkRule(query).isAllowed());
+
+        Path file = directory.resolve("merchants.properties");
+        Files.writeString(file, """
+                default.velocityLimit=5
+                merchant.m1.velocityLimit=2
+                """);
+        long version = configs.getVersion();
+        assertTrue(configs.reloadIfModified(file));
+        assertFalse(configs.reloadIfModified(file));
+        assertTrue(configs.getVersion() > version);
+
+        // Merchant fields override the defaults field by field
+        assertEquals(2, configs.getLimits("m1").getMaxCount());
+        assertEquals(MerchantVelocityLimits.DEFAULT.getWindow(), configs.getLimits("m1").getWindow());
+        assertEquals(5, configs.getLimits("other").getMaxCount());
+        assertFalse(rule.checkRule(query).isAllowed());
+
+        // A reload replaces everything, merchants added in code included
+        configs.addConfig("m2", new Solution.VelocityProviderConfig.Builder()
+                .cleanupThreshold(Duration.ofDays(1)).build());
+        Files.writeString(file, "merchant.m1.cleanupThreshold=PT30S\n");
+        configs.reload(file);
+        assertEquals(Duration.ofSeconds(30), configs.getConfig("m1").getCleanupThreshold());
+        assertEquals(configs.getConfig("default").getCleanupThreshold(), configs.getConfig("m2").getCleanupThreshold());
+        // Defaults the file no longer sets fall back to the built-in ones, not the previous file's
+        assertEquals(MerchantVelocityLimits.DEFAULT.getMaxCount(), configs.getLimits("other").getMaxCount());
+        // m1 now sees only 30 seconds of history
+        assertEquals(0, pool.getCardUsageCount(query, Duration.ofHours(1)));
+    }
+
+    @Test
+    public void testMalformedReloadKeepsPreviousConfig() throws Exception {
+        MerchantConfigService configs = new MerchantConfigService();
+        Path file = directory.resolve("merchants.properties");
+        Files.writeString(file, "merchant.m1.velocityLimit=2\n");
+        configs.reload(file);
+        long version = configs.getVersion();
+
+        for (String broken : new String[] { "merchant.m1.velocityLimit=abc\n",
+                "merchant.m1.cleanupThreshold=7 days\n", "merchant..velocityLimit=3\n",
+                "merchant.m1.velocityLimt=3\n", "default.velocityLimt=3\n", "velocityLimit=3\n" }) {
+            Files.writeString(file, broken);
+            assertThrows(IllegalArgumentException.class, () -> configs.reload(file));
+            assertEquals(2, configs.getLimits("m1").getMaxCount());
+            assertEquals(version, configs.getVersion());
+        }
+
+        // Scheduled polling records the error and keeps going
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            configs.scheduleReload(file, Duration.ofMillis(10), scheduler);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (configs.getLastReloadError() == null && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertInstanceOf(IllegalArgumentException.class, configs.getLastReloadError());
+            assertEquals(2, configs.getLimits("m1").getMaxCount());
+
+            Files.writeString(file, "merchant.m1.velocityLimit=4\n");
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 1_000));
+            while (configs.getLimits("m1").getMaxCount() != 4 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(4, configs.getLimits("m1").getMaxCount());
+            assertNull(configs.getLastReloadError());
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testReadersNeverSeeAHalfSwappedConfig() throws Exception {
+        MerchantConfigService configs = new MerchantConfigService();
+        Path first = directory.resolve("first.properties");
+        Path second = directory.resolve("second.properties");
+        Files.writeString(first, """
+                merchant.m1.velocityLimit=2
+                merchant.m1.velocityWindow=PT1H
+                merchant.m1.cleanupThreshold=P1D
+                """);
+        Files.writeString(second, """
+                merchant.m1.velocityLimit=7
+                merchant.m1.velocityWindow=PT5M
+                merchant.m1.cleanupThreshold=P3D
+                """);
+        configs.reload(first);
+
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<String> failure = new AtomicReference<>();
+        List<Thread> readers = new ArrayList<>();
+        CountDownLatch started = new CountDownLatch(4);
+        for (int r = 0; r < 4; r++) {
+            readers.add(Thread.ofPlatform().start(() -> {
+                started.countDown();
+                while (!done.get()) {
+                    MerchantVelocityLimits limits = configs.getLimits("m1");
+                    boolean isFirst = limits.getMaxCount() == 2 && limits.getWindow().equals(Duration.ofHours(1));
+                    boolean isSecond = limits.getMaxCount() == 7 && limits.getWindow().equals(Duration.ofMinutes(5));
+                    if (!isFirst && !isSecond) {
+                        failure.compareAndSet(null, limits.getMaxCount() + " / " + limits.getWindow());
+                    }
+                }
+            }));
+        }
+        started.await();
+        for (int i = 0; i < 200; i++) {
+            configs.reload(i % 2 == 0 ? second : first);
+        }
+        done.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertNull(failure.get());
+        assertEquals(Duration.ofDays(1), configs.getConfig("m1").getCleanupThreshold());
+    }
+}
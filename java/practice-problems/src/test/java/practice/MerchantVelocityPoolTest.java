@@ -0,0 +1,79 @@
+package practice;
+
+import org.junit.jupiter.api.Test;
+
+import practice.Solution.VelocityProviderConfig;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.time.Instant;
+
+public class MerchantVelocityPoolTest {
+
+    private static final Instant START = Instant.parse("2025-02-11T10:00:00Z");
+
+    @Test
+    public void testMerchantsShareStorageButNotHistory() {
+        MerchantVelocityPool pool = new MerchantVelocityPool(new MerchantConfigService());
+        pool.registerPayment(new Payment("a", START, "card1", "m1", 100));
+        pool.registerPayment(new Payment("b", START.plusSeconds(1), "card1", "m1", 200));
+        pool.registerPayment(new Payment("c", START.plusSeconds(2), "card1", "m2", 300));
+
+        Instant later = START.plusSeconds(60);
+        assertEquals(2, pool.getCardUsageCount(new Payment("q", later, "card1", "m1"), Duration.ofHours(1)));
+        assertEquals(300, pool.getCardUsageAggregate(new Payment("q", later, "card1", "m2"), Duration.ofHours(1))
+                .getAmountSum());
+        assertEquals(0, pool.getCardUsageCount(new Payment("q", later, "card1", "m3"), Duration.ofHours(1)));
+        // Distinct counts span merchants: that is their point
+        assertEquals(2, pool.getDistinctMerchantCount(new Payment("q", later, "card1", "m1"), Duration.ofHours(1)));
+    }
+
+    @Test
+    public void testRetentionCeilingCoversConfiguredMerchants() {
+        MerchantConfigService configs = new MerchantConfigService();
+        configs.addConfig("short", new VelocityProviderConfig.Builder()
+                .cleanupThreshold(Duration.ofMinutes(30)).build());
+        configs.addConfig("long", new VelocityProviderConfig.Builder()
+                .cleanupThreshold(Duration.ofDays(30)).build());
+        MerchantVelocityPool pool = new MerchantVelocityPool(configs);
+
+        pool.registerPayment(new Payment("a", START, "card1", "long"));
+        pool.registerPayment(new Payment("b", START, "card1", "short"));
+
+        // 20 days back is beyond the default 7 days but within "long"'s 30
+        Instant later = START.plus(Duration.ofDays(20));
+        assertEquals(1, pool.getCardUsageCount(new Payment("q", later, "card1", "long"), Duration.ofDays(25)));
+        // "short" only ever sees its own 30 minutes
+        assertEquals(0, pool.getCardUsageCount(new Payment("q", START.plus(Duration.ofMinutes(45)), "card1", "short"),
+                Duration.ofHours(2)));
+        assertEquals(0, pool.getCappedRetentions());
+
+        // An explicit ceiling below a configured merchant is rejected up front
+        assertThrows(IllegalArgumentException.class,
+                () -> new MerchantVelocityPool(configs, Duration.ofDays(7), 100));
+
+        // Configured after startup: capped, and visibly so
+        configs.addConfig("longer", new VelocityProviderConfig.Builder()
+                .cleanupThreshold(Duration.ofDays(90)).build());
+        pool.registerPayment(new Payment("c", START, "card1", "longer"));
+        assertEquals(1, pool.getCappedRetentions());
+    }
+
+    @Test
+    public void testEvictionDropsProfilesNotHistory() {
+        MerchantVelocityPool pool = new MerchantVelocityPool(new MerchantConfigService(), Duration.ofDays(7), 10);
+        for (int i = 0; i < 30; i++) {
+            pool.registerPayment(new Payment("pay-" + i, START.plusSeconds(i), "card1", "m" + i));
+        }
+        assertTrue(pool.cachedMerchantCount() <= 10);
+
+        // m0's profile was evicted long ago; its payment is still counted
+        Instant later = START.plusSeconds(60);
+        assertEquals(1, pool.getCardUsageCount(new Payment("q", later, "card1", "m0"), Duration.ofHours(1)));
+        assertEquals(30, pool.getDistinctMerchantCount(new Payment("q", later, "card1", "m0"), Duration.ofHours(1)));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> new MerchantVelocityPool(new MerchantConfigService(), Duration.ofDays(7), 0));
+    }
+}
@@ -0,0 +1,209 @@
+package practice;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import practice.Solution.WindowAggregate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import redis.clients.jedis.JedisPool;
+
+public class NearCachedTimestampStorageTest {
+
+    private static final Duration TTL = Duration.ofMillis(200);
+
+    private FakeRedisServer server;
+    private JedisPool pool;
+    private RedisTimestampStorage redis;
+    private final AtomicLong nanos = new AtomicLong();
+
+    @BeforeEach
+    public void startRedis() throws Exception {
+        server = new FakeRedisServer();
+        pool = new JedisPool("127.0.0.1", server.port());
+        redis = new RedisTimestampStorage(pool);
+    }
+
+    @AfterEach
+    public void stopRedis() throws Exception {
+        redis.close();
+        pool.close();
+        server.close();
+    }
+
+    @Test
+    public void testRepeatedQueriesSkipTheNetwork() {
+        NearCachedTimestampStorage cache = new NearCachedTimestampStorage(redis, TTL, 100, nanos::get);
+        Instant now = Instant.parse("2025-02-11T10:00:00Z");
+        cache.addTimestamp("card1", "pay-1", now, 500);
+
+        assertEquals(1, cache.countInWindow("card1", now, Duration.ofMinutes(10)));
+        int commands = server.commandCount();
+        for (int i = 0; i < 5; i++) {
+            assertEquals(1, cache.countInWindow("card1", now, Duration.ofMinutes(10)));
+            assertEquals(1, cache.countInWindowAsync("card1", now, Duration.ofMinutes(10)).join());
+        }
+        assertEquals(commands, server.commandCount());
+        assertEquals(10, cache.hitCount());
+
+        // A different window is a different entry
+        assertEquals(1, cache.countInWindow("card1", now, Duration.ofHours(1)));
+        assertEquals(commands + 1, server.commandCount());
+    }
+
+    @Test
+    public void testLocalRegistrationsUpdateCachedWindows() {
+        NearCachedTimestampStorage cache = new NearCachedTimestampStorage(redis, TTL, 100, nanos::get);
+        Instant now = Instant.parse("2025-02-11T10:00:00Z");
+        cache.addTimestamp("card1", "pay-1", now.minusSeconds(30), 500);
+
+        WindowAggregate before = cache.aggregateInWindow("card1", now, Duration.ofMinutes(1));
+        assertEquals(1, before.getCount());
+        assertEquals(0, cache.countInWindow("card1", now, Duration.ofSeconds(10)));
+
+        cache.addTimestamp("card1", "pay-2", now.minusSeconds(5), 2_000);
+        cache.addTimestampAsync("card1", "pay-3", now.minusSeconds(20), 100).join();
+        int commands = server.commandCount();
+
+        WindowAggregate after = cache.aggregateInWindow("card1", now, Duration.ofMinutes(1));
+        assertEquals(3, after.getCount());
+        assertEquals(2_600, after.getAmountSum());
+        assertEquals(2_000, after.getMaxAmount());
+        assertEquals(1, cache.countInWindow("card1", now, Duration.ofSeconds(10)));
+        assertEquals(commands, server.commandCount(), "answered from the cache");
+
+        // The cache agrees with the source of truth
+        assertEquals(3, redis.countInWindow("card1", now, Duration.ofMinutes(1)));
+        assertEquals(1, redis.countInWindow("card1", now, Duration.ofSeconds(10)));
+    }
+
+    @Test
+    public void testRemoteWritesVisibleAfterTtl() {
+        NearCachedTimestampStorage cache = new NearCachedTimestampStorage(redis, TTL, 100, nanos::get);
+        Instant now = Instant.parse("2025-02-11T10:00:00Z");
+
+        assertEquals(0, cache.countInWindow("card1", now, Duration.ofMinutes(1)));
+        // Another instance registers the card directly in Redis
+        redis.addTimestamp("card1", "pay-elsewhere", now.minusSeconds(1), 100);
+        assertEquals(0, cache.countInWindow("card1", now, Duration.ofMinutes(1)), "stale within TTL");
+
+        nanos.addAndGet(TTL.toNanos());
+        assertEquals(1, cache.countInWindow("card1", now, Duration.ofMinutes(1)));
+    }
+
+    @Test
+    public void testFullCacheStillAnswersCorrectly() {
+        NearCachedTimestampStorage cache = new NearCachedTimestampStorage(redis, TTL, 1, nanos::get);
+        Instant now = Instant.parse("2025-02-11T10:00:00Z");
+        cache.addTimestamp("card1", "pay-1", now, 1);
+        cache.addTimestamp("card2", "pay-2", now, 1);
+
+        assertEquals(1, cache.countInWindow("card1", now, Duration.ofMinutes(1)));
+        int commands = server.commandCount();
+        assertEquals(1, cache.countInWindow("card2", now, Duration.ofMinutes(1)));
+        assertEquals(1, cache.countInWindow("card2", now, Duration.ofMinutes(1)));
+        assertEquals(commands + 2, server.commandCount(), "card2 not cached while full");
+
+        // Once card1 expires its slot is reused
+        nanos.addAndGet(TTL.toNanos());
+        assertEquals(1, cache.countInWindow("card2", now, Duration.ofMinutes(1)));
+        assertEquals(1, cache.countInWindow("card2", now, Duration.ofMinutes(1)));
+        assertEquals(commands + 3, server.commandCount());
+    }
+
+    @Test
+    public void testRetriedPaymentIsNotCountedTwice() {
+        NearCachedTimestampStorage cache = new NearCachedTimestampStorage(redis, TTL, 100, nanos::get);
+        Instant now = Instant.parse("2025-02-11T10:00:00Z");
+        assertTrue(cache.addTimestampIfAbsent("card1", "pay-1", now.minusSeconds(5), 500));
+        assertEquals(1, cache.countInWindow("card1", now, Duration.ofMinutes(1)));
+
+        // Redis keeps one member per payment; the cached window must agree
+        assertFalse(cache.addTimestampIfAbsent("card1", "pay-1", now.minusSeconds(5), 500));
+        cache.addTimestamp("card1", "pay-1", now.minusSeconds(5), 500);
+        assertFalse(cache.addTimestampIfAbsentAsync("card1", "pay-1", now.minusSeconds(5), 500).join());
+        int commands = server.commandCount();
+        assertEquals(1, cache.countInWindow("card1", now, Duration.ofMinutes(1)));
+        assertEquals(500, cache.aggregateInWindow("card1", now, Duration.ofMinutes(1)).getAmountSum());
+        assertEquals(commands + 1, server.commandCount(), "count still cached, aggregate fetched once");
+        assertEquals(1, redis.countInWindow("card1", now, Duration.ofMinutes(1)));
+
+        // A new payment is still bumped in place
+        assertTrue(cache.addTimestampIfAbsentAsync("card1", "pay-2", now.minusSeconds(1), 100).join());
+        commands = server.commandCount();
+        assertEquals(2, cache.countInWindow("card1", now, Duration.ofMinutes(1)));
+        assertEquals(600, cache.aggregateInWindow("card1", now, Duration.ofMinutes(1)).getAmountSum());
+        assertEquals(commands, server.commandCount(), "answered from the cache");
+    }
+
+    @Test
+    public void testRemoveOlderThanDropsWindowsReachingPastTheCutoff() {
+        Solution.TreeMapTimestampStorage local = new Solution.TreeMapTimestampStorage();
+        Instant now = Instant.parse("2025-02-11T10:00:00Z");
+        try (NearCachedTimestampStorage cache = new NearCachedTimestampStorage(local, TTL, 100, nanos::get)) {
+            cache.addTimestamp("card1", "old", now.minus(Duration.ofMinutes(50)), 1);
+            cache.addTimestamp("card1", "new", now.minusSeconds(30), 1);
+            assertEquals(2, cache.countInWindow("card1", now, Duration.ofHours(1)));
+            assertEquals(1, cache.countInWindow("card1", now, Duration.ofMinutes(10)));
+
+            cache.removeOlderThan(now.minus(Duration.ofMinutes(20)));
+
+            long misses = cache.missCount();
+            assertEquals(1, cache.countInWindow("card1", now, Duration.ofHours(1)));
+            assertEquals(misses + 1, cache.missCount(), "the 1h window was dropped");
+            assertEquals(1, cache.countInWindow("card1", now, Duration.ofMinutes(10)));
+            assertEquals(misses + 1, cache.missCount(), "the 10m window starts after the cutoff");
+        }
+    }
+
+    @Test
+    public void testConcurrentWritesAndReadsStayCoherent() throws Exception {
+        NearCachedTimestampStorage cache = new NearCachedTimestampStorage(redis, Duration.ofHours(1), 100);
+        Instant now = Instant.parse("2025-02-11T10:00:00Z");
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> work = new ArrayList<>();
+            for (int w = 0; w < 8; w++) {
+                int writer = w;
+                work.add(executor.submit(() -> {
+                    for (int i = 0; i < 50; i++) {
+                        // Every other writer replays the previous one's payments
+                        String paymentId = "pay-" + (writer - writer % 2) + "-" + i;
+                        Instant at = now.minusSeconds(i % 30);
+                        if (i % 2 == 0) {
+                            cache.addTimestamp("card" + (i % 3), paymentId, at, 10);
+                        } else {
+                            cache.addTimestampAsync("card" + (i % 3), paymentId, at, 10).join();
+                        }
+                    }
+                }));
+                work.add(executor.submit(() -> {
+                    for (int i = 0; i < 100; i++) {
+                        cache.countInWindow("card" + (i % 3), now, Duration.ofMinutes(1));
+                        cache.aggregateInWindowAsync("card" + (i % 3), now, Duration.ofSeconds(10)).join();
+                    }
+                }));
+            }
+            for (Future<?> future : work) {
+                future.get();
+            }
+        }
+        for (int card = 0; card < 3; card++) {
+            String cardHash = "card" + card;
+            assertEquals(redis.countInWindow(cardHash, now, Duration.ofMinutes(1)),
+                    cache.countInWindow(cardHash, now, Duration.ofMinutes(1)));
+            assertEquals(redis.aggregateInWindow(cardHash, now, Duration.ofSeconds(10)).getAmountSum(),
+                    cache.aggregateInWindow(cardHash, now, Duration.ofSeconds(10)).getAmountSum());
+        }
+    }
+}
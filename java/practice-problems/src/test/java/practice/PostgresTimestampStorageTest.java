@@ -0,0 +1,58 @@
+package practice;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import testsupport.FakeDataSource;
+
+/**
+ * JDBC plumbing checked against a recording fake DataSource: there is no
+ * Postgres in the test environment, so SQL semantics are out of scope here.
+ */
+public class PostgresTimestampStorageTest {
+
+    private static final Instant NOW = Instant.parse("2025-02-11T10:00:00Z");
+
+    @Test
+    public void testScanStreamsRowsThroughACursor() {
+        FakeDataSource database = new FakeDataSource(
+                List.of("card_hash", "timestamp", "count", "amount_sum", "max_amount"),
+                List.of(new Object[] { "card1", Timestamp.from(NOW), 2, 300L, 200L },
+                        new Object[] { "card1", Timestamp.from(NOW.plusMillis(5)), 1, 50L, 50L },
+                        new Object[] { "card2", Timestamp.from(NOW), 1, 7L, 7L }));
+        PostgresTimestampStorage storage = new PostgresTimestampStorage(database.proxy(), null);
+
+        List<String> buckets = new ArrayList<>();
+        storage.forEachBucket((cardHash, epochMilli, count, amountSum, maxAmount) ->
+                buckets.add(cardHash + "@" + (epochMilli - NOW.toEpochMilli()) + "=" + count + "/" + amountSum
+                        + "/" + maxAmount));
+
+        assertEquals(List.of("card1@0=2/300/200", "card1@5=1/50/50", "card2@0=1/7/7"), buckets);
+        // Cursor mode: no autocommit, bounded fetch, transaction ended, everything closed
+        assertTrue(database.calls.contains("setAutoCommit(false)"));
+        assertTrue(database.calls.contains("setFetchSize(10000)"));
+        assertTrue(database.calls.contains("rollback"));
+        assertEquals(0, database.open.get(), "unclosed JDBC objects");
+    }
+
+    @Test
+    public void testScanFailureIsWrappedAndCleansUp() {
+        FakeDataSource database = new FakeDataSource();
+        database.failQueries = true;
+        PostgresTimestampStorage storage = new PostgresTimestampStorage(database.proxy(), null);
+
+        RuntimeException error = assertThrows(RuntimeException.class,
+                () -> storage.forEachBucket((cardHash, epochMilli, count, amountSum, maxAmount) -> fail()));
+        assertEquals("Failed to scan payments", error.getMessage());
+        assertInstanceOf(SQLException.class, error.getCause());
+        assertTrue(database.calls.contains("rollback"));
+        assertEquals(0, database.open.get(), "unclosed JDBC objects");
+    }
+}
@@ -0,0 +1,84 @@
+package practice;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import redis.clients.jedis.JedisPool;
+
+public class RedisTimestampStorageTest {
+
+    private static final Instant NOW = Instant.parse("2025-02-11T10:00:00Z");
+
+    private FakeRedisServer server;
+    private JedisPool pool;
+
+    @BeforeEach
+    public void startServer() throws Exception {
+        server = new FakeRedisServer();
+        pool = new JedisPool("127.0.0.1", server.port());
+    }
+
+    @AfterEach
+    public void stopServer() throws Exception {
+        pool.close();
+        server.close();
+    }
+
+    @Test
+    public void testAsyncCommandsArePipelined() {
+        int payments = 2_000;
+        try (RedisTimestampStorage storage = new RedisTimestampStorage(pool, 1, 128)) {
+            List<CompletableFuture<Void>> writes = new ArrayList<>();
+            for (int i = 0; i < payments; i++) {
+                writes.add(storage.addTimestampAsync("card" + (i % 10), "pay-" + i, NOW.plusMillis(i), 10));
+            }
+            CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0])).join();
+
+            // (plus the client's connection handshake)
+            assertTrue(server.commandCount() >= payments);
+            // Many commands per round trip, not one each
+            assertTrue(server.replyFlushes() < payments / 2, "flushes: " + server.replyFlushes());
+
+            // A retried payment is the same member
+            storage.addTimestampAsync("card0", "pay-0", NOW, 10).join();
+            Instant end = NOW.plusSeconds(10);
+            assertEquals(payments / 10, storage.countInWindowAsync("card0", end, Duration.ofMinutes(1)).join());
+            assertEquals(payments / 10 * 10,
+                    storage.aggregateInWindowAsync("card0", end, Duration.ofMinutes(1)).join().getAmountSum());
+            assertEquals(payments / 10, storage.countInWindow("card0", end, Duration.ofMinutes(1)));
+        }
+    }
+
+    @Test
+    public void testClosedStorageRejectsCalls() {
+        RedisTimestampStorage storage = new RedisTimestampStorage(pool);
+        storage.addTimestampAsync("card1", "pay-1", NOW, 10).join();
+        storage.close();
+        int commands = server.commandCount();
+
+        // No lazily restarted batcher: the call fails and nothing reaches Redis
+        CompletableFuture<Void> late = storage.addTimestampAsync("card1", "pay-2", NOW, 10);
+        CompletionException error = assertThrows(CompletionException.class, late::join);
+        assertInstanceOf(IllegalStateException.class, error.getCause());
+        assertThrows(CompletionException.class,
+                () -> storage.countInWindowAsync("card1", NOW, Duration.ofMinutes(1)).join());
+        assertThrows(IllegalStateException.class,
+                () -> storage.addTimestamp("card1", "pay-3", NOW, 10));
+        assertThrows(IllegalStateException.class,
+                () -> storage.countInWindow("card1", NOW, Duration.ofMinutes(1)));
+        assertEquals(commands, server.commandCount());
+
+        // Closing twice is harmless
+        storage.close();
+    }
+}
@@ -0,0 +1,194 @@
+package practice;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import practice.Solution.VelocityProviderConfig;
+import practice.Solution.VelocityProviderImpl;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import redis.clients.jedis.JedisPool;
+
+public class ShardedRedisTimestampStorageTest {
+
+    private final List<FakeRedisServer> servers = new ArrayList<>();
+    private final List<JedisPool> pools = new ArrayList<>();
+
+    @BeforeEach
+    public void startShards() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            FakeRedisServer server = new FakeRedisServer();
+            servers.add(server);
+            pools.add(new JedisPool("127.0.0.1", server.port()));
+        }
+    }
+
+    @AfterEach
+    public void stopShards() throws Exception {
+        for (JedisPool pool : pools) {
+            pool.close();
+        }
+        for (FakeRedisServer server : servers) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testSlotsMatchRedisClusterSpec() {
+        // Reference values from the Redis Cluster specification
+        assertEquals(0x31C3, RedisSlots.crc16("123456789".getBytes(), 0, 9));
+        assertEquals(12182, RedisSlots.slot("foo"));
+        assertEquals(RedisSlots.slot("{user1000}.following"), RedisSlots.slot("{user1000}.followers"));
+        assertEquals(RedisSlots.slot("bar"), RedisSlots.slot("foo{bar}{zap}"));
+        assertEquals(RedisSlots.slot("{bar"), RedisSlots.slot("foo{{bar}}zap"));
+        assertEquals(RedisSlots.crc16("foo{}{bar}".getBytes(), 0, 10) & 16383, RedisSlots.slot("foo{}{bar}"));
+    }
+
+    @Test
+    public void testCardKeysShareOneShard() {
+        try (ShardedRedisTimestampStorage storage = new ShardedRedisTimestampStorage(pools, null)) {
+            for (int card = 0; card < 100; card++) {
+                String cardHash = "card" + card;
+                int shard = storage.shardFor(cardHash);
+                assertEquals(shard, storage.shardFor(VelocityProviderImpl.merchantCardKey("m-1", cardHash)));
+                assertEquals(shard, storage.shardFor(VelocityProviderImpl.merchantCardKey("m-2", cardHash)));
+            }
+        }
+    }
+
+    @Test
+    public void testProviderRoutesEveryCardToItsOwnShard() {
+        ShardedRedisTimestampStorage storage = new ShardedRedisTimestampStorage(pools, Duration.ofHours(1));
+        VelocityProviderImpl provider = new VelocityProviderImpl(
+            new VelocityProviderConfig.Builder().merchantScopedKeys(true).build(), storage);
+        Instant now = Instant.parse("2025-02-11T10:00:00Z");
+
+        for (int card = 0; card < 60; card++) {
+            provider.registerPayment(new Payment("pay-" + card + "-a", now, "card" + card, "m-1", 100));
+            provider.registerPayment(new Payment("pay-" + card + "-b", now.plusSeconds(1), "card" + card, "m-1", 250));
+        }
+
+        Set<String> seen = new HashSet<>();
+        for (int shard = 0; shard < servers.size(); shard++) {
+            Set<String> keys = servers.get(shard).keys();
+            assertFalse(keys.isEmpty(), "shard " + shard + " got no keys");
+            for (String key : keys) {
+                String cardHash = key.substring(key.indexOf('{') + 1, key.indexOf('}'));
+                assertEquals(shard, storage.shardFor(cardHash), key + " on the wrong shard");
+                seen.add(key);
+            }
+        }
+        assertEquals(60, seen.size());
+
+        Payment query = new Payment("query", now.plusSeconds(5), "card7", "m-1", 0);
+        assertEquals(2, provider.getCardUsageCount(query, Duration.ofMinutes(1)));
+        assertEquals(350, provider.getCardUsageAggregate(query, Duration.ofMinutes(1)).getAmountSum());
+        assertEquals(2, provider.getCardUsageCountAsync(query, Duration.ofMinutes(1)).join());
+        storage.close();
+    }
+
+    @Test
+    public void testBulkOperationsSpanAllShards() {
+        try (ShardedRedisTimestampStorage storage = new ShardedRedisTimestampStorage(pools, null)) {
+            Instant now = Instant.parse("2025-02-11T10:00:00Z");
+
+            List<ShardedRedisTimestampStorage.BulkEntry> entries = new ArrayList<>();
+            List<String> cards = new ArrayList<>();
+            for (int card = 0; card < 200; card++) {
+                cards.add("card" + card);
+                for (int i = 0; i <= card % 3; i++) {
+                    entries.add(new ShardedRedisTimestampStorage.BulkEntry(
+                        "card" + card, "pay-" + card + "-" + i, now.plusMillis(i), 10));
+                }
+            }
+            storage.addTimestamps(entries);
+
+            Map<String, Integer> counts = storage.countInWindow(cards, now.plusSeconds(1), Duration.ofMinutes(1));
+            for (int card = 0; card < 200; card++) {
+                assertEquals(card % 3 + 1, counts.get("card" + card));
+            }
+        }
+    }
+
+    @Test
+    public void testRetentionTrimsExpiredMembersOnWrite() {
+        try (ShardedRedisTimestampStorage storage = new ShardedRedisTimestampStorage(pools, Duration.ofMinutes(10))) {
+            Instant now = Instant.parse("2025-02-11T10:00:00Z");
+
+            storage.addTimestamp("card1", "old", now, 1);
+            storage.addTimestamp("card1", "new", now.plus(Duration.ofMinutes(11)), 1);
+
+            assertEquals(1, storage.countInWindow("card1", now.plus(Duration.ofMinutes(11)), Duration.ofHours(1)));
+            assertEquals(now.plus(Duration.ofMinutes(11)), storage.getOldestTimestamp());
+        }
+    }
+
+    @Test
+    public void testAsyncWritesAlwaysLeaveATtl() {
+        try (ShardedRedisTimestampStorage storage = new ShardedRedisTimestampStorage(pools, Duration.ofMinutes(10))) {
+            Instant now = Instant.parse("2025-02-11T10:00:00Z");
+            List<CompletableFuture<Void>> writes = new ArrayList<>();
+            for (int card = 0; card < 300; card++) {
+                writes.add(storage.addTimestampAsync("card" + card, "pay-" + card, now, 1));
+            }
+            writes.forEach(CompletableFuture::join);
+
+            // ZADD, trim and PEXPIRE go out together, so the expiry never races ahead of the key
+            for (FakeRedisServer server : servers) {
+                assertFalse(server.keys().isEmpty());
+                assertEquals(Set.of(), server.keysWithoutTtl());
+            }
+        }
+    }
+
+    @Test
+    public void testOldestTimestampScansEveryShard() {
+        try (ShardedRedisTimestampStorage storage = new ShardedRedisTimestampStorage(pools, null)) {
+            assertNull(storage.getOldestTimestamp());
+
+            Instant now = Instant.parse("2025-02-11T10:00:00Z");
+            for (int card = 0; card < 30; card++) {
+                storage.addTimestamp("card" + card, "pay-" + card, now.plusSeconds(card), 1);
+                storage.addTimestamp("card" + card, "pay-" + card + "-late", now.plusSeconds(100 + card), 1);
+            }
+            assertEquals(now, storage.getOldestTimestamp());
+
+            // Move the oldest card to a different shard from card0's
+            String elsewhere = null;
+            for (int card = 0; elsewhere == null; card++) {
+                if (storage.shardFor("early" + card) != storage.shardFor("card0")) {
+                    elsewhere = "early" + card;
+                }
+            }
+            storage.addTimestamp(elsewhere, "pay-early", now.minusSeconds(60), 1);
+            assertEquals(now.minusSeconds(60), storage.getOldestTimestamp());
+        }
+    }
+
+    @Test
+    public void testClosedStorageRejectsCalls() {
+        ShardedRedisTimestampStorage storage = new ShardedRedisTimestampStorage(pools, null);
+        Instant now = Instant.parse("2025-02-11T10:00:00Z");
+        storage.addTimestampAsync("card1", "pay-1", now, 1).join();
+        storage.close();
+
+        assertThrows(java.util.concurrent.CompletionException.class,
+                () -> storage.addTimestampAsync("card1", "pay-2", now, 1).join());
+        assertThrows(IllegalStateException.class, () -> storage.addTimestamp("card1", "pay-3", now, 1));
+        assertThrows(IllegalStateException.class,
+                () -> storage.countInWindow(List.of("card1"), now, Duration.ofMinutes(1)));
+        assertThrows(IllegalStateException.class, storage::getOldestTimestamp);
+        storage.close();
+    }
+}
@@ -0,0 +1,288 @@
+package practice;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import practice.Solution.SkipListTimestampStorage;
+import practice.Solution.TimestampStorage;
+import practice.Solution.TreeMapTimestampStorage;
+import practice.Solution.WindowAggregate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Checks every in-memory TimestampStorage against a sequential model, then
+ * hammers it from many threads with cleanup racing the inserts.
+ *
+ * Layout of time in the concurrent tests:
+ *   ... OLD (< CUTOFF, cleanup may drop) | CUTOFF | NEW (>= CUTOFF, must survive) ...
+ * Every NEW insert must be counted in the end, whatever cleanup did to the
+ * card in between — a missing one is a lost update.
+ */
+public class TimestampStorageStressTest {
+
+    private static final Instant CUTOFF = Instant.parse("2025-02-11T10:00:00Z");
+    private static final Instant QUERY_TIME = CUTOFF.plus(Duration.ofDays(1));
+    private static final Duration NEW_WINDOW = Duration.between(CUTOFF, QUERY_TIME);
+
+    private static final int THREADS = 8;
+
+    static Stream<Arguments> storages() {
+        return Stream.of(
+            Arguments.of("TreeMap", (Supplier<TimestampStorage>) TreeMapTimestampStorage::new),
+            Arguments.of("TreeMap+cold", (Supplier<TimestampStorage>) () -> new TreeMapTimestampStorage(Duration.ofMinutes(1))),
+            Arguments.of("SkipList", (Supplier<TimestampStorage>) SkipListTimestampStorage::new),
+            // Seals every millisecond so sealing races everything else
+            Arguments.of("Generational", (Supplier<TimestampStorage>) () -> GenerationalTimestampStorage.start(
+                Duration.ofMillis(100), Duration.ofMillis(1))));
+    }
+
+    // Storages with a background thread, stopped after each test
+    private final List<AutoCloseable> opened = new ArrayList<>();
+
+    @AfterEach
+    public void closeStorages() throws Exception {
+        for (AutoCloseable storage : opened) {
+            storage.close();
+        }
+    }
+
+    private TimestampStorage open(Supplier<TimestampStorage> factory) {
+        TimestampStorage storage = factory.get();
+        if (storage instanceof AutoCloseable closeable) {
+            opened.add(closeable);
+        }
+        return storage;
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("storages")
+    public void testMatchesSequentialModel(String name, Supplier<TimestampStorage> factory) {
+        TimestampStorage storage = open(factory);
+        SequentialModel model = new SequentialModel();
+        Random random = new Random(42);
+        Instant base = CUTOFF;
+
+        for (int op = 0; op < 20_000; op++) {
+            String card = "card" + random.nextInt(20);
+            Instant time = base.plusMillis(random.nextInt(600_000));
+            switch (random.nextInt(10)) {
+                case 0:
+                    storage.removeOlderThan(time);
+                    model.removeOlderThan(time);
+                    break;
+                case 1:
+                case 2: {
+                    Duration window = Duration.ofMillis(1 + random.nextInt(300_000));
+                    WindowAggregate actual = storage.aggregateInWindow(card, time, window);
+                    WindowAggregate expected = model.aggregate(card, time, window);
+                    assertEquals(expected.getCount(), actual.getCount(), name + " count at op " + op);
+                    assertEquals(expected.getAmountSum(), actual.getAmountSum(), name + " sum at op " + op);
+                    assertEquals(expected.getMaxAmount(), actual.getMaxAmount(), name + " max at op " + op);
+                    assertEquals(expected.getCount(), storage.countInWindow(card, time, window));
+                    break;
+                }
+                default: {
+                    long amount = random.nextInt(10_000);
+                    storage.addTimestamp(card, time, amount);
+                    model.add(card, time, amount);
+                }
+            }
+        }
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("storages")
+    public void testCleanupRacingInsertsLosesNothing(String name, Supplier<TimestampStorage> factory)
+            throws Exception {
+        TimestampStorage storage = open(factory);
+        int insertsPerThread = 5_000;
+        int cleaners = 2;
+        AtomicBoolean writersDone = new AtomicBoolean();
+        ConcurrentLinkedQueue<String> lost = new ConcurrentLinkedQueue<>();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS + cleaners);
+        CountDownLatch start = new CountDownLatch(1);
+
+        try {
+            // Cleanup loops until the writers finish, emptying and unlinking cards
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int c = 0; c < cleaners; c++) {
+                tasks.add(executor.submit(() -> {
+                    await(start);
+                    while (!writersDone.get()) {
+                        storage.removeOlderThan(CUTOFF);
+                    }
+                }));
+            }
+
+            List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                writers.add(executor.submit(() -> {
+                    await(start);
+                    Random random = new Random(thread);
+                    for (int i = 0; i < insertsPerThread; i++) {
+                        // A fresh card per pair: the OLD insert makes it a cleanup
+                        // target holding nothing worth keeping, so cleanup drops the
+                        // whole card right as the NEW insert arrives
+                        String card = thread + ":" + i;
+                        storage.addTimestamp(card, CUTOFF.minusMillis(1 + random.nextInt(1_000)), 1);
+                        storage.addTimestamp(card, CUTOFF.plusMillis(random.nextInt(1_000)), 1);
+                        // Read-your-write: the insert above has returned
+                        if (storage.countInWindow(card, QUERY_TIME, NEW_WINDOW) != 1) {
+                            lost.add(card);
+                        }
+                    }
+                }));
+            }
+
+            start.countDown();
+            for (Future<?> writer : writers) {
+                writer.get(120, TimeUnit.SECONDS);
+            }
+            writersDone.set(true);
+            for (Future<?> task : tasks) {
+                task.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertTrue(lost.isEmpty(), name + " lost inserts on " + lost.size() + " cards, e.g. "
+            + lost.stream().limit(5).toList());
+
+        // Everything old must still be reachable by a final sweep
+        storage.removeOlderThan(CUTOFF);
+        assertFalse(storage.getOldestTimestamp().isBefore(CUTOFF), name + " oldest timestamp hint too high");
+        for (int t = 0; t < THREADS; t++) {
+            for (int i = 0; i < insertsPerThread; i++) {
+                assertEquals(1, storage.countInWindow(t + ":" + i, QUERY_TIME, NEW_WINDOW));
+                assertEquals(0, storage.countInWindow(t + ":" + i, CUTOFF.minusMillis(1), Duration.ofSeconds(5)));
+            }
+        }
+    }
+
+    /**
+     * Linearizability of one card's count: a read must see at least every
+     * insert that finished before it started and at most those that started
+     * before it finished, while cleanup keeps rewriting the card.
+     */
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("storages")
+    public void testConcurrentReadsAreLinearizable(String name, Supplier<TimestampStorage> factory)
+            throws Exception {
+        TimestampStorage storage = open(factory);
+        AtomicInteger started = new AtomicInteger();
+        AtomicInteger completed = new AtomicInteger();
+        AtomicBoolean done = new AtomicBoolean();
+        ConcurrentLinkedQueue<String> violations = new ConcurrentLinkedQueue<>();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            tasks.add(executor.submit(() -> {
+                Random random = new Random(7);
+                for (int i = 0; i < 50_000; i++) {
+                    storage.addTimestamp("hot", CUTOFF.minusMillis(1 + random.nextInt(1_000)), 1);
+                    started.incrementAndGet();
+                    storage.addTimestamp("hot", CUTOFF.plusMillis(random.nextInt(1_000)), 1);
+                    completed.incrementAndGet();
+                }
+                done.set(true);
+            }));
+            tasks.add(executor.submit(() -> {
+                while (!done.get()) {
+                    storage.removeOlderThan(CUTOFF);
+                }
+            }));
+            for (int r = 0; r < THREADS - 2; r++) {
+                tasks.add(executor.submit(() -> {
+                    int last = 0;
+                    while (!done.get()) {
+                        int low = completed.get();
+                        int seen = storage.countInWindow("hot", QUERY_TIME, NEW_WINDOW);
+                        int high = started.get();
+                        if (seen < low || seen > high || seen < last) {
+                            violations.add("saw " + seen + " outside [" + low + ", " + high + "], previous " + last);
+                        }
+                        last = seen;
+                    }
+                }));
+            }
+            for (Future<?> task : tasks) {
+                task.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertTrue(violations.isEmpty(), name + ": " + violations.stream().limit(5).toList());
+        assertEquals(50_000, storage.countInWindow("hot", QUERY_TIME, NEW_WINDOW));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The obviously-correct reference: one list per card, scanned in full.
+     */
+    private static final class SequentialModel {
+        private final Map<String, TreeMap<Long, List<Long>>> cards = new java.util.HashMap<>();
+
+        void add(String card, Instant time, long amount) {
+            cards.computeIfAbsent(card, c -> new TreeMap<>())
+                .computeIfAbsent(time.toEpochMilli(), t -> new ArrayList<>())
+                .add(amount);
+        }
+
+        void removeOlderThan(Instant cutoff) {
+            for (TreeMap<Long, List<Long>> timeline : cards.values()) {
+                timeline.headMap(cutoff.toEpochMilli(), false).clear();
+            }
+        }
+
+        WindowAggregate aggregate(String card, Instant queryTime, Duration window) {
+            TreeMap<Long, List<Long>> timeline = cards.getOrDefault(card, new TreeMap<>());
+            int count = 0;
+            long sum = 0;
+            long max = 0;
+            long from = queryTime.minus(window).toEpochMilli();
+            for (Map.Entry<Long, List<Long>> entry : timeline.entrySet()) {
+                if (entry.getKey() < from || entry.getKey() > queryTime.toEpochMilli()) {
+                    continue;
+                }
+                for (long amount : entry.getValue()) {
+                    count++;
+                    sum += amount;
+                    max = Math.max(max, amount);
+                }
+            }
+            return count == 0 ? WindowAggregate.EMPTY : new WindowAggregate(count, sum, max);
+        }
+    }
+}
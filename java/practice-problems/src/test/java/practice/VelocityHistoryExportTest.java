@@ -0,0 +1,193 @@
+package practice;
+
+import org.junit.jupiter.api.Test;
+
+import practice.Solution.SkipListTimestampStorage;
+import practice.Solution.TimestampStorage;
+import practice.Solution.TreeMapTimestampStorage;
+import practice.Solution.WindowAggregate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import redis.clients.jedis.JedisPool;
+
+public class VelocityHistoryExportTest {
+
+    private static final Instant NOW = Instant.parse("2025-02-11T10:00:00Z");
+
+    @Test
+    public void testRoundTripPreservesEveryWindow() throws IOException {
+        TreeMapTimestampStorage source = new TreeMapTimestampStorage();
+        Random random = new Random(7);
+        for (int card = 0; card < 50; card++) {
+            for (int i = 0; i < 40; i++) {
+                Instant at = NOW.minusSeconds(random.nextInt(7 * 24 * 3600));
+                source.addTimestamp("card" + card, at, random.nextInt(100_000));
+                if (i % 10 == 0) {
+                    // same millisecond → bucket with count > 1
+                    source.addTimestamp("card" + card, at, random.nextInt(100_000));
+                    source.addTimestamp("card" + card, at, 7);
+                }
+            }
+        }
+
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        long rows = VelocityHistoryExporter.export(source, file);
+        assertTrue(rows >= 50 * 40 - 10, "rows " + rows);
+
+        SkipListTimestampStorage target = new SkipListTimestampStorage();
+        try (VelocityHistoryReader reader = new VelocityHistoryReader(new ByteArrayInputStream(file.toByteArray()))) {
+            assertEquals(50 * 48, reader.loadInto(target));
+        }
+
+        for (int card = 0; card < 50; card++) {
+            for (Duration window : List.of(Duration.ofMinutes(10), Duration.ofHours(6), Duration.ofDays(7))) {
+                WindowAggregate expected = source.aggregateInWindow("card" + card, NOW, window);
+                WindowAggregate actual = target.aggregateInWindow("card" + card, NOW, window);
+                assertEquals(expected.getCount(), actual.getCount());
+                assertEquals(expected.getAmountSum(), actual.getAmountSum());
+                assertEquals(expected.getMaxAmount(), actual.getMaxAmount());
+            }
+        }
+    }
+
+    @Test
+    public void testColumnsAreCompact() throws IOException {
+        TreeMapTimestampStorage source = new TreeMapTimestampStorage();
+        String cardPrefix = "0123456789abcdef0123456789abcdef0123456789abcdef012345678"; // 64-char hashes
+        for (int card = 0; card < 100; card++) {
+            for (int i = 0; i < 100; i++) {
+                source.addTimestamp(cardPrefix + String.format("%07d", card), NOW.minusSeconds(i * 37L), 1_999);
+            }
+        }
+
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        assertEquals(10_000, VelocityHistoryExporter.export(source, file));
+        // Naive rows would be 64 + 8 + 8 bytes each; columns get them 10x smaller
+        assertTrue(file.size() < 10_000 * 8, "export is " + file.size() + " bytes");
+    }
+
+    @Test
+    public void testManyRowGroupsAndUnorderedRows() throws IOException {
+        List<long[]> written = new ArrayList<>();
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        try (VelocityHistoryExporter exporter = new VelocityHistoryExporter(file, 16)) {
+            for (int i = 0; i < 100; i++) {
+                // Cards interleaved and time going backwards across rows
+                long millis = NOW.toEpochMilli() + (i % 2 == 0 ? i : -i) * 1000L;
+                exporter.visit("card" + (i % 7), millis, 1 + i % 3, -5L + i, i);
+                written.add(new long[] { i % 7, millis, 1 + i % 3, -5L + i, i % 3 == 0 ? -5L + i : i });
+            }
+        }
+
+        List<long[]> read = new ArrayList<>();
+        try (VelocityHistoryReader reader = new VelocityHistoryReader(new ByteArrayInputStream(file.toByteArray()))) {
+            assertEquals(100, reader.forEach((cardHash, epochMilli, count, amountSum, maxAmount) -> read.add(
+                    new long[] { Long.parseLong(cardHash.substring(4)), epochMilli, count, amountSum, maxAmount })));
+        }
+        for (int i = 0; i < 100; i++) {
+            assertArrayEquals(written.get(i), read.get(i), "row " + i);
+        }
+    }
+
+    @Test
+    public void testRedisStoresExportTheSameBucketsAsInMemory() throws IOException {
+        List<FakeRedisServer> servers = new ArrayList<>();
+        List<JedisPool> pools = new ArrayList<>();
+        try {
+            // One instance for the plain store, three shards for the sharded one
+            for (int i = 0; i < 4; i++) {
+                servers.add(new FakeRedisServer());
+                pools.add(new JedisPool("127.0.0.1", servers.get(i).port()));
+            }
+            TreeMapTimestampStorage memory = new TreeMapTimestampStorage();
+            try (RedisTimestampStorage redis = new RedisTimestampStorage(pools.get(0));
+                 ShardedRedisTimestampStorage sharded = new ShardedRedisTimestampStorage(pools.subList(1, 4), null)) {
+                Random random = new Random(11);
+                for (int card = 0; card < 20; card++) {
+                    for (int i = 0; i < 10; i++) {
+                        // Every third payment shares the previous one's millisecond
+                        Instant at = NOW.minusSeconds(i % 3 == 0 && i > 0 ? i - 1 : i);
+                        long amount = random.nextInt(10_000);
+                        for (TimestampStorage storage : List.of(memory, redis, sharded)) {
+                            storage.addTimestamp("card" + card, "pay-" + card + "-" + i, at, amount);
+                        }
+                    }
+                }
+                // Merchant-scoped keys keep their own hash tag
+                String scoped = Solution.VelocityProviderImpl.merchantCardKey("m-1", "card0");
+                for (TimestampStorage storage : List.of(memory, redis, sharded)) {
+                    storage.addTimestamp(scoped, "pay-scoped", NOW, 42);
+                }
+
+                List<String> expected = buckets(memory);
+                assertEquals(expected, buckets(redis));
+                assertEquals(expected, buckets(sharded));
+
+                ByteArrayOutputStream file = new ByteArrayOutputStream();
+                assertEquals(expected.size(), VelocityHistoryExporter.export(sharded, file));
+            }
+        } finally {
+            for (JedisPool pool : pools) {
+                pool.close();
+            }
+            for (FakeRedisServer server : servers) {
+                server.close();
+            }
+        }
+    }
+
+    @Test
+    public void testRejectsForeignFilesAndUnscannableStores() {
+        assertThrows(IOException.class,
+            () -> new VelocityHistoryReader(new ByteArrayInputStream("PK\u0003\u0004".getBytes())));
+
+        TimestampStorage unscannable = new NearCachedTimestampStorage(new TimestampStorage() {
+            @Override
+            public void addTimestamp(String cardHash, Instant timestamp, long amount) {
+            }
+
+            @Override
+            public int countInWindow(String cardHash, Instant queryTime, Duration duration) {
+                return 0;
+            }
+
+            @Override
+            public WindowAggregate aggregateInWindow(String cardHash, Instant queryTime, Duration duration) {
+                return WindowAggregate.EMPTY;
+            }
+
+            @Override
+            public void removeOlderThan(Instant cutoffTime) {
+            }
+
+            @Override
+            public Instant getOldestTimestamp() {
+                return null;
+            }
+        });
+        assertThrows(UnsupportedOperationException.class,
+            () -> VelocityHistoryExporter.export(unscannable, new ByteArrayOutputStream()));
+    }
+
+    /**
+     * Every bucket as "card@millis=count/sum/max", sorted.
+     */
+    private static List<String> buckets(TimestampStorage storage) {
+        List<String> buckets = new ArrayList<>();
+        storage.forEachBucket((cardHash, epochMilli, count, amountSum, maxAmount) ->
+                buckets.add(cardHash + "@" + epochMilli + "=" + count + "/" + amountSum + "/" + maxAmount));
+        Collections.sort(buckets);
+        return buckets;
+    }
+}
@@ -0,0 +1,160 @@
+package testsupport;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+/**
+ * Recording fake DataSource built from dynamic proxies, for checking JDBC
+ * plumbing where there is no Postgres: SQL semantics are out of scope.
+ *
+ * Every query answers with the same rows. A column is read by its 1-based
+ * index or by its label in {@code columns}. Records:
+ *   calls     setAutoCommit, setFetchSize, executeBatch, commit, rollback
+ *   batched   the parameters of each addBatch row
+ *   queried   the parameters of each executeQuery
+ *   open      connections, statements and result sets not yet closed
+ *
+ * Any other JDBC method throws UnsupportedOperationException, so a new call
+ * in the code under test shows up here first.
+ */
+public final class FakeDataSource {
+
+    public final List<String> calls = Collections.synchronizedList(new ArrayList<>());
+    public final List<List<Object>> batched = Collections.synchronizedList(new ArrayList<>());
+    public final List<List<Object>> queried = Collections.synchronizedList(new ArrayList<>());
+    public final AtomicInteger open = new AtomicInteger();
+    public volatile boolean failBatches;
+    public volatile boolean failQueries;
+
+    private final List<String> columns;
+    private final List<Object[]> rows;
+
+    public FakeDataSource() {
+        this(Collections.emptyList(), Collections.emptyList());
+    }
+
+    public FakeDataSource(List<String> columns, List<Object[]> rows) {
+        this.columns = columns;
+        this.rows = rows;
+    }
+
+    public DataSource proxy() {
+        return proxy(DataSource.class, (self, method, args) -> {
+            if (method.getName().equals("getConnection")) {
+                open.incrementAndGet();
+                return connection();
+            }
+            throw new UnsupportedOperationException(method.getName());
+        });
+    }
+
+    private Connection connection() {
+        return proxy(Connection.class, (self, method, args) -> {
+            switch (method.getName()) {
+                case "setAutoCommit":
+                    calls.add("setAutoCommit(" + args[0] + ")");
+                    return null;
+                case "rollback":
+                case "commit":
+                    calls.add(method.getName());
+                    return null;
+                case "prepareStatement":
+                    open.incrementAndGet();
+                    return statement();
+                case "close":
+                    open.decrementAndGet();
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private PreparedStatement statement() {
+        List<Object> parameters = new ArrayList<>();
+        return proxy(PreparedStatement.class, (self, method, args) -> {
+            switch (method.getName()) {
+                case "setObject":
+                case "setLong":
+                case "setInt":
+                case "setDouble":
+                case "setString":
+                case "setTimestamp":
+                case "setBoolean":
+                    int index = (Integer) args[0];
+                    while (parameters.size() < index) {
+                        parameters.add(null);
+                    }
+                    parameters.set(index - 1, args[1]);
+                    return null;
+                case "setFetchSize":
+                    calls.add("setFetchSize(" + args[0] + ")");
+                    return null;
+                case "addBatch":
+                    batched.add(new ArrayList<>(parameters));
+                    parameters.clear();
+                    return null;
+                case "executeBatch":
+                    calls.add("executeBatch");
+                    if (failBatches) {
+                        throw new SQLException("unique violation");
+                    }
+                    return new int[0];
+                case "executeQuery":
+                    queried.add(new ArrayList<>(parameters));
+                    if (failQueries) {
+                        throw new SQLException("connection reset");
+                    }
+                    open.incrementAndGet();
+                    return resultSet();
+                case "close":
+                    open.decrementAndGet();
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private ResultSet resultSet() {
+        int[] row = { -1 };
+        return proxy(ResultSet.class, (self, method, args) -> {
+            switch (method.getName()) {
+                case "next":
+                    return ++row[0] < rows.size();
+                case "getObject":
+                case "getString":
+                case "getTimestamp":
+                case "getDouble":
+                case "getInt":
+                case "getLong":
+                case "getBoolean":
+                    int column = args[0] instanceof Integer index ? index - 1 : columns.indexOf(args[0]);
+                    if (column < 0) {
+                        throw new SQLException("No such column: " + args[0]);
+                    }
+                    return rows.get(row[0])[column];
+                case "close":
+                    open.decrementAndGet();
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+}